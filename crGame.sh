@@ -1,4 +1,4 @@
 find -name  "*.class" -exec rm {} +
 find -name "*.java" > javafiles.txt
-javac.exe @javafiles.txt
-java.exe -cp "src" src/GFrame.java
\ No newline at end of file
+javac.exe --add-modules jdk.incubator.vector @javafiles.txt
+java.exe --add-modules jdk.incubator.vector -cp "src" src/GFrame.java
\ No newline at end of file
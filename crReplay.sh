@@ -0,0 +1,4 @@
+find -name  "*.class" -exec rm {} +
+find -name "*.java" > javafiles.txt
+javac.exe --add-modules jdk.incubator.vector @javafiles.txt
+java.exe --add-modules jdk.incubator.vector -cp "src" Replay "$@"
@@ -1,8 +1,9 @@
+import core.GameLoop;
 import core.RenderObject;
+import core.RenderScaleController;
 import core.Scene;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.Graphics;
 import java.util.ArrayList;
 import java.util.Arrays;
 import javax.swing.JPanel;
@@ -10,12 +11,72 @@ import objects.*;
 
 public class ConsolePanel {
 
+    /**
+     * Main method to run the demo in the terminal.
+     * 
+     * @param args Optional "--truecolour" to colour the characters with the shaded triangle colours,
+     *             and "--fixed-resolution" to always draw at the full console size.
+     */
+    public static void main(String[] args) {
+        ConsolePanel panel = new ConsolePanel(SCREEN_WIDTH, SCREEN_HEIGHT);
+        panel.setTrueColour(Arrays.asList(args).contains("--truecolour"));
+        panel.setDynamicResolution(!Arrays.asList(args).contains("--fixed-resolution"));
+
+        //Show the cursor and reset the colour again when the demo is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.print("\033[0m\033[?25h");
+            System.out.flush();
+        }));
+
+        //Fixed-timestep loop at 60 updates and 30 frames per second
+        GameLoop loop = new GameLoop(60, 30) {
+            @Override
+            protected void update(double step) {
+                panel.update(step);
+            }
+
+            @Override
+            protected void render(double alpha) {
+                panel.render(alpha);
+            }
+        };
+        loop.run();
+    }
+
     //Constants for screen dimensions in characters
     private static final int SCREEN_WIDTH = 120;
     private static final int SCREEN_HEIGHT = 60;
     
     //Buffer to hold characters that will be displayed on the console
     private char[][] screenBuffer = new char[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private int[][] colourBuffer = new int[SCREEN_HEIGHT][SCREEN_WIDTH]; //Colour of each character (packed RGB)
+
+    //Buffers the scene is drawn into, of which only the top left renderWidth x renderHeight cells are used.
+    //They are upscaled into the screen buffer, so the scene can be drawn at a lower resolution under load
+    private char[][] renderBuffer = new char[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private int[][] renderColourBuffer = new int[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private int renderWidth = SCREEN_WIDTH;
+    private int renderHeight = SCREEN_HEIGHT;
+
+    //Chooses the render resolution from the frame time, aiming at the 30 fps of main()
+    private RenderScaleController renderScale = new RenderScaleController(1000000000L / 30);
+
+    //What the terminal currently shows, so only the cells that changed need to be written
+    private char[][] previousBuffer = new char[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private int[][] previousColourBuffer = new int[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private boolean terminalInitialised = false; //Whether the terminal has been cleared for the first frame
+
+    //Reusable output buffer holding the escape sequences and characters of a frame, written with one call
+    private static final int MAX_BYTES_PER_CELL = 32; //Cursor move + colour + character, with room to spare
+    private byte[] outputBuffer = new byte[SCREEN_WIDTH * SCREEN_HEIGHT * MAX_BYTES_PER_CELL + 64];
+    private int outputLength; //Number of bytes in the output buffer
+
+    //Unchanged cells between two changed runs are rewritten rather than skipped if the gap is this short,
+    //since a cursor move costs about as many bytes
+    private static final int MAX_GAP = 6;
+
+    private boolean trueColour = false; //Whether to colour the characters with 24-bit escape sequences
+    private int lastColour = -1; //Colour the terminal is currently set to (-1 when unknown)
 
     //Scaling factors for the graphics. These control the size of rendered objects on the screen
     private float graphicsRatio = 0.5f; //Ratio for scaling dodecahedron
@@ -38,39 +99,86 @@ public class ConsolePanel {
         //Initialize the scene with an empty list of render objects
         scene = new Scene(new ArrayList<RenderObject> (Arrays.asList()));
         
-        //Create a new game instance, passing the scene and this console panel
-        game = new Game(scene, this);
+        //Create a new game instance, the console has no Swing component to take input from
+        game = new Game(scene);
     }
 
     /**
-     * Clears the screen buffer and prints a terminal command to clear the console.
+     * Clears the render buffer. The terminal itself is not cleared, as only the changed cells are rewritten.
      */
     private void clearScreenBuffer() {
-        //Clear the console screen using terminal escape codes
-        System.out.print("\033[H\033[2J");   
-        System.out.flush();   
-        
-        //Fill the screen buffer with spaces (empty characters)
+        //Fill the part of the render buffer in use with spaces (empty characters)
+        for (int y = 0; y < renderHeight; y++) {
+            Arrays.fill(renderBuffer[y], 0, renderWidth, ' ');
+            Arrays.fill(renderColourBuffer[y], 0, renderWidth, 0);
+        }
+    }
+
+    /**
+     * Copies the render buffer into the screen buffer, stretching it to the full screen size
+     * (nearest neighbour) if the scene was drawn at a lower resolution.
+     */
+    private void upscaleToScreenBuffer() {
         for (int y = 0; y < SCREEN_HEIGHT; y++) {
-            Arrays.fill(screenBuffer[y], ' ');
+            int sourceY = y * renderHeight / SCREEN_HEIGHT;
+            char[] sourceRow = renderBuffer[sourceY];
+            int[] sourceColours = renderColourBuffer[sourceY];
+            if (renderWidth == SCREEN_WIDTH) {
+                System.arraycopy(sourceRow, 0, screenBuffer[y], 0, SCREEN_WIDTH);
+                System.arraycopy(sourceColours, 0, colourBuffer[y], 0, SCREEN_WIDTH);
+            } else {
+                for (int x = 0; x < SCREEN_WIDTH; x++) {
+                    int sourceX = x * renderWidth / SCREEN_WIDTH;
+                    screenBuffer[y][x] = sourceRow[sourceX];
+                    colourBuffer[y][x] = sourceColours[sourceX];
+                }
+            }
         }
     }
+
+    /**
+     * Enables or disables lowering the render resolution when frames take longer than their budget.
+     * 
+     * @param enabled Whether to scale the render resolution dynamically.
+     */
+    public void setDynamicResolution(boolean enabled) {
+        renderScale.setEnabled(enabled);
+    }
     
     /**
-     * This method is called every "frame" by the GFrame class when it refreshes and repaints.
-     * It updates the game state and draws the current scene.
+     * Advances the game state by one fixed simulation step.
+     * Called by the game loop, possibly several times per rendered frame.
+     * 
+     * @param step The length of the simulation step in seconds.
+     */
+    public void update(double step) {
+        game.tick(step);
+    }
+
+    /**
+     * This method is called every frame by the game loop.
+     * It moves the camera to the interpolated game state and draws the current scene.
      * 
-     * @param g Graphics object (not used for console-based rendering).
+     * @param alpha How far between the last two simulation steps the frame lies (0 to 1).
      */
-    protected void paintComponent(Graphics g) {
+    public void render(double alpha) {
+        long renderStart = System.nanoTime();
+
+        //Draw at the resolution chosen from the previous frames
+        renderWidth = renderScale.scaledSize(SCREEN_WIDTH);
+        renderHeight = renderScale.scaledSize(SCREEN_HEIGHT);
+
         //Clear the screen buffer before rendering the next frame
         clearScreenBuffer();
         
-        //Update the game state
-        game.tick();
+        //Update the camera for this frame
+        game.interpolate(alpha);
         
         //Draw the current scene
         drawSceneToScreen();
+
+        //Adjust the render resolution for the next frame if this one was too slow or fast
+        renderScale.recordFrameTime(System.nanoTime() - renderStart);
     }
 
     /**
@@ -78,8 +186,9 @@ public class ConsolePanel {
      * 
      * @param triangle2d The triangle to be outlined.
      * @param ch The character used for drawing the outline.
+     * @param colour The colour of the outline (packed RGB).
      */
-    private void outlineTriangle(Triangle2D triangle2d, char ch) {
+    private void outlineTriangle(Triangle2D triangle2d, char ch, int colour) {
         //Get the x and y coordinates of the triangle's vertices
         float[] xPoints = triangle2d.xValues();
         float[] yPoints = triangle2d.yValues();
@@ -89,9 +198,9 @@ public class ConsolePanel {
         int[] yScreen = fitAxisToScreen(yPoints, true);
     
         //Draw the triangle's three edges
-        drawLine(xScreen[0], yScreen[0], xScreen[1], yScreen[1], ch);
-        drawLine(xScreen[1], yScreen[1], xScreen[2], yScreen[2], ch);
-        drawLine(xScreen[2], yScreen[2], xScreen[0], yScreen[0], ch);
+        drawLine(xScreen[0], yScreen[0], xScreen[1], yScreen[1], ch, colour);
+        drawLine(xScreen[1], yScreen[1], xScreen[2], yScreen[2], ch, colour);
+        drawLine(xScreen[2], yScreen[2], xScreen[0], yScreen[0], ch, colour);
     }
 
     /**
@@ -99,8 +208,9 @@ public class ConsolePanel {
      * 
      * @param triangle2d The triangle to be filled.
      * @param ch The character used to fill the triangle.
+     * @param colour The colour of the fill (packed RGB).
      */
-    private void fillTriangle(Triangle2D triangle2d, char ch) {
+    private void fillTriangle(Triangle2D triangle2d, char ch, int colour) {
         //Get the x and y coordinates of the triangle's vertices
         float[] xPoints = triangle2d.xValues();
         float[] yPoints = triangle2d.yValues();
@@ -110,21 +220,152 @@ public class ConsolePanel {
         int[] yScreen = fitAxisToScreen(yPoints, true);
     
         //Rasterize the triangle (fill it in with the character)
-        rasterizeTriangle(xScreen, yScreen, ch);
+        rasterizeTriangle(xScreen, yScreen, ch, colour);
     }
 
     /**
-     * Outputs the screen buffer to the console by printing each character to the terminal.
+     * Outputs the screen buffer to the console.
+     * Only the runs of cells that differ from the previous frame are written, each preceded by a
+     * cursor-addressing escape sequence. The whole frame is assembled in a reusable byte buffer and
+     * written to the terminal with a single write and flush.
      */
     private void outputScreenBufferToConsole() {
+        outputLength = 0;
+
+        //Hide the cursor and clear the terminal once, before the first frame
+        if (!terminalInitialised) {
+            writeAscii("\033[?25l\033[2J");
+            for (int y = 0; y < SCREEN_HEIGHT; y++) {
+                Arrays.fill(previousBuffer[y], ' ');
+            }
+            lastColour = -1;
+            terminalInitialised = true;
+        }
+
         for (int y = 0; y < SCREEN_HEIGHT; y++) {
-            for (int x = 0; x < SCREEN_WIDTH; x++) {
-                //Print each character in the buffer
-                System.out.print(screenBuffer[y][x]);
+            int x = 0;
+            while (x < SCREEN_WIDTH) {
+                if (!cellChanged(x, y)) {
+                    x++;
+                    continue;
+                }
+
+                //Extend the run over short gaps of unchanged cells
+                int end = x;
+                int gap = 0;
+                for (int i = x + 1; i < SCREEN_WIDTH && gap <= MAX_GAP; i++) {
+                    if (cellChanged(i, y)) {
+                        end = i;
+                        gap = 0;
+                    } else {
+                        gap++;
+                    }
+                }
+
+                //Move the cursor to the start of the run and write it
+                writeCursorPosition(x, y);
+                for (int i = x; i <= end; i++) {
+                    writeCell(i, y);
+                }
+                x = end + 1;
             }
-            //Move to the next line after printing each row
-            System.out.println();
         }
+
+        //Park the cursor below the frame and send everything in one write
+        writeCursorPosition(0, SCREEN_HEIGHT);
+        System.out.write(outputBuffer, 0, outputLength);
+        System.out.flush();
+    }
+
+    /**
+     * Checks whether a cell differs from what the terminal currently shows.
+     * The colour of blank cells is ignored, as it is not visible.
+     * 
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     * @return true if the cell needs to be written.
+     */
+    private boolean cellChanged(int x, int y) {
+        char ch = screenBuffer[y][x];
+        if (ch != previousBuffer[y][x]) {
+            return true;
+        }
+        return trueColour && ch != ' ' && colourBuffer[y][x] != previousColourBuffer[y][x];
+    }
+
+    /**
+     * Writes a cell to the output buffer, switching the colour first if needed, and remembers it as shown.
+     * 
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     */
+    private void writeCell(int x, int y) {
+        char ch = screenBuffer[y][x];
+        int colour = colourBuffer[y][x];
+        if (trueColour && ch != ' ' && colour != lastColour) {
+            //Select a 24-bit foreground colour: ESC[38;2;r;g;bm
+            writeAscii("\033[38;2;");
+            writeNumber((colour >> 16) & 0xFF);
+            outputBuffer[outputLength++] = ';';
+            writeNumber((colour >> 8) & 0xFF);
+            outputBuffer[outputLength++] = ';';
+            writeNumber(colour & 0xFF);
+            outputBuffer[outputLength++] = 'm';
+            lastColour = colour;
+        }
+        outputBuffer[outputLength++] = (byte) ch;
+
+        previousBuffer[y][x] = ch;
+        previousColourBuffer[y][x] = colour;
+    }
+
+    /**
+     * Writes the escape sequence that moves the cursor to a cell: ESC[row;columnH (1 based).
+     * 
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     */
+    private void writeCursorPosition(int x, int y) {
+        outputBuffer[outputLength++] = 033;
+        outputBuffer[outputLength++] = '[';
+        writeNumber(y + 1);
+        outputBuffer[outputLength++] = ';';
+        writeNumber(x + 1);
+        outputBuffer[outputLength++] = 'H';
+    }
+
+    /**
+     * Writes a non-negative number in decimal digits to the output buffer, without creating a string.
+     * 
+     * @param value The number to write.
+     */
+    private void writeNumber(int value) {
+        if (value >= 10) {
+            writeNumber(value / 10);
+        }
+        outputBuffer[outputLength++] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Writes an ASCII string to the output buffer.
+     * 
+     * @param text The text to write.
+     */
+    private void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            outputBuffer[outputLength++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Sets whether the characters are coloured with the shaded triangle colours using 24-bit
+     * (truecolour) escape sequences. Without it the terminal's default colour is used.
+     * 
+     * @param trueColour Whether to use truecolour output.
+     */
+    public void setTrueColour(boolean trueColour) {
+        this.trueColour = trueColour;
+        terminalInitialised = false; //Redraw everything with the new setting
     }
 
     /**
@@ -139,20 +380,22 @@ public class ConsolePanel {
         scene.renderScene();
     
         //Retrieve the rendered triangles and other details
+        //(the colours are the packed form of scene.getColours(), which avoids creating Color objects)
         Triangle2D[] trianglesToDisplay = scene.getRenderedTriangles();
-        Color[] colours = scene.getColours();
+        int[] colours = scene.getRGBColours();
         String[] names = scene.getNames();
         
         //Loop through all triangles in the scene and draw them
         for (int index = 0; index < scene.getCount(); index++) {
             if (trianglesToDisplay[index] != null) {
                 //Outline the triangle with '*' and fill it with '#'
-                outlineTriangle(trianglesToDisplay[index], '*');
-                fillTriangle(trianglesToDisplay[index], '#');
+                outlineTriangle(trianglesToDisplay[index], '*', colours[index]);
+                fillTriangle(trianglesToDisplay[index], '#', colours[index]);
             }
         }
     
-        //Output the final rendered screen buffer to the console
+        //Stretch the rendered frame to the screen and output the final screen buffer to the console
+        upscaleToScreenBuffer();
         outputScreenBufferToConsole();
     }
     
@@ -162,11 +405,13 @@ public class ConsolePanel {
      * @param x The x-coordinate.
      * @param y The y-coordinate.
      * @param ch The character to plot.
+     * @param colour The colour of the character (packed RGB).
      */
-    private void plotPixel(int x, int y, char ch) {
+    private void plotPixel(int x, int y, char ch, int colour) {
         //Only plot the pixel if it's within the bounds of the screen
-        if (x >= 0 && x < SCREEN_WIDTH && y >= 0 && y < SCREEN_HEIGHT) {
-            screenBuffer[y][x] = ch;
+        if (x >= 0 && x < renderWidth && y >= 0 && y < renderHeight) {
+            renderBuffer[y][x] = ch;
+            renderColourBuffer[y][x] = colour;
         }
     }
 
@@ -176,8 +421,9 @@ public class ConsolePanel {
      * @param x The x-coordinates of the triangle vertices.
      * @param y The y-coordinates of the triangle vertices.
      * @param ch The character used to fill the triangle.
+     * @param colour The colour of the fill (packed RGB).
      */
-    private void rasterizeTriangle(int[] x, int[] y, char ch) {
+    private void rasterizeTriangle(int[] x, int[] y, char ch, int colour) {
         //Sort the vertices by their y-coordinate
         int[] sortedIndices = sortIndicesByY(y);
         int x0 = x[sortedIndices[0]], y0 = y[sortedIndices[0]];
@@ -192,7 +438,7 @@ public class ConsolePanel {
         for (int scanY = y0; scanY <= y1; scanY++) {
             int xStart = (int)(x0 + (scanY - y0) * invSlope1);
             int xEnd = (int)(x0 + (scanY - y0) * invSlope2);
-            drawHorizontalLine(xStart, xEnd, scanY, ch);
+            drawHorizontalLine(xStart, xEnd, scanY, ch, colour);
         }
     
         //Compute the slope for the upper part of the triangle (from y1 to y2)
@@ -202,7 +448,7 @@ public class ConsolePanel {
         for (int scanY = y1; scanY <= y2; scanY++) {
             int xStart = (int)(x1 + (scanY - y1) * invSlope1);
             int xEnd = (int)(x0 + (scanY - y0) * invSlope2);
-            drawHorizontalLine(xStart, xEnd, scanY, ch);
+            drawHorizontalLine(xStart, xEnd, scanY, ch, colour);
         }
     }
 
@@ -226,10 +472,11 @@ public class ConsolePanel {
      * @param xEnd The ending x-coordinate.
      * @param y The y-coordinate of the line.
      * @param ch The character used to draw the line.
+     * @param colour The colour of the line (packed RGB).
      */
-    private void drawHorizontalLine(int xStart, int xEnd, int y, char ch) {
+    private void drawHorizontalLine(int xStart, int xEnd, int y, char ch, int colour) {
         //Make sure the y-coordinate is within the screen bounds
-        if (y < 0 || y >= SCREEN_HEIGHT) return;
+        if (y < 0 || y >= renderHeight) return;
         
         //Swap xStart and xEnd if xStart is greater than xEnd
         if (xStart > xEnd) {
@@ -240,7 +487,7 @@ public class ConsolePanel {
 
         //Draw the line by plotting each character between xStart and xEnd
         for (int x = xStart; x <= xEnd; x++) {
-            plotPixel(x, y, ch);
+            plotPixel(x, y, ch, colour);
         }
     }
 
@@ -252,8 +499,9 @@ public class ConsolePanel {
      * @param x1 Ending x-coordinate.
      * @param y1 Ending y-coordinate.
      * @param ch The character used to draw the line.
+     * @param colour The colour of the line (packed RGB).
      */
-    private void drawLine(int x0, int y0, int x1, int y1, char ch) {
+    private void drawLine(int x0, int y0, int x1, int y1, char ch, int colour) {
         int dx = Math.abs(x1 - x0);
         int dy = -Math.abs(y1 - y0);
         int sx = x0 < x1 ? 1 : -1;
@@ -262,7 +510,7 @@ public class ConsolePanel {
 
         while (true) {
             //Plot the current pixel
-            plotPixel(x0, y0, ch);
+            plotPixel(x0, y0, ch, colour);
 
             //If the current point is the end point, stop drawing
             if (x0 == x1 && y0 == y1) break;
@@ -292,10 +540,10 @@ public class ConsolePanel {
         for (int i = 0; i < axisValues.length; i++) {
             if (isYAxis) {
                 //Convert normalized y-coordinate to screen y-coordinate
-                screenValues[i] = (int)((1 - axisValues[i]) * (SCREEN_HEIGHT - 1) / 2);
+                screenValues[i] = (int)((1 - axisValues[i]) * (renderHeight - 1) / 2);
             } else {
                 //Convert normalized x-coordinate to screen x-coordinate
-                screenValues[i] = (int)((axisValues[i] + 1) * (SCREEN_WIDTH - 1) / 2);
+                screenValues[i] = (int)((axisValues[i] + 1) * (renderWidth - 1) / 2);
             }
         }
         return screenValues;
@@ -1,30 +1,148 @@
+import capture.FrameCapture;
+import capture.FrameEncoder;
+import capture.OverflowPolicy;
+import capture.SharedMemoryFrameTarget;
+import core.GameLoop;
+import events.InputRecording;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import remote.FrameServer;
 
 public class GFrame extends JFrame {
+    //Number of fixed simulation steps per second
+    private static final int UPDATES_PER_SECOND = 60;
+    //Frame rate the loop aims for when no target is given on the command line
+    private static final int DEFAULT_TARGET_FPS = 60;
+    //Frames that may wait for the encoder when capturing before the oldest are dropped
+    private static final int CAPTURE_QUEUE_LENGTH = 8;
+    //Frame slots in the ring of a shared frame file, giving readers two frames' time to copy one
+    private static final int SHARED_FRAME_SLOTS = 3;
+
     /**
      * Main method to start the application.
-     * Creates a new GFrame instance and continuously updates the frame.
-     * 
-     * @param args Command line arguments (not used).
-     * @throws InterruptedException if the thread sleep is interrupted.
+     * Creates a new GFrame instance and runs the game loop on the main thread.
+     *
+     * @param args Optional target frame rate, "0" or "uncapped" for uncapped rendering,
+     *             optionally "--world" followed by a world directory to stream around the player,
+     *             optionally "--record" followed by a file to write the player's input to when the window
+     *             is closed, which the Replay class plays back, and optionally "--capture" followed by a
+     *             .y4m or .rgb file or a directory of PNG files to record the rendered frames to,
+     *             optionally "--serve" followed by a TCP port to stream the frames to remote.FrameClient viewers,
+     *             and optionally "--shm" followed by a file, e.g. under /dev/shm, to share the frames with
+     *             capture.SharedMemoryFrameReader processes on the same machine.
+     * @throws IOException if the world index cannot be read or a capture or shared frame file cannot be created.
      */
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws IOException {
+        int targetFps = DEFAULT_TARGET_FPS;
+        String worldDirectory = null;
+        String recordingFile = null;
+        String captureFile = null;
+        int servePort = -1;
+        String sharedFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--world") && i + 1 < args.length) {
+                worldDirectory = args[++i];
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordingFile = args[++i];
+            } else if (args[i].equals("--capture") && i + 1 < args.length) {
+                captureFile = args[++i];
+            } else if (args[i].equals("--serve") && i + 1 < args.length) {
+                servePort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shm") && i + 1 < args.length) {
+                sharedFile = args[++i];
+            } else {
+                targetFps = args[i].equalsIgnoreCase("uncapped") ? 0 : Integer.parseInt(args[i]);
+            }
+        }
+
         GFrame frame = new GFrame(); //Create a new instance of the frame
+        if (worldDirectory != null) {
+            frame.demoPanel.streamWorld(Paths.get(worldDirectory));
+        }
+        if (targetFps > 0) {
+            frame.demoPanel.setFrameTimeBudget(1000000000L / targetFps); //Lower the resolution rather than miss the target
+        }
+
+        //Record every step, written out when the window is closed (which exits the program)
+        if (recordingFile != null) {
+            InputRecording recording = new InputRecording(1000000000L / UPDATES_PER_SECOND);
+            frame.demoPanel.setRecording(recording);
+            Path recordingPath = Paths.get(recordingFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recording.write(recordingPath);
+                    System.out.println("Recorded " + recording.getStepCount() + " steps to " + recordingPath);
+                } catch (IOException e) {
+                    System.err.println("Could not write the recording: " + e.getMessage());
+                }
+            }));
+        }
+
+        //Capture the frames in the background, dropping the oldest queued ones rather than slowing the game down
+        if (captureFile != null) {
+            Path capturePath = Paths.get(captureFile);
+            FrameEncoder encoder = FrameEncoder.open(capturePath, frame.SCREEN_WIDTH, frame.SCREEN_HEIGHT,
+                    targetFps > 0 ? targetFps : DEFAULT_TARGET_FPS);
+            FrameCapture capture = new FrameCapture(encoder, CAPTURE_QUEUE_LENGTH, OverflowPolicy.DROP_OLDEST);
+            frame.demoPanel.setCapture(capture);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    capture.close();
+                    System.out.println("Captured " + capture.getEncodedCount() + " frames to " + capturePath
+                            + " (" + capture.getDroppedCount() + " dropped)");
+                } catch (IOException e) {
+                    System.err.println("Could not write the capture: " + e.getMessage());
+                }
+            }));
+        }
 
-        //Infinite loop to continuously update the frame
-        while (true) {
-            Thread.sleep(50);  //Control frame rate to approximately 20 frames per second (50 ms delay)
-            frame.update();    //Call the update method to refresh the frame
+        //Stream the frames to viewers on the network, skipping frames for viewers that cannot keep up
+        if (servePort >= 0) {
+            FrameServer server = new FrameServer(servePort, frame.SCREEN_WIDTH, frame.SCREEN_HEIGHT);
+            frame.demoPanel.setFrameServer(server);
+            System.out.println("Serving frames on port " + server.getPort());
         }
+
+        //Share the frames with other processes, which read them from the mapped file without waiting on the game
+        if (sharedFile != null) {
+            SharedMemoryFrameTarget target = new SharedMemoryFrameTarget(Paths.get(sharedFile), frame.SCREEN_WIDTH,
+                    frame.SCREEN_HEIGHT, SHARED_FRAME_SLOTS);
+            frame.demoPanel.setSharedMemoryTarget(target);
+            System.out.println("Sharing frames in " + sharedFile);
+        }
+
+        //Fixed-timestep loop that steps the game and actively renders the frame
+        GameLoop loop = new GameLoop(UPDATES_PER_SECOND, targetFps) {
+            @Override
+            protected void update(double step) {
+                frame.update(step);
+            }
+
+            @Override
+            protected void render(double alpha) {
+                frame.render(alpha);
+            }
+        };
+        loop.run();
     }
 
     //Screen width and height for the window
     private final int SCREEN_WIDTH = 960;
     private final int SCREEN_HEIGHT = 540;
-    
+
     //Custom JPanel where all game graphics will be rendered
     private GPanel demoPanel;
 
+    //Back buffers the frame is actively rendered into
+    private BufferStrategy bufferStrategy;
+
     /**
      * Constructor to set up the frame and its components.
      * Initializes the game panel, sets up the frame's size, title, and visibility.
@@ -32,26 +150,62 @@ public class GFrame extends JFrame {
     public GFrame() {
         //Create a new GPanel instance for rendering, passing screen dimensions
         demoPanel = new GPanel(SCREEN_WIDTH, SCREEN_HEIGHT);
-        
+
         //Set the size and position of the panel to fit the frame
         demoPanel.setBounds(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
-        
+
         //Add the panel to the frame
         add(demoPanel);
 
         //Set up frame properties
         setTitle("Turquoise Graphics Engine Demo");  //Title of the window
         setSize(SCREEN_WIDTH, SCREEN_HEIGHT);        //Set the size of the window
+        setIgnoreRepaint(true);                      //The game loop renders actively, Swing repaints are not needed
         setVisible(true);                            //Make the window visible
         setDefaultCloseOperation(EXIT_ON_CLOSE);     //Ensure the program exits when the window is closed
+
+        //The buffer strategy can only be created once the frame is displayable
+        createBufferStrategy(2);
+        bufferStrategy = getBufferStrategy();
     }
 
     /**
-     * Method to refresh the frame's content by repainting it.
-     * This method is called in each iteration of the game loop.
+     * Advances the game by one fixed simulation step.
+     * This method is called by the game loop as many times as the elapsed time requires.
+     *
+     * @param step The length of the simulation step in seconds.
      */
-    public void update() {
-        //Repaint the frame, which internally calls the paintComponent() method of the panel
-        repaint();
+    public void update(double step) {
+        demoPanel.update(step);
+    }
+
+    /**
+     * Renders a frame into the back buffer and shows it.
+     * This method is called once per iteration of the game loop.
+     *
+     * @param alpha How far between the last two simulation steps the frame lies (0 to 1).
+     */
+    public void render(double alpha) {
+        //Render the frame once; a lost back buffer only needs the finished frame drawn into it again
+        demoPanel.render(alpha);
+        do {
+            do {
+                Graphics g = bufferStrategy.getDrawGraphics();
+                try {
+                    //The buffer covers the whole window, so move the origin to where the panel sits
+                    Point origin = SwingUtilities.convertPoint(demoPanel, 0, 0, this);
+                    g.translate(origin.x, origin.y);
+                    demoPanel.present(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (bufferStrategy.contentsRestored()); //Redraw if the buffer was restored while drawing
+
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost()); //Redraw if the buffer was lost before it could be shown
+
+        //Flush the window system's queue so frames are displayed as soon as they are shown
+        Toolkit.getDefaultToolkit().sync();
+        demoPanel.endFrame();
     }
 }
@@ -1,12 +1,32 @@
+import javax.swing.AbstractAction;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
 
+import capture.FrameCapture;
+import capture.SharedMemoryFrameTarget;
+import core.FrameBuffer;
+import core.OcclusionCuller;
 import core.RenderObject;
+import core.RenderScaleController;
 import core.Scene;
+import events.InputRecording;
 import events.LinearCameraEvent;
+import materials.Texture;
 
 import objects.*;
 
+import profiling.FrameProfileSnapshot;
+import profiling.FrameProfiler;
+import profiling.FrameStage;
+
+import remote.FrameServer;
+
 import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.awt.Color;
@@ -24,8 +44,29 @@ public class GPanel extends JPanel{
 
     //Scene containing objects to be rendered
     private Scene scene;
-    //Outline color for all objects (drawn with Swing)
-    private Color outline = Color.BLACK;
+    //Outline color for all objects (packed RGB)
+    private int outline = Color.BLACK.getRGB();
+
+    //Image the frame is rasterized into, and the frame buffer drawing straight into its pixel array
+    private BufferedImage frameImage;
+    private FrameBuffer frameBuffer;
+
+    //Chooses the render resolution from the frame time (toggled with F4)
+    private static final long DEFAULT_FRAME_BUDGET_NANOS = 1000000000L / 60;
+    private RenderScaleController renderScale = new RenderScaleController(DEFAULT_FRAME_BUDGET_NANOS);
+    //Images and frame buffers of every render scale level, created when the level is first used
+    private BufferedImage[] scaledImages = new BufferedImage[renderScale.getLevelCount()];
+    private FrameBuffer[] scaledFrameBuffers = new FrameBuffer[renderScale.getLevelCount()];
+
+    //Width in cells of the occlusion culler's depth buffer (the height follows the aspect ratio)
+    private static final int OCCLUSION_BUFFER_WIDTH = 128;
+
+    //Records the drawn frames in the background (null when not capturing)
+    private FrameCapture capture;
+    //Streams the drawn frames to remote viewers (null when not serving)
+    private FrameServer frameServer;
+    //Shares the drawn frames with other processes through a mapped file (null when not sharing)
+    private SharedMemoryFrameTarget sharedMemoryTarget;
 
     //Font used for rendering text
     private Font font = new Font( "SansSerif", Font.PLAIN, 23 );
@@ -33,6 +74,14 @@ public class GPanel extends JPanel{
     //Game instance to handle game logic
     private Game game;
 
+    //Profiler timing the render stages, and the overlay that shows its statistics (toggled with F3)
+    private FrameProfiler profiler = new FrameProfiler();
+    private boolean showProfilerOverlay = false;
+    private String[] overlayLines = new String[0]; //Text currently shown by the overlay
+    private long lastOverlayUpdate; //System.nanoTime() of the last overlay refresh
+    private long frameStart; //System.nanoTime() at the start of the frame being rendered
+    private static final long OVERLAY_REFRESH_NANOS = 500000000L; //Refresh the overlay twice per second
+
     /**
      * Constructor to initialize the game panel with given dimensions.
      * Initializes the scene and sets up the game for rendering.
@@ -42,106 +91,304 @@ public class GPanel extends JPanel{
     public GPanel(int w, int h) {  
         SCREEN_WIDTH = w;
         SCREEN_HEIGHT = h;
+
+        //Start at full resolution
+        selectRenderScale();
+
         //Initializes an empty scene with no renderable objects
         scene = new Scene(new ArrayList<RenderObject> (Arrays.asList()));
+
+        //Skips objects hidden behind occluders, with a depth buffer covering the projected window drawn on screen
+        float halfWidth = 2f * w / Math.max(w, h);
+        float halfHeight = 2f * h / Math.max(w, h);
+        scene.setOcclusionCuller(new OcclusionCuller(OCCLUSION_BUFFER_WIDTH, Math.max(1, OCCLUSION_BUFFER_WIDTH * h / w),
+                -halfWidth, -halfHeight, halfWidth, halfHeight));
         
         //Initializes the game logic with the current scene and this GPanel instance
         game = new Game(scene, this);
+
+        //Times the stages of every frame
+        scene.setProfiler(profiler);
+
+        //F3 toggles the profiler overlay and F4 dynamic resolution scaling. The actions run on the Swing event
+        //thread, so like Game's movement keys they submit the toggle to the scene's command queue, and the
+        //render thread applies it between frames
+        getInputMap().put(KeyStroke.getKeyStroke("F3"), "toggleProfilerOverlay");
+        getActionMap().put("toggleProfilerOverlay", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                scene.submit(target -> showProfilerOverlay = !showProfilerOverlay);
+            }
+        });
+        getInputMap().put(KeyStroke.getKeyStroke("F4"), "toggleRenderScale");
+        getActionMap().put("toggleRenderScale", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                scene.submit(target -> {
+                    if (capture == null && frameServer == null && sharedMemoryTarget == null) {
+                        renderScale.setEnabled(!renderScale.isEnabled());
+                    }
+                });
+            }
+        });
+
+        //Frames are drawn actively by the game loop, so Swing should not repaint the panel itself
+        setIgnoreRepaint(true);
     }
 
     /**
-     * Called every "frame" by the GFrame class when it refreshes and repaints.
-     * It handles updating the game state and rendering the new scene.
-     * @param g The Graphics object used for drawing.
+     * Advances the game state by one fixed simulation step.
+     * Called by the game loop, possibly several times per rendered frame.
+     * @param step The length of the simulation step in seconds.
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        //Fills background with black
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+    public void update(double step) {
+        game.tick(step);
+    }
 
-        //Updates the game state (e.g., physics, logic)
-        game.tick();
+    /**
+     * Renders a frame of the scene into the frame image, which present() then draws.
+     * Called by the game loop once per frame, followed by present() and endFrame(). Everything with side
+     * effects (the scene's commands and animations, capturing, serving and sharing the frame) happens here,
+     * so presenting the frame again, e.g. after the back buffer was lost, repeats none of it.
+     * @param alpha How far between the last two simulation steps the frame lies (0 to 1).
+     */
+    public void render(double alpha) {
+        frameStart = System.nanoTime();
+        profiler.beginFrame();
+
+        //Render at the resolution chosen from the previous frames
+        selectRenderScale();
+
+        //Moves the camera to the interpolated player state for this frame
+        game.interpolate(alpha);
         
-        //Renders the updated scene to the screen
-        drawSceneToScreen(g);
+        //Renders the updated scene into the frame buffer
+        drawScene();
+
+        //Refreshes the profiler statistics shown on top of the scene
+        if (showProfilerOverlay) {
+            updateProfilerOverlay();
+        }
     }
 
     /**
-     * Performs all projection calculations and draws the scene to the screen.
-     * Projects 3D objects to 2D and displays the rendered triangles.
+     * Draws the frame rendered by render() with the given Graphics object.
+     * Called by the game loop with the graphics of the frame's back buffer, again if the buffer was lost.
      * @param g The Graphics object used for drawing.
      */
-    private void drawSceneToScreen(Graphics g) {
-        //Set the font for rendering text
-        g.setFont(font);
-        
+    public void present(Graphics g) {
+        //Present the frame, upscaled to the panel size if it was rendered at a lower resolution
+        g.drawImage(frameImage, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT, null);
+
+        //Draws the profiler statistics on top of the scene
+        if (showProfilerOverlay) {
+            drawProfilerOverlay(g);
+        }
+    }
+
+    /**
+     * Ends the frame once it has been presented, timing it as a whole.
+     */
+    public void endFrame() {
+        profiler.endFrame();
+
+        //Adjust the render resolution for the next frame if this one was too slow or fast
+        renderScale.recordFrameTime(System.nanoTime() - frameStart);
+    }
+
+    /**
+     * Switches the frame buffer to the resolution of the current render scale level.
+     * Called at the start of every frame, so the resolution never changes halfway through one.
+     * The image's DataBufferInt array is shared with the frame buffer, so rasterized pixels need no copying.
+     */
+    private void selectRenderScale() {
+        int level = renderScale.getLevel();
+        if (scaledImages[level] == null) {
+            int width = renderScale.scaledSize(SCREEN_WIDTH);
+            int height = renderScale.scaledSize(SCREEN_HEIGHT);
+            scaledImages[level] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) scaledImages[level].getRaster().getDataBuffer()).getData();
+            scaledFrameBuffers[level] = new FrameBuffer(width, height, pixels);
+        }
+        frameImage = scaledImages[level];
+        frameBuffer = scaledFrameBuffers[level];
+    }
+
+    /**
+     * Sets the render time a frame should stay within. The render resolution is lowered
+     * when frames take longer and raised again when they are comfortably faster.
+     * @param budgetNanos The frame time budget in nanoseconds.
+     */
+    public void setFrameTimeBudget(long budgetNanos) {
+        renderScale.setBudgetNanos(budgetNanos);
+    }
+
+    /**
+     * Streams a chunked world around the player, see Game.streamWorld().
+     * @param worldDirectory The world directory.
+     * @throws IOException if the world index cannot be read.
+     */
+    public void streamWorld(Path worldDirectory) throws IOException {
+        game.streamWorld(worldDirectory);
+    }
+
+    /**
+     * Records the player's input and position every simulation step, see Game.setRecording().
+     * @param recording The recording to append the steps to, or null to stop recording.
+     */
+    public void setRecording(InputRecording recording) {
+        game.setRecording(recording);
+    }
+
+    /**
+     * Records every drawn frame from now on. A recording needs frames of one size, so the render resolution
+     * is fixed at the panel size while capturing and F4 is ignored.
+     * @param capture The capture, whose size must be the panel's, or null to stop capturing.
+     */
+    public void setCapture(FrameCapture capture) {
+        if (capture != null && (capture.getWidth() != SCREEN_WIDTH || capture.getHeight() != SCREEN_HEIGHT)) {
+            throw new IllegalArgumentException("Capture size " + capture.getWidth() + "x" + capture.getHeight()
+                    + " does not match the panel size " + SCREEN_WIDTH + "x" + SCREEN_HEIGHT);
+        }
+        if (capture != null) {
+            renderScale.setEnabled(false);
+        }
+        this.capture = capture;
+    }
+
+    /**
+     * Streams every drawn frame to the server's viewers from now on. Like capturing, this fixes the render
+     * resolution at the panel size and F4 is ignored.
+     * @param frameServer The server, whose frame size must be the panel's, or null to stop serving.
+     */
+    public void setFrameServer(FrameServer frameServer) {
+        if (frameServer != null && (frameServer.getWidth() != SCREEN_WIDTH || frameServer.getHeight() != SCREEN_HEIGHT)) {
+            throw new IllegalArgumentException("Server frame size " + frameServer.getWidth() + "x" + frameServer.getHeight()
+                    + " does not match the panel size " + SCREEN_WIDTH + "x" + SCREEN_HEIGHT);
+        }
+        if (frameServer != null) {
+            renderScale.setEnabled(false);
+        }
+        this.frameServer = frameServer;
+    }
+
+    /**
+     * Shares every drawn frame with other processes through the target's mapped file from now on.
+     * Like capturing, this fixes the render resolution at the panel size and F4 is ignored.
+     * @param sharedMemoryTarget The target, whose frame size must be the panel's, or null to stop sharing.
+     */
+    public void setSharedMemoryTarget(SharedMemoryFrameTarget sharedMemoryTarget) {
+        if (sharedMemoryTarget != null && (sharedMemoryTarget.getWidth() != SCREEN_WIDTH || sharedMemoryTarget.getHeight() != SCREEN_HEIGHT)) {
+            throw new IllegalArgumentException("Shared frame size " + sharedMemoryTarget.getWidth() + "x" + sharedMemoryTarget.getHeight()
+                    + " does not match the panel size " + SCREEN_WIDTH + "x" + SCREEN_HEIGHT);
+        }
+        if (sharedMemoryTarget != null) {
+            renderScale.setEnabled(false);
+        }
+        this.sharedMemoryTarget = sharedMemoryTarget;
+    }
+
+    /**
+     * Performs all projection calculations and draws the scene into the frame buffer.
+     * Projects 3D objects to 2D, rasterizes the triangles into the frame buffer and hands the
+     * finished frame to the capture, server and shared memory target.
+     */
+    private void drawScene() {
         //Renders the scene with the current camera view and objects' state
         scene.renderScene(); 
         
         //Get the triangles, colors, and names of objects to display
+        //(the colours are the packed form of scene.getColours(), which avoids creating Color objects)
         Triangle2D[] trianglesToDisplay = scene.getRenderedTriangles();
-        Color[] colours = scene.getColours();
+        int[] colours = scene.getRGBColours();
         String[] names = scene.getNames();
+        Texture[] textures = scene.getTextures();
 
-        //Loop through each triangle and draw it on the screen
+        //Loop through each triangle and rasterize it into the frame buffer
+        long drawStart = profiler.start();
+        frameBuffer.clear(Color.BLACK.getRGB());
         for (int index = 0; index < scene.getCount(); index++) {
             if (trianglesToDisplay[index] != null) {
-                //Draw the outline of the triangle
-                outlineTriangle(trianglesToDisplay[index], outline, g);
-                //Fill the triangle with the appropriate color
-                fillTriangle(trianglesToDisplay[index], colours[index], g);
+                drawTriangle(trianglesToDisplay[index], colours[index], textures[index], index);
             }
         }
+
+        //Hand a copy of the frame to the capture's encoder thread
+        if (capture != null) {
+            capture.capture(frameBuffer);
+        }
+        if (frameServer != null) {
+            frameServer.publish(frameBuffer);
+        }
+        if (sharedMemoryTarget != null) {
+            sharedMemoryTarget.write(frameBuffer);
+        }
+
+        profiler.record(FrameStage.DRAW, drawStart);
     }
 
     /**
-     * Draws an outline of the given Triangle2D, scaled to the screen size.
-     * @param triangle2d The triangle to outline.
-     * @param colour The color of the outline.
-     * @param g The Graphics object used for drawing.
+     * Draws the outline of the given Triangle2D and fills it with the specified color,
+     * or with its texture lit by that color, scaled to the screen size.
+     * @param triangle2d The triangle to draw.
+     * @param colour The fill color (packed RGB).
+     * @param texture The triangle's texture, or null.
+     * @param index The triangle's position in the scene's rendered triangles.
      */
-    private void outlineTriangle(Triangle2D triangle2d, Color colour, Graphics g) {
-        //Get the x and y coordinates of the triangle vertices
-        float[] xPoints = triangle2d.xValues();
-        float[] yPoints = triangle2d.yValues();
+    private void drawTriangle(Triangle2D triangle2d, int colour, Texture texture, int index) {
+        //Scale the vertices to screen coordinates
+        float x1 = valFromOneToScreen(triangle2d.v1.x, false);
+        float y1 = valFromOneToScreen(triangle2d.v1.y, true);
+        float x2 = valFromOneToScreen(triangle2d.v2.x, false);
+        float y2 = valFromOneToScreen(triangle2d.v2.y, true);
+        float x3 = valFromOneToScreen(triangle2d.v3.x, false);
+        float y3 = valFromOneToScreen(triangle2d.v3.y, true);
 
-        //Set the outline color and draw the triangle
-        g.setColor(colour);
-        g.drawPolygon(fitAxisToScreen(xPoints, false), fitAxisToScreen(yPoints, true), 3);
+        //Draw the outline first and fill over it, so only the edges shared with other triangles stay visible
+        frameBuffer.outlineTriangle(x1, y1, x2, y2, x3, y3, outline);
+        if (texture != null) {
+            frameBuffer.fillTexturedTriangle(x1, y1, x2, y2, x3, y3, texture, scene.getTextureCoordinates(), index * 9, colour);
+        } else {
+            frameBuffer.fillTriangle(x1, y1, x2, y2, x3, y3, colour);
+        }
     }
 
     /**
-     * Fills the given Triangle2D with the specified color, scaled to the screen size.
-     * @param triangle2d The triangle to fill.
-     * @param colour The fill color.
-     * @param g The Graphics object used for drawing.
+     * Refreshes the text of the profiler overlay twice per second from a profiler snapshot, after which
+     * the profiler is reset so the overlay always shows the most recent half second.
      */
-    private void fillTriangle(Triangle2D triangle2d, Color colour, Graphics g) {
-        //Get the x and y coordinates of the triangle vertices
-        float[] xPoints = triangle2d.xValues();
-        float[] yPoints = triangle2d.yValues();
+    private void updateProfilerOverlay() {
+        long now = System.nanoTime();
+        if (now - lastOverlayUpdate > OVERLAY_REFRESH_NANOS) {
+            FrameProfileSnapshot snapshot = profiler.snapshot();
+            profiler.reset();
+            lastOverlayUpdate = now;
 
-        //Set the fill color and draw the triangle
-        g.setColor(colour);
-        g.fillPolygon(fitAxisToScreen(xPoints, false), fitAxisToScreen(yPoints, true), 3);
+            FrameStage[] stages = FrameStage.values();
+            overlayLines = new String[stages.length + 2];
+            overlayLines[0] = String.format("%.1f fps  %d / %d / %d tris", snapshot.getFramesPerSecond(),
+                    snapshot.getSubmitted(), snapshot.getCulled(), snapshot.getDrawn());
+            overlayLines[1] = String.format("render scale %.0f%% (%dx%d)%s", renderScale.getScale() * 100,
+                    frameBuffer.getWidth(), frameBuffer.getHeight(), renderScale.isEnabled() ? "" : " fixed");
+            for (int i = 0; i < stages.length; i++) {
+                overlayLines[i + 2] = String.format("%s %.2f ms (p99 %.2f)", stages[i].getLabel(),
+                        snapshot.getMean(stages[i]) / 1e6, snapshot.getP99(stages[i]) / 1e6);
+            }
+        }
     }
 
     /**
-     * Scales the given array of axis values to fit within the screen dimensions.
-     * Converts the 3D coordinates to 2D screen coordinates.
-     * @param axisVal The array of values to scale.
-     * @param vertical True if scaling for the vertical axis, false for horizontal.
-     * @return An array of screen coordinates.
+     * Draws the profiler statistics in the top left corner of the screen.
+     * @param g The Graphics object used for drawing.
      */
-    private int[] fitAxisToScreen(float[] axisVal, boolean vertical) {
-        //Create an array for the scaled axis values
-        int[] fittedAxisVal = new int[3];
-        for (int i = 0; i < 3; i++) {
-            //Scale each value to fit the screen
-            fittedAxisVal[i] = valFromOneToScreen(axisVal[i], vertical);
+    private void drawProfilerOverlay(Graphics g) {
+        //Draw the lines of text on a dark background so they stay readable over the scene
+        g.setFont(font);
+        int lineHeight = g.getFontMetrics().getHeight();
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(0, 0, SCREEN_WIDTH / 2, lineHeight * overlayLines.length + lineHeight / 2);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < overlayLines.length; i++) {
+            g.drawString(overlayLines[i], 8, lineHeight * (i + 1));
         }
-        return fittedAxisVal;
     }
 
     /**
@@ -150,15 +397,28 @@ public class GPanel extends JPanel{
      * @param vertical True if scaling for the vertical axis, false for horizontal.
      * @return The corresponding screen coordinate.
      */
-    private int valFromOneToScreen(float value, boolean vertical) {
+    private float valFromOneToScreen(float value, boolean vertical) {
+        //Scale to the resolution currently rendered at, which may be below the panel size
+        int width = frameBuffer.getWidth();
+        int height = frameBuffer.getHeight();
+
         //Get the larger dimension (width or height) for scaling
-        int bigAxis = Math.max(SCREEN_WIDTH, SCREEN_HEIGHT);
+        int bigAxis = Math.max(width, height);
 
         //If scaling vertically, apply verticalGraphicsRatio, else use graphicsRatio
         if (vertical) {
-            return (int) ((value / 2) * verticalGraphicsRatio * bigAxis + (SCREEN_HEIGHT / 2));
+            return (value / 2) * verticalGraphicsRatio * bigAxis + (height / 2f);
         } else {
-            return (int) ((value / 2) * graphicsRatio * bigAxis + (SCREEN_WIDTH / 2));
+            return (value / 2) * graphicsRatio * bigAxis + (width / 2f);
         }
     }
+
+    /**
+     * Returns the frame buffer the scene is rasterized into.
+     * Its pixels hold the last presented frame, ready to be captured.
+     * @return The frame buffer.
+     */
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
 }
@@ -1,6 +1,12 @@
+import collision.SpatialHash;
 import colours.InverseSqrShadow;
+import core.BspTree;
 import core.RenderObject;
 import core.Scene;
+import events.InputRecording;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
@@ -13,6 +19,7 @@ import javax.swing.JPanel;
 import javax.swing.KeyStroke;
 import objects.Vertex;
 import objects.Vertex2D;
+import streaming.ChunkStreamer;
 
 public class Game {
     //Game objects
@@ -21,10 +28,14 @@ public class Game {
 
     private RenderObject enemy; //The enemy object in the scene
     private RenderObject plane; //The plane object in the scene
+    private ChunkStreamer worldStreamer; //Streams a chunked world around the player (null if none)
+    private SpatialHash collisions; //Triangles the player collides with and stands on
 
     //Player position and rotation vectors
     private Vertex playerPosition = new Vertex(0, 2, -10); //Initial position of the player
     private Vertex playerRotation = new Vertex(0, 0, 0); //Initial rotation of the player
+    private Vertex previousPosition = new Vertex(0, 2, -10); //Player position at the previous simulation step
+    private Vertex renderPosition = new Vertex(0, 2, -10); //Interpolated position handed to the camera
     
     //Movement and mouse-related variables
     private Vertex moveDir = new Vertex(0, 0, 0); //Direction of movement
@@ -33,8 +44,17 @@ public class Game {
     //Game physics and controls
     private float moveSpeed = 8.0f; //Speed of movement
     private float rotationSpeed = 80.0f; //Speed of rotation
-    private double lastFrameTime; //Tracks the time of the last frame
-    private double timeSinceLast; //Time elapsed since the last frame
+
+    //The player's body is a sphere below the camera, which is kept out of the collision geometry
+    private static final float COLLISION_CELL_SIZE = 1.0f; //Edge length of the spatial hash's cells
+    private static final float BODY_RADIUS = 0.75f; //Radius of the player's body
+    private static final float BODY_DROP = 1.0f; //Distance of the body's centre below the camera
+    private static final float GROUND_REACH = 3.0f; //How far below the camera there must be ground to walk on
+    private Vertex body = new Vertex(0, 0, 0); //Centre of the body at the position being moved to
+
+    //Recording of every simulation step (null when not recording), and whether the input comes from a recording
+    private InputRecording recording;
+    private boolean replaying = false;
 
     //Booleans to track which movement keys are pressed
     private boolean isWDown = false;
@@ -60,7 +80,6 @@ public class Game {
     public Game(Scene scene, GPanel panel) {
         this.scene = scene;
         this.panel = panel;
-        this.lastFrameTime = System.nanoTime(); //Set initial frame time
         
         //Hide cursor and replace with a blank 3x3 image
         panel.setCursor(panel.getToolkit().createCustomCursor(
@@ -73,6 +92,16 @@ public class Game {
         setMouseListener();
     }
 
+    /**
+     * Constructor to initialize the game without a Swing panel, e.g. for rendering to the terminal.
+     * No input listeners are attached, so the player stays where it starts.
+     * @param scene The scene where objects will be rendered.
+     */
+    public Game(Scene scene) {
+        this.scene = scene;
+        setupScene();
+    }
+
     /**
      * Sets up the game scene by loading objects and adding them to the scene.
      */
@@ -85,109 +114,219 @@ public class Game {
         float planeScale = 3;
         plane.setScale(new Vertex(planeScale, planeScale, planeScale));
 
-        //Add the objects to the scene
+        //Add the objects to the scene, the plane never moves so it is drawn in the order of a BSP tree instead of being sorted
         scene.addObject(enemy);
-        scene.addObject(plane);
+        scene.setStaticTree(BspTree.build(Arrays.asList(plane)));
+
+        //The player walks on the plane and cannot walk through the enemy
+        collisions = new SpatialHash(COLLISION_CELL_SIZE);
+        collisions.add(enemy);
+        collisions.add(plane);
+
+        //The ground plane hides whatever lies below it
+        if (scene.getOcclusionCuller() != null) {
+            scene.getOcclusionCuller().addOccluder(plane);
+        }
 
         //Define actions for key inputs (WASD)
         defineAction();
     }
 
+    /**
+     * Streams a chunked world, built with streaming.WorldBuilder, around the player from now on.
+     * Chunks are loaded in the background as the player moves and evicted again when memory runs short.
+     * @param worldDirectory The world directory.
+     * @throws IOException if the world index cannot be read.
+     */
+    public void streamWorld(Path worldDirectory) throws IOException {
+        if (worldStreamer != null) {
+            worldStreamer.close();
+        }
+        worldStreamer = new ChunkStreamer(scene, worldDirectory, new InverseSqrShadow(new Color(64, 224, 208), scene));
+    }
+
     /**
      * Defines actions for each movement key (WASD) for moving the player.
+     * The actions run on the Swing event thread, so they submit their changes to the scene's command queue
+     * and the movement direction is only ever changed on the render thread, between frames.
      */
     public void defineAction() {
         //Action for pressing 'W'
         wDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isWDown) { //If 'W' is not already pressed
-                    moveDir.z += 1; //Move forward
-                    isWDown = true;
-                }
+                scene.submit(target -> {
+                    if (!isWDown) { //If 'W' is not already pressed
+                        moveDir.z += 1; //Move forward
+                        isWDown = true;
+                    }
+                });
             } };
     
         //Action for releasing 'W'
         wUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isWDown) { //If 'W' is pressed
-                    moveDir.z -= 1; //Stop moving forward
-                    isWDown = false;
-                }
+                scene.submit(target -> {
+                    if (isWDown) { //If 'W' is pressed
+                        moveDir.z -= 1; //Stop moving forward
+                        isWDown = false;
+                    }
+                });
             } };
     
         //Action for pressing 'A' (Move left)
         aDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isADown) { //If 'A' is not already pressed
-                    moveDir.x -= 1; //Move left
-                    isADown = true;
-                }
+                scene.submit(target -> {
+                    if (!isADown) { //If 'A' is not already pressed
+                        moveDir.x -= 1; //Move left
+                        isADown = true;
+                    }
+                });
             } };
     
         //Action for releasing 'A' (Stop moving left)
         aUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isADown) { //If 'A' is pressed
-                    moveDir.x += 1; //Stop moving left
-                    isADown = false;
-                }
+                scene.submit(target -> {
+                    if (isADown) { //If 'A' is pressed
+                        moveDir.x += 1; //Stop moving left
+                        isADown = false;
+                    }
+                });
             } };
     
         //Action for pressing 'S' (Move backward)
         sDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isSDown) { //If 'S' is not already pressed
-                    moveDir.z -= 1; //Move backward
-                    isSDown = true;
-                }
+                scene.submit(target -> {
+                    if (!isSDown) { //If 'S' is not already pressed
+                        moveDir.z -= 1; //Move backward
+                        isSDown = true;
+                    }
+                });
             } };
     
         //Action for releasing 'S' (Stop moving backward)
         sUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isSDown) { //If 'S' is pressed
-                    moveDir.z += 1; //Stop moving backward
-                    isSDown = false;
-                }
+                scene.submit(target -> {
+                    if (isSDown) { //If 'S' is pressed
+                        moveDir.z += 1; //Stop moving backward
+                        isSDown = false;
+                    }
+                });
             } };
     
         //Action for pressing 'D' (Move right)
         dDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isDDown) { //If 'D' is not already pressed
-                    moveDir.x += 1; //Move right
-                    isDDown = true;
-                }
+                scene.submit(target -> {
+                    if (!isDDown) { //If 'D' is not already pressed
+                        moveDir.x += 1; //Move right
+                        isDDown = true;
+                    }
+                });
             } };
     
         //Action for releasing 'D' (Stop moving right)
         dUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isDDown) { //If 'D' is pressed
-                    moveDir.x -= 1; //Stop moving right
-                    isDDown = false;
-                }
+                scene.submit(target -> {
+                    if (isDDown) { //If 'D' is pressed
+                        moveDir.x -= 1; //Stop moving right
+                        isDDown = false;
+                    }
+                });
             } };
     }
 
     /**
-     * Updates the game state every frame.
-     * Calculates the time elapsed since the last frame and updates the player's position and rotation.
+     * Advances the game state by one fixed simulation step.
+     * The step length is constant, so movement is independent of the render rate.
+     * @param step The length of the simulation step in seconds.
      */
-    public void tick() {
-        //Calculate time elapsed since the last frame
-        timeSinceLast = ( (double) System.nanoTime() - lastFrameTime)/ (1000000000.0);
+    public void tick(double step) {
+        //Remember where the player was so rendering can interpolate between the two steps
+        previousPosition.x = playerPosition.x;
+        previousPosition.y = playerPosition.y;
+        previousPosition.z = playerPosition.z;
 
-        //Update player's rotation and position based on input
-        setRotation();
-        setPosition();
+        //Update player's position based on input
+        setPosition(step);
+
+        if (recording != null) {
+            recording.append(getKeyMask(), playerRotation.x, playerRotation.y, playerPosition.x, playerPosition.y, playerPosition.z);
+        }
+    }
+
+    /**
+     * Advances the game state by one simulation step of a recording, with the keys and rotation of the step
+     * instead of the live input. From the first replayed step on, the mouse no longer rotates the camera.
+     * @param recording The recording.
+     * @param index The step to replay; the steps should be replayed in order from the first.
+     * @param step The length of the simulation step in seconds.
+     * @return How far the replayed position lies from the recorded one, 0 when the replay is exact.
+     */
+    public float replayTick(InputRecording recording, int index, double step) {
+        replaying = true;
+        int keys = recording.getKeys(index);
+        isWDown = (keys & InputRecording.KEY_W) != 0;
+        isADown = (keys & InputRecording.KEY_A) != 0;
+        isSDown = (keys & InputRecording.KEY_S) != 0;
+        isDDown = (keys & InputRecording.KEY_D) != 0;
+        moveDir.x = (isDDown ? 1 : 0) - (isADown ? 1 : 0);
+        moveDir.z = (isWDown ? 1 : 0) - (isSDown ? 1 : 0);
+        playerRotation.x = recording.getPitch(index);
+        playerRotation.y = recording.getYaw(index);
+
+        tick(step);
+
+        float dx = playerPosition.x - recording.getX(index);
+        float dy = playerPosition.y - recording.getY(index);
+        float dz = playerPosition.z - recording.getZ(index);
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Records every simulation step from now on, see replayTick().
+     * @param recording The recording to append the steps to, or null to stop recording.
+     */
+    public void setRecording(InputRecording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Packs the movement keys currently held into a key mask of InputRecording.
+     * @return The key mask.
+     */
+    private int getKeyMask() {
+        return (isWDown ? InputRecording.KEY_W : 0) | (isADown ? InputRecording.KEY_A : 0)
+                | (isSDown ? InputRecording.KEY_S : 0) | (isDDown ? InputRecording.KEY_D : 0);
+    }
+
+    /**
+     * Updates the camera for the frame about to be rendered.
+     * The position is interpolated between the last two simulation steps, while the rotation
+     * follows the mouse directly so looking around stays responsive (or stays as replayed, see replayTick()).
+     * @param alpha How far between the previous and current simulation step the frame lies (0 to 1).
+     */
+    public void interpolate(double alpha) {
+        if (!replaying) {
+            setRotation();
+        }
+
+        renderPosition.x = (float) (previousPosition.x + (playerPosition.x - previousPosition.x) * alpha);
+        renderPosition.y = (float) (previousPosition.y + (playerPosition.y - previousPosition.y) * alpha);
+        renderPosition.z = (float) (previousPosition.z + (playerPosition.z - previousPosition.z) * alpha);
 
         //Update the camera position and rotation based on the player's position and rotation
         scene.setCamRot(playerRotation);
-        scene.setCamPos(playerPosition);
+        scene.setCamPos(renderPosition);
 
-        //Update the last frame time
-        lastFrameTime = System.nanoTime();
+        //Request the world chunks around the new camera position
+        if (worldStreamer != null) {
+            worldStreamer.update();
+        }
     }
 
     /**
@@ -209,8 +348,9 @@ public class Game {
 
     /**
      * Updates the player's position based on the current movement direction and speed.
+     * @param step The length of the simulation step in seconds.
      */
-    private void setPosition() {
+    private void setPosition(double step) {
         //Calculate the magnitude (length) of the movement direction vector
         float moveDirMagnitude = moveDir.magnitude();
         Vertex moveDirNormalized = null;
@@ -226,9 +366,22 @@ public class Game {
         Vertex playerRotationY = new Vertex(0, playerRotation.y, 0);
         Vertex moveDirNormalRotated = Vertex.rotate(moveDirNormalized, playerRotationY);
 
-        //Update player position based on movement direction and speed
-        playerPosition.x += moveDirNormalRotated.x * moveSpeed * timeSinceLast;
-        playerPosition.z += moveDirNormalRotated.z * moveSpeed * timeSinceLast;
+        //Move the body to the new position and push it out of anything it walked into
+        body.x = (float) (playerPosition.x + moveDirNormalRotated.x * moveSpeed * step);
+        body.y = playerPosition.y - BODY_DROP;
+        body.z = (float) (playerPosition.z + moveDirNormalRotated.z * moveSpeed * step);
+        collisions.resolveSphere(body, BODY_RADIUS);
+        if (collisions.intersectsSphere(body, BODY_RADIUS)) {
+            return; //Wedged between triangles that push it back and forth, so stay where the player was
+        }
+
+        //Only walk where there is ground below, so the player cannot walk off the plane (the height stays as it is).
+        //A streamed world's chunks are not in the spatial hash, so there the player may walk anywhere
+        body.y = playerPosition.y;
+        if (worldStreamer != null || collisions.raycast(body, 0, -1, 0, GROUND_REACH) < Float.POSITIVE_INFINITY) {
+            playerPosition.x = body.x;
+            playerPosition.z = body.z;
+        }
     }
 
     /**
@@ -254,9 +407,10 @@ public class Game {
      * @param mouseEvent The mouse event containing the current mouse position.
      */
     private void mouseListener(MouseEvent mouseEvent) {
-        //Store normalized mouse position, centered at (0, 0)
-        mousePosition = new Vertex2D(mouseEvent.getX() / ((float) panel.getWidth()) - 0.5f,
-                                     mouseEvent.getY() / ((float) panel.getHeight()) - 0.5f);
+        //Normalize the mouse position, centered at (0, 0), and store it on the render thread
+        Vertex2D position = new Vertex2D(mouseEvent.getX() / ((float) panel.getWidth()) - 0.5f,
+                                         mouseEvent.getY() / ((float) panel.getHeight()) - 0.5f);
+        scene.submit(target -> mousePosition = position);
     }
 
     /**
@@ -0,0 +1,189 @@
+import capture.FrameCapture;
+import capture.FrameEncoder;
+import capture.OverflowPolicy;
+import core.FrameBuffer;
+import core.OcclusionCuller;
+import core.RenderObject;
+import core.Scene;
+import events.InputRecording;
+import events.ManualClock;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import materials.Texture;
+import objects.Triangle2D;
+import profiling.FrameProfileSnapshot;
+import profiling.FrameProfiler;
+import profiling.FrameStage;
+
+public class Replay {
+
+    /**
+     * Main method to replay a recording made with GFrame's "--record" option and report the frame times.
+     * The demo scene is rendered and rasterized without a window, one frame per recorded simulation step,
+     * as fast as possible and with the scene's clock advanced by exactly one step per frame, so two runs
+     * of the same recording render exactly the same frames.
+     *
+     * @param args The recording file, optionally "--warmup" followed by the number of runs to discard
+     *             before the measured one (1 by default), e.g. to let the JIT compile the render loop,
+     *             and optionally "--capture" followed by a .y4m or .rgb file or a directory of PNG files
+     *             to record the measured run's frames to.
+     * @throws IOException if the recording cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String recordingFile = null;
+        int warmupRuns = 1;
+        String captureFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmupRuns = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--capture") && i + 1 < args.length) {
+                captureFile = args[++i];
+            } else {
+                recordingFile = args[i];
+            }
+        }
+        if (recordingFile == null) {
+            System.out.println("Usage: java Replay recording [--warmup runs] [--capture file]");
+            return;
+        }
+
+        InputRecording recording = InputRecording.read(Paths.get(recordingFile));
+        for (int run = 0; run < warmupRuns; run++) {
+            new Replay(recording).run();
+        }
+        Replay replay = new Replay(recording);
+        if (captureFile != null) {
+            //Every frame is wanted, so the replay waits for the encoder rather than dropping frames
+            int framesPerSecond = (int) Math.round(1e9 / recording.getStepNanos());
+            FrameEncoder encoder = FrameEncoder.open(Paths.get(captureFile), SCREEN_WIDTH, SCREEN_HEIGHT, framesPerSecond);
+            replay.setCapture(new FrameCapture(encoder, CAPTURE_QUEUE_LENGTH, OverflowPolicy.BLOCK));
+        }
+        replay.run();
+        if (replay.capture != null) {
+            replay.capture.close();
+            System.out.println("Captured " + replay.capture.getEncodedCount() + " frames to " + captureFile);
+        }
+
+        System.out.println("Replayed " + recording.getStepCount() + " steps from " + recordingFile);
+        System.out.printf("Largest distance from the recorded path: %.6f%n", replay.getMaxDrift());
+        System.out.print(replay.getSnapshot());
+    }
+
+    //Size of the frames, that of the Swing demo's window
+    private static final int SCREEN_WIDTH = 960;
+    private static final int SCREEN_HEIGHT = 540;
+
+    //Width in cells of the occlusion culler's depth buffer, as in the Swing demo
+    private static final int OCCLUSION_BUFFER_WIDTH = 128;
+
+    //Graphics ratio of the Swing demo, which scales the projected triangles to the frame
+    private static final float GRAPHICS_RATIO = 0.5f;
+
+    //Frames that may wait for the encoder when capturing
+    private static final int CAPTURE_QUEUE_LENGTH = 8;
+
+    private final InputRecording recording;
+    private final Scene scene;
+    private final Game game;
+    private final ManualClock clock = new ManualClock();
+    private final FrameBuffer frameBuffer = new FrameBuffer(SCREEN_WIDTH, SCREEN_HEIGHT);
+    private final FrameProfiler profiler = new FrameProfiler();
+    private float maxDrift; //Largest distance between a replayed and a recorded position
+    private FrameCapture capture; //Records the frames (null when not capturing)
+
+    /**
+     * Constructor to set up the demo scene for replaying a recording.
+     * @param recording The recording.
+     */
+    public Replay(InputRecording recording) {
+        this.recording = recording;
+
+        //The same scene as the Swing demo, driven by the deterministic clock
+        scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+        float halfWidth = 2f * SCREEN_WIDTH / Math.max(SCREEN_WIDTH, SCREEN_HEIGHT);
+        float halfHeight = 2f * SCREEN_HEIGHT / Math.max(SCREEN_WIDTH, SCREEN_HEIGHT);
+        scene.setOcclusionCuller(new OcclusionCuller(OCCLUSION_BUFFER_WIDTH, OCCLUSION_BUFFER_WIDTH * SCREEN_HEIGHT / SCREEN_WIDTH,
+                -halfWidth, -halfHeight, halfWidth, halfHeight));
+        scene.setClock(clock);
+        game = new Game(scene);
+        scene.setProfiler(profiler);
+    }
+
+    /**
+     * Renders one frame for every step of the recording.
+     */
+    public void run() {
+        double step = recording.getStepNanos() / 1e9;
+        for (int index = 0; index < recording.getStepCount(); index++) {
+            clock.advance(recording.getStepNanos());
+            maxDrift = Math.max(maxDrift, game.replayTick(recording, index, step));
+
+            profiler.beginFrame();
+            game.interpolate(1);
+            scene.renderScene();
+            drawScene();
+            profiler.endFrame();
+
+            //Outside the profiled frame, so waiting for the encoder does not count towards the frame times
+            if (capture != null) {
+                capture.capture(frameBuffer);
+            }
+        }
+    }
+
+    /**
+     * Records every frame rendered from now on.
+     * @param capture The capture, whose size must be that of the frames, or null to stop capturing.
+     */
+    public void setCapture(FrameCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Rasterizes the rendered triangles into the frame buffer, as the Swing demo does.
+     */
+    private void drawScene() {
+        Triangle2D[] triangles = scene.getRenderedTriangles();
+        int[] colours = scene.getRGBColours();
+        Texture[] textures = scene.getTextures();
+
+        long drawStart = profiler.start();
+        frameBuffer.clear(Color.BLACK.getRGB());
+        float scale = GRAPHICS_RATIO / 2 * Math.max(SCREEN_WIDTH, SCREEN_HEIGHT);
+        for (int index = 0; index < scene.getCount(); index++) {
+            Triangle2D t = triangles[index];
+            if (t == null) {
+                continue;
+            }
+            float x1 = t.v1.x * scale + SCREEN_WIDTH / 2f;
+            float y1 = -t.v1.y * scale + SCREEN_HEIGHT / 2f;
+            float x2 = t.v2.x * scale + SCREEN_WIDTH / 2f;
+            float y2 = -t.v2.y * scale + SCREEN_HEIGHT / 2f;
+            float x3 = t.v3.x * scale + SCREEN_WIDTH / 2f;
+            float y3 = -t.v3.y * scale + SCREEN_HEIGHT / 2f;
+            frameBuffer.outlineTriangle(x1, y1, x2, y2, x3, y3, Color.BLACK.getRGB());
+            if (textures[index] != null) {
+                frameBuffer.fillTexturedTriangle(x1, y1, x2, y2, x3, y3, textures[index], scene.getTextureCoordinates(), index * 9, colours[index]);
+            } else {
+                frameBuffer.fillTriangle(x1, y1, x2, y2, x3, y3, colours[index]);
+            }
+        }
+        profiler.record(FrameStage.DRAW, drawStart);
+    }
+
+    //Getters for the results of the replay
+    public FrameProfileSnapshot getSnapshot() {
+        return profiler.snapshot();
+    }
+
+    public float getMaxDrift() {
+        return maxDrift;
+    }
+
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+}
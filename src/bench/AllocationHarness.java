@@ -0,0 +1,204 @@
+package bench;
+
+import colours.ClusteredLightShader;
+import colours.InverseSqrShadow;
+import core.OcclusionCuller;
+import core.RenderObject;
+import core.Scene;
+import events.AnimationCurve;
+import events.ObjectEvent;
+import java.awt.Color;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import lights.LightClusters;
+import lights.PointLight;
+import objects.Vertex;
+import profiling.FrameProfileSnapshot;
+import profiling.FrameProfiler;
+import profiling.FrameStage;
+
+/**
+ * The AllocationHarness class checks that rendering a frame stays within its allocation budget.
+ * It builds the demo scene, renders warm-up frames until the JIT has settled, and then measures
+ * how many bytes the render thread allocates per frame in each stage, using the FrameProfiler's
+ * allocation tracking (com.sun.management.ThreadMXBean). The measured values are compared with the
+ * budgets in a properties file, and the process exits with status 1 if any budget is exceeded,
+ * so the check can gate a build or a CI job.
+ *
+ * The budget file maps stage names to bytes per frame, for example "sort=0". The stage names are
+ * the FrameStage names in lower case, plus "transform" for re-transforming a moving object.
+ *
+ * Usage: java -cp src bench.AllocationHarness [budgets.properties] [warmupFrames] [measuredFrames]
+ */
+public class AllocationHarness {
+
+    private static final String DEFAULT_BUDGETS = "src/bench/allocation-budgets.properties";
+    private static final int DEFAULT_WARMUP_FRAMES = 2000;
+    private static final int DEFAULT_MEASURED_FRAMES = 500;
+
+    //Name of the budget for re-transforming a moving object, which happens outside Scene.renderScene()
+    private static final String TRANSFORM_BUDGET = "transform";
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Scene scene;
+    private final RenderObject teapot;
+    private final FrameProfiler profiler = new FrameProfiler();
+
+    //Camera and object state that changes every frame
+    private final Vertex camPos = new Vertex(0, 2, -10);
+    private final Vertex camRotation = new Vertex(0, 0, 0);
+    private final Vertex teapotRotation = new Vertex(0, 0, 0);
+    private int frame;
+
+    private long transformBytes; //Bytes allocated while re-transforming the moving object
+
+    /**
+     * Runs the harness and exits with status 1 if a budget is exceeded.
+     *
+     * @param args Optional budget file, warm-up frame count and measured frame count.
+     * @throws IOException if the budget file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String budgetsPath = args.length > 0 ? args[0] : DEFAULT_BUDGETS;
+        int warmupFrames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WARMUP_FRAMES;
+        int measuredFrames = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MEASURED_FRAMES;
+
+        Properties budgets = new Properties();
+        try (InputStream in = new FileInputStream(budgetsPath)) {
+            budgets.load(in);
+        }
+
+        AllocationHarness harness = new AllocationHarness();
+        harness.run(warmupFrames, measuredFrames);
+        boolean withinBudget = harness.report(budgets, measuredFrames);
+        System.exit(withinBudget ? 0 : 1);
+    }
+
+    /**
+     * Constructor that builds the same scene as the Swing demo: the teapot standing on the plane, which is lit by point lights.
+     */
+    public AllocationHarness() {
+        scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+
+        //Light the plane with a ring of point lights, so the light assignment stage and the clustered shader do real work
+        LightClusters lights = new LightClusters(16, 9, 16, 1, 50, -2f, -1.125f, 2f, 1.125f);
+        for (int i = 0; i < 32; i++) {
+            double angle = i * Math.PI / 16;
+            lights.addLight(new PointLight(new Vertex((float) Math.cos(angle) * 6, 0.5f, (float) Math.sin(angle) * 6), Color.WHITE, 2, 3));
+        }
+        scene.setLights(lights);
+
+        teapot = RenderObject.loadObject("data/teapot.obj", "enemy", new InverseSqrShadow(new Color(255, 0, 0), scene), new Vertex(0, 0, 0));
+        RenderObject plane = RenderObject.loadObject("data/plane.obj", "plane", new ClusteredLightShader(new Color(255, 255, 255), lights), new Vertex(0, 0, 0));
+        plane.setScale(new Vertex(3, 3, 3));
+        scene.addObject(teapot);
+        scene.addObject(plane);
+
+        OcclusionCuller culler = new OcclusionCuller(128, 72, -2f, -1.125f, 2f, 1.125f);
+        culler.addOccluder(plane);
+        scene.setOcclusionCuller(culler);
+
+        scene.setCamPos(camPos);
+        scene.setCamRot(camRotation);
+        teapot.setRotation(teapotRotation);
+        scene.setProfiler(profiler);
+
+        //Keep an object animation running for the whole measurement, so the animation stage does real work
+        scene.addObjectEvent(new ObjectEvent(plane, ObjectEvent.Track.SCALE, new Vertex(4, 4, 4), 3600, AnimationCurve.EASE_IN_OUT));
+    }
+
+    /**
+     * Renders the warm-up frames, then resets the statistics and renders the measured frames.
+     *
+     * @param warmupFrames The number of frames rendered before measuring.
+     * @param measuredFrames The number of frames measured.
+     */
+    public void run(int warmupFrames, int measuredFrames) {
+        profiler.setAllocationTracking(true);
+        for (int i = 0; i < warmupFrames; i++) {
+            renderFrame();
+        }
+
+        profiler.reset();
+        transformBytes = 0;
+        for (int i = 0; i < measuredFrames; i++) {
+            renderFrame();
+        }
+    }
+
+    /**
+     * Renders one frame, with the camera circling the teapot while the teapot spins.
+     */
+    private void renderFrame() {
+        frame++;
+        float angle = frame * 0.01f;
+
+        //Move the camera and spin the teapot, like an animated scene would
+        camPos.x = (float) Math.sin(angle) * 10;
+        camPos.z = (float) -Math.cos(angle) * 10;
+        camRotation.y = -angle;
+        teapotRotation.y = angle * 2;
+
+        profiler.beginFrame();
+
+        long allocatedBefore = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        teapot.setRotation(teapotRotation);
+        transformBytes += THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+        scene.renderScene();
+        profiler.endFrame();
+    }
+
+    /**
+     * Prints the measured allocations per frame and compares them with the budgets.
+     *
+     * @param budgets The budgets in bytes per frame, keyed by stage name.
+     * @param measuredFrames The number of frames that were measured.
+     * @return true if every budget was met.
+     */
+    public boolean report(Properties budgets, int measuredFrames) {
+        FrameProfileSnapshot snapshot = profiler.snapshot();
+        boolean withinBudget = true;
+
+        System.out.println(String.format(Locale.ROOT, "Allocation per frame over %d frames (%d triangles):",
+                measuredFrames, scene.getCount()));
+        withinBudget &= check(TRANSFORM_BUDGET, (double) transformBytes / measuredFrames, budgets);
+        for (FrameStage stage : FrameStage.values()) {
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            withinBudget &= check(name, snapshot.getAllocatedBytesPerFrame(stage), budgets);
+        }
+
+        System.out.println(withinBudget ? "All allocation budgets met." : "Allocation budget exceeded.");
+        return withinBudget;
+    }
+
+    /**
+     * Compares a measured value with its budget and prints the result.
+     *
+     * @param name The stage name.
+     * @param bytesPerFrame The measured bytes per frame.
+     * @param budgets The budgets.
+     * @return true if the stage has no budget or is within it.
+     */
+    private static boolean check(String name, double bytesPerFrame, Properties budgets) {
+        String budgetValue = budgets.getProperty(name);
+        if (budgetValue == null) {
+            System.out.println(String.format(Locale.ROOT, "  %-17s %12.1f B/frame  (no budget)", name, bytesPerFrame));
+            return true;
+        }
+
+        double budget = Double.parseDouble(budgetValue.trim());
+        boolean ok = bytesPerFrame <= budget;
+        System.out.println(String.format(Locale.ROOT, "  %-17s %12.1f B/frame  budget %10.1f  %s",
+                name, bytesPerFrame, budget, ok ? "ok" : "EXCEEDED"));
+        return ok;
+    }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+/**
+ * The BenchmarkCase class is the base class for a single benchmark run by the BenchmarkRunner.
+ * Subclasses prepare their state in setup() and perform one operation per call to operation().
+ * The value returned by operation() is consumed by the runner so the JIT cannot remove the work.
+ */
+public abstract class BenchmarkCase {
+
+    private final String name; //Name of the benchmarked operation, e.g. "renderScene"
+    private final String params; //Parameters of this case, e.g. "model=teapot"
+
+    /**
+     * Constructor to initialize a benchmark case with a name and its parameters.
+     *
+     * @param name The name of the benchmarked operation.
+     * @param params The parameters of this case as "key=value" pairs separated by commas (may be empty).
+     */
+    public BenchmarkCase(String name, String params) {
+        this.name = name;
+        this.params = params;
+    }
+
+    /**
+     * Prepares the state needed by operation(). Called once before the warm-up iterations.
+     *
+     * @throws Exception if the state cannot be prepared.
+     */
+    public void setup() throws Exception {
+    }
+
+    /**
+     * Performs one operation of the benchmark.
+     *
+     * @return A value derived from the work done, consumed by the runner.
+     * @throws Exception if the operation fails.
+     */
+    public abstract Object operation() throws Exception;
+
+    /**
+     * Releases the state prepared by setup(). Called once after the measurement iterations.
+     */
+    public void tearDown() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParams() {
+        return params;
+    }
+
+    /**
+     * Returns the full name of the case, used for filtering and reporting.
+     *
+     * @return The name followed by the parameters in brackets, if there are any.
+     */
+    public String getId() {
+        return params.isEmpty() ? name : name + "[" + params + "]";
+    }
+}
@@ -0,0 +1,143 @@
+package bench;
+
+import java.util.Locale;
+
+/**
+ * The BenchmarkResult class holds the measurements of one BenchmarkCase.
+ * Timings are average nanoseconds per operation, allocation figures follow the naming
+ * of JMH's GC profiler (gc.alloc.rate in MB/sec and gc.alloc.rate.norm in bytes per operation).
+ */
+public class BenchmarkResult {
+
+    private final String name;
+    private final String params;
+    private final double[] iterationScores; //Average nanoseconds per operation of each measurement iteration
+    private final long operations; //Total operations performed during measurement
+    private final double allocRate; //Allocation rate in MB per second
+    private final double allocRateNorm; //Allocated bytes per operation
+    private final long gcCount; //Number of garbage collections during measurement
+    private final long gcTimeMillis; //Time spent in garbage collection during measurement
+
+    public BenchmarkResult(String name, String params, double[] iterationScores, long operations,
+                           double allocRate, double allocRateNorm, long gcCount, long gcTimeMillis) {
+        this.name = name;
+        this.params = params;
+        this.iterationScores = iterationScores;
+        this.operations = operations;
+        this.allocRate = allocRate;
+        this.allocRateNorm = allocRateNorm;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+    }
+
+    /**
+     * Returns the mean of the iteration scores.
+     *
+     * @return The average nanoseconds per operation.
+     */
+    public double getScore() {
+        double sum = 0;
+        for (double score : iterationScores) {
+            sum += score;
+        }
+        return iterationScores.length == 0 ? 0 : sum / iterationScores.length;
+    }
+
+    /**
+     * Returns the sample standard deviation of the iteration scores.
+     *
+     * @return The standard deviation in nanoseconds per operation.
+     */
+    public double getScoreStdev() {
+        if (iterationScores.length < 2) {
+            return 0;
+        }
+        double mean = getScore();
+        double sum = 0;
+        for (double score : iterationScores) {
+            sum += (score - mean) * (score - mean);
+        }
+        return Math.sqrt(sum / (iterationScores.length - 1));
+    }
+
+    /**
+     * Formats the result as a single line for the console.
+     *
+     * @return The formatted result.
+     */
+    public String toLine() {
+        String id = params.isEmpty() ? name : name + "[" + params + "]";
+        return String.format(Locale.ROOT, "%-60s %14.1f +- %10.1f ns/op %12.1f B/op %9.1f MB/s %4d gc",
+                id, getScore(), getScoreStdev(), allocRateNorm, allocRate, gcCount);
+    }
+
+    /**
+     * Formats the result as a JSON object.
+     *
+     * @return The JSON representation of the result.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("  {\n");
+        json.append("    \"benchmark\": \"").append(name).append("\",\n");
+        json.append("    \"params\": {");
+        if (!params.isEmpty()) {
+            String[] pairs = params.split(",");
+            for (int i = 0; i < pairs.length; i++) {
+                String[] keyValue = pairs[i].split("=", 2);
+                json.append(i == 0 ? "" : ", ").append('"').append(keyValue[0]).append("\": \"")
+                    .append(keyValue.length > 1 ? keyValue[1] : "").append('"');
+            }
+        }
+        json.append("},\n");
+        json.append("    \"mode\": \"avgt\",\n");
+        json.append("    \"primaryMetric\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"score\": %.3f,%n", getScore()));
+        json.append(String.format(Locale.ROOT, "      \"scoreStdev\": %.3f,%n", getScoreStdev()));
+        json.append("      \"scoreUnit\": \"ns/op\",\n");
+        json.append("      \"rawData\": [");
+        for (int i = 0; i < iterationScores.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.3f", iterationScores[i]));
+        }
+        json.append("]\n");
+        json.append("    },\n");
+        json.append("    \"secondaryMetrics\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"gc.alloc.rate\": {\"score\": %.3f, \"scoreUnit\": \"MB/sec\"},%n", allocRate));
+        json.append(String.format(Locale.ROOT, "      \"gc.alloc.rate.norm\": {\"score\": %.3f, \"scoreUnit\": \"B/op\"},%n", allocRateNorm));
+        json.append(String.format(Locale.ROOT, "      \"gc.count\": {\"score\": %d, \"scoreUnit\": \"counts\"},%n", gcCount));
+        json.append(String.format(Locale.ROOT, "      \"gc.time\": {\"score\": %d, \"scoreUnit\": \"ms\"}%n", gcTimeMillis));
+        json.append("    },\n");
+        json.append("    \"operations\": ").append(operations).append("\n");
+        json.append("  }");
+        return json.toString();
+    }
+
+    //Getters for the measurements
+    public String getName() {
+        return name;
+    }
+
+    public String getParams() {
+        return params;
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    public double getAllocRate() {
+        return allocRate;
+    }
+
+    public double getAllocRateNorm() {
+        return allocRateNorm;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+}
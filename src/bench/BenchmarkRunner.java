@@ -0,0 +1,176 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The BenchmarkRunner class runs BenchmarkCases with warm-up and measurement iterations.
+ * Each iteration repeats the case's operation until the iteration time has passed, and the
+ * runner reports the average time per operation. Allocations of the benchmark thread are
+ * measured through com.sun.management.ThreadMXBean, and garbage collections through the
+ * GarbageCollectorMXBeans, similar to what JMH's GC profiler reports.
+ */
+public class BenchmarkRunner {
+
+    //Iteration settings
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationNanos = 1000000000L;
+
+    private Pattern filter; //Only cases whose id matches this pattern are run (null runs everything)
+
+    //Consumes the values returned by the operations so the work cannot be optimised away
+    private volatile int sink;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs all cases that match the filter and prints each result as it completes.
+     *
+     * @param cases The cases to run.
+     * @return The results of the cases that were run.
+     */
+    public List<BenchmarkResult> run(List<BenchmarkCase> cases) {
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (BenchmarkCase benchmarkCase : cases) {
+            if (filter != null && !filter.matcher(benchmarkCase.getId()).find()) {
+                continue;
+            }
+            try {
+                BenchmarkResult result = run(benchmarkCase);
+                results.add(result);
+                System.out.println(result.toLine());
+            } catch (Exception e) {
+                System.out.println(benchmarkCase.getId() + " failed: " + e);
+                e.printStackTrace();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a single case.
+     *
+     * @param benchmarkCase The case to run.
+     * @return The measurements of the case.
+     * @throws Exception if the case fails during setup or an operation.
+     */
+    public BenchmarkResult run(BenchmarkCase benchmarkCase) throws Exception {
+        benchmarkCase.setup();
+        try {
+            //Warm-up iterations let the JIT compile the code paths before measuring
+            for (int i = 0; i < warmupIterations; i++) {
+                runIteration(benchmarkCase, new long[1]);
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long gcCountBefore = gcCount();
+            long gcTimeBefore = gcTime();
+
+            double[] scores = new double[measurementIterations];
+            long operations = 0;
+            long totalNanos = 0;
+            for (int i = 0; i < measurementIterations; i++) {
+                long[] iterationOps = new long[1];
+                long nanos = runIteration(benchmarkCase, iterationOps);
+                scores[i] = (double) nanos / iterationOps[0];
+                operations += iterationOps[0];
+                totalNanos += nanos;
+            }
+
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            double allocRate = allocated / (1024.0 * 1024.0) / (totalNanos / 1e9);
+            double allocRateNorm = (double) allocated / operations;
+
+            return new BenchmarkResult(benchmarkCase.getName(), benchmarkCase.getParams(), scores, operations,
+                    allocRate, allocRateNorm, gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+        } finally {
+            benchmarkCase.tearDown();
+        }
+    }
+
+    /**
+     * Repeats the case's operation until the iteration time has passed.
+     *
+     * @param benchmarkCase The case to run.
+     * @param operations Receives the number of operations performed in element 0.
+     * @return The time the iteration took in nanoseconds.
+     * @throws Exception if an operation fails.
+     */
+    private long runIteration(BenchmarkCase benchmarkCase, long[] operations) throws Exception {
+        long start = System.nanoTime();
+        long elapsed;
+        long count = 0;
+        int hash = 0;
+        do {
+            Object result = benchmarkCase.operation();
+            hash += System.identityHashCode(result);
+            count++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        sink += hash;
+        operations[0] = count;
+        return elapsed;
+    }
+
+    /**
+     * Writes the results as a JSON array.
+     *
+     * @param results The results to write.
+     * @param path The path of the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeJson(List<BenchmarkResult> results, String path) throws IOException {
+        try (Writer writer = new FileWriter(path)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write(results.get(i).toJson());
+                writer.write(i < results.size() - 1 ? ",\n" : "\n");
+            }
+            writer.write("]\n");
+        }
+    }
+
+    //Sum of the collection counts of all garbage collectors
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    //Sum of the collection times of all garbage collectors in milliseconds
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    //Setters for the runner settings
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public void setMeasurementIterations(int measurementIterations) {
+        this.measurementIterations = Math.max(1, measurementIterations);
+    }
+
+    public void setIterationMillis(long iterationMillis) {
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    public void setFilter(String regex) {
+        this.filter = regex == null ? null : Pattern.compile(regex);
+    }
+}
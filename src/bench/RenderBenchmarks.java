@@ -0,0 +1,599 @@
+package bench;
+
+import collision.SpatialHash;
+import colours.ClusteredLightShader;
+import colours.ColourShader;
+import colours.HorizontalShader;
+import colours.InverseSqrShadow;
+import colours.NonShadow;
+import core.BspTree;
+import core.FrameBuffer;
+import core.OcclusionCuller;
+import core.RenderObject;
+import core.Scene;
+import core.VertexKernels;
+import java.awt.Color;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import lights.LightClusters;
+import lights.PointLight;
+import materials.Material;
+import materials.Texture;
+import objects.Triangle2D;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The RenderBenchmarks class defines the benchmark suite for the render pipeline.
+ * It covers loading and transforming every model in the data directory, rendering a scene
+ * with each model, each shader on each model, and rendering synthetic scenes from 10k to 1M triangles.
+ * The vertex kernels are benchmarked with both the scalar and the vector implementation; the vector cases
+ * only run when the Vector API is available (java --add-modules jdk.incubator.vector).
+ *
+ * Usage: java -cp src bench.RenderBenchmarks [-wi warmups] [-i iterations] [-r millis] [-rff results.json] [regex]
+ */
+public class RenderBenchmarks {
+
+    //Directory containing the bundled models
+    private static final String DATA_DIRECTORY = "data";
+
+    //Triangle counts of the synthetic scaling scenes
+    private static final int[] SYNTHETIC_SIZES = {10000, 100000, 1000000};
+
+    //Number of vertices processed per operation by the vertex kernel benchmarks
+    private static final int KERNEL_VERTICES = 300000;
+
+    //Triangle count of the synthetic scene rendered with each kernel implementation
+    private static final int KERNEL_SCENE_SIZE = 100000;
+
+    //Objects in the occlusion benchmark, three quarters of them behind a wall, and their size in triangles
+    private static final int OCCLUSION_OBJECTS = 64;
+    private static final int OCCLUSION_OBJECT_SIZE = 2000;
+
+    //Point lights scattered over the field in the lighting benchmark, and the field's size in triangles
+    private static final int LIGHT_COUNT = 256;
+    private static final int LIGHT_SCENE_SIZE = 100000;
+
+    //Size of the texture on the floor of the texturing benchmark
+    private static final int TEXTURE_SIZE = 1024;
+
+    //Copies of a 10k triangle field in the collision benchmarks, and the sphere queries per operation
+    private static final int[] COLLISION_FIELDS = {1, 16, 100};
+    private static final int COLLISION_QUERIES = 1000;
+
+    /**
+     * Runs the benchmark suite and writes the results to a JSON file.
+     *
+     * @param args Command line options, see the class description.
+     * @throws Exception if the results file cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        String resultsPath = "bench-results.json";
+
+        //Parse the JMH style command line options
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi":
+                    runner.setWarmupIterations(Integer.parseInt(args[++i]));
+                    break;
+                case "-i":
+                    runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+                    break;
+                case "-r":
+                    runner.setIterationMillis(Long.parseLong(args[++i]));
+                    break;
+                case "-rff":
+                    resultsPath = args[++i];
+                    break;
+                default:
+                    runner.setFilter(args[i]);
+            }
+        }
+
+        List<BenchmarkResult> results = runner.run(createCases());
+        BenchmarkRunner.writeJson(results, resultsPath);
+        System.out.println("Results written to " + resultsPath);
+    }
+
+    /**
+     * Creates all benchmark cases of the suite.
+     *
+     * @return The list of cases.
+     */
+    public static List<BenchmarkCase> createCases() {
+        List<BenchmarkCase> cases = new ArrayList<>();
+
+        for (String model : findModels()) {
+            cases.add(loadObjectCase(model));
+            cases.add(loadTrianglesCase(model));
+            cases.add(renderSceneCase(model));
+            for (String shader : new String[] {"NonShadow", "HorizontalShader", "InverseSqrShadow"}) {
+                cases.add(shaderCase(model, shader));
+            }
+        }
+
+        for (int size : SYNTHETIC_SIZES) {
+            cases.add(syntheticRenderSceneCase(size));
+        }
+
+        for (VertexKernels kernels : new VertexKernels[] {VertexKernels.scalar(), VertexKernels.vector()}) {
+            if (kernels != null) {
+                cases.add(kernelCase("projectVertices", kernels));
+                cases.add(kernelCase("depthKeys", kernels));
+                cases.add(kernelRenderSceneCase(kernels));
+            }
+        }
+
+        cases.add(occlusionCase(false));
+        cases.add(occlusionCase(true));
+        cases.add(staticTreeCase(false));
+        cases.add(staticTreeCase(true));
+        cases.add(lightsCase(false));
+        cases.add(lightsCase(true));
+        cases.add(texturedCase(false));
+        cases.add(texturedCase(true));
+        for (int fields : COLLISION_FIELDS) {
+            cases.add(collisionCase(fields));
+        }
+        return cases;
+    }
+
+    /**
+     * Lists the names of the .obj models in the data directory.
+     *
+     * @return The model names without the extension, in alphabetical order.
+     */
+    private static List<String> findModels() {
+        List<String> models = new ArrayList<>();
+        File[] files = new File(DATA_DIRECTORY).listFiles((dir, name) -> name.endsWith(".obj"));
+        if (files != null) {
+            for (File file : files) {
+                models.add(file.getName().substring(0, file.getName().length() - 4));
+            }
+        }
+        models.sort(null);
+        return models;
+    }
+
+    private static String modelPath(String model) {
+        return DATA_DIRECTORY + "/" + model + ".obj";
+    }
+
+    /**
+     * Creates a scene laid out like the one in Game: the model at the origin, seen from slightly above and behind.
+     *
+     * @param object The object to put in the scene.
+     * @return The scene.
+     */
+    private static Scene createScene(RenderObject object) {
+        Scene scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+        scene.setCamPos(new Vertex(0, 2, -10));
+        scene.setCamRot(new Vertex(0, 0, 0));
+        scene.addObject(object);
+        return scene;
+    }
+
+    //Parsing a model from disk
+    private static BenchmarkCase loadObjectCase(String model) {
+        return new BenchmarkCase("loadObject", "model=" + model) {
+            @Override
+            public Object operation() {
+                return RenderObject.loadObject(modelPath(model), model, new NonShadow(Color.WHITE), new Vertex(0, 0, 0));
+            }
+        };
+    }
+
+    //Scaling, rotating and translating all triangles of a model
+    private static BenchmarkCase loadTrianglesCase(String model) {
+        return new BenchmarkCase("loadTriangles", "model=" + model) {
+            private RenderObject object;
+
+            @Override
+            public void setup() {
+                object = RenderObject.loadObject(modelPath(model), model, new NonShadow(Color.WHITE), new Vertex(0, 0, 0));
+                object.setRotation(new Vertex(0.3f, 0.5f, 0));
+                object.setScale(new Vertex(1.5f, 1.5f, 1.5f));
+            }
+
+            @Override
+            public Object operation() {
+                return object.loadTriangles();
+            }
+        };
+    }
+
+    //Rendering a frame of a scene containing the model, with the camera slowly turning
+    private static BenchmarkCase renderSceneCase(String model) {
+        return new BenchmarkCase("renderScene", "model=" + model) {
+            private Scene scene;
+            private Vertex rotation = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                RenderObject object = RenderObject.loadObject(modelPath(model), model,
+                        new NonShadow(Color.WHITE), new Vertex(0, 0, 0));
+                scene = createScene(object);
+                scene.setCamRot(rotation);
+            }
+
+            @Override
+            public Object operation() {
+                rotation.y += 0.001f;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+        };
+    }
+
+    //Shading every triangle of the model with one shader
+    private static BenchmarkCase shaderCase(String model, String shaderName) {
+        return new BenchmarkCase("shade", "shader=" + shaderName + ",model=" + model) {
+            private Triangle[] triangles;
+            private ColourShader shader;
+            private int[] result = new int[1]; //Reused so returning the result does not allocate
+
+            @Override
+            public void setup() {
+                RenderObject object = RenderObject.loadObject(modelPath(model), model,
+                        new NonShadow(Color.WHITE), new Vertex(0, 0, 0));
+                Scene scene = createScene(object);
+                triangles = object.loadTriangles();
+
+                Color colour = new Color(200, 120, 60);
+                switch (shaderName) {
+                    case "HorizontalShader":
+                        shader = new HorizontalShader(colour);
+                        break;
+                    case "InverseSqrShadow":
+                        shader = new InverseSqrShadow(colour, scene);
+                        break;
+                    default:
+                        shader = new NonShadow(colour);
+                }
+            }
+
+            @Override
+            public Object operation() {
+                int hash = 0;
+                for (Triangle triangle : triangles) {
+                    hash += shader.shadeBasedOnTriangle(triangle).getRGB();
+                }
+                result[0] = hash;
+                return result;
+            }
+        };
+    }
+
+    //Rendering a frame of a generated scene of the given size
+    private static BenchmarkCase syntheticRenderSceneCase(int size) {
+        return new BenchmarkCase("renderSceneSynthetic", "triangles=" + size) {
+            private Scene scene;
+            private Vertex rotation = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setCamPos(new Vertex(0, 0, 0));
+                scene.setCamRot(rotation);
+                scene.addObject(SyntheticScenes.field(size, new NonShadow(Color.WHITE)));
+            }
+
+            @Override
+            public Object operation() {
+                //Turning the camera changes the projection but keeps the distances, and with them the sort order
+                rotation.y = rotation.y > 0.1f ? -0.1f : rotation.y + 0.001f;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+
+            @Override
+            public void tearDown() {
+                scene = null;
+            }
+        };
+    }
+
+    //Projecting packed vertices, or computing the depth keys of packed triangles, with one kernel implementation
+    private static BenchmarkCase kernelCase(String operation, VertexKernels kernels) {
+        return new BenchmarkCase(operation, "kernels=" + kernels.getName() + ",vertices=" + KERNEL_VERTICES) {
+            private float[] x = new float[KERNEL_VERTICES];
+            private float[] y = new float[KERNEL_VERTICES];
+            private float[] z = new float[KERNEL_VERTICES];
+            private float[] outX = new float[KERNEL_VERTICES];
+            private float[] outY = new float[KERNEL_VERTICES];
+            private Vertex camPos = new Vertex(0, 2, -10);
+            private Vertex s = new Vertex((float) Math.sin(0.2), (float) Math.sin(0.5), 0);
+            private Vertex c = new Vertex((float) Math.cos(0.2), (float) Math.cos(0.5), 1);
+            private Vertex screen = new Vertex(0, 0, 1.2f);
+
+            @Override
+            public void setup() {
+                Random random = new Random(42);
+                for (int i = 0; i < KERNEL_VERTICES; i++) {
+                    x[i] = random.nextFloat() * 100 - 50;
+                    y[i] = random.nextFloat() * 100 - 50;
+                    z[i] = random.nextFloat() * 100 - 50;
+                }
+            }
+
+            @Override
+            public Object operation() {
+                if (operation.equals("depthKeys")) {
+                    int triangles = KERNEL_VERTICES / 3;
+                    kernels.depthKeys(x, y, z, 0, triangles, triangles, camPos, outX);
+                } else {
+                    kernels.project(x, y, z, 0, KERNEL_VERTICES, camPos, s, c, screen, outX, outY);
+                }
+                return outX;
+            }
+        };
+    }
+
+    //Rendering a frame of a generated scene with one kernel implementation
+    private static BenchmarkCase kernelRenderSceneCase(VertexKernels kernels) {
+        return new BenchmarkCase("renderSceneKernels", "kernels=" + kernels.getName() + ",triangles=" + KERNEL_SCENE_SIZE) {
+            private Scene scene;
+            private Vertex rotation = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setKernels(kernels);
+                scene.setCamPos(new Vertex(0, 0, 0));
+                scene.setCamRot(rotation);
+                scene.addObject(SyntheticScenes.field(KERNEL_SCENE_SIZE, new NonShadow(Color.WHITE)));
+            }
+
+            @Override
+            public Object operation() {
+                rotation.y = rotation.y > 0.1f ? -0.1f : rotation.y + 0.001f;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+
+            @Override
+            public void tearDown() {
+                scene = null;
+            }
+        };
+    }
+
+    //Rendering a frame of many objects, most of them hidden behind a wall, with or without occlusion culling
+    private static BenchmarkCase occlusionCase(boolean culling) {
+        return new BenchmarkCase("renderSceneOccluded", "culling=" + culling + ",objects=" + OCCLUSION_OBJECTS) {
+            private Scene scene;
+            private Vertex rotation = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setCamPos(new Vertex(0, 0, 0));
+                scene.setCamRot(rotation);
+
+                RenderObject wall = SyntheticScenes.wall(40, 24, 8, new NonShadow(Color.GRAY));
+                scene.addObject(wall);
+                for (int i = 0; i < OCCLUSION_OBJECTS; i++) {
+                    //Every fourth object stands in front of the wall
+                    float z = i % 4 == 0 ? 3 : 10 + (i % 3) * 4;
+                    RenderObject object = SyntheticScenes.field(OCCLUSION_OBJECT_SIZE, new NonShadow(Color.WHITE));
+                    object.setScale(new Vertex(0.1f, 0.1f, 0.05f));
+                    object.setPosition(new Vertex((i % 8 - 3.5f) * 1.2f, (i / 8 - 3.5f) * 0.6f, z));
+                    scene.addObject(object);
+                }
+
+                if (culling) {
+                    OcclusionCuller culler = new OcclusionCuller(128, 72, -2f, -1.125f, 2f, 1.125f);
+                    culler.addOccluder(wall);
+                    scene.setOcclusionCuller(culler);
+                }
+            }
+
+            @Override
+            public Object operation() {
+                rotation.y = rotation.y > 0.1f ? -0.1f : rotation.y + 0.001f;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+
+            @Override
+            public void tearDown() {
+                scene = null;
+            }
+        };
+    }
+
+    //Rendering a frame of the demo's ground plane and teapot while the camera circles them,
+    //with the plane sorted every frame or drawn in the order of a static BSP tree
+    private static BenchmarkCase staticTreeCase(boolean tree) {
+        return new BenchmarkCase("renderSceneStatic", "tree=" + tree) {
+            private Scene scene;
+            private Vertex position = new Vertex(0, 3, -10);
+            private Vertex rotation = new Vertex(0.2f, 0, 0);
+            private float angle;
+
+            @Override
+            public void setup() {
+                scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setCamPos(position);
+                scene.setCamRot(rotation);
+
+                RenderObject plane = RenderObject.loadObject(modelPath("plane"), "plane", new NonShadow(Color.WHITE), new Vertex(0, 0, 0));
+                plane.setScale(new Vertex(3, 3, 3));
+                if (tree) {
+                    scene.setStaticTree(BspTree.build(Arrays.asList(plane)));
+                } else {
+                    scene.addObject(plane);
+                }
+                scene.addObject(RenderObject.loadObject(modelPath("teapot"), "teapot", new NonShadow(Color.RED), new Vertex(0, 0, 0)));
+            }
+
+            @Override
+            public Object operation() {
+                //Turn the camera around the origin, facing it
+                angle += 0.05f;
+                position.x = (float) Math.sin(angle) * -10;
+                position.z = (float) Math.cos(angle) * -10;
+                rotation.y = angle;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+
+            @Override
+            public void tearDown() {
+                scene = null;
+            }
+        };
+    }
+
+    //Rendering a frame of a field lit by many small point lights, with the lights assigned to clusters of the view
+    //or all of them in a single cluster, so every triangle evaluates every light
+    private static BenchmarkCase lightsCase(boolean clustered) {
+        return new BenchmarkCase("renderSceneLights", "clustered=" + clustered + ",lights=" + LIGHT_COUNT) {
+            private Scene scene;
+            private Vertex rotation = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setCamPos(new Vertex(0, 0, 0));
+                scene.setCamRot(rotation);
+
+                LightClusters lights = clustered ? new LightClusters(16, 9, 24, 1, 50, -2f, -1.125f, 2f, 1.125f)
+                        : new LightClusters(1, 1, 1, 1, 50, -2f, -1.125f, 2f, 1.125f);
+                Random random = new Random(42);
+                for (int i = 0; i < LIGHT_COUNT; i++) {
+                    //Just above the slanted field, which rises by 0.1 per unit of depth
+                    float z = 2 + random.nextFloat() * 40;
+                    Vertex position = new Vertex(random.nextFloat() * 16 - 8, -1.2f + (z - 2) * 0.1f, z);
+                    Color colour = Color.getHSBColor(random.nextFloat(), 0.6f, 1);
+                    lights.addLight(new PointLight(position, colour, 4, 2));
+                }
+                scene.setLights(lights);
+                scene.addObject(SyntheticScenes.field(LIGHT_SCENE_SIZE, new ClusteredLightShader(Color.WHITE, lights)));
+            }
+
+            @Override
+            public Object operation() {
+                rotation.y = rotation.y > 0.1f ? -0.1f : rotation.y + 0.001f;
+                scene.renderScene();
+                return scene.getRenderedTriangles();
+            }
+
+            @Override
+            public void tearDown() {
+                scene = null;
+            }
+        };
+    }
+
+    //Rasterizing a textured floor stretching far into the distance, reading only the full size texture
+    //or the mip level chosen for each row
+    private static BenchmarkCase texturedCase(boolean mipmaps) {
+        return new BenchmarkCase("fillTexturedTriangles", "mipmaps=" + mipmaps + ",texture=" + TEXTURE_SIZE) {
+            private FrameBuffer frameBuffer;
+            private Triangle2D[] triangles;
+            private Texture[] textures;
+            private float[] textureCoordinates;
+            private int[] colours;
+            private int count;
+
+            @Override
+            public void setup() {
+                //A texture of noise, so every level differs
+                Random random = new Random(42);
+                int[] pixels = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = random.nextInt(0x1000000);
+                }
+                Material material = new Material("noise", Color.WHITE, new Texture(TEXTURE_SIZE, TEXTURE_SIZE, pixels, mipmaps));
+
+                //A floor below the camera, its texture repeated every unit
+                RenderObject floor = SyntheticScenes.wall(16, 60, 0, new NonShadow(Color.WHITE));
+                floor.setRotation(new Vertex((float) Math.PI / 2, 0, 0));
+                floor.setPosition(new Vertex(0, -1.5f, 31));
+                floor.setMaterials(new Material[] {material, material}, new float[] {0, 0, 16, 0, 16, 60, 0, 0, 16, 60, 0, 60});
+
+                Scene scene = new Scene(new ArrayList<RenderObject>(Arrays.asList()));
+                scene.setCamPos(new Vertex(0, 0, 0));
+                scene.setCamRot(new Vertex(0, 0, 0));
+                scene.addObject(floor);
+                scene.renderScene();
+                triangles = scene.getRenderedTriangles();
+                textures = scene.getTextures();
+                textureCoordinates = scene.getTextureCoordinates();
+                colours = scene.getRGBColours();
+                count = scene.getCount();
+                frameBuffer = new FrameBuffer(640, 360);
+            }
+
+            @Override
+            public Object operation() {
+                for (int i = 0; i < count; i++) {
+                    Triangle2D t = triangles[i];
+                    if (t != null && textures[i] != null) {
+                        //Projected coordinates from -2 to 2 across the frame, as in the Swing demo
+                        frameBuffer.fillTexturedTriangle(t.v1.x * 160 + 320, 180 - t.v1.y * 160, t.v2.x * 160 + 320, 180 - t.v2.y * 160,
+                                t.v3.x * 160 + 320, 180 - t.v3.y * 160, textures[i], textureCoordinates, i * 9, colours[i]);
+                    }
+                }
+                return frameBuffer;
+            }
+
+            @Override
+            public void tearDown() {
+                frameBuffer = null;
+                triangles = null;
+            }
+        };
+    }
+
+    //Pushing spheres out of the first of a row of fields, which should cost the same however many fields there are
+    private static BenchmarkCase collisionCase(int fields) {
+        return new BenchmarkCase("resolveSphere", "fields=" + fields + ",queries=" + COLLISION_QUERIES) {
+            private SpatialHash collisions;
+            private Vertex[] centres;
+            private Vertex centre = new Vertex(0, 0, 0);
+
+            @Override
+            public void setup() {
+                collisions = new SpatialHash(0.5f);
+                for (int i = 0; i < fields; i++) {
+                    RenderObject field = SyntheticScenes.field(10000, new NonShadow(Color.WHITE));
+                    field.setPosition(new Vertex(i * 20, 0, 0));
+                    collisions.add(field);
+                }
+
+                //Spheres just above or sunk into the slanted field
+                Random random = new Random(42);
+                centres = new Vertex[COLLISION_QUERIES];
+                for (int i = 0; i < centres.length; i++) {
+                    float z = 2 + random.nextFloat() * 40;
+                    centres[i] = new Vertex(random.nextFloat() * 16 - 8, -1.5f + (z - 2) * 0.1f + random.nextFloat() * 0.5f - 0.25f, z);
+                }
+            }
+
+            @Override
+            public Object operation() {
+                int pushed = 0;
+                for (Vertex start : centres) {
+                    centre.x = start.x;
+                    centre.y = start.y;
+                    centre.z = start.z;
+                    if (collisions.resolveSphere(centre, 0.25f)) {
+                        pushed++;
+                    }
+                }
+                return pushed;
+            }
+
+            @Override
+            public void tearDown() {
+                collisions = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import colours.ColourShader;
+import core.RenderObject;
+import java.util.Arrays;
+import java.util.Comparator;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The SyntheticScenes class generates meshes of an arbitrary size for scaling benchmarks.
+ * The mesh is a field of small triangles spread in front of a camera at the origin looking down +z.
+ */
+public class SyntheticScenes {
+
+    //Number of triangles per row of the field
+    private static final int COLUMNS = 200;
+
+    /**
+     * Generates a field of triangles in front of the origin.
+     * The triangles are ordered from the furthest to the nearest (by the same average squared
+     * distance the Scene sorts by), so the scene's first sort does not dominate the benchmark.
+     *
+     * @param triangleCount The number of triangles to generate.
+     * @param colourShader The shader applied to the generated object.
+     * @return A RenderObject containing the generated triangles.
+     */
+    public static RenderObject field(int triangleCount, ColourShader colourShader) {
+        int rows = (triangleCount + COLUMNS - 1) / COLUMNS;
+        Triangle[] triangles = new Triangle[triangleCount];
+
+        //Lay the triangles out on a slanted grid that fills the view
+        float width = 16f;
+        float depth = 40f;
+        float cellX = width / COLUMNS;
+        float cellZ = depth / rows;
+        for (int i = 0; i < triangleCount; i++) {
+            int row = i / COLUMNS;
+            int column = i % COLUMNS;
+            float x = -width / 2 + column * cellX;
+            float z = 2f + row * cellZ;
+            float y = -1.5f + row * cellZ * 0.1f;
+            triangles[i] = new Triangle(new Vertex(x, y, z),
+                                        new Vertex(x + cellX, y, z),
+                                        new Vertex(x, y + cellZ * 0.5f, z + cellZ));
+        }
+
+        //Sort from the furthest to the nearest triangle as seen from the origin
+        Arrays.sort(triangles, Comparator.comparingDouble((Triangle t) -> distanceFromOrigin(t)).reversed());
+
+        return new RenderObject("field" + triangleCount, triangles, new Vertex(0, 0, 0),
+                                new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+    }
+
+    /**
+     * Generates a wall of two triangles facing the origin, e.g. an occluder hiding objects behind it.
+     *
+     * @param width The width of the wall (along x).
+     * @param height The height of the wall (along y).
+     * @param z The distance of the wall from the origin.
+     * @param colourShader The shader applied to the generated object.
+     * @return A RenderObject containing the wall, centred on the z axis.
+     */
+    public static RenderObject wall(float width, float height, float z, ColourShader colourShader) {
+        float x = width / 2;
+        float y = height / 2;
+        Triangle[] triangles = {
+            new Triangle(new Vertex(-x, -y, z), new Vertex(x, -y, z), new Vertex(x, y, z)),
+            new Triangle(new Vertex(-x, -y, z), new Vertex(x, y, z), new Vertex(-x, y, z))
+        };
+        return new RenderObject("wall", triangles, new Vertex(0, 0, 0), new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+    }
+
+    /**
+     * Calculates the average squared distance of a triangle's vertices from the origin.
+     *
+     * @param t The triangle.
+     * @return The average squared distance.
+     */
+    private static double distanceFromOrigin(Triangle t) {
+        return (t.v1.magnitudeSqrd() + t.v2.magnitudeSqrd() + t.v3.magnitudeSqrd()) / 3.0;
+    }
+}
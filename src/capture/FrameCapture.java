@@ -0,0 +1,212 @@
+package capture;
+
+import core.FrameBuffer;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The FrameCapture class records rendered frames to a FrameEncoder on a background thread.
+ *
+ * capture() is called on the render thread after a frame has been drawn. It copies the frame's pixels into
+ * one of a fixed set of preallocated frames and queues it, which is the only work done on the render thread,
+ * so capturing allocates nothing. The encoder thread takes the queued frames in order, encodes them and
+ * returns them to the free set. When the encoder falls behind and no free frame is left, the OverflowPolicy
+ * decides whether the new frame or the oldest queued one is dropped, or whether the render thread waits;
+ * the two dropping policies never wait.
+ *
+ * close() encodes the frames still queued, finishes the encoder and reports the first error it ran into.
+ * It may be called from another thread, e.g. a shutdown hook, in which case frames captured afterwards are dropped.
+ */
+public class FrameCapture {
+
+    private static final int[] END = new int[0]; //Queued by close() to stop the encoder thread
+
+    private final int width;
+    private final int height;
+    private final FrameEncoder encoder;
+    private final OverflowPolicy policy;
+
+    //Preallocated frames: those free to be captured into, and those waiting to be encoded in order
+    private final ArrayBlockingQueue<int[]> freeFrames;
+    private final ArrayBlockingQueue<int[]> queuedFrames;
+
+    private final Thread encoderThread;
+    private volatile IOException failure; //First error of the encoder, after which frames are no longer encoded
+    private volatile boolean closed = false;
+    private final Object queueLock = new Object(); //Orders the frames queued by capture() against END queued by close()
+
+    //Frame counts, each written by one thread only
+    private volatile long capturedCount; //Frames queued (render thread)
+    private volatile long droppedCount; //Frames dropped by the policy or after a failure (render thread)
+    private volatile long encodedCount; //Frames written (encoder thread)
+
+    /**
+     * Constructor to start capturing to an encoder.
+     *
+     * @param encoder The encoder, which determines the size of the captured frames.
+     * @param queueLength The number of frames that may wait for the encoder before the policy applies.
+     * @param policy What to do with a frame when that many are waiting.
+     */
+    public FrameCapture(FrameEncoder encoder, int queueLength, OverflowPolicy policy) {
+        if (queueLength <= 0) {
+            throw new IllegalArgumentException("Queue length must be positive: " + queueLength);
+        }
+        this.width = encoder.getWidth();
+        this.height = encoder.getHeight();
+        this.encoder = encoder;
+        this.policy = policy;
+
+        //One frame more than can be queued, for the one being encoded, and room for END in the queue
+        freeFrames = new ArrayBlockingQueue<>(queueLength + 1);
+        queuedFrames = new ArrayBlockingQueue<>(queueLength + 2);
+        for (int i = 0; i < queueLength + 1; i++) {
+            freeFrames.add(new int[width * height]);
+        }
+
+        encoderThread = new Thread(this::encodeFrames, "frame-encoder");
+        encoderThread.setDaemon(true); //Capturing must not keep the application alive, close() waits for it instead
+        encoderThread.setPriority(Thread.NORM_PRIORITY - 1); //Prefer the render thread
+        encoderThread.start();
+    }
+
+    /**
+     * Queues a copy of a drawn frame for encoding. Called on the render thread.
+     *
+     * @param frameBuffer The frame, which must have the size of the encoder's frames.
+     * @return true if the frame was queued, false if it was dropped (always after close() or an encoder error).
+     */
+    public boolean capture(FrameBuffer frameBuffer) {
+        if (frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            throw new IllegalArgumentException("Frame of " + frameBuffer.getWidth() + "x" + frameBuffer.getHeight()
+                    + " does not match the capture size of " + width + "x" + height);
+        }
+        if (closed || failure != null) {
+            droppedCount++;
+            return false;
+        }
+
+        int[] frame = freeFrames.poll();
+        if (frame == null) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return false;
+                case DROP_OLDEST:
+                    //The encoder may take the oldest frame meanwhile, in which case it has freed another one
+                    frame = queuedFrames.poll();
+                    if (frame == null) {
+                        frame = freeFrames.poll();
+                    }
+                    droppedCount++; //Either the oldest frame or, if the encoder took every frame at once, this one
+                    if (frame == END) {
+                        queuedFrames.add(END); //close() was called meanwhile, so leave the encoder thread its signal
+                        return false;
+                    }
+                    if (frame == null) {
+                        return false;
+                    }
+                    break;
+                case BLOCK:
+                    try {
+                        frame = freeFrames.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedCount++;
+                        return false;
+                    }
+                    break;
+            }
+        }
+
+        System.arraycopy(frameBuffer.getPixels(), 0, frame, 0, width * height);
+
+        //close() may have run since the check above, and a frame queued after END would never be encoded
+        synchronized (queueLock) {
+            if (!closed) {
+                queuedFrames.add(frame);
+                capturedCount++;
+                return true;
+            }
+        }
+        freeFrames.add(frame);
+        droppedCount++;
+        return false;
+    }
+
+    /**
+     * Takes the queued frames in order and encodes them, until close() queues END.
+     */
+    private void encodeFrames() {
+        while (true) {
+            int[] frame;
+            try {
+                frame = queuedFrames.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == END) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    encoder.encode(frame);
+                    encodedCount++;
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            freeFrames.add(frame);
+        }
+    }
+
+    /**
+     * Encodes the frames still queued, then closes the encoder.
+     *
+     * @throws IOException if a frame could not be encoded or the encoder could not be closed.
+     */
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queuedFrames.add(END);
+        }
+        try {
+            encoderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            encoder.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    //Getters for the capture's size and frame counts
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getCapturedCount() {
+        return capturedCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getEncodedCount() {
+        return encodedCount;
+    }
+}
@@ -0,0 +1,76 @@
+package capture;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The FrameEncoder class writes a sequence of frames of a fixed size to a file or directory.
+ * Frames are given as packed RGB pixels in rows from the top, like the pixels of a FrameBuffer.
+ * An encoder is used by a single thread, the encoder thread of a FrameCapture.
+ */
+public abstract class FrameEncoder {
+
+    protected final int width;
+    protected final int height;
+
+    /**
+     * Constructor to initialize an encoder for frames of the given size.
+     *
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     */
+    protected FrameEncoder(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Writes the next frame.
+     *
+     * @param pixels The packed RGB pixels, width * height of them.
+     * @throws IOException if the frame cannot be written.
+     */
+    public abstract void encode(int[] pixels) throws IOException;
+
+    /**
+     * Finishes the output and releases its file. No frames may be encoded afterwards.
+     *
+     * @throws IOException if the output cannot be finished.
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Opens an encoder chosen by the file name: a Y4M video for ".y4m", raw RGB for ".rgb" or ".raw",
+     * and otherwise a PNG sequence in the directory of that name.
+     *
+     * @param path The file or directory to write.
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @param framesPerSecond The frame rate stored in the video's header (Y4M only).
+     * @return The encoder.
+     * @throws IOException if the output cannot be created.
+     */
+    public static FrameEncoder open(Path path, int width, int height, int framesPerSecond) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".y4m")) {
+            return new Y4mEncoder(Files.newOutputStream(path), width, height, framesPerSecond);
+        } else if (name.endsWith(".rgb") || name.endsWith(".raw")) {
+            return new RawRgbEncoder(Files.newOutputStream(path), width, height);
+        } else {
+            return new PngSequenceEncoder(path, width, height);
+        }
+    }
+
+    //Getters for the frame size
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,11 @@
+package capture;
+
+/**
+ * The OverflowPolicy enum lists what a FrameCapture does with a frame when its queue is full,
+ * i.e. when the encoder has fallen behind the render loop.
+ */
+public enum OverflowPolicy {
+    DROP_NEWEST, //Skip the frame being captured, so the queued frames are kept
+    DROP_OLDEST, //Replace the oldest queued frame, so the most recent frames are kept
+    BLOCK //Wait for the encoder to free a slot, so no frame is lost but the render loop stalls (for offline capture)
+}
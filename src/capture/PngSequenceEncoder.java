@@ -0,0 +1,50 @@
+package capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+
+/**
+ * The PngSequenceEncoder class writes every frame to its own PNG file in a directory,
+ * named frame000000.png, frame000001.png and so on. PNG files are compressed, so this is the slowest
+ * encoder but gives frames that any image viewer opens.
+ */
+public class PngSequenceEncoder extends FrameEncoder {
+
+    private final Path directory;
+    private final BufferedImage image; //The frame being written, reused for every frame
+    private final int[] imagePixels; //The image's pixel array
+    private int frameIndex; //Number of the next frame
+
+    /**
+     * Constructor to create an encoder writing into a directory, which is created if it does not exist.
+     *
+     * @param directory The directory.
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @throws IOException if the directory cannot be created.
+     */
+    public PngSequenceEncoder(Path directory, int width, int height) throws IOException {
+        super(width, height);
+        this.directory = Files.createDirectories(directory);
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    @Override
+    public void encode(int[] pixels) throws IOException {
+        System.arraycopy(pixels, 0, imagePixels, 0, width * height);
+        Path file = directory.resolve(String.format("frame%06d.png", frameIndex++));
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    @Override
+    public void close() {
+        //Every frame is a complete file already
+    }
+}
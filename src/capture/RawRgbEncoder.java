@@ -0,0 +1,43 @@
+package capture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The RawRgbEncoder class writes frames as a headerless stream of 8 bit red, green and blue samples,
+ * which tools read given the frame size, e.g. ffmpeg -f rawvideo -pix_fmt rgb24 -s 960x540 -i frames.rgb.
+ */
+public class RawRgbEncoder extends FrameEncoder {
+
+    private final OutputStream out;
+    private final byte[] bytes; //The frame being written, reused for every frame
+
+    /**
+     * Constructor to create an encoder writing to a stream.
+     *
+     * @param out The stream, which is closed with the encoder.
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     */
+    public RawRgbEncoder(OutputStream out, int width, int height) {
+        super(width, height);
+        this.out = out;
+        this.bytes = new byte[width * height * 3];
+    }
+
+    @Override
+    public void encode(int[] pixels) throws IOException {
+        for (int i = 0, j = 0; i < width * height; i++, j += 3) {
+            int rgb = pixels[i];
+            bytes[j] = (byte) (rgb >> 16);
+            bytes[j + 1] = (byte) (rgb >> 8);
+            bytes[j + 2] = (byte) rgb;
+        }
+        out.write(bytes); //A whole frame per write, so the stream needs no buffer of its own
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
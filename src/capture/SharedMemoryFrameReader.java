@@ -0,0 +1,160 @@
+package capture;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The SharedMemoryFrameReader class reads the frames a SharedMemoryFrameTarget publishes, usually in another
+ * process. It takes no locks and never blocks the writer: a copy that the writer overwrote meanwhile is
+ * detected by the slot's sequence number and simply repeated with the newest frame.
+ *
+ * Usage: java -cp src capture.SharedMemoryFrameReader file [seconds]
+ * follows the frames for the given number of seconds (10 by default) and reports how many it read and missed.
+ */
+public class SharedMemoryFrameReader {
+
+    private final MappedByteBuffer memory;
+    private final int width;
+    private final int height;
+    private final int slotCount;
+    private final int slotBytes;
+    private final IntBuffer[] slotPixels; //Views of the pixels of every slot
+    private long tornReads; //Copies that were overwritten while being read
+
+    /**
+     * Constructor to map a file written by a SharedMemoryFrameTarget.
+     *
+     * @param path The file.
+     * @throws IOException if the file cannot be mapped or is not a shared frame file.
+     */
+    public SharedMemoryFrameReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < SharedMemoryFrameTarget.HEADER_BYTES) {
+                throw new IOException(path + " is not a shared frame file");
+            }
+            memory = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        memory.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (memory.getInt(0) != SharedMemoryFrameTarget.MAGIC) {
+            throw new IOException(path + " is not a shared frame file");
+        }
+        VarHandle.acquireFence(); //The header is complete once the magic is there
+        int version = memory.getInt(4);
+        if (version != SharedMemoryFrameTarget.VERSION) {
+            throw new IOException("Unsupported shared frame version " + version + " in " + path);
+        }
+        width = memory.getInt(SharedMemoryFrameTarget.WIDTH_OFFSET);
+        height = memory.getInt(SharedMemoryFrameTarget.HEIGHT_OFFSET);
+        slotCount = memory.getInt(SharedMemoryFrameTarget.SLOT_COUNT_OFFSET);
+        slotBytes = memory.getInt(SharedMemoryFrameTarget.SLOT_BYTES_OFFSET);
+        if (width <= 0 || height <= 0 || slotCount < 2 || slotBytes < SharedMemoryFrameTarget.SLOT_HEADER_BYTES + width * height * 4
+                || memory.capacity() < SharedMemoryFrameTarget.HEADER_BYTES + (long) slotCount * slotBytes) {
+            throw new IOException("Corrupt shared frame file " + path);
+        }
+
+        slotPixels = new IntBuffer[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int pixels = SharedMemoryFrameTarget.HEADER_BYTES + slot * slotBytes + SharedMemoryFrameTarget.SLOT_HEADER_BYTES;
+            slotPixels[slot] = memory.slice(pixels, width * height * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+    }
+
+    /**
+     * Returns the number of the newest complete frame, without reading it.
+     *
+     * @return The frame number, 0 if no frame has been written yet.
+     */
+    public long getLatestFrame() {
+        return (long) SharedMemoryFrameTarget.LONGS.getAcquire(memory, SharedMemoryFrameTarget.LATEST_OFFSET);
+    }
+
+    /**
+     * Copies the newest complete frame.
+     *
+     * @param pixels The array to copy the row-major 0xRRGGBB pixels into, at least width * height long.
+     * @return The number of the frame copied, 0 if no frame has been written yet.
+     */
+    public long readLatest(int[] pixels) {
+        while (true) {
+            long number = getLatestFrame();
+            if (number == 0) {
+                return 0;
+            }
+            int slot = (int) ((number - 1) % slotCount);
+            int sequenceOffset = SharedMemoryFrameTarget.HEADER_BYTES + slot * slotBytes + SharedMemoryFrameTarget.SEQUENCE_OFFSET;
+            long sequence = (long) SharedMemoryFrameTarget.LONGS.getAcquire(memory, sequenceOffset);
+            if (sequence != number * 2) {
+                continue; //The writer has already moved on to reuse the slot, so look for the newer frame
+            }
+
+            IntBuffer slotView = slotPixels[slot];
+            slotView.clear();
+            slotView.get(pixels, 0, width * height);
+
+            //The copy is whole if the writer did not start on the slot while it was being read
+            VarHandle.loadLoadFence();
+            if ((long) SharedMemoryFrameTarget.LONGS.getOpaque(memory, sequenceOffset) == sequence) {
+                return number;
+            }
+            tornReads++;
+        }
+    }
+
+    /**
+     * Follows the frames of a shared frame file and reports how many were read, missed and torn.
+     *
+     * @param args The file and optionally the number of seconds to follow it for.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java capture.SharedMemoryFrameReader file [seconds]");
+            return;
+        }
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+
+        SharedMemoryFrameReader reader = new SharedMemoryFrameReader(Paths.get(args[0]));
+        int[] pixels = new int[reader.getWidth() * reader.getHeight()];
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long last = reader.getLatestFrame();
+        long first = last;
+        long read = 0;
+        while (System.nanoTime() < end) {
+            if (reader.getLatestFrame() == last) {
+                Thread.onSpinWait();
+                continue;
+            }
+            last = reader.readLatest(pixels);
+            read++;
+        }
+        long missed = last - first - read;
+        System.out.printf("%dx%d in %d slots: read %d frames (%.1f fps), missed %d, %d torn copies repeated%n",
+                reader.getWidth(), reader.getHeight(), reader.getSlotCount(), read, read / seconds, missed, reader.getTornReads());
+    }
+
+    //Getters for the frame size and statistics
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public long getTornReads() {
+        return tornReads;
+    }
+}
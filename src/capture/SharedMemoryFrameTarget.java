@@ -0,0 +1,164 @@
+package capture;
+
+import core.FrameBuffer;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The SharedMemoryFrameTarget class publishes drawn frames in a memory-mapped file, e.g. under /dev/shm,
+ * where other processes on the same machine read them with no sockets, locks or encoding in between.
+ *
+ * The file holds a header followed by a ring of frame slots; each frame is written to the slot after the
+ * previous frame's, so a reader has the time of several frames to read one before it is overwritten.
+ * Every slot carries a sequence number that is odd while the slot is being written and twice the frame's
+ * number once it is complete (a seqlock): a reader reads the number, copies the pixels and reads the number
+ * again, and the copy is whole if the number was even and did not change. The writer never waits for readers.
+ *
+ * Layout, all integers little-endian:
+ * - Header of 64 bytes: magic "TSHM" (int at 0), version (int at 4), width (int at 8), height (int at 12),
+ *   slot count (int at 16), slot size in bytes (int at 20) and the number of the newest complete frame
+ *   (long at 32, 0 before the first, written after the frame's slot is complete).
+ * - Slot i at 64 + i * slot size: sequence number (long at 0), frame number (long at 8), System.nanoTime()
+ *   when written (long at 16), and from byte 64 the pixels as row-major 0xRRGGBB ints (B, G, R, 0 in memory).
+ *   Frame n (counting from 1) is written to slot (n - 1) % slot count.
+ *
+ * Only a single bulk copy into the slot remains per frame, as rasterizing straight into mapped memory would
+ * make every pixel write of the rasterizer a buffer access instead of an array store. The file is left in
+ * place when the engine exits, and its memory is unmapped once the target has been garbage collected.
+ */
+public class SharedMemoryFrameTarget {
+
+    static final int MAGIC = 0x4D485354; //"TSHM" in little-endian byte order
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_HEADER_BYTES = 64; //Keeps the pixels of every slot aligned to a cache line
+
+    //Offsets in the header
+    static final int WIDTH_OFFSET = 8;
+    static final int HEIGHT_OFFSET = 12;
+    static final int SLOT_COUNT_OFFSET = 16;
+    static final int SLOT_BYTES_OFFSET = 20;
+    static final int LATEST_OFFSET = 32;
+
+    //Offsets in a slot
+    static final int SEQUENCE_OFFSET = 0;
+    static final int FRAME_OFFSET = 8;
+    static final int TIME_OFFSET = 16;
+
+    //Ordered access to the longs of the mapped memory
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int width;
+    private final int height;
+    private final int slotCount;
+    private final int slotBytes;
+    private final MappedByteBuffer memory;
+    private final IntBuffer[] slotPixels; //Views of the pixels of every slot
+    private long frameNumber; //Number of the last frame written
+
+    /**
+     * Constructor to create (or overwrite) the shared file.
+     *
+     * @param path The file, e.g. /dev/shm/turquoise-frames to keep it in memory on Linux.
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @param slotCount The number of frame slots in the ring, at least 2.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public SharedMemoryFrameTarget(Path path, int width, int height, int slotCount) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive: " + width + "x" + height);
+        }
+        if (slotCount < 2) {
+            throw new IllegalArgumentException("At least 2 slots are needed: " + slotCount);
+        }
+        this.width = width;
+        this.height = height;
+        this.slotCount = slotCount;
+        this.slotBytes = SLOT_HEADER_BYTES + ((width * height * 4 + 63) & ~63);
+        long size = HEADER_BYTES + (long) slotCount * slotBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Ring of " + slotCount + " frames of " + width + "x" + height + " is too large to map");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); //The mapping outlives the channel
+        }
+        memory.order(ByteOrder.LITTLE_ENDIAN);
+        memory.putInt(0, 0); //Readers of an earlier run's file stop trusting it until the header is complete again
+        VarHandle.fullFence();
+
+        slotPixels = new IntBuffer[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int pixels = HEADER_BYTES + slot * slotBytes + SLOT_HEADER_BYTES;
+            slotPixels[slot] = memory.slice(pixels, width * height * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            LONGS.setRelease(memory, HEADER_BYTES + slot * slotBytes + SEQUENCE_OFFSET, 0L);
+        }
+
+        //Readers check the magic last, so the rest of the header is written first
+        memory.putInt(WIDTH_OFFSET, width);
+        memory.putInt(HEIGHT_OFFSET, height);
+        memory.putInt(SLOT_COUNT_OFFSET, slotCount);
+        memory.putInt(SLOT_BYTES_OFFSET, slotBytes);
+        LONGS.setRelease(memory, LATEST_OFFSET, 0L);
+        memory.putInt(4, VERSION);
+        VarHandle.releaseFence();
+        memory.putInt(0, MAGIC);
+    }
+
+    /**
+     * Writes a drawn frame into the next slot of the ring and makes it the newest frame.
+     * Called on the render thread.
+     *
+     * @param frameBuffer The frame, which must have the size the file was created with.
+     */
+    public void write(FrameBuffer frameBuffer) {
+        if (frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            throw new IllegalArgumentException("Frame of " + frameBuffer.getWidth() + "x" + frameBuffer.getHeight()
+                    + " does not match the shared size of " + width + "x" + height);
+        }
+        long number = ++frameNumber;
+        int slot = (int) ((number - 1) % slotCount);
+        int base = HEADER_BYTES + slot * slotBytes;
+
+        //Mark the slot as being written before any pixel changes, so readers copying it notice
+        LONGS.setOpaque(memory, base + SEQUENCE_OFFSET, number * 2 - 1);
+        VarHandle.storeStoreFence();
+
+        IntBuffer pixels = slotPixels[slot];
+        pixels.clear();
+        pixels.put(frameBuffer.getPixels(), 0, width * height);
+        memory.putLong(base + FRAME_OFFSET, number);
+        memory.putLong(base + TIME_OFFSET, System.nanoTime());
+
+        //Complete the slot, then announce it
+        LONGS.setRelease(memory, base + SEQUENCE_OFFSET, number * 2);
+        LONGS.setRelease(memory, LATEST_OFFSET, number);
+    }
+
+    //Getters for the frame size and progress
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+}
@@ -0,0 +1,87 @@
+package capture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Y4mEncoder class writes frames as an uncompressed YUV4MPEG2 video, which most video players and
+ * tools (e.g. ffmpeg, mpv) read directly.
+ *
+ * Pixels are converted to YCbCr with the BT.601 coefficients in limited range (16 to 235 for luma), and
+ * the colour is stored at half the resolution in both directions (4:2:0), each chroma sample being the
+ * average of a 2x2 block of pixels. Odd widths and heights repeat the last column or row.
+ */
+public class Y4mEncoder extends FrameEncoder {
+
+    private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final int chromaWidth;
+    private final int chromaHeight;
+    private final byte[] planes; //Y, Cb and Cr planes of the frame being written, reused for every frame
+
+    /**
+     * Constructor to create an encoder writing to a stream, starting with the stream header.
+     *
+     * @param out The stream, which is closed with the encoder.
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @param framesPerSecond The frame rate stored in the header.
+     * @throws IOException if the header cannot be written.
+     */
+    public Y4mEncoder(OutputStream out, int width, int height, int framesPerSecond) throws IOException {
+        super(width, height);
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+        }
+        this.out = out;
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+        this.planes = new byte[width * height + 2 * chromaWidth * chromaHeight];
+
+        String header = "YUV4MPEG2 W" + width + " H" + height + " F" + framesPerSecond + ":1 Ip A1:1 C420jpeg\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void encode(int[] pixels) throws IOException {
+        //Luma of every pixel
+        for (int i = 0; i < width * height; i++) {
+            int rgb = pixels[i];
+            int red = (rgb >> 16) & 0xFF;
+            int green = (rgb >> 8) & 0xFF;
+            int blue = rgb & 0xFF;
+            planes[i] = (byte) (((66 * red + 129 * green + 25 * blue + 128) >> 8) + 16);
+        }
+
+        //Chroma of every 2x2 block, from the block's average colour
+        int cbOffset = width * height;
+        int crOffset = cbOffset + chromaWidth * chromaHeight;
+        for (int y = 0; y < chromaHeight; y++) {
+            int row0 = y * 2 * width;
+            int row1 = Math.min(y * 2 + 1, height - 1) * width;
+            for (int x = 0; x < chromaWidth; x++) {
+                int x0 = x * 2;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int a = pixels[row0 + x0];
+                int b = pixels[row0 + x1];
+                int c = pixels[row1 + x0];
+                int d = pixels[row1 + x1];
+                int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+                planes[cbOffset + y * chromaWidth + x] = (byte) (((-38 * red - 74 * green + 112 * blue + 128) >> 8) + 128);
+                planes[crOffset + y * chromaWidth + x] = (byte) (((112 * red - 94 * green - 18 * blue + 128) >> 8) + 128);
+            }
+        }
+
+        out.write(FRAME_HEADER);
+        out.write(planes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
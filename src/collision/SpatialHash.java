@@ -0,0 +1,657 @@
+package collision;
+
+import core.RenderObject;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The SpatialHash class answers collision and proximity queries against the triangles of RenderObjects.
+ *
+ * Space is divided into a uniform grid of cubic cells, and every triangle is entered into each cell its
+ * bounding box overlaps. Only the cells that hold triangles are stored, in a hash table keyed by the cell's
+ * coordinates, so the grid is unbounded and costs memory in proportion to the geometry. A query first
+ * gathers the triangles of the cells around it (the broad phase), then tests each of them exactly (the
+ * narrow phase), so its cost depends on the geometry near it and not on the size of the scene.
+ *
+ * Triangles are copied in world space when an object is added. An object that moves must be updated with
+ * update(), which costs as much as removing and adding it again, so the hash suits static and rarely moving
+ * geometry best. Like the scene, it belongs to one thread: queries reuse internal buffers and do not allocate.
+ */
+public class SpatialHash {
+
+    private static final int MAX_RESOLVE_ITERATIONS = 4; //Times resolveSphere() pushes a sphere out before giving up
+    private static final float SEPARATION = 1e-4f; //Extra distance a resolved sphere is moved away from a triangle
+    private static final int COORDINATE_BITS = 21; //Bits of each cell coordinate in a cell key
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    private final float cellSize;
+    private final float inverseCellSize;
+
+    //Triangles by id, their corners packed 9 floats per triangle in world space
+    private float[] corners = new float[64 * 9];
+    private RenderObject[] owners = new RenderObject[64];
+    private int triangleEnd; //Ids at and above this have never been used
+    private int[] freeTriangles = new int[16]; //Ids released by removed objects
+    private int freeTriangleCount;
+    private final IdentityHashMap<RenderObject, int[]> objectTriangles = new IdentityHashMap<>(); //Ids of each object's triangles
+
+    //Hash table of cells: each bucket is a linked list of entries, each entry being one triangle in one cell
+    private int[] buckets = new int[256]; //First entry of each bucket (-1 for none), a power of two of them
+    private int bucketShift = 64 - 8; //Shift that leaves as many bits of a hash as there are buckets
+    private int[] entryTriangles = new int[256];
+    private long[] entryKeys = new long[256]; //Key of the cell each entry is in, to skip other cells sharing the bucket
+    private int[] entryNext = new int[256]; //Next entry of the bucket, or of the free list
+    private int entryEnd; //Entries at and above this have never been used
+    private int freeEntry = -1; //First entry of the free list
+    private int entryCount; //Entries in use
+
+    //Range of cell coordinates triangles have been entered into since the hash was last empty, which bounds
+    //the walk of raycast() (min above max while empty)
+    private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+
+    //Query results, reused by every query
+    private int[] candidates = new int[64];
+    private int candidateCount;
+    private int[] stamps = new int[64]; //Query in which each triangle was last gathered, so it is gathered once
+    private int stamp;
+
+    //Closest point found by closestPoint()
+    private float closestX;
+    private float closestY;
+    private float closestZ;
+
+    /**
+     * Constructor to create an empty spatial hash.
+     *
+     * @param cellSize The edge length of the cells. About the size of the spheres queried works well:
+     *                 much smaller cells enter every triangle into many cells, much larger ones gather
+     *                 many triangles that are too far away.
+     */
+    public SpatialHash(float cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1 / cellSize;
+        Arrays.fill(buckets, -1);
+    }
+
+    /**
+     * Adds an object's triangles at the object's current transform.
+     *
+     * @param object The object.
+     * @throws IllegalStateException if the object was already added.
+     */
+    public void add(RenderObject object) {
+        if (objectTriangles.containsKey(object)) {
+            throw new IllegalStateException("Object already in the spatial hash: " + object.getName());
+        }
+        Triangle[] triangles = object.loadTriangles();
+        int[] ids = new int[triangles.length];
+        for (int index = 0; index < triangles.length; index++) {
+            int id = allocateTriangle();
+            Triangle t = triangles[index];
+            int base = id * 9;
+            corners[base] = t.v1.x;
+            corners[base + 1] = t.v1.y;
+            corners[base + 2] = t.v1.z;
+            corners[base + 3] = t.v2.x;
+            corners[base + 4] = t.v2.y;
+            corners[base + 5] = t.v2.z;
+            corners[base + 6] = t.v3.x;
+            corners[base + 7] = t.v3.y;
+            corners[base + 8] = t.v3.z;
+            owners[id] = object;
+            insertTriangle(id);
+            ids[index] = id;
+        }
+        objectTriangles.put(object, ids);
+    }
+
+    /**
+     * Removes an object's triangles.
+     *
+     * @param object The object.
+     * @return true if the object was added before.
+     */
+    public boolean remove(RenderObject object) {
+        int[] ids = objectTriangles.remove(object);
+        if (ids == null) {
+            return false;
+        }
+        for (int id : ids) {
+            removeTriangle(id);
+            owners[id] = null;
+            if (freeTriangleCount == freeTriangles.length) {
+                freeTriangles = Arrays.copyOf(freeTriangles, freeTriangleCount * 2);
+            }
+            freeTriangles[freeTriangleCount++] = id;
+        }
+        return true;
+    }
+
+    /**
+     * Moves an object's triangles to its current transform, after it was moved, rotated or scaled.
+     *
+     * @param object The object, which must have been added.
+     * @throws IllegalStateException if the object was not added.
+     */
+    public void update(RenderObject object) {
+        if (!remove(object)) {
+            throw new IllegalStateException("Object not in the spatial hash: " + object.getName());
+        }
+        add(object);
+    }
+
+    /**
+     * Gathers the triangles entered into the cells a box overlaps: the broad phase of every query.
+     * The triangles may lie outside the box, but every triangle that intersects it is gathered.
+     *
+     * @param minX The minimum x coordinate of the box.
+     * @param minY The minimum y coordinate of the box.
+     * @param minZ The minimum z coordinate of the box.
+     * @param maxX The maximum x coordinate of the box.
+     * @param maxY The maximum y coordinate of the box.
+     * @param maxZ The maximum z coordinate of the box.
+     * @return The number of triangles gathered, read with getCandidate() until the next query.
+     */
+    public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        beginQuery();
+        int x0 = cell(minX), x1 = cell(maxX);
+        int y0 = cell(minY), y1 = cell(maxY);
+        int z0 = cell(minZ), z1 = cell(maxZ);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    gatherCell(x, y, z);
+                }
+            }
+        }
+        return candidateCount;
+    }
+
+    /**
+     * Tests whether a sphere intersects any triangle.
+     *
+     * @param centre The centre of the sphere.
+     * @param radius The radius of the sphere.
+     * @return true if a triangle lies within the radius of the centre.
+     */
+    public boolean intersectsSphere(Vertex centre, float radius) {
+        int count = queryBox(centre.x - radius, centre.y - radius, centre.z - radius, centre.x + radius, centre.y + radius, centre.z + radius);
+        float radiusSqrd = radius * radius;
+        for (int index = 0; index < count; index++) {
+            if (closestPoint(candidates[index], centre.x, centre.y, centre.z) < radiusSqrd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pushes a sphere out of the triangles it intersects, e.g. a player's body after a move. Each iteration
+     * moves the centre out of the deepest intersection, along the direction from the nearest point of the
+     * triangle to the centre, so a sphere sliding along a wall keeps the part of its move along the wall.
+     * A sphere wedged between triangles may still intersect one after the last iteration, which callers
+     * moving a body can check with intersectsSphere() to undo the move.
+     *
+     * @param centre The centre of the sphere, moved in place.
+     * @param radius The radius of the sphere.
+     * @return true if the sphere intersected a triangle and was moved.
+     */
+    public boolean resolveSphere(Vertex centre, float radius) {
+        boolean moved = false;
+        float radiusSqrd = radius * radius;
+        for (int iteration = 0; iteration < MAX_RESOLVE_ITERATIONS; iteration++) {
+            int count = queryBox(centre.x - radius, centre.y - radius, centre.z - radius, centre.x + radius, centre.y + radius, centre.z + radius);
+            float deepest = 0;
+            float pushX = 0, pushY = 0, pushZ = 0;
+            for (int index = 0; index < count; index++) {
+                int id = candidates[index];
+                float distanceSqrd = closestPoint(id, centre.x, centre.y, centre.z);
+                if (distanceSqrd >= radiusSqrd) {
+                    continue;
+                }
+                float distance = (float) Math.sqrt(distanceSqrd);
+                float depth = radius - distance;
+                if (depth <= deepest) {
+                    continue;
+                }
+                deepest = depth;
+                if (distance > 0) {
+                    pushX = (centre.x - closestX) / distance;
+                    pushY = (centre.y - closestY) / distance;
+                    pushZ = (centre.z - closestZ) / distance;
+                } else {
+                    //The centre lies on the triangle, so push it out along the triangle's normal
+                    int base = id * 9;
+                    float ax = corners[base + 3] - corners[base], ay = corners[base + 4] - corners[base + 1], az = corners[base + 5] - corners[base + 2];
+                    float bx = corners[base + 6] - corners[base], by = corners[base + 7] - corners[base + 1], bz = corners[base + 8] - corners[base + 2];
+                    float nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+                    float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                    if (length == 0) {
+                        continue; //Degenerate triangle
+                    }
+                    pushX = nx / length;
+                    pushY = ny / length;
+                    pushZ = nz / length;
+                }
+            }
+            if (deepest == 0) {
+                break;
+            }
+            centre.x += pushX * (deepest + SEPARATION);
+            centre.y += pushY * (deepest + SEPARATION);
+            centre.z += pushZ * (deepest + SEPARATION);
+            moved = true;
+        }
+        return moved;
+    }
+
+    /**
+     * Finds the nearest triangle hit by a ray, walking the cells along the ray in order so the search stops
+     * at the first cell containing a hit.
+     *
+     * @param origin The start of the ray.
+     * @param directionX The x component of the ray's direction (need not be normalized).
+     * @param directionY The y component of the ray's direction.
+     * @param directionZ The z component of the ray's direction.
+     * @param maxDistance The length of the ray, in multiples of the direction's length. It may be positive
+     *                    infinity to find the nearest hit at any distance, as the walk stops once the ray has
+     *                    left the range of cells that hold triangles.
+     * @return The distance to the hit in multiples of the direction's length, or positive infinity if nothing is hit.
+     */
+    public float raycast(Vertex origin, float directionX, float directionY, float directionZ, float maxDistance) {
+        beginQuery();
+        int x = cell(origin.x), y = cell(origin.y), z = cell(origin.z);
+        int stepX = directionX > 0 ? 1 : -1, stepY = directionY > 0 ? 1 : -1, stepZ = directionZ > 0 ? 1 : -1;
+
+        //Distance along the ray to the next cell boundary on each axis, and between boundaries
+        float nextX = boundaryDistance(origin.x, directionX, x);
+        float nextY = boundaryDistance(origin.y, directionY, y);
+        float nextZ = boundaryDistance(origin.z, directionZ, z);
+        float deltaX = directionX != 0 ? cellSize / Math.abs(directionX) : Float.POSITIVE_INFINITY;
+        float deltaY = directionY != 0 ? cellSize / Math.abs(directionY) : Float.POSITIVE_INFINITY;
+        float deltaZ = directionZ != 0 ? cellSize / Math.abs(directionZ) : Float.POSITIVE_INFINITY;
+
+        float nearest = Float.POSITIVE_INFINITY;
+        float entered = 0; //Distance at which the ray entered the current cell
+        while (entered <= maxDistance) {
+            //Beyond the occupied range on an axis it moves away from, the ray cannot reach another triangle
+            if ((stepX > 0 ? x > maxCellX : x < minCellX) || (stepY > 0 ? y > maxCellY : y < minCellY)
+                    || (stepZ > 0 ? z > maxCellZ : z < minCellZ)) {
+                break;
+            }
+            int first = candidateCount;
+            gatherCell(x, y, z);
+            for (int index = first; index < candidateCount; index++) {
+                float distance = intersectRay(candidates[index], origin, directionX, directionY, directionZ);
+                if (distance <= maxDistance && distance < nearest) {
+                    nearest = distance;
+                }
+            }
+
+            //A hit before the ray leaves this cell cannot be beaten by a triangle in a later cell
+            float exit = Math.min(nextX, Math.min(nextY, nextZ));
+            if (nearest <= exit) {
+                break;
+            }
+            entered = exit;
+            if (nextX == exit) {
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY == exit) {
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Finds the objects with a triangle within a radius of a point, e.g. for proximity triggers.
+     *
+     * @param centre The point.
+     * @param radius The radius.
+     * @param out The list the objects are added to (each once); objects already in it are not added again.
+     * @return The number of objects added.
+     */
+    public int findObjectsNear(Vertex centre, float radius, List<RenderObject> out) {
+        int count = queryBox(centre.x - radius, centre.y - radius, centre.z - radius, centre.x + radius, centre.y + radius, centre.z + radius);
+        float radiusSqrd = radius * radius;
+        int added = 0;
+        for (int index = 0; index < count; index++) {
+            int id = candidates[index];
+            RenderObject owner = owners[id];
+            if (!out.contains(owner) && closestPoint(id, centre.x, centre.y, centre.z) < radiusSqrd) {
+                out.add(owner);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Finds the point of a triangle closest to a point, storing it in closestX, closestY and closestZ
+     * (Ericson, Real-Time Collision Detection, 5.1.5).
+     *
+     * @return The squared distance between the points.
+     */
+    private float closestPoint(int id, float px, float py, float pz) {
+        int base = id * 9;
+        float ax = corners[base], ay = corners[base + 1], az = corners[base + 2];
+        float abx = corners[base + 3] - ax, aby = corners[base + 4] - ay, abz = corners[base + 5] - az;
+        float acx = corners[base + 6] - ax, acy = corners[base + 7] - ay, acz = corners[base + 8] - az;
+
+        //In the region of corner a
+        float apx = px - ax, apy = py - ay, apz = pz - az;
+        float d1 = abx * apx + aby * apy + abz * apz;
+        float d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0 && d2 <= 0) {
+            return setClosest(ax, ay, az, px, py, pz);
+        }
+
+        //In the region of corner b
+        float bpx = px - corners[base + 3], bpy = py - corners[base + 4], bpz = pz - corners[base + 5];
+        float d3 = abx * bpx + aby * bpy + abz * bpz;
+        float d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0 && d4 <= d3) {
+            return setClosest(corners[base + 3], corners[base + 4], corners[base + 5], px, py, pz);
+        }
+
+        //On edge ab
+        float vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            float t = d1 / (d1 - d3);
+            return setClosest(ax + abx * t, ay + aby * t, az + abz * t, px, py, pz);
+        }
+
+        //In the region of corner c
+        float cpx = px - corners[base + 6], cpy = py - corners[base + 7], cpz = pz - corners[base + 8];
+        float d5 = abx * cpx + aby * cpy + abz * cpz;
+        float d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0 && d5 <= d6) {
+            return setClosest(corners[base + 6], corners[base + 7], corners[base + 8], px, py, pz);
+        }
+
+        //On edge ac
+        float vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            float t = d2 / (d2 - d6);
+            return setClosest(ax + acx * t, ay + acy * t, az + acz * t, px, py, pz);
+        }
+
+        //On edge bc
+        float va = d3 * d6 - d5 * d4;
+        if (va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0) {
+            float t = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            float bx = corners[base + 3], by = corners[base + 4], bz = corners[base + 5];
+            return setClosest(bx + (corners[base + 6] - bx) * t, by + (corners[base + 7] - by) * t, bz + (corners[base + 8] - bz) * t, px, py, pz);
+        }
+
+        //Inside the face
+        float denominator = va + vb + vc;
+        if (denominator == 0) {
+            return setClosest(ax, ay, az, px, py, pz); //Degenerate triangle
+        }
+        float v = vb / denominator;
+        float w = vc / denominator;
+        return setClosest(ax + abx * v + acx * w, ay + aby * v + acy * w, az + abz * v + acz * w, px, py, pz);
+    }
+
+    //Stores the closest point and returns its squared distance from p
+    private float setClosest(float x, float y, float z, float px, float py, float pz) {
+        closestX = x;
+        closestY = y;
+        closestZ = z;
+        return (px - x) * (px - x) + (py - y) * (py - y) + (pz - z) * (pz - z);
+    }
+
+    /**
+     * Intersects a ray with a triangle (Moller-Trumbore), hitting either side.
+     *
+     * @return The distance along the ray in multiples of the direction's length, or positive infinity if it misses.
+     */
+    private float intersectRay(int id, Vertex origin, float dx, float dy, float dz) {
+        int base = id * 9;
+        float ax = corners[base], ay = corners[base + 1], az = corners[base + 2];
+        float e1x = corners[base + 3] - ax, e1y = corners[base + 4] - ay, e1z = corners[base + 5] - az;
+        float e2x = corners[base + 6] - ax, e2y = corners[base + 7] - ay, e2z = corners[base + 8] - az;
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float determinant = e1x * px + e1y * py + e1z * pz;
+        if (determinant == 0) {
+            return Float.POSITIVE_INFINITY; //Parallel to the triangle
+        }
+        float inverse = 1 / determinant;
+        float tx = origin.x - ax, ty = origin.y - ay, tz = origin.z - az;
+        float u = (tx * px + ty * py + tz * pz) * inverse;
+        if (u < 0 || u > 1) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx * e1y - ty * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float distance = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+        return distance >= 0 ? distance : Float.POSITIVE_INFINITY;
+    }
+
+    //Distance along a ray from a coordinate to the boundary of its cell in the ray's direction
+    private float boundaryDistance(float coordinate, float direction, int cell) {
+        if (direction > 0) {
+            return ((cell + 1) * cellSize - coordinate) / direction;
+        } else if (direction < 0) {
+            return (cell * cellSize - coordinate) / direction;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Starts a new query, so every triangle can be gathered once more.
+     */
+    private void beginQuery() {
+        candidateCount = 0;
+        stamp++;
+        if (stamp == 0) {
+            Arrays.fill(stamps, 0); //Wrapped around, so old stamps could match again
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Adds the triangles of a cell that were not gathered yet in this query to the candidates.
+     */
+    private void gatherCell(int x, int y, int z) {
+        long key = key(x, y, z);
+        for (int entry = buckets[bucket(key)]; entry >= 0; entry = entryNext[entry]) {
+            int id = entryTriangles[entry];
+            if (entryKeys[entry] != key || stamps[id] == stamp) {
+                continue;
+            }
+            stamps[id] = stamp;
+            if (candidateCount == candidates.length) {
+                candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            }
+            candidates[candidateCount++] = id;
+        }
+    }
+
+    /**
+     * Enters a triangle into every cell its bounding box overlaps.
+     */
+    private void insertTriangle(int id) {
+        int base = id * 9;
+        int x0 = cell(Math.min(corners[base], Math.min(corners[base + 3], corners[base + 6])));
+        int x1 = cell(Math.max(corners[base], Math.max(corners[base + 3], corners[base + 6])));
+        int y0 = cell(Math.min(corners[base + 1], Math.min(corners[base + 4], corners[base + 7])));
+        int y1 = cell(Math.max(corners[base + 1], Math.max(corners[base + 4], corners[base + 7])));
+        int z0 = cell(Math.min(corners[base + 2], Math.min(corners[base + 5], corners[base + 8])));
+        int z1 = cell(Math.max(corners[base + 2], Math.max(corners[base + 5], corners[base + 8])));
+        minCellX = Math.min(minCellX, x0);
+        minCellY = Math.min(minCellY, y0);
+        minCellZ = Math.min(minCellZ, z0);
+        maxCellX = Math.max(maxCellX, x1);
+        maxCellY = Math.max(maxCellY, y1);
+        maxCellZ = Math.max(maxCellZ, z1);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    long key = key(x, y, z);
+                    int entry = allocateEntry();
+                    entryTriangles[entry] = id;
+                    entryKeys[entry] = key;
+                    int bucket = bucket(key);
+                    entryNext[entry] = buckets[bucket];
+                    buckets[bucket] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a triangle's entries from the cells its bounding box overlaps.
+     */
+    private void removeTriangle(int id) {
+        int base = id * 9;
+        int x0 = cell(Math.min(corners[base], Math.min(corners[base + 3], corners[base + 6])));
+        int x1 = cell(Math.max(corners[base], Math.max(corners[base + 3], corners[base + 6])));
+        int y0 = cell(Math.min(corners[base + 1], Math.min(corners[base + 4], corners[base + 7])));
+        int y1 = cell(Math.max(corners[base + 1], Math.max(corners[base + 4], corners[base + 7])));
+        int z0 = cell(Math.min(corners[base + 2], Math.min(corners[base + 5], corners[base + 8])));
+        int z1 = cell(Math.max(corners[base + 2], Math.max(corners[base + 5], corners[base + 8])));
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    long key = key(x, y, z);
+                    int bucket = bucket(key);
+                    int previous = -1;
+                    for (int entry = buckets[bucket]; entry >= 0; previous = entry, entry = entryNext[entry]) {
+                        if (entryTriangles[entry] == id && entryKeys[entry] == key) {
+                            if (previous < 0) {
+                                buckets[bucket] = entryNext[entry];
+                            } else {
+                                entryNext[previous] = entryNext[entry];
+                            }
+                            entryNext[entry] = freeEntry;
+                            freeEntry = entry;
+                            entryCount--;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        if (entryCount == 0) {
+            minCellX = minCellY = minCellZ = Integer.MAX_VALUE;
+            maxCellX = maxCellY = maxCellZ = Integer.MIN_VALUE;
+        }
+    }
+
+    //Takes a triangle id from the free list, or a new one
+    private int allocateTriangle() {
+        if (freeTriangleCount > 0) {
+            return freeTriangles[--freeTriangleCount];
+        }
+        if (triangleEnd == owners.length) {
+            int capacity = owners.length * 2;
+            owners = Arrays.copyOf(owners, capacity);
+            corners = Arrays.copyOf(corners, capacity * 9);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+        return triangleEnd++;
+    }
+
+    //Takes an entry from the free list, or a new one, growing the table once it holds twice as many entries as buckets
+    private int allocateEntry() {
+        entryCount++;
+        if (entryCount > buckets.length * 2) {
+            rehash(buckets.length * 2);
+        }
+        if (freeEntry >= 0) {
+            int entry = freeEntry;
+            freeEntry = entryNext[entry];
+            return entry;
+        }
+        if (entryEnd == entryTriangles.length) {
+            int capacity = entryTriangles.length * 2;
+            entryTriangles = Arrays.copyOf(entryTriangles, capacity);
+            entryKeys = Arrays.copyOf(entryKeys, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        return entryEnd++;
+    }
+
+    /**
+     * Grows the bucket array and relinks every entry in use into its new bucket.
+     */
+    private void rehash(int bucketCount) {
+        //Mark the free entries, so they are not relinked
+        boolean[] free = new boolean[entryEnd];
+        for (int entry = freeEntry; entry >= 0; entry = entryNext[entry]) {
+            free[entry] = true;
+        }
+        buckets = new int[bucketCount];
+        bucketShift = 64 - Integer.numberOfTrailingZeros(bucketCount);
+        Arrays.fill(buckets, -1);
+        for (int entry = 0; entry < entryEnd; entry++) {
+            if (!free[entry]) {
+                int bucket = bucket(entryKeys[entry]);
+                entryNext[entry] = buckets[bucket];
+                buckets[bucket] = entry;
+            }
+        }
+
+        //Chain the free entries again
+        freeEntry = -1;
+        for (int entry = entryEnd - 1; entry >= 0; entry--) {
+            if (free[entry]) {
+                entryNext[entry] = freeEntry;
+                freeEntry = entry;
+            }
+        }
+    }
+
+    //Cell coordinate of a world coordinate
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate * inverseCellSize);
+    }
+
+    //Packs cell coordinates into a key, 21 bits each
+    private static long key(int x, int y, int z) {
+        return ((x & COORDINATE_MASK) << (2 * COORDINATE_BITS)) | ((y & COORDINATE_MASK) << COORDINATE_BITS) | (z & COORDINATE_MASK);
+    }
+
+    //Bucket of a cell key: the top bits of the key multiplied by a large odd constant, so neighbouring cells spread over the table
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> bucketShift);
+    }
+
+    //Getters for the query results and the hash's contents
+    public int getCandidate(int index) {
+        return candidates[index];
+    }
+
+    public RenderObject getOwner(int triangle) {
+        return owners[triangle];
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public int getTriangleCount() {
+        return triangleEnd - freeTriangleCount;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+}
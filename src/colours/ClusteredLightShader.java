@@ -0,0 +1,95 @@
+package colours;
+
+import java.awt.Color;
+import lights.LightClusters;
+import objects.Triangle;
+
+/**
+ * The ClusteredLightShader class lights a triangle with the point and directional lights of a LightClusters grid.
+ * Only the point lights assigned to the cluster of the triangle's centre are evaluated, so scenes with hundreds
+ * of small lights cost about as much to shade as scenes with a few.
+ */
+public class ClusteredLightShader extends ColourShader {
+
+    //The base colour of the object
+    private Color colour;
+
+    //The lights, assigned to their clusters by the scene every frame
+    private LightClusters lights;
+
+    //Light reaching every triangle regardless of the lights (0 to 1)
+    private float ambient;
+
+    //Reused for accumulating the light of a triangle, as the scene shades from a single thread
+    private final float[] light = new float[3];
+
+    /**
+     * Constructor to initialize the shader with a base colour, the lights and a default ambient term.
+     *
+     * @param colour The base colour of the object.
+     * @param lights The lights, which must also be set on the scene so they are assigned every frame.
+     */
+    public ClusteredLightShader(Color colour, LightClusters lights) {
+        this(colour, lights, 0.1f);
+    }
+
+    /**
+     * Constructor to initialize the shader with a base colour, the lights and an ambient term.
+     *
+     * @param colour The base colour of the object.
+     * @param lights The lights, which must also be set on the scene so they are assigned every frame.
+     * @param ambient The light reaching every triangle (0 to 1).
+     */
+    public ClusteredLightShader(Color colour, LightClusters lights, float ambient) {
+        this.colour = colour;
+        this.lights = lights;
+        this.ambient = ambient;
+    }
+
+    /**
+     * Shades the triangle with the lights of its cluster.
+     *
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle.
+     */
+    @Override
+    public Color shadeBasedOnTriangle(Triangle triangle) {
+        return new Color(shadeRGB(triangle), true);
+    }
+
+    /**
+     * Shades the triangle like shadeBasedOnTriangle(), returning the colour as a packed RGB value.
+     * The centre and normal are calculated in local variables, so no objects are allocated.
+     *
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as a packed ARGB value.
+     */
+    @Override
+    public int shadeRGB(Triangle triangle) {
+        //Average the triangle's vertices into a single point
+        float centreX = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f;
+        float centreY = (triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f;
+        float centreZ = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f;
+
+        //The normal is the cross product of two edges
+        float ax = triangle.v2.x - triangle.v1.x;
+        float ay = triangle.v2.y - triangle.v1.y;
+        float az = triangle.v2.z - triangle.v1.z;
+        float bx = triangle.v3.x - triangle.v1.x;
+        float by = triangle.v3.y - triangle.v1.y;
+        float bz = triangle.v3.z - triangle.v1.z;
+        float normalX = ay * bz - az * by;
+        float normalY = az * bx - ax * bz;
+        float normalZ = ax * by - ay * bx;
+
+        light[0] = ambient;
+        light[1] = ambient;
+        light[2] = ambient;
+        lights.illuminate(centreX, centreY, centreZ, normalX, normalY, normalZ, light);
+
+        int red = capRGB(Math.round(light[0] * colour.getRed()));
+        int green = capRGB(Math.round(light[1] * colour.getGreen()));
+        int blue = capRGB(Math.round(light[2] * colour.getBlue()));
+        return packRGB(red, green, blue);
+    }
+}
@@ -20,6 +20,30 @@ public abstract class ColourShader {
      */
     public abstract Color shadeBasedOnTriangle(Triangle triangle);
 
+    /**
+     * Shades the triangle like shadeBasedOnTriangle(), but returns the colour packed into an int
+     * in the same format as Color.getRGB(). The scene calls this every frame for every triangle,
+     * so shaders should override it to compute the colour without allocating a Color object.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as a packed ARGB value.
+     */
+    public int shadeRGB(Triangle triangle) {
+        return shadeBasedOnTriangle(triangle).getRGB();
+    }
+
+    /**
+     * Packs red, green and blue components into an int in the same format as Color.getRGB().
+     * 
+     * @param red The red component (0 to 255).
+     * @param green The green component (0 to 255).
+     * @param blue The blue component (0 to 255).
+     * @return The packed opaque ARGB value.
+     */
+    public static int packRGB(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
     /**
      * Sigmoid function to normalize the input value `x` for shading purposes.
      * This is used to smoothly transition values, commonly in shading and lighting.
@@ -86,4 +110,5 @@ public abstract class ColourShader {
         Vertex avgVertex = Vertex.divide(Vertex.add(Vertex.add(triangle.v1, triangle.v2), triangle.v3), 3.0f);
         return avgVertex;
     }
+
 }
@@ -1,7 +1,6 @@
 package colours;
 import java.awt.Color;
 import objects.Triangle;
-import objects.Vertex;
 
 /**
  * HorizontalShader is a ColourShader that applies a shadow effect based on the x-axis.
@@ -34,24 +33,37 @@ public class HorizontalShader extends ColourShader {
      */
     @Override
     public Color shadeBasedOnTriangle(Triangle triangle) {
+        return new Color(shadeRGB(triangle), true);
+    }
+
+    /**
+     * Shades the triangle like shadeBasedOnTriangle(), returning the colour as a packed RGB value.
+     * The average position is calculated in local variables, so no objects are allocated.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as a packed ARGB value.
+     */
+    @Override
+    public int shadeRGB(Triangle triangle) {
         //Average the triangle's vertices into a single point to apply the shading
-        Vertex tV = averageTriangleAsVertex(triangle);
+        float averageX = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f;
+        float averageZ = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f;
 
         //Calculate a value based on the x and z position to determine the shading effect
-        float axisValue = (tV.x + (-tV.z / 2)) / 1.5f;
-
-        //Apply the shading to the RGB components based on the axis value
-        int red = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getRed()));
-        int green = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getGreen()));
-        int blue = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getBlue()));
+        float axisValue = (averageX + (-averageZ / 2)) / 1.5f;
 
         //If the triangle is not on the negative x-axis, return the base colour without shading
         if (axisValue > axisAdjust) {
-            return colour;
+            return colour.getRGB();
         }
 
+        //Apply the shading to the RGB components based on the axis value
+        float shadow = newShadow(inputMult * (axisValue - axisAdjust));
+        int red = capRGB(Math.round(shadow * colour.getRed()));
+        int green = capRGB(Math.round(shadow * colour.getGreen()));
+        int blue = capRGB(Math.round(shadow * colour.getBlue()));
+
         //Return the final shaded colour based on the calculated RGB values
-        Color finalColour = new Color(red, green, blue);
-        return finalColour;
+        return packRGB(red, green, blue);
     }
 }
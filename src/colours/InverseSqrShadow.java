@@ -43,19 +43,32 @@ public class InverseSqrShadow extends ColourShader {
      */
     @Override
     public Color shadeBasedOnTriangle(Triangle triangle) {
-        //Average the triangle's vertices into a single point for shading calculation
-        Vertex tV = averageTriangleAsVertex(triangle);
+        return new Color(shadeRGB(triangle), true);
+    }
 
-        //Calculate the distance from the triangle to the camera
-        Vertex diff = Vertex.difference(tV, scene.getCamPos());
+    /**
+     * Shades the triangle like shadeBasedOnTriangle(), returning the colour as a packed RGB value.
+     * The distance to the camera is calculated in local variables, so no objects are allocated.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as a packed ARGB value.
+     */
+    @Override
+    public int shadeRGB(Triangle triangle) {
+        //Average the triangle's vertices into a single point and take its offset from the camera
+        Vertex camPos = scene.getCamPos();
+        float diffX = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f - camPos.x;
+        float diffY = (triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f - camPos.y;
+        float diffZ = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f - camPos.z;
+        float distance = (float) Math.sqrt(diffX * diffX + diffY * diffY + diffZ * diffZ);
 
         //Adjust the RGB values based on the inverse square of the distance and shaderFactor
-        int red = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getRed());
-        int green = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getGreen());
-        int blue = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getBlue());
+        float falloff = inverseSquare(distance * shaderFactor);
+        int red = Math.round(falloff * colour.getRed());
+        int green = Math.round(falloff * colour.getGreen());
+        int blue = Math.round(falloff * colour.getBlue());
 
         //Return the final shaded colour
-        Color finalColour = new Color(red, green, blue);
-        return finalColour;
+        return packRGB(red, green, blue);
     }
 }
@@ -33,4 +33,15 @@ public class NonShadow extends ColourShader {
         //Return the base colour without applying any shading logic
         return colour;
     }
+
+    /**
+     * Returns the base colour of the object as a packed RGB value.
+     * 
+     * @param triangle The triangle being shaded (unused in this implementation).
+     * @return The base colour of the object as a packed ARGB value.
+     */
+    @Override
+    public int shadeRGB(Triangle triangle) {
+        return colour.getRGB();
+    }
 }
@@ -0,0 +1,401 @@
+package core;
+
+import colours.ColourShader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The BspTree class is a binary space partitioning tree over the triangles of static objects, built once,
+ * from which the exact back to front (painter's) order for any camera position is read in linear time.
+ *
+ * Every node holds a splitting plane taken from one of its triangles, the triangles lying in that plane,
+ * and two subtrees for the triangles in front of and behind it. Triangles crossing a plane are split into
+ * fragments on either side, so the tree's fragments may outnumber the objects' triangles. Drawing the subtree
+ * on the far side of a node's plane, then the node's own fragments, then the subtree on the camera's side
+ * never draws a fragment over one in front of it.
+ *
+ * The empty subtrees are the convex regions of space the tree divides the scene into, called gaps here.
+ * A scene draws a moving triangle when the traversal reaches the gap containing it, so that the static
+ * geometry is ordered correctly around it too.
+ *
+ * Nodes are stored as parallel arrays. A child index is either a node (0 or more) or a gap g, stored as -(g + 1).
+ */
+public class BspTree {
+
+    private static final float PLANE_EPSILON = 1e-4f; //Distance within which a point counts as lying in a plane
+    private static final int SPLITTER_CANDIDATES = 16; //Triangles tried as the splitting plane of a node
+    private static final int SPLIT_COST = 8; //Weight of a split against an unbalanced split when choosing the plane
+
+    private final RenderObject[] objects; //Objects the tree was built from
+
+    //Fragments, grouped by the node they lie in
+    private final Triangle[] fragments;
+    private final int[] fragmentObjects; //Index of the object each fragment comes from
+
+    //Nodes, as parallel arrays
+    private final int nodeCount;
+    private final float[] planeX; //Plane normal and distance from the origin (a point p lies in front if n.p > d)
+    private final float[] planeY;
+    private final float[] planeZ;
+    private final float[] planeD;
+    private final int[] front;
+    private final int[] back;
+    private final int[] fragmentStarts;
+    private final int[] fragmentCounts;
+    private final int depth; //Number of nodes on the longest path from the root
+
+    private final int[] stack; //Traversal stack, reused by every traversal
+
+    /**
+     * Triangles waiting to become a subtree during the build.
+     */
+    private static final class Pending {
+        final ArrayList<Triangle> triangles;
+        final ArrayList<Integer> sources; //Object index of each triangle
+        final int parent; //Node whose child the subtree becomes (-1 for the root)
+        final boolean isFront; //Whether it is the front child
+        final int depth;
+
+        Pending(ArrayList<Triangle> triangles, ArrayList<Integer> sources, int parent, boolean isFront, int depth) {
+            this.triangles = triangles;
+            this.sources = sources;
+            this.parent = parent;
+            this.isFront = isFront;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Constructor for a tree assembled by build().
+     */
+    private BspTree(RenderObject[] objects, ArrayList<Triangle> fragments, ArrayList<Integer> fragmentObjects,
+                    ArrayList<float[]> planes, ArrayList<int[]> links, int depth) {
+        this.objects = objects;
+        this.fragments = fragments.toArray(new Triangle[0]);
+        this.fragmentObjects = new int[fragmentObjects.size()];
+        for (int i = 0; i < this.fragmentObjects.length; i++) {
+            this.fragmentObjects[i] = fragmentObjects.get(i);
+        }
+        nodeCount = planes.size();
+        planeX = new float[nodeCount];
+        planeY = new float[nodeCount];
+        planeZ = new float[nodeCount];
+        planeD = new float[nodeCount];
+        front = new int[nodeCount];
+        back = new int[nodeCount];
+        fragmentStarts = new int[nodeCount];
+        fragmentCounts = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            float[] plane = planes.get(node);
+            int[] link = links.get(node);
+            planeX[node] = plane[0];
+            planeY[node] = plane[1];
+            planeZ[node] = plane[2];
+            planeD[node] = plane[3];
+            front[node] = link[0];
+            back[node] = link[1];
+            fragmentStarts[node] = link[2];
+            fragmentCounts[node] = link[3];
+        }
+        this.depth = depth;
+        stack = new int[2 * depth + 1];
+    }
+
+    /**
+     * Builds a tree from static objects at their current transforms. The objects' triangles are copied,
+     * so the objects themselves are not drawn by a scene the tree is given to and should not be added to it.
+     *
+     * @param objects The static objects.
+     * @return The tree.
+     */
+    public static BspTree build(List<RenderObject> objects) {
+        ArrayList<Triangle> triangles = new ArrayList<>();
+        ArrayList<Integer> sources = new ArrayList<>();
+        for (int index = 0; index < objects.size(); index++) {
+            for (Triangle t : objects.get(index).loadTriangles()) {
+                triangles.add(new Triangle(copy(t.v1), copy(t.v2), copy(t.v3)));
+                sources.add(index);
+            }
+        }
+
+        ArrayList<Triangle> fragments = new ArrayList<>();
+        ArrayList<Integer> fragmentObjects = new ArrayList<>();
+        ArrayList<float[]> planes = new ArrayList<>();
+        ArrayList<int[]> links = new ArrayList<>(); //Front, back, first fragment and fragment count of each node
+        int gapCount = 0;
+        int depth = 0;
+
+        //Subtrees are built from an explicit stack, as a tree over a convex mesh is as deep as the mesh has faces
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(triangles, sources, -1, false, 1));
+        while (!pending.isEmpty()) {
+            Pending work = pending.pop();
+            int child;
+            if (work.triangles.isEmpty()) {
+                child = -(++gapCount);
+            } else {
+                child = planes.size();
+                depth = Math.max(depth, work.depth);
+                int splitter = chooseSplitter(work.triangles);
+                float[] plane = splitter >= 0 ? planeOf(work.triangles.get(splitter)) : null;
+                if (plane == null) {
+                    //Only degenerate triangles are left, keep them all in one node
+                    splitter = 0;
+                    plane = new float[] {0, 1, 0, work.triangles.get(0).v1.y};
+                }
+                ArrayList<Triangle> frontTriangles = new ArrayList<>();
+                ArrayList<Integer> frontSources = new ArrayList<>();
+                ArrayList<Triangle> backTriangles = new ArrayList<>();
+                ArrayList<Integer> backSources = new ArrayList<>();
+                int start = fragments.size();
+                for (int i = 0; i < work.triangles.size(); i++) {
+                    if (i == splitter) {
+                        //Always kept in the node, even if rounding puts a corner off its own plane, so every node makes progress
+                        fragments.add(work.triangles.get(i));
+                        fragmentObjects.add(work.sources.get(i));
+                        continue;
+                    }
+                    partition(work.triangles.get(i), work.sources.get(i), plane, fragments, fragmentObjects,
+                            frontTriangles, frontSources, backTriangles, backSources);
+                }
+                planes.add(plane);
+                links.add(new int[] {0, 0, start, fragments.size() - start});
+                pending.push(new Pending(backTriangles, backSources, child, false, work.depth + 1));
+                pending.push(new Pending(frontTriangles, frontSources, child, true, work.depth + 1));
+            }
+            if (work.parent >= 0) {
+                links.get(work.parent)[work.isFront ? 0 : 1] = child;
+            }
+        }
+        return new BspTree(objects.toArray(new RenderObject[0]), fragments, fragmentObjects, planes, links, depth);
+    }
+
+    /**
+     * Chooses one of a few evenly spread triangles whose plane splits the fewest others
+     * and divides the rest most evenly.
+     *
+     * @return The index of the triangle, or -1 if all candidates are degenerate.
+     */
+    private static int chooseSplitter(ArrayList<Triangle> triangles) {
+        int best = -1;
+        long bestScore = Long.MAX_VALUE;
+        int step = Math.max(1, triangles.size() / SPLITTER_CANDIDATES);
+        for (int candidate = 0; candidate < triangles.size(); candidate += step) {
+            Triangle splitter = triangles.get(candidate);
+            float[] plane = planeOf(splitter);
+            if (plane == null || Math.abs(distance(plane, splitter.v2)) > PLANE_EPSILON
+                    || Math.abs(distance(plane, splitter.v3)) > PLANE_EPSILON) {
+                continue; //Degenerate triangle, or a sliver whose plane is too inaccurate
+            }
+            int inFront = 0, behind = 0, split = 0;
+            for (Triangle t : triangles) {
+                float d1 = distance(plane, t.v1), d2 = distance(plane, t.v2), d3 = distance(plane, t.v3);
+                boolean anyFront = d1 > PLANE_EPSILON || d2 > PLANE_EPSILON || d3 > PLANE_EPSILON;
+                boolean anyBack = d1 < -PLANE_EPSILON || d2 < -PLANE_EPSILON || d3 < -PLANE_EPSILON;
+                if (anyFront && anyBack) {
+                    split++;
+                } else if (anyFront) {
+                    inFront++;
+                } else if (anyBack) {
+                    behind++;
+                }
+            }
+            long score = (long) split * SPLIT_COST + Math.abs(inFront - behind);
+            if (score < bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sorts a triangle into a node: into its fragments if it lies in the plane, otherwise into the front
+     * or back list, split into the parts on either side if it crosses the plane.
+     */
+    private static void partition(Triangle t, int source, float[] plane,
+                                  ArrayList<Triangle> fragments, ArrayList<Integer> fragmentObjects,
+                                  ArrayList<Triangle> frontTriangles, ArrayList<Integer> frontSources,
+                                  ArrayList<Triangle> backTriangles, ArrayList<Integer> backSources) {
+        Vertex[] corners = {t.v1, t.v2, t.v3};
+        float[] distances = {distance(plane, t.v1), distance(plane, t.v2), distance(plane, t.v3)};
+        boolean anyFront = false, anyBack = false;
+        for (float d : distances) {
+            anyFront |= d > PLANE_EPSILON;
+            anyBack |= d < -PLANE_EPSILON;
+        }
+        if (!anyFront && !anyBack) {
+            fragments.add(t);
+            fragmentObjects.add(source);
+            return;
+        }
+        if (!anyBack) {
+            frontTriangles.add(t);
+            frontSources.add(source);
+            return;
+        }
+        if (!anyFront) {
+            backTriangles.add(t);
+            backSources.add(source);
+            return;
+        }
+
+        //Walk the edges, collecting the corners on each side and the points where the edges cross the plane
+        ArrayList<Vertex> frontPolygon = new ArrayList<>(4);
+        ArrayList<Vertex> backPolygon = new ArrayList<>(4);
+        for (int i = 0; i < 3; i++) {
+            int j = (i + 1) % 3;
+            float di = distances[i];
+            float dj = distances[j];
+            if (di >= -PLANE_EPSILON) {
+                frontPolygon.add(corners[i]);
+            }
+            if (di <= PLANE_EPSILON) {
+                backPolygon.add(corners[i]);
+            }
+            if ((di > PLANE_EPSILON && dj < -PLANE_EPSILON) || (di < -PLANE_EPSILON && dj > PLANE_EPSILON)) {
+                float s = di / (di - dj);
+                Vertex a = corners[i];
+                Vertex b = corners[j];
+                Vertex crossing = new Vertex(a.x + (b.x - a.x) * s, a.y + (b.y - a.y) * s, a.z + (b.z - a.z) * s);
+                frontPolygon.add(crossing);
+                backPolygon.add(crossing);
+            }
+        }
+        addFan(frontPolygon, source, frontTriangles, frontSources);
+        addFan(backPolygon, source, backTriangles, backSources);
+    }
+
+    //Splits a convex polygon of 3 or 4 corners into triangles sharing its first corner
+    private static void addFan(ArrayList<Vertex> polygon, int source, ArrayList<Triangle> triangles, ArrayList<Integer> sources) {
+        for (int i = 1; i + 1 < polygon.size(); i++) {
+            triangles.add(new Triangle(polygon.get(0), polygon.get(i), polygon.get(i + 1)));
+            sources.add(source);
+        }
+    }
+
+    //Plane through a triangle with a unit normal, or null if the triangle has no area
+    private static float[] planeOf(Triangle t) {
+        float ax = t.v2.x - t.v1.x, ay = t.v2.y - t.v1.y, az = t.v2.z - t.v1.z;
+        float bx = t.v3.x - t.v1.x, by = t.v3.y - t.v1.y, bz = t.v3.z - t.v1.z;
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (!(length > 0)) {
+            return null;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        return new float[] {nx, ny, nz, nx * t.v1.x + ny * t.v1.y + nz * t.v1.z};
+    }
+
+    private static float distance(float[] plane, Vertex v) {
+        return plane[0] * v.x + plane[1] * v.y + plane[2] * v.z - plane[3];
+    }
+
+    private static Vertex copy(Vertex v) {
+        return new Vertex(v.x, v.y, v.z);
+    }
+
+    /**
+     * Writes the back to front order seen from a point: a fragment index (0 or more) for every fragment,
+     * and -(g + 1) for every gap g, where the triangles inside the gap are to be drawn.
+     *
+     * @param eye The camera position.
+     * @param out The array to write into, at least getFragmentCount() + getGapCount() long.
+     * @return The number of entries written.
+     */
+    int traverse(Vertex eye, int[] out) {
+        if (nodeCount == 0) {
+            out[0] = -1; //The whole space is one gap
+            return 1;
+        }
+        int count = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry < 0) {
+                out[count++] = entry; //A gap
+            } else if (entry >= nodeCount) {
+                //The node's own fragments, between its two subtrees
+                int node = entry - nodeCount;
+                int start = fragmentStarts[node];
+                for (int fragment = start; fragment < start + fragmentCounts[node]; fragment++) {
+                    out[count++] = fragment;
+                }
+            } else {
+                //Push the near side first, so the far side is drawn first
+                boolean eyeInFront = planeX[entry] * eye.x + planeY[entry] * eye.y + planeZ[entry] * eye.z >= planeD[entry];
+                stack[top++] = eyeInFront ? front[entry] : back[entry];
+                stack[top++] = entry + nodeCount;
+                stack[top++] = eyeInFront ? back[entry] : front[entry];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the gap containing a point.
+     *
+     * @return The index of the gap.
+     */
+    int locate(float x, float y, float z) {
+        int node = nodeCount == 0 ? -1 : 0;
+        while (node >= 0) {
+            node = planeX[node] * x + planeY[node] * y + planeZ[node] * z >= planeD[node] ? front[node] : back[node];
+        }
+        return -node - 1;
+    }
+
+    /**
+     * Returns the colour shader of the object a fragment comes from.
+     *
+     * @param fragment The index of the fragment.
+     * @return The object's colour shader.
+     */
+    public ColourShader getFragmentColour(int fragment) {
+        return objects[fragmentObjects[fragment]].getColour();
+    }
+
+    /**
+     * Returns the name of the object a fragment comes from.
+     *
+     * @param fragment The index of the fragment.
+     * @return The object's name.
+     */
+    public String getFragmentName(int fragment) {
+        return objects[fragmentObjects[fragment]].getName();
+    }
+
+    //Getters for the tree
+    public Triangle getFragment(int fragment) {
+        return fragments[fragment];
+    }
+
+    public List<RenderObject> getObjects() {
+        return Arrays.asList(objects.clone());
+    }
+
+    public int getFragmentCount() {
+        return fragments.length;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getGapCount() {
+        return nodeCount + 1;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,70 @@
+package core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The DirectBuffers class allocates and frees the off-heap memory of OffHeapMesh and MeshObject.
+ *
+ * Direct buffers are normally only freed once the garbage collector finds them unreachable, which may be
+ * long after a large mesh is no longer used. free() releases the memory immediately through
+ * sun.misc.Unsafe.invokeCleaner(); if that is not accessible, the memory is left to the garbage collector.
+ */
+final class DirectBuffers {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null; //Not available, buffers are freed by the garbage collector
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * Allocates zeroed off-heap memory in little-endian byte order, the native order of x86 and ARM
+     * and the order of mesh files, so files can be read straight into the buffer.
+     *
+     * @param elements The number of 4 byte elements (floats or ints).
+     * @return The buffer.
+     * @throws IllegalArgumentException if the buffer would be larger than 2 GB.
+     */
+    static ByteBuffer allocate(long elements) {
+        if (elements < 0 || elements * 4 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Off-heap buffer too large: " + elements + " elements");
+        }
+        return ByteBuffer.allocateDirect((int) (elements * 4)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Frees a buffer's memory now. The buffer, and every view of it, must not be used afterwards.
+     *
+     * @param buffer The buffer returned by allocate(), or null.
+     */
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            //Leave the buffer to the garbage collector
+        }
+    }
+}
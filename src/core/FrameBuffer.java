@@ -0,0 +1,348 @@
+package core;
+
+import java.util.Arrays;
+import materials.Material;
+import materials.Texture;
+
+/**
+ * The FrameBuffer class is a block of packed RGB pixels that triangles are rasterized into.
+ * Pixels are stored row by row in a single int array (0xRRGGBB, the alpha byte is ignored),
+ * the same layout as a TYPE_INT_RGB BufferedImage, so a GUI can present the array directly and
+ * the finished frame can be read without going through any GUI framework.
+ *
+ * Coordinates are in pixels, with (0, 0) at the top left corner. Triangles cover the pixels whose
+ * centres lie inside them, so triangles sharing an edge neither overlap nor leave gaps.
+ */
+public class FrameBuffer {
+
+    private final int width;
+    private final int height;
+    private final int[] pixels; //Row-major pixels, index = y * width + x
+
+    //Reused by drawLine() for the clipping terms of the four frame edges
+    private final float[] clipP = new float[4];
+    private final float[] clipQ = new float[4];
+
+    /**
+     * Constructor to create a frame buffer with its own pixel array.
+     *
+     * @param width The width in pixels.
+     * @param height The height in pixels.
+     */
+    public FrameBuffer(int width, int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    /**
+     * Constructor to create a frame buffer that draws into an existing pixel array,
+     * for example the data array of a BufferedImage.
+     *
+     * @param width The width in pixels.
+     * @param height The height in pixels.
+     * @param pixels The row-major pixel array, at least width * height long.
+     */
+    public FrameBuffer(int width, int height, int[] pixels) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame buffer size must be positive: " + width + "x" + height);
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Fills the whole frame with one colour.
+     *
+     * @param rgb The colour (packed RGB).
+     */
+    public void clear(int rgb) {
+        Arrays.fill(pixels, 0, width * height, rgb);
+    }
+
+    /**
+     * Fills a triangle given by its three corners in pixel coordinates.
+     * The triangle is clipped to the frame, so it may lie partly or entirely outside it.
+     *
+     * @param x0 The x coordinate of the first corner.
+     * @param y0 The y coordinate of the first corner.
+     * @param x1 The x coordinate of the second corner.
+     * @param y1 The y coordinate of the second corner.
+     * @param x2 The x coordinate of the third corner.
+     * @param y2 The y coordinate of the third corner.
+     * @param rgb The fill colour (packed RGB).
+     */
+    public void fillTriangle(float x0, float y0, float x1, float y1, float x2, float y2, int rgb) {
+        //Sort the corners by y so that (x0, y0) is the top and (x2, y2) the bottom
+        float t;
+        if (y1 < y0) {
+            t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+        }
+        if (y2 < y1) {
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            if (y1 < y0) {
+                t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+        }
+
+        //Rows whose pixel centres lie between the top and bottom corner, clipped to the frame
+        int yStart = Math.max(0, (int) Math.ceil(y0 - 0.5f));
+        int yEnd = Math.min(height, (int) Math.ceil(y2 - 0.5f));
+        if (yStart >= yEnd || !(y2 > y0)) {
+            return;
+        }
+
+        //Slopes (change of x per row) of the long edge and the two short edges
+        float longSlope = (x2 - x0) / (y2 - y0);
+        float topSlope = y1 > y0 ? (x1 - x0) / (y1 - y0) : 0;
+        float bottomSlope = y2 > y1 ? (x2 - x1) / (y2 - y1) : 0;
+
+        for (int y = yStart; y < yEnd; y++) {
+            float centreY = y + 0.5f;
+            float longX = x0 + (centreY - y0) * longSlope;
+            float shortX = centreY < y1 ? x0 + (centreY - y0) * topSlope : x1 + (centreY - y1) * bottomSlope;
+            fillSpan(y, Math.min(longX, shortX), Math.max(longX, shortX), rgb);
+        }
+    }
+
+    /**
+     * Fills the pixels of a row whose centres lie between two x coordinates.
+     */
+    private void fillSpan(int y, float left, float right, int rgb) {
+        int xStart = Math.max(0, (int) Math.ceil(left - 0.5f));
+        int xEnd = Math.min(width, (int) Math.ceil(right - 0.5f));
+        if (xStart < xEnd) {
+            int row = y * width;
+            Arrays.fill(pixels, row + xStart, row + xEnd, rgb);
+        }
+    }
+
+    /**
+     * Fills a triangle with a texture, lit by a colour. The texture coordinates are interpolated with
+     * perspective correction: the rasterizer interpolates u / z, v / z and 1 / z linearly across the screen
+     * and divides them back at every pixel.
+     *
+     * The mip level is chosen once per row, from how far the texture coordinates move per pixel at the middle
+     * of the row, so minified surfaces read a level with about one texel per pixel.
+     *
+     * @param x0 The x coordinate of the first corner.
+     * @param y0 The y coordinate of the first corner.
+     * @param x1 The x coordinate of the second corner.
+     * @param y1 The y coordinate of the second corner.
+     * @param x2 The x coordinate of the third corner.
+     * @param y2 The y coordinate of the third corner.
+     * @param texture The texture.
+     * @param uvs u / z, v / z and 1 / z of the three corners, in the same order as the coordinates.
+     * @param offset The index of the first corner's u / z in uvs.
+     * @param rgb The colour the texels are multiplied with (packed RGB, white shows the texture unchanged).
+     */
+    public void fillTexturedTriangle(float x0, float y0, float x1, float y1, float x2, float y2,
+                                     Texture texture, float[] uvs, int offset, int rgb) {
+        //Gradients of the interpolated values across the screen, from the plane through the three corners
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (!(area != 0)) {
+            return; //Degenerate (or NaN coordinates)
+        }
+        float originX = x0;
+        float originY = y0;
+        float u0 = uvs[offset], v0 = uvs[offset + 1], w0 = uvs[offset + 2];
+        float du1 = uvs[offset + 3] - u0, dv1 = uvs[offset + 4] - v0, dw1 = uvs[offset + 5] - w0;
+        float du2 = uvs[offset + 6] - u0, dv2 = uvs[offset + 7] - v0, dw2 = uvs[offset + 8] - w0;
+        float uDx = (du1 * (y2 - y0) - du2 * (y1 - y0)) / area;
+        float vDx = (dv1 * (y2 - y0) - dv2 * (y1 - y0)) / area;
+        float wDx = (dw1 * (y2 - y0) - dw2 * (y1 - y0)) / area;
+        float uDy = (du2 * (x1 - x0) - du1 * (x2 - x0)) / area;
+        float vDy = (dv2 * (x1 - x0) - dv1 * (x2 - x0)) / area;
+        float wDy = (dw2 * (x1 - x0) - dw1 * (x2 - x0)) / area;
+
+        //Sort the corners by y so that (x0, y0) is the top and (x2, y2) the bottom
+        float t;
+        if (y1 < y0) {
+            t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+        }
+        if (y2 < y1) {
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            if (y1 < y0) {
+                t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+        }
+
+        //Rows and spans are found as in fillTriangle(), so textured and plain triangles cover the same pixels
+        int yStart = Math.max(0, (int) Math.ceil(y0 - 0.5f));
+        int yEnd = Math.min(height, (int) Math.ceil(y2 - 0.5f));
+        if (yStart >= yEnd || !(y2 > y0)) {
+            return;
+        }
+        float longSlope = (x2 - x0) / (y2 - y0);
+        float topSlope = y1 > y0 ? (x1 - x0) / (y1 - y0) : 0;
+        float bottomSlope = y2 > y1 ? (x2 - x1) / (y2 - y1) : 0;
+        float textureWidth = texture.getWidth();
+        float textureHeight = texture.getHeight();
+
+        for (int y = yStart; y < yEnd; y++) {
+            float centreY = y + 0.5f;
+            float longX = x0 + (centreY - y0) * longSlope;
+            float shortX = centreY < y1 ? x0 + (centreY - y0) * topSlope : x1 + (centreY - y1) * bottomSlope;
+            int xStart = Math.max(0, (int) Math.ceil(Math.min(longX, shortX) - 0.5f));
+            int xEnd = Math.min(width, (int) Math.ceil(Math.max(longX, shortX) - 0.5f));
+            if (xStart >= xEnd) {
+                continue;
+            }
+
+            //Choose the mip level from the change of u and v per pixel at the middle of the span
+            float middleX = (xStart + xEnd) * 0.5f;
+            float u = u0 + (middleX - originX) * uDx + (centreY - originY) * uDy;
+            float v = v0 + (middleX - originX) * vDx + (centreY - originY) * vDy;
+            float w = w0 + (middleX - originX) * wDx + (centreY - originY) * wDy;
+            float texelU = u / w;
+            float texelV = v / w;
+            float uPerX = (uDx - texelU * wDx) / w * textureWidth;
+            float vPerX = (vDx - texelV * wDx) / w * textureHeight;
+            float uPerY = (uDy - texelU * wDy) / w * textureWidth;
+            float vPerY = (vDy - texelV * wDy) / w * textureHeight;
+            int level = texture.selectLevel(Math.max(uPerX * uPerX + vPerX * vPerX, uPerY * uPerY + vPerY * vPerY));
+
+            //Step the interpolated values from pixel to pixel
+            float pixelX = xStart + 0.5f;
+            u = u0 + (pixelX - originX) * uDx + (centreY - originY) * uDy;
+            v = v0 + (pixelX - originX) * vDx + (centreY - originY) * vDy;
+            w = w0 + (pixelX - originX) * wDx + (centreY - originY) * wDy;
+            int row = y * width;
+            for (int x = xStart; x < xEnd; x++) {
+                float depth = 1 / w;
+                pixels[row + x] = Material.multiplyRGB(texture.sample(level, u * depth, v * depth), rgb);
+                u += uDx;
+                v += vDx;
+                w += wDx;
+            }
+        }
+    }
+
+    /**
+     * Draws the outline of a triangle given by its three corners in pixel coordinates.
+     *
+     * @param x0 The x coordinate of the first corner.
+     * @param y0 The y coordinate of the first corner.
+     * @param x1 The x coordinate of the second corner.
+     * @param y1 The y coordinate of the second corner.
+     * @param x2 The x coordinate of the third corner.
+     * @param y2 The y coordinate of the third corner.
+     * @param rgb The outline colour (packed RGB).
+     */
+    public void outlineTriangle(float x0, float y0, float x1, float y1, float x2, float y2, int rgb) {
+        drawLine(x0, y0, x1, y1, rgb);
+        drawLine(x1, y1, x2, y2, rgb);
+        drawLine(x2, y2, x0, y0, rgb);
+    }
+
+    /**
+     * Draws a one pixel wide line between two points in pixel coordinates.
+     * The line is clipped to the frame first, so lines reaching far off screen stay cheap.
+     *
+     * @param x0 The x coordinate of the start point.
+     * @param y0 The y coordinate of the start point.
+     * @param x1 The x coordinate of the end point.
+     * @param y1 The y coordinate of the end point.
+     * @param rgb The line colour (packed RGB).
+     */
+    public void drawLine(float x0, float y0, float x1, float y1, int rgb) {
+        //Clip the line to the frame (Liang-Barsky), keeping the part between t = tEnter and t = tExit
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float tEnter = 0;
+        float tExit = 1;
+        float maxX = width - 1;
+        float maxY = height - 1;
+        float[] p = clipP;
+        float[] q = clipQ;
+        p[0] = -dx; q[0] = x0;
+        p[1] = dx;  q[1] = maxX - x0;
+        p[2] = -dy; q[2] = y0;
+        p[3] = dy;  q[3] = maxY - y0;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return; //Parallel to this edge and outside it
+                }
+            } else {
+                float r = q[i] / p[i];
+                if (p[i] < 0) {
+                    tEnter = Math.max(tEnter, r);
+                } else {
+                    tExit = Math.min(tExit, r);
+                }
+            }
+        }
+        if (!(tEnter <= tExit)) {
+            return; //Entirely outside the frame (or NaN coordinates)
+        }
+
+        //Walk the clipped line with Bresenham's algorithm
+        int xa = Math.round(x0 + tEnter * dx);
+        int ya = Math.round(y0 + tEnter * dy);
+        int xb = Math.round(x0 + tExit * dx);
+        int yb = Math.round(y0 + tExit * dy);
+
+        int stepsX = Math.abs(xb - xa);
+        int stepsY = -Math.abs(yb - ya);
+        int sx = xa < xb ? 1 : -1;
+        int sy = ya < yb ? 1 : -1;
+        int err = stepsX + stepsY;
+
+        while (true) {
+            setPixel(xa, ya, rgb);
+            if (xa == xb && ya == yb) {
+                break;
+            }
+            int e2 = 2 * err;
+            if (e2 >= stepsY) {
+                err += stepsY;
+                xa += sx;
+            }
+            if (e2 <= stepsX) {
+                err += stepsX;
+                ya += sy;
+            }
+        }
+    }
+
+    /**
+     * Sets a single pixel, ignoring coordinates outside the frame.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param rgb The colour (packed RGB).
+     */
+    public void setPixel(int x, int y, int rgb) {
+        if (x >= 0 && x < width && y >= 0 && y < height) {
+            pixels[y * width + x] = rgb;
+        }
+    }
+
+    /**
+     * Returns the pixel array the frame is drawn into.
+     * The array is shared, not copied, so it always holds the latest frame.
+     *
+     * @return The row-major pixel array.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    //Getters for the frame size
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
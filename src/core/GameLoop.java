@@ -0,0 +1,146 @@
+package core;
+
+/**
+ * The GameLoop class drives a fixed-timestep simulation that is decoupled from the render rate.
+ * Each frame the elapsed time is measured with System.nanoTime() and added to an accumulator,
+ * which is then consumed in fixed-size simulation steps. Whatever time is left over is passed
+ * to render() as an interpolation factor, so the presentation stays smooth even when the
+ * render rate and the simulation rate differ.
+ */
+public abstract class GameLoop {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    //Length of one simulation step in nanoseconds and in seconds
+    private final long stepNanos;
+    private final double stepSeconds;
+
+    private long frameNanos; //Target length of a rendered frame in nanoseconds (0 when uncapped)
+    private int maxStepsPerFrame = 5; //Upper bound on simulation steps per frame to avoid a spiral of death
+
+    private volatile boolean running = false; //Whether the loop should keep running
+
+    /**
+     * Constructor to initialize the loop with a simulation rate and a target frame rate.
+     *
+     * @param updatesPerSecond The number of fixed simulation steps per second.
+     * @param targetFps The target number of rendered frames per second, or 0 for uncapped rendering.
+     */
+    public GameLoop(int updatesPerSecond, int targetFps) {
+        if (updatesPerSecond <= 0) {
+            throw new IllegalArgumentException("updatesPerSecond must be positive: " + updatesPerSecond);
+        }
+        this.stepNanos = NANOS_PER_SECOND / updatesPerSecond;
+        this.stepSeconds = (double) stepNanos / NANOS_PER_SECOND;
+        setTargetFps(targetFps);
+    }
+
+    /**
+     * Advances the simulation by exactly one fixed step.
+     *
+     * @param step The length of the step in seconds.
+     */
+    protected abstract void update(double step);
+
+    /**
+     * Renders a frame.
+     *
+     * @param alpha How far the current time lies between the last two simulation steps (0 to 1),
+     *              used to interpolate between the previous and current simulation state.
+     */
+    protected abstract void render(double alpha);
+
+    /**
+     * Runs the loop on the calling thread until stop() is called.
+     */
+    public void run() {
+        running = true;
+
+        long previousTime = System.nanoTime();
+        long nextFrameTime = previousTime;
+        long accumulator = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            long elapsed = now - previousTime;
+            previousTime = now;
+
+            //Clamp the elapsed time so a long stall does not trigger an unbounded number of steps
+            accumulator += Math.min(elapsed, stepNanos * maxStepsPerFrame);
+
+            //Consume the accumulated time in fixed simulation steps
+            while (accumulator >= stepNanos) {
+                update(stepSeconds);
+                accumulator -= stepNanos;
+            }
+
+            //Render with the leftover time as the interpolation factor
+            render((double) accumulator / stepNanos);
+
+            if (frameNanos > 0) {
+                nextFrameTime += frameNanos;
+                long current = System.nanoTime();
+
+                //If we have fallen more than a frame behind, resynchronise instead of rushing to catch up
+                if (current - nextFrameTime > frameNanos) {
+                    nextFrameTime = current;
+                }
+                waitUntil(nextFrameTime);
+            } else {
+                Thread.yield(); //Uncapped, just give other threads (e.g. the input thread) a chance to run
+            }
+        }
+    }
+
+    /**
+     * Requests the loop to stop after the current frame.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Sleeps for most of the remaining time and spins for the final stretch,
+     * since Thread.sleep() alone is too coarse to hit frame deadlines accurately.
+     *
+     * @param deadline The System.nanoTime() value to wait for.
+     */
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            if (remaining > 2000000L) {
+                try {
+                    Thread.sleep((remaining - 1000000L) / 1000000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                    return;
+                }
+            } else {
+                Thread.yield();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Sets the target frame rate.
+     *
+     * @param targetFps The target number of frames per second, or 0 (or less) for uncapped rendering.
+     */
+    public void setTargetFps(int targetFps) {
+        frameNanos = targetFps > 0 ? NANOS_PER_SECOND / targetFps : 0;
+    }
+
+    public void setMaxStepsPerFrame(int maxStepsPerFrame) {
+        this.maxStepsPerFrame = Math.max(1, maxStepsPerFrame);
+    }
+
+    public double getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
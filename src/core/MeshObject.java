@@ -0,0 +1,231 @@
+package core;
+
+import colours.ColourShader;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import objects.Vertex;
+
+/**
+ * The MeshObject class places an OffHeapMesh in a scene, like a RenderObject does for its triangles:
+ * it has a name, a position, rotation and scale, and a colour shader. The transformed (world space)
+ * vertex positions are kept off the heap as well, and are recomputed whenever the transform changes.
+ * Transforming works on each shared vertex once, rather than three times per triangle.
+ *
+ * Add it to a scene with Scene.addMesh(). close() releases the world positions; the mesh itself
+ * may be shared by several objects and is closed separately.
+ */
+public class MeshObject implements AutoCloseable {
+
+    private final String name;
+    private final OffHeapMesh mesh;
+    private Vertex position;
+    private Vertex rotation;
+    private Vertex scale;
+    private ColourShader colourShader;
+
+    private ByteBuffer worldMemory; //Owns the memory of worldPositions
+    private FloatBuffer worldPositions; //Transformed x, y, z of each vertex
+    private float[] bounds = new float[6]; //Bounding box of the world positions: min x, y, z, then max x, y, z
+
+    //Precomputed sine and cosine values for the object's rotation
+    private Vertex c = new Vertex(0, 0, 0);
+    private Vertex s = new Vertex(0, 0, 0);
+    private Vertex scratch = new Vertex(0, 0, 0); //Vertex being transformed
+
+    /**
+     * Constructor to create an object drawing a mesh at a position, unrotated and unscaled.
+     *
+     * @param name The name of the object.
+     * @param mesh The mesh to draw.
+     * @param colourShader The shader used to colour the triangles.
+     * @param position The position of the object.
+     */
+    public MeshObject(String name, OffHeapMesh mesh, ColourShader colourShader, Vertex position) {
+        this.name = name;
+        this.mesh = mesh;
+        this.colourShader = colourShader;
+        this.position = position;
+        this.rotation = new Vertex(0, 0, 0);
+        this.scale = new Vertex(1, 1, 1);
+        worldMemory = DirectBuffers.allocate(mesh.getVertexCount() * 3L);
+        worldPositions = worldMemory.asFloatBuffer();
+        transform();
+    }
+
+    /**
+     * Recomputes the world positions of all vertices: scale first, then rotate, then move to the position,
+     * the same way RenderObject transforms its triangles.
+     */
+    private void transform() {
+        checkOpen();
+        s.x = (float) Math.sin(-rotation.x);
+        s.y = (float) Math.sin(-rotation.y);
+        s.z = (float) Math.sin(-rotation.z);
+        c.x = (float) Math.cos(-rotation.x);
+        c.y = (float) Math.cos(-rotation.y);
+        c.z = (float) Math.cos(-rotation.z);
+
+        FloatBuffer source = mesh.getPositions();
+        FloatBuffer target = worldPositions;
+        Vertex v = scratch;
+        int floats = mesh.getVertexCount() * 3;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < floats; i += 3) {
+            v.x = source.get(i) * scale.x;
+            v.y = source.get(i + 1) * scale.y;
+            v.z = source.get(i + 2) * scale.z;
+            Vertex.rotateWithSinCos(v, s, c, v);
+            float x = v.x + position.x;
+            float y = v.y + position.y;
+            float z = v.z + position.z;
+            target.put(i, x);
+            target.put(i + 1, y);
+            target.put(i + 2, z);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = minZ;
+        bounds[3] = maxX;
+        bounds[4] = maxY;
+        bounds[5] = maxZ;
+    }
+
+    /**
+     * Copies the world positions of a range of triangles' corners into packed coordinate arrays.
+     * Corner k of triangle t is written at index k * stride + offset + (t - from).
+     *
+     * @param from The first triangle.
+     * @param to The index after the last triangle.
+     * @param x Receives the x coordinates.
+     * @param y Receives the y coordinates.
+     * @param z Receives the z coordinates.
+     * @param offset The index of the first triangle's first corner in the arrays.
+     * @param stride The distance between a triangle's corners in the arrays.
+     */
+    void gatherCorners(int from, int to, float[] x, float[] y, float[] z, int offset, int stride) {
+        IntBuffer indices = mesh.getIndices();
+        FloatBuffer world = worldPositions;
+        for (int corner = 0; corner < 3; corner++) {
+            int out = corner * stride + offset;
+            for (int t = from; t < to; t++, out++) {
+                int vertex = indices.get(t * 3 + corner) * 3;
+                x[out] = world.get(vertex);
+                y[out] = world.get(vertex + 1);
+                z[out] = world.get(vertex + 2);
+            }
+        }
+    }
+
+    /**
+     * Releases the off-heap world positions. The object must be removed from its scene first and
+     * must not be used afterwards. The mesh is not closed, as other objects may share it.
+     */
+    @Override
+    public void close() {
+        if (worldPositions == null) {
+            return;
+        }
+        worldPositions = null;
+        DirectBuffers.free(worldMemory);
+        worldMemory = null;
+    }
+
+    //Throws if the memory has been released
+    private void checkOpen() {
+        if (worldPositions == null) {
+            throw new IllegalStateException("Mesh object " + name + " has been closed");
+        }
+    }
+
+    //Getters for object properties
+    public String getName() {
+        return name;
+    }
+
+    public OffHeapMesh getMesh() {
+        return mesh;
+    }
+
+    public Vertex getPosition() {
+        return position;
+    }
+
+    public Vertex getRotation() {
+        return rotation;
+    }
+
+    public Vertex getScale() {
+        return scale;
+    }
+
+    /**
+     * Returns the world-space bounding box of the vertices, updated whenever the object is transformed.
+     * The array is shared, not copied.
+     * 
+     * @return The box as min x, y, z followed by max x, y, z.
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public int getTCount() {
+        return mesh.getTriangleCount();
+    }
+
+    public ColourShader getColour() {
+        return colourShader;
+    }
+
+    /**
+     * Returns the transformed positions of the vertices, x, y and z of each vertex.
+     * Use absolute get() calls so the buffer's position is not changed.
+     *
+     * @return The world positions.
+     */
+    public FloatBuffer getWorldPositions() {
+        checkOpen();
+        return worldPositions;
+    }
+
+    //Setters for object properties with automatic re-transformation of the vertices
+    public void setPosition(Vertex newPosition) {
+        this.position = newPosition;
+        transform();
+    }
+
+    public void setRotation(Vertex newRotation) {
+        this.rotation = newRotation;
+        transform();
+    }
+
+    public void setScale(Vertex newScale) {
+        this.scale = newScale;
+        transform();
+    }
+
+    /**
+     * Sets the position, rotation and scale together, re-transforming the vertices only once.
+     *
+     * @param newPosition The new position.
+     * @param newRotation The new rotation.
+     * @param newScale The new scale.
+     */
+    public void setTransform(Vertex newPosition, Vertex newRotation, Vertex newScale) {
+        this.position = newPosition;
+        this.rotation = newRotation;
+        this.scale = newScale;
+        transform();
+    }
+
+    public void setColour(ColourShader colourShader) {
+        this.colourShader = colourShader;
+    }
+}
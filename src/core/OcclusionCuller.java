@@ -0,0 +1,338 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The OcclusionCuller class finds objects that are completely hidden behind a few large occluders,
+ * so the scene can skip them before doing any per-triangle work.
+ *
+ * At the start of every frame the triangles of the occluders are rasterized into a small depth buffer
+ * covering the visible window of projected coordinates. Each cell keeps the distance of the farthest
+ * occluder point drawn into it (the camera-space z of the triangle's farthest corner, so the buffer
+ * never claims an occluder is nearer than it is). A hierarchy of coarser levels is then built, each cell
+ * holding the farthest depth of the four cells below it.
+ *
+ * An object is tested with its world-space bounding box: the box is projected, and if its nearest point
+ * lies behind the stored depth of every cell its screen rectangle touches, it is occluded. The test reads
+ * the level at which the rectangle covers only a few cells, so it costs the same for large and small objects.
+ * Boxes that reach behind the camera or outside the window are always visible, and the rectangle is
+ * widened by one cell to make up for the coarse sampling at the occluders' edges.
+ */
+public class OcclusionCuller {
+
+    private static final float EMPTY = Float.POSITIVE_INFINITY; //Depth of a cell no occluder covers
+    private static final int TEST_CELLS = 4; //Rectangles are tested at the first level where they span this many cells
+
+    //Window of projected coordinates the buffer covers
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    //Depth hierarchy, level 0 being the full resolution
+    private final float[][] levels;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+
+    private final ArrayList<RenderObject> occluders = new ArrayList<>();
+
+    //Camera of the current frame
+    private Vertex camPos;
+    private Vertex s;
+    private Vertex c;
+    private float focal; //Distance of the screen from the camera
+    private float screenX; //Offset of the projected coordinates
+    private float screenY;
+
+    //Reused for transforming vertices and box corners into camera space
+    private final Vertex rotated = new Vertex(0, 0, 0);
+    private final float[] cornerX = new float[3];
+    private final float[] cornerY = new float[3];
+    private final float[] cornerZ = new float[3];
+
+    //Statistics of the current frame
+    private int tested;
+    private int occluded;
+
+    /**
+     * Constructor to create an occlusion culler.
+     *
+     * @param width The width of the depth buffer in cells.
+     * @param height The height of the depth buffer in cells.
+     * @param minX The projected x coordinate of the window's left edge.
+     * @param minY The projected y coordinate of the window's bottom edge.
+     * @param maxX The projected x coordinate of the window's right edge.
+     * @param maxY The projected y coordinate of the window's top edge.
+     */
+    public OcclusionCuller(int width, int height, float minX, float minY, float maxX, float maxY) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Depth buffer size must be positive: " + width + "x" + height);
+        }
+        if (!(maxX > minX) || !(maxY > minY)) {
+            throw new IllegalArgumentException("Occlusion window must not be empty");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        //Halve the size (rounding up) until a single cell is left
+        int count = 1;
+        for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+            count++;
+        }
+        levels = new float[count][];
+        levelWidths = new int[count];
+        levelHeights = new int[count];
+        int w = width;
+        int h = height;
+        for (int level = 0; level < count; level++) {
+            levels[level] = new float[w * h];
+            levelWidths[level] = w;
+            levelHeights[level] = h;
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+        }
+    }
+
+    /**
+     * Adds an object whose triangles hide the objects behind it, e.g. a wall or the terrain.
+     * Occluders should be few and large, as all of their triangles are rasterized every frame.
+     *
+     * @param occluder The object.
+     */
+    public void addOccluder(RenderObject occluder) {
+        if (!occluders.contains(occluder)) {
+            occluders.add(occluder);
+        }
+    }
+
+    /**
+     * Removes an occluder.
+     *
+     * @param occluder The object.
+     * @return true if it was an occluder.
+     */
+    public boolean removeOccluder(RenderObject occluder) {
+        return occluders.remove(occluder);
+    }
+
+    /**
+     * Rasterizes the occluders as seen from the camera and builds the depth hierarchy.
+     * Called by the scene at the start of every frame, before any object is tested.
+     *
+     * @param camPos The camera position.
+     * @param s The sine of the camera's rotation.
+     * @param c The cosine of the camera's rotation.
+     * @param screenPosRel The position of the screen relative to the camera.
+     */
+    void beginFrame(Vertex camPos, Vertex s, Vertex c, Vertex screenPosRel) {
+        this.camPos = camPos;
+        this.s = s;
+        this.c = c;
+        focal = screenPosRel.z;
+        screenX = screenPosRel.x;
+        screenY = screenPosRel.y;
+        tested = 0;
+        occluded = 0;
+
+        float[] depth = levels[0];
+        Arrays.fill(depth, EMPTY);
+        for (int index = 0; index < occluders.size(); index++) {
+            for (Triangle triangle : occluders.get(index).getAdjustedTriangles()) {
+                rasterize(triangle);
+            }
+        }
+        buildHierarchy();
+    }
+
+    /**
+     * Draws one occluder triangle into the full resolution level with the depth of its farthest corner.
+     * Triangles reaching behind the camera are skipped, which only makes the buffer less occluding.
+     */
+    private void rasterize(Triangle triangle) {
+        if (!toCell(triangle.v1, 0) || !toCell(triangle.v2, 1) || !toCell(triangle.v3, 2)) {
+            return;
+        }
+        float far = Math.max(cornerZ[0], Math.max(cornerZ[1], cornerZ[2]));
+
+        //Sort the corners by y so that 0 is the top and 2 the bottom
+        float x0 = cornerX[0], y0 = cornerY[0];
+        float x1 = cornerX[1], y1 = cornerY[1];
+        float x2 = cornerX[2], y2 = cornerY[2];
+        float t;
+        if (y1 < y0) {
+            t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+        }
+        if (y2 < y1) {
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            if (y1 < y0) {
+                t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+        }
+
+        //Cover the cells whose centres lie inside the triangle, as FrameBuffer.fillTriangle() does for pixels
+        int width = levelWidths[0];
+        int height = levelHeights[0];
+        int yStart = Math.max(0, (int) Math.ceil(y0 - 0.5f));
+        int yEnd = Math.min(height, (int) Math.ceil(y2 - 0.5f));
+        if (yStart >= yEnd || !(y2 > y0)) {
+            return;
+        }
+        float longSlope = (x2 - x0) / (y2 - y0);
+        float topSlope = y1 > y0 ? (x1 - x0) / (y1 - y0) : 0;
+        float bottomSlope = y2 > y1 ? (x2 - x1) / (y2 - y1) : 0;
+
+        float[] depth = levels[0];
+        for (int y = yStart; y < yEnd; y++) {
+            float centreY = y + 0.5f;
+            float longX = x0 + (centreY - y0) * longSlope;
+            float shortX = centreY < y1 ? x0 + (centreY - y0) * topSlope : x1 + (centreY - y1) * bottomSlope;
+            int xStart = Math.max(0, (int) Math.ceil(Math.min(longX, shortX) - 0.5f));
+            int xEnd = Math.min(width, (int) Math.ceil(Math.max(longX, shortX) - 0.5f));
+            int row = y * width;
+            for (int x = xStart; x < xEnd; x++) {
+                if (far < depth[row + x]) {
+                    depth[row + x] = far;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds each coarser level from the one below, keeping the farthest depth of every 2x2 block.
+     */
+    private void buildHierarchy() {
+        for (int level = 1; level < levels.length; level++) {
+            float[] below = levels[level - 1];
+            float[] depth = levels[level];
+            int belowWidth = levelWidths[level - 1];
+            int belowHeight = levelHeights[level - 1];
+            int width = levelWidths[level];
+            int height = levelHeights[level];
+            for (int y = 0; y < height; y++) {
+                int y0 = y * 2;
+                int y1 = Math.min(y0 + 1, belowHeight - 1);
+                for (int x = 0; x < width; x++) {
+                    int x0 = x * 2;
+                    int x1 = Math.min(x0 + 1, belowWidth - 1);
+                    float farthest = Math.max(Math.max(below[y0 * belowWidth + x0], below[y0 * belowWidth + x1]),
+                            Math.max(below[y1 * belowWidth + x0], below[y1 * belowWidth + x1]));
+                    depth[y * width + x] = farthest;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests whether a world-space box is hidden behind the occluders drawn in beginFrame().
+     *
+     * @param bounds The box as min x, y, z followed by max x, y, z.
+     * @return true if nothing inside the box can be visible.
+     */
+    public boolean isOccluded(float[] bounds) {
+        if (camPos == null) {
+            return false; //No frame has begun, so there is nothing to test against
+        }
+        tested++;
+        float nearest = Float.POSITIVE_INFINITY;
+        float left = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY;
+        float top = Float.POSITIVE_INFINITY;
+        float bottom = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            rotated.x = bounds[(corner & 1) == 0 ? 0 : 3];
+            rotated.y = bounds[(corner & 2) == 0 ? 1 : 4];
+            rotated.z = bounds[(corner & 4) == 0 ? 2 : 5];
+            if (!toCell(rotated, 0)) {
+                return false; //Reaches behind the camera
+            }
+            nearest = Math.min(nearest, cornerZ[0]);
+            left = Math.min(left, cornerX[0]);
+            right = Math.max(right, cornerX[0]);
+            top = Math.min(top, cornerY[0]);
+            bottom = Math.max(bottom, cornerY[0]);
+        }
+
+        //Cells the rectangle touches, widened by one cell
+        int x0 = (int) Math.floor(left) - 1;
+        int x1 = (int) Math.floor(right) + 1;
+        int y0 = (int) Math.floor(top) - 1;
+        int y1 = (int) Math.floor(bottom) + 1;
+        if (x0 < 0 || y0 < 0 || x1 >= levelWidths[0] || y1 >= levelHeights[0]) {
+            return false; //Partly outside the window, where nothing is known about occluders
+        }
+
+        //Move up the hierarchy until the rectangle spans only a few cells
+        int level = 0;
+        while (level < levels.length - 1 && Math.max(x1 - x0, y1 - y0) >= TEST_CELLS) {
+            level++;
+            x0 >>= 1;
+            x1 >>= 1;
+            y0 >>= 1;
+            y1 >>= 1;
+        }
+
+        float[] depth = levels[level];
+        int width = levelWidths[level];
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (depth[y * width + x] >= nearest) {
+                    return false; //Something in the cell may lie in front of the occluders
+                }
+            }
+        }
+        occluded++;
+        return true;
+    }
+
+    /**
+     * Transforms a world-space point into camera space and projects it to cell coordinates of level 0.
+     *
+     * @return false if the point is behind the camera.
+     */
+    private boolean toCell(Vertex point, int corner) {
+        rotated.x = point.x - camPos.x;
+        rotated.y = point.y - camPos.y;
+        rotated.z = point.z - camPos.z;
+        Vertex d = Vertex.rotateWithSinCos(rotated, s, c, rotated);
+        if (d.z <= 0) {
+            return false;
+        }
+        float projectedX = (focal / d.z) * d.x + screenX;
+        float projectedY = (focal / d.z) * d.y + screenY;
+        cornerX[corner] = (projectedX - minX) / (maxX - minX) * levelWidths[0];
+        cornerY[corner] = (maxY - projectedY) / (maxY - minY) * levelHeights[0];
+        cornerZ[corner] = d.z;
+        return true;
+    }
+
+    //Getters for the culler state
+    public List<RenderObject> getOccluders() {
+        return Collections.unmodifiableList(occluders);
+    }
+
+    public int getWidth() {
+        return levelWidths[0];
+    }
+
+    public int getHeight() {
+        return levelHeights[0];
+    }
+
+    public int getTestedCount() {
+        return tested;
+    }
+
+    public int getOccludedCount() {
+        return occluded;
+    }
+}
@@ -0,0 +1,302 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The OffHeapMesh class stores the geometry of a large model outside the Java heap: the vertex positions
+ * as packed floats (x, y, z per vertex) and the triangles as packed vertex indices (three per triangle),
+ * both in direct memory. Unlike a RenderObject, which holds two Triangle objects with three Vertex objects
+ * each for every triangle, a mesh of millions of triangles costs the heap and the garbage collector nothing.
+ *
+ * A mesh is drawn through one or more MeshObjects, which place it in a scene. Its memory is released
+ * with close(), after which the mesh must no longer be used; the objects drawing it must be removed
+ * from their scenes first. Off-heap memory is limited by -XX:MaxDirectMemorySize (by default the maximum
+ * heap size), and each buffer by the 2 GB limit of direct buffers.
+ */
+public class OffHeapMesh implements AutoCloseable {
+
+    //Header of the binary mesh format written by write(): magic, version, vertex count, triangle count
+    private static final int FILE_MAGIC = 0x53454D54; //"TMES" in little-endian order
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private ByteBuffer positionMemory; //Owns the memory of positions
+    private ByteBuffer indexMemory; //Owns the memory of indices
+    private FloatBuffer positions; //x, y, z of each vertex
+    private IntBuffer indices; //Three vertex indices per triangle
+    private final int vertexCount;
+    private final int triangleCount;
+
+    /**
+     * Constructor to create a mesh from position and index arrays, copying them off the heap.
+     *
+     * @param positions The vertex positions, x, y and z of each vertex.
+     * @param indices The vertex indices of each triangle's three corners.
+     * @throws IllegalArgumentException if the arrays are not multiples of three or an index is out of range.
+     */
+    public OffHeapMesh(float[] positions, int[] indices) {
+        this(positions, positions.length, indices, indices.length);
+    }
+
+    /**
+     * Constructor to create a mesh from the first elements of position and index arrays.
+     */
+    private OffHeapMesh(float[] positions, int positionLength, int[] indices, int indexLength) {
+        if (positionLength % 3 != 0 || indexLength % 3 != 0) {
+            throw new IllegalArgumentException("Positions and indices must come in groups of three");
+        }
+        vertexCount = positionLength / 3;
+        triangleCount = indexLength / 3;
+        for (int i = 0; i < indexLength; i++) {
+            if (indices[i] < 0 || indices[i] >= vertexCount) {
+                throw new IllegalArgumentException("Vertex index out of range: " + indices[i]);
+            }
+        }
+
+        positionMemory = DirectBuffers.allocate(positionLength);
+        indexMemory = DirectBuffers.allocate(indexLength);
+        this.positions = positionMemory.asFloatBuffer();
+        this.indices = indexMemory.asIntBuffer();
+        this.positions.put(positions, 0, positionLength).clear();
+        this.indices.put(indices, 0, indexLength).clear();
+    }
+
+    /**
+     * Constructor to create a mesh that takes ownership of filled off-heap buffers.
+     */
+    private OffHeapMesh(ByteBuffer positionMemory, ByteBuffer indexMemory, int vertexCount, int triangleCount) {
+        this.positionMemory = positionMemory;
+        this.indexMemory = indexMemory;
+        this.positions = positionMemory.asFloatBuffer();
+        this.indices = indexMemory.asIntBuffer();
+        this.vertexCount = vertexCount;
+        this.triangleCount = triangleCount;
+    }
+
+    /**
+     * Reads a mesh written by write(). The positions and indices are read from the file straight into
+     * off-heap memory, without passing through the heap, so this is cheap enough for loading on the fly.
+     *
+     * @param path The path of the mesh file.
+     * @return The loaded mesh.
+     * @throws IOException if the file cannot be read or is not a mesh file.
+     */
+    public static OffHeapMesh read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+                throw new IOException("Not a mesh file: " + path);
+            }
+            int vertexCount = header.getInt();
+            int triangleCount = header.getInt();
+            if (vertexCount < 0 || triangleCount < 0) {
+                throw new IOException("Corrupt mesh file: " + path);
+            }
+
+            ByteBuffer positionMemory = DirectBuffers.allocate(vertexCount * 3L);
+            ByteBuffer indexMemory = DirectBuffers.allocate(triangleCount * 3L);
+            try {
+                readFully(channel, positionMemory);
+                readFully(channel, indexMemory);
+
+                //Check the indices like the array constructor does, so a corrupt file fails here and not during rendering
+                for (int i = 0; i < triangleCount * 3; i++) {
+                    int index = indexMemory.getInt(i * 4);
+                    if (index < 0 || index >= vertexCount) {
+                        throw new IOException("Corrupt mesh file: " + path + " (vertex index out of range: " + index + ")");
+                    }
+                }
+            } catch (IOException e) {
+                DirectBuffers.free(positionMemory);
+                DirectBuffers.free(indexMemory);
+                throw e;
+            }
+            positionMemory.clear();
+            indexMemory.clear();
+            return new OffHeapMesh(positionMemory, indexMemory, vertexCount, triangleCount);
+        }
+    }
+
+    /**
+     * Writes the mesh in a compact binary format that read() loads directly into off-heap memory:
+     * a 16 byte header followed by the positions and indices, all little-endian.
+     *
+     * @param path The path of the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        checkOpen();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(vertexCount).putInt(triangleCount).flip();
+            writeFully(channel, header);
+            writeFully(channel, positionMemory.duplicate().clear());
+            writeFully(channel, indexMemory.duplicate().clear());
+        }
+    }
+
+    //Reads until the buffer is full
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of mesh file");
+            }
+        }
+    }
+
+    //Writes the whole buffer
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory the mesh occupies.
+     *
+     * @return The size in bytes.
+     */
+    public long getByteSize() {
+        return (vertexCount * 3L + triangleCount * 3L) * 4;
+    }
+
+    /**
+     * Loads a mesh from an .obj file. Only vertex positions (v) and faces (f) are read; faces with more
+     * than three corners are split into a fan of triangles, and negative (relative) indices are supported.
+     * The file is read in a single pass without creating a Vertex or Triangle object per element.
+     *
+     * @param objPath The path to the .obj file.
+     * @return The loaded mesh.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file contains a malformed vertex or face.
+     */
+    public static OffHeapMesh loadObj(String objPath) throws IOException {
+        //Growable primitive arrays, copied off the heap at the end
+        float[] positions = new float[3 * 1024];
+        int positionLength = 0;
+        int[] indices = new int[3 * 1024];
+        int indexLength = 0;
+        int[] face = new int[16];
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(objPath))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] parts = line.trim().split("\\s+");
+                try {
+                    if (parts[0].equals("v")) { //Vertex line
+                        if (positionLength + 3 > positions.length) {
+                            positions = Arrays.copyOf(positions, positions.length * 2);
+                        }
+                        positions[positionLength++] = Float.parseFloat(parts[1]);
+                        positions[positionLength++] = Float.parseFloat(parts[2]);
+                        positions[positionLength++] = Float.parseFloat(parts[3]);
+                    } else if (parts[0].equals("f")) { //Face line, possibly with texture and normal indices
+                        int corners = parts.length - 1;
+                        if (corners < 3) {
+                            throw new IllegalArgumentException("face with fewer than three corners");
+                        }
+                        if (corners > face.length) {
+                            face = new int[corners];
+                        }
+                        for (int i = 0; i < corners; i++) {
+                            String token = parts[i + 1];
+                            int slash = token.indexOf('/');
+                            int index = Integer.parseInt(slash < 0 ? token : token.substring(0, slash));
+                            face[i] = index < 0 ? positionLength / 3 + index : index - 1;
+                        }
+
+                        //Split the face into a fan of triangles around its first corner
+                        int needed = indexLength + 3 * (corners - 2);
+                        if (needed > indices.length) {
+                            indices = Arrays.copyOf(indices, Math.max(needed, indices.length * 2));
+                        }
+                        for (int i = 1; i < corners - 1; i++) {
+                            indices[indexLength++] = face[0];
+                            indices[indexLength++] = face[i];
+                            indices[indexLength++] = face[i + 1];
+                        }
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException("Malformed line " + lineNumber + " in " + objPath + ": " + line);
+                }
+            }
+        }
+        return new OffHeapMesh(positions, positionLength, indices, indexLength);
+    }
+
+    /**
+     * Releases the off-heap memory of the mesh. The mesh must not be used afterwards.
+     * Calling close() more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (positions == null) {
+            return;
+        }
+        positions = null;
+        indices = null;
+        DirectBuffers.free(positionMemory);
+        DirectBuffers.free(indexMemory);
+        positionMemory = null;
+        indexMemory = null;
+    }
+
+    /**
+     * Returns the vertex positions, x, y and z of each vertex. The buffer is shared, not copied;
+     * use absolute get() calls so its position is not changed.
+     *
+     * @return The positions.
+     * @throws IllegalStateException if the mesh has been closed.
+     */
+    public FloatBuffer getPositions() {
+        checkOpen();
+        return positions;
+    }
+
+    /**
+     * Returns the vertex indices of each triangle's three corners. The buffer is shared, not copied;
+     * use absolute get() calls so its position is not changed.
+     *
+     * @return The indices.
+     * @throws IllegalStateException if the mesh has been closed.
+     */
+    public IntBuffer getIndices() {
+        checkOpen();
+        return indices;
+    }
+
+    //Throws if the memory has been released
+    private void checkOpen() {
+        if (positions == null) {
+            throw new IllegalStateException("The mesh has been closed");
+        }
+    }
+
+    //Getters for the mesh size
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    public boolean isClosed() {
+        return positions == null;
+    }
+}
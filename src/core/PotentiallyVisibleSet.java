@@ -0,0 +1,629 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The PotentiallyVisibleSet class stores, for every cell of a grid over the space the camera moves through,
+ * which static objects can be seen from somewhere inside the cell. A scene with a potentially visible set
+ * (PVS) only draws the objects in the set of the camera's current cell, plus any object not covered by it.
+ *
+ * The sets are computed once, offline or at load time, by build(): from sample points in each cell
+ * (its corners and centre) the objects are rasterized into six 90 degree views covering all directions,
+ * with a depth buffer, and every object that owns at least one pixel is added to the cell's set. Objects
+ * whose bounding box reaches into the cell are always added, and so are objects drawn at the same depth as
+ * the owner of a pixel, since the scene may draw either of two coplanar surfaces on top. Visibility is only
+ * sampled, so an object glimpsed from between the sample points could be missed; to make that unlikely each
+ * cell's set also includes the sets of its six neighbours. More samples per axis reduce it further at the
+ * cost of build time.
+ *
+ * Each cell's set is a bitset with one bit per object, in the order of the object list the set was built from.
+ * write() stores the grid and the bitsets in a compact binary file, and read() binds a file to the same list
+ * of objects again, checking that their triangle counts still match.
+ */
+public class PotentiallyVisibleSet {
+
+    private static final int FILE_MAGIC = 0x31535650; //"PVS1" in little-endian byte order
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    //Defaults of the visibility sampling
+    private static final int DEFAULT_SAMPLES_PER_AXIS = 2; //Sample points per cell axis, plus the centre
+    private static final int DEFAULT_FACE_SIZE = 64; //Resolution of each of the six views rendered per sample
+    private static final float NEAR = 0.01f; //Distance at which triangles are clipped in front of a sample point
+    private static final float TIE = 1e-4f; //Relative depth difference within which two surfaces both count as visible
+
+    //Grid of cells
+    private final float originX;
+    private final float originY;
+    private final float originZ;
+    private final float cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int cellsZ;
+
+    //One bitset per cell, of words longs each
+    private final int objectCount;
+    private final int words;
+    private final long[] bits;
+    private final int[] triangleCounts; //Triangle count of each object, to check that a file matches the objects
+
+    //Objects the bits refer to
+    private final IdentityHashMap<RenderObject, Integer> indices = new IdentityHashMap<>();
+
+    /**
+     * Constructor for a set whose bitsets are filled by build() or read().
+     */
+    private PotentiallyVisibleSet(float originX, float originY, float originZ, float cellSize,
+                                  int cellsX, int cellsY, int cellsZ, int[] triangleCounts) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.cellsX = cellsX;
+        this.cellsY = cellsY;
+        this.cellsZ = cellsZ;
+        this.triangleCounts = triangleCounts;
+        objectCount = triangleCounts.length;
+        words = (objectCount + 63) / 64;
+        bits = new long[cellsX * cellsY * cellsZ * words];
+    }
+
+    /**
+     * Computes the potentially visible sets of static objects with the default sampling.
+     *
+     * @param objects The static objects, already at their final transforms.
+     * @param bounds The region the camera can move through, as min x, y, z followed by max x, y, z.
+     * @param cellSize The edge length of the cubic cells.
+     * @return The potentially visible set.
+     */
+    public static PotentiallyVisibleSet build(List<RenderObject> objects, float[] bounds, float cellSize) {
+        return build(objects, bounds, cellSize, DEFAULT_SAMPLES_PER_AXIS, DEFAULT_FACE_SIZE);
+    }
+
+    /**
+     * Computes the potentially visible sets of static objects. The cells are computed in parallel.
+     *
+     * @param objects The static objects, already at their final transforms.
+     * @param bounds The region the camera can move through, as min x, y, z followed by max x, y, z.
+     * @param cellSize The edge length of the cubic cells.
+     * @param samplesPerAxis The number of sample points along each axis of a cell (at least 2, the corners),
+     *                       the centre being sampled as well.
+     * @param faceSize The resolution of the views rendered from each sample point.
+     * @return The potentially visible set.
+     */
+    public static PotentiallyVisibleSet build(List<RenderObject> objects, float[] bounds, float cellSize,
+                                              int samplesPerAxis, int faceSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        if (samplesPerAxis < 2 || faceSize < 1) {
+            throw new IllegalArgumentException("At least 2 samples per axis and a face size of 1 are required");
+        }
+        int[] triangleCounts = new int[objects.size()];
+        for (int i = 0; i < triangleCounts.length; i++) {
+            objects.get(i).loadTriangles(); //Transform objects that were never added to a scene, before the threads share them
+            triangleCounts[i] = objects.get(i).getTCount();
+        }
+        int cellsX = Math.max(1, (int) Math.ceil((bounds[3] - bounds[0]) / cellSize));
+        int cellsY = Math.max(1, (int) Math.ceil((bounds[4] - bounds[1]) / cellSize));
+        int cellsZ = Math.max(1, (int) Math.ceil((bounds[5] - bounds[2]) / cellSize));
+        PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(bounds[0], bounds[1], bounds[2], cellSize,
+                cellsX, cellsY, cellsZ, triangleCounts);
+        pvs.bind(objects);
+
+        //Every cell writes only its own bitset, so the cells can be computed independently
+        RenderObject[] objectArray = objects.toArray(new RenderObject[0]);
+        ThreadLocal<VisibilitySampler> samplers = ThreadLocal.withInitial(() -> new VisibilitySampler(objectArray, faceSize));
+        IntStream.range(0, pvs.getCellCount()).parallel().forEach(cell -> {
+            VisibilitySampler sampler = samplers.get();
+            pvs.computeCell(cell, sampler, samplesPerAxis);
+        });
+        pvs.addNeighbours();
+        return pvs;
+    }
+
+    /**
+     * Fills one cell's bitset from its sample points and the objects reaching into it.
+     */
+    private void computeCell(int cell, VisibilitySampler sampler, int samplesPerAxis) {
+        int x = cell % cellsX;
+        int y = (cell / cellsX) % cellsY;
+        int z = cell / (cellsX * cellsY);
+        float minX = originX + x * cellSize;
+        float minY = originY + y * cellSize;
+        float minZ = originZ + z * cellSize;
+
+        sampler.begin();
+        float step = cellSize / (samplesPerAxis - 1);
+        for (int i = 0; i < samplesPerAxis; i++) {
+            for (int j = 0; j < samplesPerAxis; j++) {
+                for (int k = 0; k < samplesPerAxis; k++) {
+                    sampler.sample(minX + i * step, minY + j * step, minZ + k * step);
+                }
+            }
+        }
+        float half = cellSize / 2;
+        sampler.sample(minX + half, minY + half, minZ + half);
+
+        boolean[] seen = sampler.getSeen();
+        int base = cell * words;
+        for (int object = 0; object < objectCount; object++) {
+            float[] b = sampler.getBounds(object);
+            boolean inside = b[0] <= minX + cellSize && b[3] >= minX
+                    && b[1] <= minY + cellSize && b[4] >= minY
+                    && b[2] <= minZ + cellSize && b[5] >= minZ;
+            if (seen[object] || inside) {
+                bits[base + (object >> 6)] |= 1L << object;
+            }
+        }
+    }
+
+    /**
+     * Adds the sets of the six neighbouring cells to each cell's set, so that objects seen only from
+     * between the sample points of a cell are still likely to be in it.
+     */
+    private void addNeighbours() {
+        long[] sampled = bits.clone();
+        for (int z = 0; z < cellsZ; z++) {
+            for (int y = 0; y < cellsY; y++) {
+                for (int x = 0; x < cellsX; x++) {
+                    int base = ((z * cellsY + y) * cellsX + x) * words;
+                    for (int word = 0; word < words; word++) {
+                        long union = 0;
+                        union |= x > 0 ? sampled[base - words + word] : 0;
+                        union |= x < cellsX - 1 ? sampled[base + words + word] : 0;
+                        union |= y > 0 ? sampled[base - cellsX * words + word] : 0;
+                        union |= y < cellsY - 1 ? sampled[base + cellsX * words + word] : 0;
+                        union |= z > 0 ? sampled[base - cellsX * cellsY * words + word] : 0;
+                        union |= z < cellsZ - 1 ? sampled[base + cellsX * cellsY * words + word] : 0;
+                        bits[base + word] |= union;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds the bits to a list of objects.
+     *
+     * @throws IllegalArgumentException if the objects do not match the ones the set was built from.
+     */
+    private void bind(List<RenderObject> objects) {
+        if (objects.size() != objectCount) {
+            throw new IllegalArgumentException("Potentially visible set was built for " + objectCount
+                    + " objects, not " + objects.size());
+        }
+        indices.clear();
+        for (int i = 0; i < objectCount; i++) {
+            RenderObject object = objects.get(i);
+            if (object.getTCount() != triangleCounts[i]) {
+                throw new IllegalArgumentException("Object " + i + " (" + object.getName() + ") has "
+                        + object.getTCount() + " triangles, the potentially visible set expects " + triangleCounts[i]);
+            }
+            indices.put(object, i);
+        }
+    }
+
+    /**
+     * Returns the cell containing a point.
+     *
+     * @param point The point, e.g. the camera position.
+     * @return The index of the cell, or -1 if the point lies outside the grid.
+     */
+    public int cellAt(Vertex point) {
+        int x = (int) Math.floor((point.x - originX) / cellSize);
+        int y = (int) Math.floor((point.y - originY) / cellSize);
+        int z = (int) Math.floor((point.z - originZ) / cellSize);
+        if (x < 0 || y < 0 || z < 0 || x >= cellsX || y >= cellsY || z >= cellsZ) {
+            return -1;
+        }
+        return (z * cellsY + y) * cellsX + x;
+    }
+
+    /**
+     * Checks whether an object may be visible from a cell.
+     *
+     * @param cell The index of the cell.
+     * @param object The index of the object in the list the set was built from.
+     * @return true if the object is in the cell's set.
+     */
+    public boolean isVisible(int cell, int object) {
+        return (bits[cell * words + (object >> 6)] & (1L << object)) != 0;
+    }
+
+    /**
+     * Returns the index of an object in the list the set was built from or read with.
+     *
+     * @param object The object.
+     * @return The index, or -1 if the set does not cover the object.
+     */
+    public int indexOf(RenderObject object) {
+        Integer index = indices.get(object);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Counts the objects that may be visible from a cell.
+     *
+     * @param cell The index of the cell.
+     * @return The number of objects in the cell's set.
+     */
+    public int getVisibleCount(int cell) {
+        int count = 0;
+        for (int word = 0; word < words; word++) {
+            count += Long.bitCount(bits[cell * words + word]);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the grid and the bitsets to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + objectCount * 4 + bits.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+        buffer.putFloat(originX).putFloat(originY).putFloat(originZ).putFloat(cellSize);
+        buffer.putInt(cellsX).putInt(cellsY).putInt(cellsZ).putInt(objectCount);
+        for (int count : triangleCounts) {
+            buffer.putInt(count);
+        }
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a file written by write() and binds it to the objects it was built from.
+     *
+     * @param path The file to read.
+     * @param objects The static objects, in the same order as when the set was built.
+     * @return The potentially visible set.
+     * @throws IOException if the file cannot be read or is not a potentially visible set.
+     * @throws IllegalArgumentException if the objects do not match the ones the set was built from.
+     */
+    public static PotentiallyVisibleSet read(Path path, List<RenderObject> objects) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != FILE_MAGIC) {
+            throw new IOException(path + " is not a potentially visible set file");
+        }
+        int version = buffer.getInt();
+        if (version != FILE_VERSION) {
+            throw new IOException("Unsupported potentially visible set version " + version + " in " + path);
+        }
+        float originX = buffer.getFloat();
+        float originY = buffer.getFloat();
+        float originZ = buffer.getFloat();
+        float cellSize = buffer.getFloat();
+        int cellsX = buffer.getInt();
+        int cellsY = buffer.getInt();
+        int cellsZ = buffer.getInt();
+        int objectCount = buffer.getInt();
+        if (cellsX <= 0 || cellsY <= 0 || cellsZ <= 0 || objectCount < 0 || buffer.remaining() !=
+                objectCount * 4L + (long) cellsX * cellsY * cellsZ * ((objectCount + 63) / 64) * 8) {
+            throw new IOException("Corrupt potentially visible set file " + path);
+        }
+
+        int[] triangleCounts = new int[objectCount];
+        for (int i = 0; i < objectCount; i++) {
+            triangleCounts[i] = buffer.getInt();
+        }
+        PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(originX, originY, originZ, cellSize,
+                cellsX, cellsY, cellsZ, triangleCounts);
+        buffer.asLongBuffer().get(pvs.bits);
+        pvs.bind(objects);
+        return pvs;
+    }
+
+    /**
+     * Reads the potentially visible set from a file, or builds it with the default sampling and writes
+     * the file if it does not exist or no longer matches the objects.
+     *
+     * @param path The file.
+     * @param objects The static objects, already at their final transforms.
+     * @param bounds The region the camera can move through, as min x, y, z followed by max x, y, z.
+     * @param cellSize The edge length of the cubic cells.
+     * @return The potentially visible set.
+     * @throws IOException if a new file cannot be written.
+     */
+    public static PotentiallyVisibleSet loadOrBuild(Path path, List<RenderObject> objects, float[] bounds, float cellSize) throws IOException {
+        if (Files.exists(path)) {
+            try {
+                return read(path, objects);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Rebuilding potentially visible set: " + e.getMessage());
+            }
+        }
+        PotentiallyVisibleSet pvs = build(objects, bounds, cellSize);
+        pvs.write(path);
+        return pvs;
+    }
+
+    //Getters for the grid
+    public int getCellCount() {
+        return cellsX * cellsY * cellsZ;
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * The VisibilitySampler class renders object indices with a depth buffer into six views around a point,
+     * collecting the objects that own at least one pixel. Each building thread uses its own sampler.
+     */
+    private static final class VisibilitySampler {
+
+        //Right, up and forward axes of the six views (+x, -x, +y, -y, +z, -z)
+        private static final float[][] FACES = {
+            {0, 0, -1,  0, 1, 0,  1, 0, 0},
+            {0, 0, 1,  0, 1, 0,  -1, 0, 0},
+            {1, 0, 0,  0, 0, -1,  0, 1, 0},
+            {1, 0, 0,  0, 0, 1,  0, -1, 0},
+            {1, 0, 0,  0, 1, 0,  0, 0, 1},
+            {-1, 0, 0,  0, 1, 0,  0, 0, -1}
+        };
+
+        private final RenderObject[] objects;
+        private final float[][] bounds; //Bounding box of each object
+        private final int size;
+        private final float[] depth; //1 / z of the nearest triangle in each pixel, 0 where nothing was drawn
+        private final int[] ids; //Object drawn in each pixel
+        private final boolean[] seen; //Objects that owned a pixel in any sample since begin()
+        private final int[] drawOrder; //Objects nearest first
+        private final float[] distances; //Squared distance of each object's bounding box from the sample point
+
+        //View-space corners of the triangle being drawn, after clipping (up to 4)
+        private final float[] vx = new float[4];
+        private final float[] vy = new float[4];
+        private final float[] vz = new float[4];
+        private final float[] cx = new float[4];
+        private final float[] cy = new float[4];
+        private final float[] cz = new float[4];
+
+        VisibilitySampler(RenderObject[] objects, int size) {
+            this.objects = objects;
+            this.size = size;
+            depth = new float[size * size];
+            ids = new int[size * size];
+            seen = new boolean[objects.length];
+            drawOrder = new int[objects.length];
+            distances = new float[objects.length];
+            bounds = new float[objects.length][];
+            for (int i = 0; i < objects.length; i++) {
+                bounds[i] = objects[i].getBounds().clone();
+            }
+        }
+
+        void begin() {
+            Arrays.fill(seen, false);
+        }
+
+        /**
+         * Renders the six views around a point and marks the visible objects as seen.
+         */
+        void sample(float px, float py, float pz) {
+            sortByDistance(px, py, pz);
+            for (float[] face : FACES) {
+                Arrays.fill(depth, 0);
+                Arrays.fill(ids, -1);
+                for (int k = 0; k < objects.length; k++) {
+                    int object = drawOrder[k];
+                    if (isHidden(bounds[object], px, py, pz, face)) {
+                        continue; //Outside the view or behind what was drawn, so none of its triangles can own a pixel
+                    }
+                    for (Triangle t : objects[object].getAdjustedTriangles()) {
+                        toView(t.v1, px, py, pz, face, 0);
+                        toView(t.v2, px, py, pz, face, 1);
+                        toView(t.v3, px, py, pz, face, 2);
+                        drawClipped(object);
+                    }
+                }
+                for (int id : ids) {
+                    if (id >= 0) {
+                        seen[id] = true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Orders the objects by the distance of their bounding boxes from a point, nearest first, so the
+         * occluders of a view are usually drawn before the objects they hide.
+         */
+        private void sortByDistance(float px, float py, float pz) {
+            for (int i = 0; i < objects.length; i++) {
+                float[] b = bounds[i];
+                float dx = Math.max(0, Math.max(b[0] - px, px - b[3]));
+                float dy = Math.max(0, Math.max(b[1] - py, py - b[4]));
+                float dz = Math.max(0, Math.max(b[2] - pz, pz - b[5]));
+                distances[i] = dx * dx + dy * dy + dz * dz;
+                drawOrder[i] = i;
+            }
+            for (int i = 1; i < objects.length; i++) {
+                int object = drawOrder[i];
+                float distance = distances[object];
+                int j = i - 1;
+                while (j >= 0 && distances[drawOrder[j]] > distance) {
+                    drawOrder[j + 1] = drawOrder[j];
+                    j--;
+                }
+                drawOrder[j + 1] = object;
+            }
+        }
+
+        /**
+         * Checks whether a bounding box lies entirely outside a view, or clearly behind the depth of every pixel
+         * its projection covers.
+         */
+        private boolean isHidden(float[] b, float px, float py, float pz, float[] face) {
+            int left = 0, right = 0, below = 0, above = 0, behind = 0;
+            float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+            float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            float nearest = 0; //Largest 1 / z of the corners
+            float half = size / 2f;
+            for (int corner = 0; corner < 8; corner++) {
+                float dx = ((corner & 1) == 0 ? b[0] : b[3]) - px;
+                float dy = ((corner & 2) == 0 ? b[1] : b[4]) - py;
+                float dz = ((corner & 4) == 0 ? b[2] : b[5]) - pz;
+                float x = dx * face[0] + dy * face[1] + dz * face[2];
+                float y = dx * face[3] + dy * face[4] + dz * face[5];
+                float z = dx * face[6] + dy * face[7] + dz * face[8];
+                left += x < -z ? 1 : 0;
+                right += x > z ? 1 : 0;
+                below += y < -z ? 1 : 0;
+                above += y > z ? 1 : 0;
+                behind += z < NEAR ? 1 : 0;
+                if (z >= NEAR) {
+                    minX = Math.min(minX, (x / z) * half + half);
+                    maxX = Math.max(maxX, (x / z) * half + half);
+                    minY = Math.min(minY, (-y / z) * half + half);
+                    maxY = Math.max(maxY, (-y / z) * half + half);
+                    nearest = Math.max(nearest, 1 / z);
+                }
+            }
+            if (left == 8 || right == 8 || below == 8 || above == 8 || behind == 8) {
+                return true;
+            }
+            if (behind > 0) {
+                return false; //Reaches past the near plane, its projection is unbounded
+            }
+            int xStart = Math.max(0, (int) Math.floor(minX));
+            int xEnd = Math.min(size - 1, (int) Math.floor(maxX));
+            int yStart = Math.max(0, (int) Math.floor(minY));
+            int yEnd = Math.min(size - 1, (int) Math.floor(maxY));
+            for (int y = yStart; y <= yEnd; y++) {
+                for (int x = xStart; x <= xEnd; x++) {
+                    float stored = depth[y * size + x];
+                    if (stored - nearest <= stored * TIE) {
+                        return false; //Empty, or not clearly nearer than the box's nearest corner
+                    }
+                }
+            }
+            return true;
+        }
+
+        //Moves a vertex into the view space of a face
+        private void toView(Vertex v, float px, float py, float pz, float[] face, int corner) {
+            float dx = v.x - px;
+            float dy = v.y - py;
+            float dz = v.z - pz;
+            vx[corner] = dx * face[0] + dy * face[1] + dz * face[2];
+            vy[corner] = dx * face[3] + dy * face[4] + dz * face[5];
+            vz[corner] = dx * face[6] + dy * face[7] + dz * face[8];
+        }
+
+        /**
+         * Clips the triangle in vx/vy/vz against the near plane and draws the remaining one or two triangles.
+         */
+        private void drawClipped(int object) {
+            if (vz[0] < NEAR && vz[1] < NEAR && vz[2] < NEAR) {
+                return;
+            }
+            //Sutherland-Hodgman against z = NEAR
+            int n = 0;
+            for (int i = 0; i < 3; i++) {
+                int j = (i + 1) % 3;
+                boolean inI = vz[i] >= NEAR;
+                boolean inJ = vz[j] >= NEAR;
+                if (inI) {
+                    cx[n] = vx[i];
+                    cy[n] = vy[i];
+                    cz[n] = vz[i];
+                    n++;
+                }
+                if (inI != inJ) {
+                    float t = (NEAR - vz[i]) / (vz[j] - vz[i]);
+                    cx[n] = vx[i] + (vx[j] - vx[i]) * t;
+                    cy[n] = vy[i] + (vy[j] - vy[i]) * t;
+                    cz[n] = NEAR;
+                    n++;
+                }
+            }
+            drawTriangle(0, 1, 2, object);
+            if (n == 4) {
+                drawTriangle(0, 2, 3, object);
+            }
+        }
+
+        /**
+         * Projects three clipped corners with a 90 degree field of view and fills the pixels whose centres
+         * they cover, keeping the nearest object in each pixel.
+         */
+        private void drawTriangle(int a, int b, int c, int object) {
+            float half = size / 2f;
+            float x0 = (cx[a] / cz[a]) * half + half, y0 = (-cy[a] / cz[a]) * half + half, w0 = 1 / cz[a];
+            float x1 = (cx[b] / cz[b]) * half + half, y1 = (-cy[b] / cz[b]) * half + half, w1 = 1 / cz[b];
+            float x2 = (cx[c] / cz[c]) * half + half, y2 = (-cy[c] / cz[c]) * half + half, w2 = 1 / cz[c];
+
+            float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+            if (area == 0 || Float.isNaN(area)) {
+                return;
+            }
+            int xStart = Math.max(0, (int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+            int xEnd = Math.min(size, (int) Math.ceil(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+            int yStart = Math.max(0, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+            int yEnd = Math.min(size, (int) Math.ceil(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+
+            //Barycentric weights of the pixel centres, 1 / z is linear in screen space
+            float inverseArea = 1 / area;
+            for (int y = yStart; y < yEnd; y++) {
+                float py = y + 0.5f;
+                for (int x = xStart; x < xEnd; x++) {
+                    float px = x + 0.5f;
+                    float e0 = ((x2 - x1) * (py - y1) - (px - x1) * (y2 - y1)) * inverseArea;
+                    float e1 = ((x0 - x2) * (py - y2) - (px - x2) * (y0 - y2)) * inverseArea;
+                    float e2 = 1 - e0 - e1;
+                    if (e0 < 0 || e1 < 0 || e2 < 0) {
+                        continue;
+                    }
+                    float w = e0 * w0 + e1 * w1 + e2 * w2;
+                    int pixel = y * size + x;
+                    float stored = depth[pixel];
+                    if (w > stored) {
+                        if (w - stored <= stored * TIE) {
+                            seen[ids[pixel]] = true; //Coplanar surfaces, either may be drawn on top in the scene
+                        }
+                        depth[pixel] = w;
+                        ids[pixel] = object;
+                    } else if (stored - w <= stored * TIE) {
+                        seen[object] = true;
+                    }
+                }
+            }
+        }
+
+        boolean[] getSeen() {
+            return seen;
+        }
+
+        float[] getBounds(int object) {
+            return bounds[object];
+        }
+    }
+}
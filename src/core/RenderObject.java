@@ -2,9 +2,16 @@ package core;
 
 import colours.ColourShader;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import materials.Material;
+import materials.MaterialLibrary;
 import objects.Triangle;
 import objects.Vertex;
 
@@ -27,6 +34,14 @@ public class RenderObject {
     private Triangle[] adjustedTriangles; //Transformed triangles after scaling, rotation, and translation
 
     private int tCount; //Number of triangles in the object
+    private float[] bounds = new float[6]; //Bounding box of the adjusted triangles: min x, y, z, then max x, y, z
+
+    //Materials read from the object's MTL library (null when the object has none)
+    private Material[] materials; //Material of each triangle (null for triangles without one)
+    private float[] textureCoordinates; //u and v of each triangle's three corners, 6 floats per triangle
+
+    //World transform set by a SceneNode, as a row-major 3x4 matrix (null when position, rotation and scale are used)
+    private float[] transformMatrix;
 
     //Precomputed sine and cosine values for the object's rotation
     private Vertex c = new Vertex(0, 0, 0); //The vertex storing cosine of the rotation angles
@@ -72,13 +87,128 @@ public class RenderObject {
      * Adjusts the positions, scales, and rotations of all triangles in the object.
      */
     private void adjustTriangles() {
-        generateObjectRotation(); //Precompute the sine and cosine for rotation
-        //Apply scaling, rotation, and translation to all triangles
+        if (transformMatrix != null) {
+            adjustTrianglesWithMatrix();
+        } else {
+            generateObjectRotation(); //Precompute the sine and cosine for rotation
+            //Apply scaling, rotation, and translation to all triangles
+            for (int index = 0; index < tCount; index++) {
+                transformVertex(triangles[index].v1, adjustedTriangles[index].v1);
+                transformVertex(triangles[index].v2, adjustedTriangles[index].v2);
+                transformVertex(triangles[index].v3, adjustedTriangles[index].v3);
+            }
+        }
+        computeBounds();
+    }
+
+    /**
+     * Recomputes the bounding box of the adjusted triangles.
+     */
+    private void computeBounds() {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int index = 0; index < tCount; index++) {
+            Triangle t = adjustedTriangles[index];
+            minX = Math.min(minX, Math.min(t.v1.x, Math.min(t.v2.x, t.v3.x)));
+            minY = Math.min(minY, Math.min(t.v1.y, Math.min(t.v2.y, t.v3.y)));
+            minZ = Math.min(minZ, Math.min(t.v1.z, Math.min(t.v2.z, t.v3.z)));
+            maxX = Math.max(maxX, Math.max(t.v1.x, Math.max(t.v2.x, t.v3.x)));
+            maxY = Math.max(maxY, Math.max(t.v1.y, Math.max(t.v2.y, t.v3.y)));
+            maxZ = Math.max(maxZ, Math.max(t.v1.z, Math.max(t.v2.z, t.v3.z)));
+        }
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = minZ;
+        bounds[3] = maxX;
+        bounds[4] = maxY;
+        bounds[5] = maxZ;
+    }
+
+    /**
+     * Scales, rotates and translates a single vertex, writing the result into the target vertex in place.
+     * The adjusted triangles own their vertices, so they can be overwritten without allocating new ones.
+     * 
+     * @param source The original vertex.
+     * @param target The adjusted vertex to overwrite.
+     */
+    private void transformVertex(Vertex source, Vertex target) {
+        target.x = source.x * scale.x;
+        target.y = source.y * scale.y;
+        target.z = source.z * scale.z;
+        Vertex.rotateWithSinCos(target, s, c, target);
+        target.x += position.x;
+        target.y += position.y;
+        target.z += position.z;
+    }
+
+    /**
+     * Transforms all triangles of the object with the transform matrix.
+     */
+    private void adjustTrianglesWithMatrix() {
+        float[] m = transformMatrix;
         for (int index = 0; index < tCount; index++) {
-            scale(adjustedTriangles[index], triangles[index]); //Scale the triangle
-            rotate(adjustedTriangles[index], adjustedTriangles[index]); //Rotate the triangle
-            adjust(adjustedTriangles[index], adjustedTriangles[index]); //Translate the triangle
+            transformVertexWithMatrix(m, triangles[index].v1, adjustedTriangles[index].v1);
+            transformVertexWithMatrix(m, triangles[index].v2, adjustedTriangles[index].v2);
+            transformVertexWithMatrix(m, triangles[index].v3, adjustedTriangles[index].v3);
+        }
+    }
+
+    /**
+     * Multiplies a vertex by a row-major 3x4 matrix, writing the result into the target vertex.
+     */
+    private static void transformVertexWithMatrix(float[] m, Vertex source, Vertex target) {
+        float x = source.x;
+        float y = source.y;
+        float z = source.z;
+        target.x = m[0] * x + m[1] * y + m[2] * z + m[3];
+        target.y = m[4] * x + m[5] * y + m[6] * z + m[7];
+        target.z = m[8] * x + m[9] * y + m[10] * z + m[11];
+    }
+
+    /**
+     * Sets the object's transform to a matrix, e.g. the world transform computed by a SceneGraph,
+     * and re-transforms the triangles. The matrix replaces position, rotation and scale until one of
+     * those is set again.
+     * 
+     * @param matrix An array holding the row-major 3x4 matrix.
+     * @param offset The index of the matrix's first element in the array.
+     */
+    public void setTransformMatrix(float[] matrix, int offset) {
+        if (transformMatrix == null) {
+            transformMatrix = new float[12];
+        }
+        System.arraycopy(matrix, offset, transformMatrix, 0, 12);
+        adjustTriangles();
+    }
+
+    /**
+     * Computes the row-major 3x4 matrix that applies a scale, a rotation and a translation the same way
+     * RenderObject does: scale first, then rotate, then move to the position.
+     * 
+     * @param position The translation.
+     * @param rotation The rotation angles.
+     * @param scale The scale.
+     * @param out The array to write the matrix into.
+     * @param offset The index of the matrix's first element in the array.
+     */
+    public static void composeMatrix(Vertex position, Vertex rotation, Vertex scale, float[] out, int offset) {
+        Vertex s = new Vertex((float) Math.sin(-rotation.x), (float) Math.sin(-rotation.y), (float) Math.sin(-rotation.z));
+        Vertex c = new Vertex((float) Math.cos(-rotation.x), (float) Math.cos(-rotation.y), (float) Math.cos(-rotation.z));
+
+        //The columns are the rotated, scaled unit axes
+        Vertex axis = new Vertex(0, 0, 0);
+        for (int column = 0; column < 3; column++) {
+            axis.x = column == 0 ? scale.x : 0;
+            axis.y = column == 1 ? scale.y : 0;
+            axis.z = column == 2 ? scale.z : 0;
+            Vertex.rotateWithSinCos(axis, s, c, axis);
+            out[offset + column] = axis.x;
+            out[offset + 4 + column] = axis.y;
+            out[offset + 8 + column] = axis.z;
         }
+        out[offset + 3] = position.x;
+        out[offset + 7] = position.y;
+        out[offset + 11] = position.z;
     }
 
     //Getters for object properties
@@ -98,10 +228,37 @@ public class RenderObject {
         return rotation;
     }
 
+    /**
+     * Returns the adjusted triangles as last transformed, without transforming them again.
+     * 
+     * @return An array of transformed triangles.
+     */
+    public Triangle[] getAdjustedTriangles() {
+        return adjustedTriangles;
+    }
+
+    /**
+     * Returns the world-space bounding box of the adjusted triangles, updated whenever the object is transformed.
+     * The array is shared, not copied.
+     * 
+     * @return The box as min x, y, z followed by max x, y, z.
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
     public int getTCount() {
         return tCount;
     }
 
+    public Material[] getMaterials() {
+        return materials;
+    }
+
+    public float[] getTextureCoordinates() {
+        return textureCoordinates;
+    }
+
     public ColourShader getColour() {
         return colourShader;
     }
@@ -109,38 +266,78 @@ public class RenderObject {
     //Setters for object properties with automatic adjustment of triangles
     public void setPosition(Vertex newPosition) {
         this.position = newPosition;
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on new position
     }
 
     public void alterPosition(Vertex alteration) {
         this.position = Vertex.add(position, alteration);
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on updated position
     }
 
     public void setScale(Vertex newScale) {
         this.scale = newScale;
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on new scale
     }
 
     public void alterScale(Vertex alteration) {
         this.scale = Vertex.add(scale, alteration);
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on updated scale
     }
 
     public void setRotation(Vertex newRotation) {
         this.rotation = newRotation;
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on new rotation
     }
 
     public void alterRotation(Vertex alteration) {
         this.rotation = Vertex.add(rotation, alteration);
+        this.transformMatrix = null;
         adjustTriangles(); //Recalculate adjusted triangles based on updated rotation
     }
 
+    /**
+     * Sets the position, rotation and scale together, re-transforming the triangles only once.
+     * 
+     * @param newPosition The new position.
+     * @param newRotation The new rotation.
+     * @param newScale The new scale.
+     */
+    public void setTransform(Vertex newPosition, Vertex newRotation, Vertex newScale) {
+        this.position = newPosition;
+        this.rotation = newRotation;
+        this.scale = newScale;
+        this.transformMatrix = null;
+        adjustTriangles(); //Recalculate adjusted triangles once for all three changes
+    }
+
     public void setColour(ColourShader colourShader) {
         this.colourShader = colourShader;
     }
 
+    /**
+     * Sets the materials of the object's triangles and the texture coordinates of their corners.
+     * A scene the object is already in picks them up with reloadObjectsTriangles().
+     * 
+     * @param materials The material of each triangle (entries may be null), or null to remove all materials.
+     * @param textureCoordinates The u and v of each triangle's three corners (6 floats per triangle), or null for none.
+     * @throws IllegalArgumentException if an array does not match the number of triangles.
+     */
+    public void setMaterials(Material[] materials, float[] textureCoordinates) {
+        if (materials != null && materials.length != tCount) {
+            throw new IllegalArgumentException("Expected " + tCount + " materials, got " + materials.length);
+        }
+        if (textureCoordinates != null && textureCoordinates.length != tCount * 6) {
+            throw new IllegalArgumentException("Expected " + tCount * 6 + " texture coordinates, got " + textureCoordinates.length);
+        }
+        this.materials = materials;
+        this.textureCoordinates = textureCoordinates;
+    }
+
     /**
      * Scales a triangle by the object's scale factor.
      * 
@@ -200,6 +397,9 @@ public class RenderObject {
 
     /**
      * Loads a 3D object from an .obj file and parses it into a series of triangles.
+     * Texture coordinates (vt) and the materials of the library named by mtllib (assigned to the faces
+     * following each usemtl) are read as well; the MTL file is looked up relative to the .obj file.
+     * Faces with more than three corners keep their first three.
      * 
      * @param objPath The path to the .obj file.
      * @param name The name of the object.
@@ -208,70 +408,55 @@ public class RenderObject {
      * @return A new RenderObject loaded from the file.
      */
     public static RenderObject loadObject(String objPath, String name, ColourShader colourShader, Vertex position) {
-        int firstLineVertex = 1;
-        int lastLineVertex = 1;
-        int firstLineFace = 1;
-        int lastLineFace = 1;
-        int lineIndex = 1;
-        Vertex[] vertices = null;
-        Triangle[] triangles = null;
-        BufferedReader reader = null;
+        ArrayList<Vertex> vertices = new ArrayList<>();
+        ArrayList<Triangle> triangles = new ArrayList<>();
+        float[] uvs = new float[64]; //u and v of every vt line
+        int uvCount = 0;
+        float[] cornerUVs = new float[64]; //u and v of every face corner, 6 floats per triangle
+        ArrayList<Material> faceMaterials = new ArrayList<>();
+        boolean hasMaterials = false;
+        Map<String, Material> library = new HashMap<>();
+        Material material = null; //Material of the faces being read
         String line;
 
-        try {
-            reader = new BufferedReader(new FileReader(objPath));
-            line = "";
-
-            //Parse the .obj file to find vertices and faces
+        try (BufferedReader reader = new BufferedReader(new FileReader(objPath))) {
+            //Parse the .obj file line by line
             while ((line = reader.readLine()) != null) {
-                String[] lineS = line.split(" ");
+                String[] lineS = line.trim().split("\\s+");
                 if (lineS[0].equals("v")) { //Vertex line
-                    if (firstLineVertex == lastLineVertex) {
-                        firstLineVertex = lineIndex;
-                        lastLineVertex = lineIndex + 1;
-                    } else {
-                        lastLineVertex = lineIndex;
+                    vertices.add(new Vertex(Float.parseFloat(lineS[1]), Float.parseFloat(lineS[2]), Float.parseFloat(lineS[3])));
+                } else if (lineS[0].equals("vt")) { //Texture coordinate line
+                    if (uvCount * 2 + 2 > uvs.length) {
+                        uvs = Arrays.copyOf(uvs, uvs.length * 2);
                     }
-                } else if (lineS[0].equals("f")) { //Face line
-                    if (firstLineFace == lastLineFace) {
-                        firstLineFace = lineIndex;
-                        lastLineFace = lineIndex + 1;
-                    } else {
-                        lastLineFace = lineIndex;
+                    uvs[uvCount * 2] = Float.parseFloat(lineS[1]);
+                    uvs[uvCount * 2 + 1] = lineS.length > 2 ? Float.parseFloat(lineS[2]) : 0;
+                    uvCount++;
+                } else if (lineS[0].equals("f")) { //Face line, each corner being vertex/texture/normal
+                    int index = triangles.size();
+                    if (index * 6 + 6 > cornerUVs.length) {
+                        cornerUVs = Arrays.copyOf(cornerUVs, cornerUVs.length * 2);
                     }
+                    Vertex[] corners = new Vertex[3];
+                    for (int corner = 0; corner < 3; corner++) {
+                        String[] indices = lineS[corner + 1].split("/");
+                        corners[corner] = vertices.get(resolveIndex(Integer.parseInt(indices[0]), vertices.size()));
+                        if (indices.length > 1 && !indices[1].isEmpty()) {
+                            int uv = resolveIndex(Integer.parseInt(indices[1]), uvCount);
+                            cornerUVs[index * 6 + corner * 2] = uvs[uv * 2];
+                            cornerUVs[index * 6 + corner * 2 + 1] = uvs[uv * 2 + 1];
+                        }
+                    }
+                    triangles.add(new Triangle(corners[0], corners[1], corners[2]));
+                    faceMaterials.add(material);
+                    hasMaterials |= material != null;
+                } else if (lineS[0].equals("mtllib") && lineS.length > 1) { //Material library, relative to the .obj file
+                    File libraryFile = new File(new File(objPath).getAbsoluteFile().getParentFile(), line.trim().substring(6).trim());
+                    library.putAll(MaterialLibrary.load(libraryFile.getPath()));
+                } else if (lineS[0].equals("usemtl")) { //Material of the following faces
+                    material = library.get(line.trim().substring(6).trim());
                 }
-                lineIndex += 1;
-            }
-            reader.close();
-
-            //Allocate memory for vertices and triangles
-            vertices = new Vertex[lastLineVertex - firstLineVertex + 1];
-            triangles = new Triangle[lastLineFace - firstLineFace + 1];
-
-            reader = new BufferedReader(new FileReader(objPath));
-            line = "";
-            lineIndex = 1;
-
-            //Parse the .obj file and extract vertex and face data
-            while ((line = reader.readLine()) != null) {
-                String[] lineS = line.split(" ");
-                if (firstLineVertex <= lineIndex && lineIndex <= lastLineVertex) {
-                    //Parse vertex positions
-                    float valueOne = Float.parseFloat(lineS[1]);
-                    float valueTwo = Float.parseFloat(lineS[2]);
-                    float valueThree = Float.parseFloat(lineS[3]);
-                    vertices[lineIndex - firstLineVertex] = new Vertex(valueOne, valueTwo, valueThree);
-                } else if (firstLineFace <= lineIndex && lineIndex <= lastLineFace) {
-                    //Parse face (triangle) indices
-                    int valueOne = Integer.parseInt(lineS[1].split("/")[0]);
-                    int valueTwo = Integer.parseInt(lineS[2].split("/")[0]);
-                    int valueThree = Integer.parseInt(lineS[3].split("/")[0]);
-                    triangles[lineIndex - firstLineFace] = new Triangle(vertices[valueOne - 1], vertices[valueTwo - 1], vertices[valueThree - 1]);
-                }
-                lineIndex += 1;
             }
-            reader.close();
-
         } catch (FileNotFoundException e) {
             System.out.println("File not found: " + e.getMessage());
             e.printStackTrace();
@@ -281,6 +466,17 @@ public class RenderObject {
         }
 
         //Create and return the RenderObject with loaded triangles
-        return new RenderObject(name, triangles, position, new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+        RenderObject object = new RenderObject(name, triangles.toArray(new Triangle[0]), position, new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+        if (hasMaterials) {
+            object.setMaterials(faceMaterials.toArray(new Material[0]), Arrays.copyOf(cornerUVs, triangles.size() * 6));
+        }
+        return object;
+    }
+
+    /**
+     * Converts a 1-based OBJ index, or a negative one counting back from the last element read, to a 0-based index.
+     */
+    private static int resolveIndex(int index, int count) {
+        return index < 0 ? count + index : index - 1;
     }
 }
@@ -0,0 +1,202 @@
+package core;
+
+/**
+ * The RenderScaleController class chooses the internal render resolution from recent frame times.
+ * Each frame's render time is fed to recordFrameTime() and smoothed with an exponential moving average.
+ * When the average stays above the frame-time budget the render scale steps down to the next level,
+ * and when it stays well below the budget the scale steps back up. Separate thresholds and a number of
+ * consecutive frames required before each change (hysteresis) keep the scale from oscillating between
+ * two levels, and after every change the controller waits for the new resolution to settle.
+ *
+ * The scale applies to both axes, so a scale of 0.5 renders a quarter of the pixels.
+ * The presenting panel upscales the smaller frame back to its full size.
+ */
+public class RenderScaleController {
+
+    //Render scales the controller moves between, from full resolution down
+    private static final float[] DEFAULT_LEVELS = { 1.0f, 0.85f, 0.7f, 0.55f, 0.4f, 0.25f };
+
+    //Weight of the newest frame in the moving average of frame times
+    private static final double SMOOTHING = 0.1;
+
+    private final float[] levels;
+    private long budgetNanos; //Target render time of a frame
+
+    //Hysteresis: scale down above budget * downThreshold, scale up below budget * upThreshold
+    private double downThreshold = 1.05;
+    private double upThreshold = 0.7;
+    private int framesToScaleDown = 10; //Consecutive frames over budget before scaling down
+    private int framesToScaleUp = 60; //Consecutive frames under budget before scaling up (slower, to avoid flicker)
+    private int settleFrames = 30; //Frames ignored after a change while the new resolution settles
+
+    private int level = 0; //Index of the current scale in levels
+    private double averageNanos = -1; //Moving average of the frame time (-1 before the first frame)
+    private int overBudgetFrames; //Consecutive frames above the down threshold
+    private int underBudgetFrames; //Consecutive frames below the up threshold
+    private int settleRemaining; //Frames left to ignore after the last change
+    private boolean enabled = true;
+
+    /**
+     * Constructor to create a controller with the default scale levels.
+     *
+     * @param budgetNanos The target render time of a frame in nanoseconds.
+     */
+    public RenderScaleController(long budgetNanos) {
+        this(budgetNanos, DEFAULT_LEVELS);
+    }
+
+    /**
+     * Constructor to create a controller with custom scale levels.
+     *
+     * @param budgetNanos The target render time of a frame in nanoseconds.
+     * @param levels The render scales in decreasing order, the first one being used when the load is light.
+     */
+    public RenderScaleController(long budgetNanos, float[] levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("At least one render scale level is required");
+        }
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] <= 0 || levels[i] > 1 || (i > 0 && levels[i] >= levels[i - 1])) {
+                throw new IllegalArgumentException("Render scale levels must decrease within (0, 1]");
+            }
+        }
+        this.levels = levels.clone();
+        setBudgetNanos(budgetNanos);
+    }
+
+    /**
+     * Records the render time of a frame and adjusts the render scale if needed.
+     *
+     * @param frameNanos The time it took to render the frame, in nanoseconds.
+     * @return true if the render scale changed.
+     */
+    public boolean recordFrameTime(long frameNanos) {
+        if (!enabled) {
+            return false;
+        }
+        if (settleRemaining > 0) {
+            settleRemaining--;
+            return false;
+        }
+
+        averageNanos = averageNanos < 0 ? frameNanos : averageNanos + (frameNanos - averageNanos) * SMOOTHING;
+
+        //Count how long the average has stayed on either side of the budget
+        if (averageNanos > budgetNanos * downThreshold) {
+            overBudgetFrames++;
+            underBudgetFrames = 0;
+        } else if (averageNanos < budgetNanos * upThreshold) {
+            underBudgetFrames++;
+            overBudgetFrames = 0;
+        } else {
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+
+        if (overBudgetFrames >= framesToScaleDown && level < levels.length - 1) {
+            changeLevel(level + 1);
+            return true;
+        }
+        if (underBudgetFrames >= framesToScaleUp && level > 0) {
+            changeLevel(level - 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to another scale level and starts the settling period.
+     * The moving average is discarded, as frame times at the old resolution no longer apply.
+     */
+    private void changeLevel(int newLevel) {
+        level = newLevel;
+        averageNanos = -1;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+        settleRemaining = settleFrames;
+    }
+
+    /**
+     * Returns the render scale to use for the next frame.
+     *
+     * @return The scale of both axes, between 0 and 1.
+     */
+    public float getScale() {
+        return levels[level];
+    }
+
+    /**
+     * Scales a full-resolution size by the current render scale.
+     *
+     * @param fullSize The size at full resolution.
+     * @return The scaled size, at least 1.
+     */
+    public int scaledSize(int fullSize) {
+        return Math.max(1, Math.round(fullSize * levels[level]));
+    }
+
+    /**
+     * Enables or disables the controller. When disabled, rendering returns to full resolution.
+     *
+     * @param enabled Whether the render scale should follow the frame time.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            changeLevel(0);
+        }
+    }
+
+    /**
+     * Sets the hysteresis of the controller.
+     *
+     * @param downThreshold Fraction of the budget above which the scale is lowered (e.g. 1.05).
+     * @param upThreshold Fraction of the budget below which the scale is raised (e.g. 0.7).
+     * @param framesToScaleDown Consecutive frames above the down threshold before lowering the scale.
+     * @param framesToScaleUp Consecutive frames below the up threshold before raising the scale.
+     * @param settleFrames Frames ignored after every change.
+     */
+    public void setHysteresis(double downThreshold, double upThreshold, int framesToScaleDown, int framesToScaleUp, int settleFrames) {
+        if (upThreshold >= downThreshold) {
+            throw new IllegalArgumentException("The up threshold must be below the down threshold");
+        }
+        this.downThreshold = downThreshold;
+        this.upThreshold = upThreshold;
+        this.framesToScaleDown = Math.max(1, framesToScaleDown);
+        this.framesToScaleUp = Math.max(1, framesToScaleUp);
+        this.settleFrames = Math.max(0, settleFrames);
+    }
+
+    /**
+     * Sets the target render time of a frame.
+     *
+     * @param budgetNanos The budget in nanoseconds.
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("Frame time budget must be positive: " + budgetNanos);
+        }
+        this.budgetNanos = budgetNanos;
+    }
+
+    //Getters for the controller state
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public double getAverageNanos() {
+        return averageNanos;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
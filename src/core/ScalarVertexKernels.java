@@ -0,0 +1,68 @@
+package core;
+
+import objects.Vertex;
+
+/**
+ * The ScalarVertexKernels class implements the VertexKernels one vertex at a time in plain Java.
+ * It is used when the Vector API is not available.
+ */
+final class ScalarVertexKernels extends VertexKernels {
+
+    @Override
+    public void rotate(float[] x, float[] y, float[] z, int from, int to, Vertex s, Vertex c) {
+        float sx = s.x, sy = s.y, sz = s.z, cx = c.x, cy = c.y, cz = c.z;
+        for (int i = from; i < to; i++) {
+            float vx = x[i];
+            float vy = y[i];
+            float vz = z[i];
+            x[i] = cy * (sz * vy + cz * vx) - sy * vz;
+            y[i] = sx * (cy * vz + sy * (sz * vy + cz * vx)) + cx * (cz * vy - sz * vx);
+            z[i] = cx * (cy * vz + sy * (sz * vy + cz * vx)) - sx * (cz * vy - sz * vx);
+        }
+    }
+
+    @Override
+    public void project(float[] x, float[] y, float[] z, int from, int to,
+            Vertex camPos, Vertex s, Vertex c, Vertex screen, float[] outX, float[] outY) {
+        //The fields are read once, so the loop only works on locals and the arrays
+        float sx = s.x, sy = s.y, sz = s.z, cx = c.x, cy = c.y, cz = c.z;
+        float camX = camPos.x, camY = camPos.y, camZ = camPos.z;
+        float screenX = screen.x, screenY = screen.y, screenZ = screen.z;
+        for (int i = from; i < to; i++) {
+            //Move relative to the camera and rotate into camera space
+            float vx = x[i] - camX;
+            float vy = y[i] - camY;
+            float vz = z[i] - camZ;
+            float dX = cy * (sz * vy + cz * vx) - sy * vz;
+            float dY = sx * (cy * vz + sy * (sz * vy + cz * vx)) + cx * (cz * vy - sz * vx);
+            float dZ = cx * (cy * vz + sy * (sz * vy + cz * vx)) - sx * (cz * vy - sz * vx);
+
+            //Perspective projection, marking vertices behind the camera
+            float factor = screenZ / dZ;
+            outX[i] = dZ > 0 ? factor * dX + screenX : Float.NaN;
+            outY[i] = factor * dY + screenY;
+        }
+    }
+
+    @Override
+    public void depthKeys(float[] x, float[] y, float[] z, int from, int to, int stride, Vertex camPos, float[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = (distanceSqrd(x, y, z, i, camPos)
+                    + distanceSqrd(x, y, z, i + stride, camPos)
+                    + distanceSqrd(x, y, z, i + 2 * stride, camPos)) / 3.0f;
+        }
+    }
+
+    //Squared distance of a vertex from a point, like Vertex.distanceSqrd()
+    private static float distanceSqrd(float[] x, float[] y, float[] z, int i, Vertex point) {
+        float dX = x[i] - point.x;
+        float dY = y[i] - point.y;
+        float dZ = z[i] - point.z;
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
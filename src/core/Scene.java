@@ -2,33 +2,164 @@ package core;
 
 import colours.ColourShader;
 import events.CameraEvent;
+import events.Clock;
+import events.EventScheduler;
+import events.ObjectEvent;
+import events.TransformAnimator;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import lights.LightClusters;
+import materials.Material;
+import materials.Texture;
 import objects.Triangle;
 import objects.Triangle2D;
 import objects.Vertex;
 import objects.Vertex2D;
+import profiling.FrameProfiler;
+import profiling.FrameStage;
 
 /**
  * The Scene class represents a 3D scene that contains RenderObjects. 
  * It handles rendering, camera movement, and sorting objects for correct rendering order.
+ *
+ * A Scene is not thread safe and belongs to the thread that renders it. Other threads (input, simulation,
+ * networking, loading) change it by submitting SceneCommands, which are applied at the start of the next frame.
  */
 public class Scene {
 
-    //Parallel arrays to store triangles, their colours, and object names
-    private Triangle[] triangles; //The array of all triangles in the scene
-    private ColourShader[] colours; //The array of colours of each triangle
-    private String[] objectNames; //The array of object names corresponding to each triangle
+    //Triangle storage, as parallel arrays indexed by slot. Every object owns a contiguous range of slots,
+    //which stays where it is until the object is removed (or the storage is compacted)
+    private Triangle[] triangles; //The triangles in each slot (null for free slots)
+    private ColourShader[] colours; //The colour of each slot's triangle
+    private String[] objectNames; //The name of the object each slot belongs to
+    private Material[] slotMaterials; //The material of each slot's triangle (null for none)
+    private float[] slotUVs; //Texture coordinates of each slot's corners, 6 floats per slot
+    private int slotEnd; //Slots at and above this index have never been used (or were released at the end)
+    private IdentityHashMap<RenderObject, SlotRange> slotRanges = new IdentityHashMap<>(); //Slot range of each object
+    private ArrayList<SlotRange> meshRanges = new ArrayList<>(); //Slot ranges of the MeshObjects
+    private IdentityHashMap<MeshObject, SlotRange> meshSlotRanges = new IdentityHashMap<>(); //Slot range of each MeshObject
 
-    //Arrays to store the rendered 2D triangles and their final colours
+    //Placeholder stored in the slots of MeshObjects, whose corners are read from off-heap memory instead
+    private static final Triangle MESH_TRIANGLE = new Triangle(new Vertex(0, 0, 0), new Vertex(0, 0, 0), new Vertex(0, 0, 0));
+    private Triangle meshTriangle = new Triangle(new Vertex(0, 0, 0), new Vertex(0, 0, 0), new Vertex(0, 0, 0)); //A mesh triangle being shaded
+
+    //Free list of slot ranges released by removed objects, reused by objects that fit into them
+    private int[] freeStarts = new int[8];
+    private int[] freeLengths = new int[8];
+    private int freeRangeCount; //Number of ranges in the free list
+    private int freeSlotCount; //Total number of slots in the free list
+
+    //Draw order: the slots sorted far to near. Released slots are dropped from it by the next sort
+    private int[] order; //Slot of the triangle drawn at each position
+    private boolean[] inOrder; //Whether a slot currently appears in the draw order
+    private int orderCount; //Number of entries in the draw order
+
+    //Arrays to store the rendered 2D triangles, their final colours and object names, in draw order
     private Triangle2D[] triangles2DRendered; //The array of rendered (2D) triangles
-    private Color[] finalColours; //The array of final colours for rendered triangles
+    private int[] finalRGB; //The array of final colours for rendered triangles, packed as in Color.getRGB()
+    private Color[] finalColours; //The final colours as Color objects, created from finalRGB when requested
+    private boolean coloursStale = true; //Whether finalColours needs to be recreated from finalRGB
+    private String[] renderedNames; //The object name of each rendered triangle
+    private Texture[] renderedTextures; //The texture of each rendered triangle (null for a plain colour)
+    private float[] renderedUVs; //u / z, v / z and 1 / z of each textured triangle's corners, 9 floats per entry
+
+    //Buffers reused every frame so rendering does not allocate
+    private Triangle2D[] projectedTriangles; //Preallocated 2D triangles that the projection writes into
+    private float[] sortValues; //Distances of the triangles in draw order from the camera, used for sorting
+    private float[] sortTempValues; //Merge buffers for re-sorting a draw order that is far from sorted
+    private int[] sortTempOrder;
+
+    //Vertices of all slots packed into coordinate arrays for the VertexKernels, gathered once per frame.
+    //Corner k (0 to 2) of a slot's triangle is at index k * capacity + slot
+    private VertexKernels kernels = VertexKernels.get();
+    private float[] vertexX;
+    private float[] vertexY;
+    private float[] vertexZ;
+    private float[] screenX; //Projected vertices, at the same indices (NaN x when behind the camera)
+    private float[] screenY;
+    private float[] slotKeys; //Depth key of each slot's triangle
+    private Vertex rotated = new Vertex(0, 0, 0); //Scratch vertex for the camera-space position of a vertex
+
+    //Visibility culling: objects outside the potentially visible set of the camera's cell, or hidden behind
+    //the occlusion culler's occluders, are skipped (off while both are null)
+    private PotentiallyVisibleSet visibilitySet;
+    private OcclusionCuller occlusionCuller;
+    private boolean culling; //Whether either is used in this frame
+    private boolean[] slotCulled; //Whether the object owning each slot is hidden in this frame
+    private int[] visibleStarts = new int[16]; //Slot ranges of the objects that are not hidden in this frame
+    private int[] visibleLengths = new int[16];
+    private int visibleRangeCount;
+    private int visibleOrderCount; //Entries of the frame order that are rendered, the hidden ones follow them
+
+    //Static geometry drawn in the order of a BSP tree instead of being sorted (off while the tree is null)
+    private BspTree staticTree;
+    private SlotRange staticRange; //Slots of the tree's fragments, which are not part of the draw order
+    private int[] treeOrder; //Fragments and gaps back to front, as written by BspTree.traverse()
+    private int[] gapStarts; //First entry of each gap's triangles in the bucketed draw order
+    private int[] entryGaps; //Gap containing each entry of the draw order
+    private int[] mergedOrder; //The draw order merged into the tree's order
+
+    //Lights assigned to the clusters of the view every frame, for the shaders that use them (off while null)
+    private LightClusters lights;
+
+    //Slot drawn at each position in this frame: the draw order, or the merged order with a static tree
+    private int[] frameOrder;
+    private int frameOrderCount;
 
     private int triangleCount; //The total number of triangles in the scene
+    private int drawnCount; //The number of triangles that were projected in the last render
+
+    //Storage is compacted once this many slots are free and they make up half of the used slots
+    private static final int COMPACTION_MIN_FREE_SLOTS = 1024;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The range of slots an object's (or a mesh object's) triangles occupy.
+     */
+    private static final class SlotRange {
+        final RenderObject object; //The object, null for a mesh object
+        final MeshObject mesh; //The mesh object, null for an object
+        final BspTree tree; //The static tree whose fragments the range holds, null otherwise
+        int start; //First slot of the range
+        final int length; //Number of slots (the object's triangle count)
+        int objectIndex; //Position of the object in the objects list (or of the range in meshRanges)
+        boolean culled; //Whether the object is hidden in this frame
+        int visibilityIndex = -1; //Index of the object in the potentially visible set (-1 if not covered by it)
+
+        SlotRange(RenderObject object, MeshObject mesh, BspTree tree, int start, int length, int objectIndex) {
+            this.object = object;
+            this.mesh = mesh;
+            this.tree = tree;
+            this.start = start;
+            this.length = length;
+            this.objectIndex = objectIndex;
+        }
+    }
+
+    private FrameProfiler profiler; //Optional profiler that times the render stages (null when not profiling)
 
     //Lists to hold objects and camera events in the scene
     private ArrayList<RenderObject> objects = new ArrayList<>(); //List of all objects in the scene
-    private ArrayList<CameraEvent> cameraEvents = new ArrayList<>(); //List of camera events in the scene
+    private EventScheduler<CameraEvent> cameraEvents = new EventScheduler<CameraEvent>() { //Camera events in the scene
+        @Override
+        protected void onStart(CameraEvent event) {
+            //Events without a given start or end take it from the camera at the moment they start
+            event.setMissingState(camPos, camRotation);
+        }
+
+        @Override
+        protected void onFinish(CameraEvent event) {
+            //Leave the camera exactly at the end of the event
+            camPos = event.calcCamPosition();
+            camRotation = event.calcCamRotation();
+        }
+    };
+    private long cameraEventsEnd = Long.MIN_VALUE; //Time at which the last queued camera event ends
+    private TransformAnimator animator = new TransformAnimator(); //Runs the object animations in one pass per frame
+    private SceneGraph graph; //Hierarchy of objects with relative transforms (created when first requested)
+    private final SceneCommandQueue commands = new SceneCommandQueue(); //Changes submitted by other threads
 
     //Camera properties
     private Vertex camPos = new Vertex(0, 0, 0); //Camera position
@@ -45,42 +176,95 @@ public class Scene {
      * @param objects The list of objects in the scene.
      */
     public Scene(ArrayList<RenderObject> objects) {
-        this.objects = objects;
-        recreateArrays(); //Initialize arrays for triangles, colours, and object names
+        setObjects(objects); //Initialize arrays for triangles, colours, and object names
     }
 
     /**
-     * Renders the current state of the scene by following camera events, generating camera rotation,
-     * sorting triangles by distance from the camera, and rendering them.
+     * Renders the current state of the scene by applying submitted commands, advancing object animations,
+     * following camera events, generating camera rotation, sorting triangles by distance from the camera, and rendering them.
      */
     public void renderScene() {
+        if (profiler != null) {
+            renderSceneProfiled();
+            return;
+        }
+        applyCommands(); //Apply the changes submitted by other threads since the last frame
+        animateObjects(); //Advance object animations, re-transforming each moved object once
         followCameraEvents(); //Follow camera events to update camera position and rotation
         generateCameraRot(); //Generate sine and cosine values for the current camera rotation
+        cullHiddenObjects(); //Find the objects that cannot be visible, if visibility culling is on
+        assignLights(); //Assign the lights to the clusters of the view, if there are lights
         sortTrianglesForRendering(); //Sort triangles by their distance from the camera
         renderTriangles(); //Render the triangles
     }
 
+    /**
+     * Renders the scene like renderScene(), timing each stage and counting triangles with the profiler.
+     */
+    private void renderSceneProfiled() {
+        long time = profiler.start();
+        applyCommands();
+        time = profiler.record(FrameStage.COMMANDS, time);
+        animateObjects();
+        time = profiler.record(FrameStage.ANIMATION, time);
+        followCameraEvents();
+        time = profiler.record(FrameStage.CAMERA_EVENTS, time);
+        generateCameraRot();
+        time = profiler.record(FrameStage.CAMERA_ROTATION, time);
+        cullHiddenObjects();
+        time = profiler.record(FrameStage.OCCLUSION, time);
+        assignLights();
+        time = profiler.record(FrameStage.LIGHTS, time);
+        sortTrianglesForRendering();
+        time = profiler.record(FrameStage.SORT, time);
+        renderTriangles();
+        profiler.record(FrameStage.RENDER_TRIANGLES, time);
+        profiler.recordTriangles(triangleCount, triangleCount - drawnCount, drawnCount);
+    }
+
+    /**
+     * Applies the commands submitted since the last frame, in the order they were submitted.
+     */
+    private void applyCommands() {
+        commands.drain(this);
+    }
+
+    /**
+     * Submits a change to the scene from any thread. The command is applied on the render thread at the
+     * start of the next frame, so it never races the render or becomes visible halfway through a frame.
+     * Submitting is lock-free and never blocks.
+     * 
+     * @param command The change to apply.
+     */
+    public void submit(SceneCommand command) {
+        commands.submit(command);
+    }
+
+    /**
+     * Advances all object animations to the current time in one batched pass,
+     * then updates the world transforms of the scene graph's dirty subtrees.
+     */
+    private void animateObjects() {
+        animator.update();
+        if (graph != null) {
+            graph.update();
+        }
+    }
+
     /**
      * Follows the current camera events and updates the camera's position and rotation.
-     * Removes completed events from the list.
+     * The scheduler starts and finishes the events whose time has come, in order.
      */
     private void followCameraEvents() {
-        if (cameraEvents.size() != 0) {
-            CameraEvent currentEvent = cameraEvents.get(0);
+        cameraEvents.update();
 
-            //If the event hasn't started, initialize it
-            if (!currentEvent.getStarted()) {
-                currentEvent.startTimer(camPos, camRotation);
-            }
+        //Camera events are queued one after another, so at most one is running
+        if (cameraEvents.getActiveCount() != 0) {
+            CameraEvent currentEvent = cameraEvents.getActive().get(0);
 
             //Update camera position and rotation based on the event
             camPos = currentEvent.calcCamPosition();
             camRotation = currentEvent.calcCamRotation();
-            
-            //Remove the event if it is done
-            if (currentEvent.getDone()) {
-                cameraEvents.remove(0);
-            }
         }
     }
 
@@ -96,66 +280,395 @@ public class Scene {
         c.z = (float) Math.cos(camRotation.z);
     }
 
+    /**
+     * Finds the objects that cannot be visible: those missing from the potentially visible set of the camera's
+     * cell, and those whose bounding box is hidden behind the occlusion culler's occluders. Records the slot
+     * ranges of the remaining objects, as only these are gathered, sorted and projected afterwards.
+     */
+    private void cullHiddenObjects() {
+        visibleRangeCount = 0;
+        culling = visibilitySet != null || occlusionCuller != null;
+        if (!culling) {
+            return;
+        }
+        int cell = visibilitySet != null ? visibilitySet.cellAt(camPos) : -1; //Outside the grid everything is potentially visible
+        if (occlusionCuller != null) {
+            occlusionCuller.beginFrame(camPos, s, c, screenPosRel);
+        }
+
+        for (int index = 0; index < objects.size(); index++) {
+            RenderObject object = objects.get(index);
+            SlotRange range = slotRanges.get(object);
+            boolean culled = cell >= 0 && range.visibilityIndex >= 0 && !visibilitySet.isVisible(cell, range.visibilityIndex);
+            if (!culled && occlusionCuller != null) {
+                culled = occlusionCuller.isOccluded(object.getBounds());
+            }
+            setCulled(range, culled);
+        }
+        for (int index = 0; index < meshRanges.size(); index++) {
+            SlotRange range = meshRanges.get(index);
+            setCulled(range, occlusionCuller != null && occlusionCuller.isOccluded(range.mesh.getBounds()));
+        }
+        if (staticRange != null) {
+            setCulled(staticRange, false); //The tree is drawn as a whole
+        }
+    }
+
+
+    /**
+     * Assigns the lights to the clusters of the view from the current camera, so the shaders shading this
+     * frame's triangles only evaluate the lights of each triangle's cluster.
+     */
+    private void assignLights() {
+        if (lights != null) {
+            lights.assign(camPos, s, c, screenPosRel);
+        }
+    }
+    /**
+     * Records whether an object is hidden, updating its slots' culled flags when its visibility changed.
+     */
+    private void setCulled(SlotRange range, boolean culled) {
+        if (culled != range.culled) {
+            Arrays.fill(slotCulled, range.start, range.start + range.length, culled);
+            range.culled = culled;
+        }
+        if (culled) {
+            return;
+        }
+        if (visibleRangeCount == visibleStarts.length) {
+            visibleStarts = Arrays.copyOf(visibleStarts, visibleRangeCount * 2);
+            visibleLengths = Arrays.copyOf(visibleLengths, visibleRangeCount * 2);
+        }
+        visibleStarts[visibleRangeCount] = range.start;
+        visibleLengths[visibleRangeCount] = range.length;
+        visibleRangeCount++;
+    }
+
     /**
      * Sorts the triangles in the scene based on their distance from the camera for proper rendering order.
+     * With occlusion culling, the triangles of hidden objects are moved behind the sorted ones and left unsorted.
+     * The fragments of a static tree are not sorted, the sorted triangles are merged into the tree's order instead.
      */
     private void sortTrianglesForRendering() {
-        float[] valArray = new float[triangleCount]; //Array to store distances of each triangle from the camera
+        float[] valArray = sortValues; //Array to store distances of each triangle from the camera
+
+        //Calculate the distance of every triangle from the camera at once from the packed vertices
+        gatherVertices();
+        if (!culling) {
+            kernels.depthKeys(vertexX, vertexY, vertexZ, 0, slotEnd, triangles.length, camPos, slotKeys);
+        } else {
+            for (int range = 0; range < visibleRangeCount; range++) {
+                int start = visibleStarts[range];
+                kernels.depthKeys(vertexX, vertexY, vertexZ, start, start + visibleLengths[range], triangles.length, camPos, slotKeys);
+            }
+        }
         
-        //Calculate the distance of each triangle from the camera
-        for (int index = 0; index < triangleCount; index++) {
-            float val = triangleValue(triangles[index]);
-            valArray[index] = val;
-        }
-
-        //Perform a simple bubble sort on triangles based on their distance from the camera
-        int n = triangleCount;
-        boolean sorted = false;
-        while (!sorted) {
-            sorted = true;
-            for (int i = 0; i < n - 1; i++) {
-                if (valArray[i] < valArray[i + 1]) {
-                    //Swap the distance values
-                    float temp = valArray[i];
-                    valArray[i] = valArray[i + 1];
-                    valArray[i + 1] = temp;
-
-                    //Swap the corresponding triangles, colours, and object names
-                    Triangle tempT = triangles[i];
-                    triangles[i] = triangles[i + 1];
-                    triangles[i + 1] = tempT;
-
-                    ColourShader col = colours[i];
-                    colours[i] = colours[i + 1];
-                    colours[i + 1] = col;
-
-                    String name = objectNames[i];
-                    objectNames[i] = objectNames[i + 1];
-                    objectNames[i + 1] = name;
-
-                    sorted = false;
+        //Collect the distances in draw order, dropping released slots from the draw order
+        //and setting the hidden ones aside
+        int n = 0;
+        int hidden = 0;
+        for (int index = 0; index < orderCount; index++) {
+            int slot = order[index];
+            Triangle triangle = triangles[slot];
+            if (triangle == null) {
+                inOrder[slot] = false;
+                continue;
+            }
+            if (culling && slotCulled[slot]) {
+                sortTempOrder[hidden++] = slot;
+                continue;
+            }
+            order[n] = slot;
+            valArray[n] = slotKeys[slot];
+            n++;
+        }
+        System.arraycopy(sortTempOrder, 0, order, n, hidden); //Before the merge sort reuses the buffer
+        orderCount = n + hidden;
+        visibleOrderCount = n;
+
+        //Perform an insertion sort of the draw order based on the distance from the camera.
+        //The order is kept between frames, so it is nearly sorted and this takes close to linear time.
+        //If it turns out to be far from sorted (new objects, a jump of the camera), a merge sort takes over
+        long movesLeft = 8L * n + 1024;
+        for (int i = 1; i < n; i++) {
+            float val = valArray[i];
+            int slot = order[i];
+            int j = i - 1;
+            while (j >= 0 && valArray[j] < val) {
+                valArray[j + 1] = valArray[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            valArray[j + 1] = val;
+            order[j + 1] = slot;
+
+            movesLeft -= i - 1 - j;
+            if (movesLeft < 0) {
+                mergeSortDrawOrder(n);
+                break;
+            }
+        }
+
+        frameOrder = order;
+        frameOrderCount = orderCount;
+        if (staticTree != null) {
+            mergeIntoStaticTree(n);
+        }
+    }
+
+    /**
+     * Merges the sorted draw order into the back to front order of the static tree: each triangle is drawn
+     * where the traversal reaches the gap containing its centre, after the farther triangles in the same gap.
+     * The triangles are bucketed by gap with a counting sort, so this takes linear time.
+     *
+     * @param n The number of visible entries in the draw order, the hidden ones follow them.
+     */
+    private void mergeIntoStaticTree(int n) {
+        int stride = triangles.length;
+        int gaps = staticTree.getGapCount();
+        Arrays.fill(gapStarts, 0, gaps, 0);
+        for (int index = 0; index < n; index++) {
+            int slot = order[index];
+            float x = (vertexX[slot] + vertexX[slot + stride] + vertexX[slot + 2 * stride]) / 3;
+            float y = (vertexY[slot] + vertexY[slot + stride] + vertexY[slot + 2 * stride]) / 3;
+            float z = (vertexZ[slot] + vertexZ[slot + stride] + vertexZ[slot + 2 * stride]) / 3;
+            int gap = staticTree.locate(x, y, z);
+            entryGaps[index] = gap;
+            gapStarts[gap]++;
+        }
+
+        //Turn the counts into the end of each gap's bucket, then fill the buckets from their ends,
+        //which keeps the draw order within each bucket and leaves gapStarts at the bucket starts
+        int end = 0;
+        for (int gap = 0; gap < gaps; gap++) {
+            end += gapStarts[gap];
+            gapStarts[gap] = end;
+        }
+        for (int index = n - 1; index >= 0; index--) {
+            sortTempOrder[--gapStarts[entryGaps[index]]] = order[index];
+        }
+
+        int entries = staticTree.traverse(camPos, treeOrder);
+        int count = 0;
+        for (int k = 0; k < entries; k++) {
+            int entry = treeOrder[k];
+            if (entry >= 0) {
+                mergedOrder[count++] = staticRange.start + entry;
+                continue;
+            }
+            int gap = -entry - 1;
+            int start = gapStarts[gap];
+            int length = (gap + 1 < gaps ? gapStarts[gap + 1] : n) - start;
+            System.arraycopy(sortTempOrder, start, mergedOrder, count, length);
+            count += length;
+        }
+        int hidden = orderCount - n;
+        System.arraycopy(order, n, mergedOrder, count, hidden);
+        frameOrder = mergedOrder;
+        visibleOrderCount = count;
+        frameOrderCount = count + hidden;
+    }
+
+    /**
+     * Sorts the draw order far to near with a stable bottom-up merge sort, in O(n log n) time
+     * whatever the previous order was. The merge buffers are preallocated, so this does not allocate.
+     * 
+     * @param n The number of entries in the draw order.
+     */
+    private void mergeSortDrawOrder(int n) {
+        float[] keys = sortValues;
+        int[] slots = order;
+        float[] keysTemp = sortTempValues;
+        int[] slotsTemp = sortTempOrder;
+
+        for (int width = 1; width < n; width *= 2) {
+            for (int left = 0; left < n; left += 2 * width) {
+                int middle = Math.min(left + width, n);
+                int right = Math.min(left + 2 * width, n);
+                int a = left;
+                int b = middle;
+                for (int k = left; k < right; k++) {
+                    //Take from the left run unless the right one is strictly farther, keeping equal keys in order
+                    if (a < middle && (b >= right || keys[a] >= keys[b])) {
+                        keysTemp[k] = keys[a];
+                        slotsTemp[k] = slots[a++];
+                    } else {
+                        keysTemp[k] = keys[b];
+                        slotsTemp[k] = slots[b++];
+                    }
                 }
             }
-            n--;
+            //The merged runs become the input of the next pass
+            float[] swapKeys = keys;
+            keys = keysTemp;
+            keysTemp = swapKeys;
+            int[] swapSlots = slots;
+            slots = slotsTemp;
+            slotsTemp = swapSlots;
+        }
+
+        if (slots != order) {
+            System.arraycopy(slots, 0, order, 0, n);
+            System.arraycopy(keys, 0, sortValues, 0, n);
+        }
+    }
+
+    /**
+     * Copies the vertices of all slots' triangles into the packed coordinate arrays, so the kernels can
+     * process them several at a time. The triangles are re-read every frame, as moving an object
+     * re-transforms its triangles in place. Mesh objects' corners are copied from their off-heap world positions.
+     */
+    private void gatherVertices() {
+        int stride = triangles.length;
+        for (int slot = 0; slot < slotEnd; slot++) {
+            Triangle triangle = triangles[slot];
+            if (triangle == null || triangle == MESH_TRIANGLE || (culling && slotCulled[slot])) {
+                continue; //Free or hidden slot, whose stale coordinates are never read, or gathered from its mesh below
+            }
+            vertexX[slot] = triangle.v1.x;
+            vertexY[slot] = triangle.v1.y;
+            vertexZ[slot] = triangle.v1.z;
+            vertexX[slot + stride] = triangle.v2.x;
+            vertexY[slot + stride] = triangle.v2.y;
+            vertexZ[slot + stride] = triangle.v2.z;
+            vertexX[slot + 2 * stride] = triangle.v3.x;
+            vertexY[slot + 2 * stride] = triangle.v3.y;
+            vertexZ[slot + 2 * stride] = triangle.v3.z;
+        }
+
+        for (int index = 0; index < meshRanges.size(); index++) {
+            SlotRange range = meshRanges.get(index);
+            if (range.culled && culling) {
+                continue;
+            }
+            range.mesh.gatherCorners(0, range.length, vertexX, vertexY, vertexZ, range.start, stride);
         }
     }
 
     /**
      * Renders the triangles by projecting them into 2D space and shading them based on their distance and colour.
+     * All vertices gathered for the sort are projected at once by the kernels, then written into preallocated
+     * Triangle2D objects, which are reused every frame.
      */
     private void renderTriangles() {
-        triangles2DRendered = new Triangle2D[triangleCount]; //Array for rendered 2D triangles
-        finalColours = new Color[triangleCount]; //Array for final triangle colours
+        int stride = triangles.length;
+        for (int corner = 0; corner < 3; corner++) {
+            if (!culling) {
+                kernels.project(vertexX, vertexY, vertexZ, corner * stride, corner * stride + slotEnd,
+                        camPos, s, c, screenPosRel, screenX, screenY);
+                continue;
+            }
+            for (int range = 0; range < visibleRangeCount; range++) {
+                int start = corner * stride + visibleStarts[range];
+                kernels.project(vertexX, vertexY, vertexZ, start, start + visibleLengths[range],
+                        camPos, s, c, screenPosRel, screenX, screenY);
+            }
+        }
 
-        int index = 0;
-        for (Triangle triangle : triangles) {
-            if (triangle != null && colours[index] != null) {
+        drawnCount = 0;
+        for (int index = 0; index < visibleOrderCount; index++) {
+            int slot = frameOrder[index];
+            Triangle triangle = triangles[slot];
+            renderedNames[index] = objectNames[slot];
+            if (triangle != null && colours[slot] != null) {
                 //Project the triangle into 2D space and calculate its final colour
-                triangles2DRendered[index] = renderTriangle(triangle);
-                finalColours[index] = colours[index].shadeBasedOnTriangle(triangles[index]);
-                index++;
+                Triangle2D projected = projectedTriangles[index];
+                if (readProjected(slot, stride, projected)) {
+                    triangles2DRendered[index] = projected;
+                    drawnCount++;
+                } else {
+                    triangles2DRendered[index] = null;
+                }
+                finalRGB[index] = colours[slot].shadeRGB(triangle == MESH_TRIANGLE ? loadMeshTriangle(slot, stride) : triangle);
+                renderedTextures[index] = null;
+                Material material = slotMaterials[slot];
+                if (material != null) {
+                    //Tint the shaded colour with the material, which also lights its texture
+                    finalRGB[index] = material.tint(finalRGB[index]);
+                    if (material.getTexture() != null && triangles2DRendered[index] != null) {
+                        renderedTextures[index] = material.getTexture();
+                        writeTextureCoordinates(slot, stride, index);
+                    }
+                }
+            } else {
+                triangles2DRendered[index] = null;
+                renderedTextures[index] = null;
             }
         }
+
+        //Hidden triangles are not rendered
+        Arrays.fill(triangles2DRendered, visibleOrderCount, frameOrderCount, null);
+        Arrays.fill(renderedNames, visibleOrderCount, frameOrderCount, null);
+        Arrays.fill(renderedTextures, visibleOrderCount, frameOrderCount, null);
+        coloursStale = true;
+    }
+
+    /**
+     * Writes the texture coordinates of a slot's corners for the rasterizer, divided by the corners' camera-space
+     * depth together with 1 / depth, so they can be interpolated linearly across the screen and divided back
+     * for each pixel. The corners are known to be in front of the camera, as the triangle was projected.
+     * 
+     * @param slot The slot of the triangle.
+     * @param stride The distance between a triangle's corners in the packed arrays.
+     * @param index The position of the triangle in the draw order.
+     */
+    private void writeTextureCoordinates(int slot, int stride, int index) {
+        for (int corner = 0; corner < 3; corner++) {
+            int vertex = slot + corner * stride;
+            rotated.x = vertexX[vertex] - camPos.x;
+            rotated.y = vertexY[vertex] - camPos.y;
+            rotated.z = vertexZ[vertex] - camPos.z;
+            float inverseDepth = 1 / Vertex.rotateWithSinCos(rotated, s, c, rotated).z;
+            int out = index * 9 + corner * 3;
+            renderedUVs[out] = slotUVs[slot * 6 + corner * 2] * inverseDepth;
+            renderedUVs[out + 1] = slotUVs[slot * 6 + corner * 2 + 1] * inverseDepth;
+            renderedUVs[out + 2] = inverseDepth;
+        }
+    }
+
+    /**
+     * Loads the gathered corners of a mesh object's triangle into the reused mesh triangle, so it can be shaded.
+     * 
+     * @param slot The slot of the triangle.
+     * @param stride The distance between a triangle's corners in the packed arrays.
+     * @return The mesh triangle, valid until the next call.
+     */
+    private Triangle loadMeshTriangle(int slot, int stride) {
+        Triangle t = meshTriangle;
+        t.v1.x = vertexX[slot];
+        t.v1.y = vertexY[slot];
+        t.v1.z = vertexZ[slot];
+        t.v2.x = vertexX[slot + stride];
+        t.v2.y = vertexY[slot + stride];
+        t.v2.z = vertexZ[slot + stride];
+        t.v3.x = vertexX[slot + 2 * stride];
+        t.v3.y = vertexY[slot + 2 * stride];
+        t.v3.z = vertexZ[slot + 2 * stride];
+        return t;
+    }
+
+    /**
+     * Reads the projected corners of a slot's triangle into an existing 2D triangle.
+     * 
+     * @param slot The slot of the triangle.
+     * @param stride The distance between a triangle's corners in the projected arrays.
+     * @param out The 2D triangle that receives the projected vertices.
+     * @return true if the triangle was projected, false if a vertex is behind the camera.
+     */
+    private boolean readProjected(int slot, int stride, Triangle2D out) {
+        float x1 = screenX[slot];
+        float x2 = screenX[slot + stride];
+        float x3 = screenX[slot + 2 * stride];
+        if (Float.isNaN(x1) || Float.isNaN(x2) || Float.isNaN(x3)) {
+            return false;
+        }
+        out.v1.x = x1;
+        out.v1.y = screenY[slot];
+        out.v2.x = x2;
+        out.v2.y = screenY[slot + stride];
+        out.v3.x = x3;
+        out.v3.y = screenY[slot + 2 * stride];
+        return true;
     }
 
     /**
@@ -165,16 +678,8 @@ public class Scene {
      * @return The corresponding 2D triangle, or null if it can't be projected.
      */
     public Triangle2D renderTriangle(Triangle t) {
-        Vertex2D v1 = renderVertex(t.v1);
-        if (v1 == null) return null;
-
-        Vertex2D v2 = renderVertex(t.v2);
-        if (v2 == null) return null;
-
-        Vertex2D v3 = renderVertex(t.v3);
-        if (v3 == null) return null;
-
-        return new Triangle2D(v1, v2, v3);
+        Triangle2D projected = new Triangle2D(new Vertex2D(0, 0), new Vertex2D(0, 0), new Vertex2D(0, 0));
+        return projectTriangle(t, projected) ? projected : null;
     }
 
     /**
@@ -184,113 +689,676 @@ public class Scene {
      * @return The corresponding 2D vertex, or null if it can't be projected.
      */
     public Vertex2D renderVertex(Vertex t) {
-        Vertex dif = Vertex.difference(t, camPos); //Calculate the vector from the camera to the vertex
-        Vertex d = Vertex.rotateWithSinCos(dif, s, c); //Rotate the vertex around the camera's position
-
-        //If the vertex is behind the camera, don't render it
-        if (d.z <= 0) return null;
+        Vertex2D projected = new Vertex2D(0, 0);
+        return projectVertex(t, projected) ? projected : null;
+    }
 
-        //Perspective projection calculation to convert 3D coordinates into 2D screen space
-        float bX = (screenPosRel.z / d.z) * d.x + screenPosRel.x;
-        float bY = (screenPosRel.z / d.z) * d.y + screenPosRel.y;
-        return new Vertex2D(bX, bY);
+    /**
+     * Projects a 3D triangle into an existing 2D triangle.
+     * 
+     * @param t The triangle to project.
+     * @param out The 2D triangle that receives the projected vertices.
+     * @return true if the triangle was projected, false if a vertex is behind the camera.
+     */
+    private boolean projectTriangle(Triangle t, Triangle2D out) {
+        return projectVertex(t.v1, out.v1) && projectVertex(t.v2, out.v2) && projectVertex(t.v3, out.v3);
     }
 
     /**
-     * Calculates the average squared distance of a triangle's vertices from the camera.
+     * Projects a 3D vertex into an existing 2D vertex.
      * 
-     * @param triangle The triangle to calculate the distance for.
-     * @return The average squared distance of the triangle's vertices from the camera.
+     * @param t The vertex to project.
+     * @param out The 2D vertex that receives the projected position.
+     * @return true if the vertex was projected, false if it is behind the camera.
      */
-    private float triangleValue(Triangle triangle) {
-        if (triangle == null) return 0;
-        
-        //Calculate squared distances of the triangle's vertices from the camera
-        float v1d = Vertex.difference(triangle.v1, camPos).magnitudeSqrd();
-        float v2d = Vertex.difference(triangle.v2, camPos).magnitudeSqrd();
-        float v3d = Vertex.difference(triangle.v3, camPos).magnitudeSqrd();
-        return (v1d + v2d + v3d) / 3.0f; //Return the average squared distance
+    private boolean projectVertex(Vertex t, Vertex2D out) {
+        //Calculate the vector from the camera to the vertex and rotate it around the camera's position
+        rotated.x = t.x - camPos.x;
+        rotated.y = t.y - camPos.y;
+        rotated.z = t.z - camPos.z;
+        Vertex d = Vertex.rotateWithSinCos(rotated, s, c, rotated);
+
+        //If the vertex is behind the camera, don't render it
+        if (d.z <= 0) return false;
+
+        //Perspective projection calculation to convert 3D coordinates into 2D screen space
+        out.x = (screenPosRel.z / d.z) * d.x + screenPosRel.x;
+        out.y = (screenPosRel.z / d.z) * d.y + screenPosRel.y;
+        return true;
     }
 
-    //Getter methods for triangles, colours, object names, and triangle count
+    //Getter methods for triangles, colours, object names, and triangle count, all in draw order
+    //(the rendered triangles are reused by the next render, so copy them if they need to outlive the frame)
     public Triangle2D[] getRenderedTriangles() {
         return triangles2DRendered;
     }
 
+    /**
+     * Returns the final colours of the rendered triangles as Color objects.
+     * The Color objects are created on the first call after each render, front ends that can work
+     * with packed values should use getRGBColours() instead, which does not allocate.
+     * 
+     * @return The array of final colours, parallel to getRenderedTriangles().
+     */
     public Color[] getColours() {
+        if (coloursStale) {
+            for (int index = 0; index < frameOrderCount; index++) {
+                finalColours[index] = colours[frameOrder[index]] != null ? new Color(finalRGB[index], true) : null;
+            }
+            coloursStale = false;
+        }
         return finalColours;
     }
 
+    /**
+     * Returns the final colours of the rendered triangles packed in the format of Color.getRGB().
+     * 
+     * @return The array of final colours, parallel to getRenderedTriangles().
+     */
+    public int[] getRGBColours() {
+        return finalRGB;
+    }
+
     public String[] getNames() {
-        return objectNames;
+        return renderedNames;
+    }
+
+    /**
+     * Returns the texture of each rendered triangle, or null for triangles drawn in a plain colour.
+     * A textured triangle is drawn with FrameBuffer.fillTexturedTriangle(), its texels lit by its final colour.
+     * 
+     * @return The array of textures, parallel to getRenderedTriangles().
+     */
+    public Texture[] getTextures() {
+        return renderedTextures;
+    }
+
+    /**
+     * Returns the texture coordinates of the textured triangles, divided by the corners' depth for
+     * perspective-correct interpolation: u / z, v / z and 1 / z of each corner, 9 floats per triangle.
+     * 
+     * @return The texture coordinates, the triangle at position i of getRenderedTriangles() starting at i * 9.
+     */
+    public float[] getTextureCoordinates() {
+        return renderedUVs;
     }
 
     public int getCount() {
         return triangleCount;
     }
 
+    public int getDrawnCount() {
+        return drawnCount;
+    }
+
     /**
-     * Adds a RenderObject to the scene and updates the arrays of triangles, colours, and names.
+     * Sets the profiler that times the stages of renderScene(), or null to stop profiling.
+     * The profiler's frames are not delimited by the scene, the caller decides where a frame begins and ends.
+     * 
+     * @param profiler The profiler to record into.
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Adds a RenderObject to the scene, placing its triangles in a free range of slots.
+     * Only the added object is transformed and copied, so the cost is proportional to its triangle count
+     * (plus an occasional doubling of the storage).
      * 
      * @param objectToAdd The object to add to the scene.
+     * @throws IllegalArgumentException if the object is already in the scene.
      */
     public void addObject(RenderObject objectToAdd) {
+        if (slotRanges.containsKey(objectToAdd)) {
+            throw new IllegalArgumentException("Object " + objectToAdd.getName() + " is already in the scene");
+        }
+        int length = objectToAdd.getTCount();
+        int start = allocateSlots(length);
+
+        SlotRange range = new SlotRange(objectToAdd, null, null, start, length, objects.size());
+        range.visibilityIndex = visibilitySet != null ? visibilitySet.indexOf(objectToAdd) : -1;
         objects.add(objectToAdd);
-        recreateArrays();
-        reloadObjectsTriangles();
+        slotRanges.put(objectToAdd, range);
+        fillSlots(range);
+        addToDrawOrder(range);
+    }
+
+    /**
+     * Adds a MeshObject to the scene. Its triangles take a range of slots like those of a RenderObject,
+     * but their corners are read from the mesh's off-heap world positions every frame, so no Triangle or
+     * Vertex objects are created for them.
+     * 
+     * @param meshToAdd The mesh object to add to the scene.
+     * @throws IllegalArgumentException if the mesh object is already in the scene.
+     */
+    public void addMesh(MeshObject meshToAdd) {
+        if (meshSlotRanges.containsKey(meshToAdd)) {
+            throw new IllegalArgumentException("Mesh object " + meshToAdd.getName() + " is already in the scene");
+        }
+        int length = meshToAdd.getTCount();
+        int start = allocateSlots(length);
+
+        SlotRange range = new SlotRange(null, meshToAdd, null, start, length, meshRanges.size());
+        meshRanges.add(range);
+        meshSlotRanges.put(meshToAdd, range);
+        fillSlots(range);
+        addToDrawOrder(range);
+    }
+
+    /**
+     * Appends a new range's slots to the draw order, the next sort moves them into place.
+     */
+    private void addToDrawOrder(SlotRange range) {
+        for (int slot = range.start; slot < range.start + range.length; slot++) {
+            if (!inOrder[slot]) {
+                inOrder[slot] = true;
+                order[orderCount++] = slot;
+            }
+        }
+        triangleCount += range.length;
+    }
+
+    /**
+     * Removes a RenderObject from the scene, releasing its slots to the free list.
+     * The cost is proportional to the object's triangle count; the released slots leave the draw order
+     * with the next sort. Once many slots are free, the storage is compacted. Its animations are cancelled.
+     * 
+     * @param objectToRemove The object to remove.
+     * @return true if the object was in the scene.
+     */
+    public boolean removeObject(RenderObject objectToRemove) {
+        SlotRange range = slotRanges.remove(objectToRemove);
+        if (range == null) {
+            return false;
+        }
+        animator.cancel(objectToRemove); //A removed object is no longer animated, nor held by the animator
+
+        //Remove the object from the list by moving the last object into its place
+        RenderObject last = objects.remove(objects.size() - 1);
+        if (last != objectToRemove) {
+            objects.set(range.objectIndex, last);
+            slotRanges.get(last).objectIndex = range.objectIndex;
+        }
+        releaseRange(range);
+        return true;
+    }
+
+    /**
+     * Removes a MeshObject from the scene, releasing its slots. The mesh object is not closed.
+     * 
+     * @param meshToRemove The mesh object to remove.
+     * @return true if the mesh object was in the scene.
+     */
+    public boolean removeMesh(MeshObject meshToRemove) {
+        SlotRange range = meshSlotRanges.remove(meshToRemove);
+        if (range == null) {
+            return false;
+        }
+        SlotRange last = meshRanges.remove(meshRanges.size() - 1);
+        if (last != range) {
+            meshRanges.set(range.objectIndex, last);
+            last.objectIndex = range.objectIndex;
+        }
+        releaseRange(range);
+        return true;
+    }
+
+    /**
+     * Clears a removed range's slots and returns them to the free list, compacting the storage once many slots are free.
+     */
+    private void releaseRange(SlotRange range) {
+        Arrays.fill(triangles, range.start, range.start + range.length, null);
+        Arrays.fill(colours, range.start, range.start + range.length, null);
+        Arrays.fill(objectNames, range.start, range.start + range.length, null);
+        Arrays.fill(slotMaterials, range.start, range.start + range.length, null);
+        if (range.culled) {
+            Arrays.fill(slotCulled, range.start, range.start + range.length, false);
+        }
+        releaseSlots(range.start, range.length);
+        triangleCount -= range.length;
+
+        if (freeSlotCount >= COMPACTION_MIN_FREE_SLOTS && freeSlotCount * 2 >= slotEnd) {
+            compact();
+        }
     }
 
     /**
-     * Sets a new list of objects in the scene and reloads their triangles.
+     * Sets a new list of objects in the scene and reloads their triangles. Mesh objects and the static tree stay in the scene.
      * 
      * @param objectsToSet The new list of objects to set in the scene.
      */
     public void setObjects(ArrayList<RenderObject> objectsToSet) {
+        int total = 0;
+        for (RenderObject object : objectsToSet) {
+            total += object.getTCount();
+        }
+        ArrayList<MeshObject> meshes = new ArrayList<>();
+        for (SlotRange range : meshRanges) {
+            meshes.add(range.mesh);
+            total += range.length;
+        }
+        BspTree tree = staticTree;
+        if (tree != null) {
+            total += tree.getFragmentCount();
+        }
+
+        //Start from empty storage large enough for all objects
+        slotRanges.clear();
+        meshRanges.clear();
+        meshSlotRanges.clear();
+        staticRange = null;
+        freeRangeCount = 0;
+        freeSlotCount = 0;
+        slotEnd = 0;
+        orderCount = 0;
+        triangleCount = 0;
+        triangles = null;
+        ensureCapacity(Math.max(INITIAL_CAPACITY, total));
+        Arrays.fill(inOrder, false);
+        Arrays.fill(slotCulled, false);
+
         objects = objectsToSet;
-        recreateArrays();
-        reloadObjectsTriangles();
+        ArrayList<RenderObject> toAdd = new ArrayList<>(objectsToSet);
+        objectsToSet.clear();
+        for (RenderObject object : toAdd) {
+            addObject(object);
+        }
+        for (MeshObject mesh : meshes) {
+            addMesh(mesh);
+        }
+        setStaticTree(tree);
     }
 
     /**
-     * Recreates the arrays to store triangle data, colours, and object names when new objects are added.
+     * Finds a range of free slots, from the free list if a released range is large enough,
+     * otherwise at the end of the used slots, growing the storage if needed.
+     * 
+     * @param length The number of slots needed.
+     * @return The first slot of the range.
      */
-    private void recreateArrays() {
-        int totalTCount = 0;
-        
-        //Calculate the total number of triangles from all objects
-        for (RenderObject object : objects) {
-            totalTCount += object.getTCount();
+    private int allocateSlots(int length) {
+        //First fit from the free list
+        for (int i = 0; i < freeRangeCount; i++) {
+            if (freeLengths[i] >= length) {
+                int start = freeStarts[i];
+                freeStarts[i] += length;
+                freeLengths[i] -= length;
+                freeSlotCount -= length;
+                if (freeLengths[i] == 0) {
+                    freeRangeCount--;
+                    freeStarts[i] = freeStarts[freeRangeCount];
+                    freeLengths[i] = freeLengths[freeRangeCount];
+                }
+                return start;
+            }
         }
 
-        //Allocate memory for the arrays based on the total triangle count
-        triangles = new Triangle[totalTCount];
-        triangles2DRendered = new Triangle2D[totalTCount];
-        colours = new ColourShader[totalTCount];
-        objectNames = new String[totalTCount];
-        triangleCount = totalTCount;
+        ensureCapacity(slotEnd + length);
+        int start = slotEnd;
+        slotEnd += length;
+        return start;
     }
 
     /**
-     * Reloads the triangles, colours, and object names of all objects in the scene.
+     * Returns a range of slots to the free list, or to the unused end of the storage if it is the last range.
      */
-    public void reloadObjectsTriangles() {
-        int tIndex = 0;
-        for (RenderObject object : objects) {
-            for (Triangle triangle : object.loadTriangles()) {
-                //Load the triangles of the object into the scene arrays
-                triangles[tIndex] = triangle;
-                colours[tIndex] = object.getColour();
-                objectNames[tIndex] = object.getName();
-                tIndex++;
+    private void releaseSlots(int start, int length) {
+        if (start + length == slotEnd) {
+            slotEnd = start;
+            return;
+        }
+        if (freeRangeCount == freeStarts.length) {
+            freeStarts = Arrays.copyOf(freeStarts, freeRangeCount * 2);
+            freeLengths = Arrays.copyOf(freeLengths, freeRangeCount * 2);
+        }
+        freeStarts[freeRangeCount] = start;
+        freeLengths[freeRangeCount] = length;
+        freeRangeCount++;
+        freeSlotCount += length;
+    }
+
+    /**
+     * Moves all objects' slot ranges down so they are contiguous again, emptying the free list.
+     * The draw order is kept, with its slots renumbered.
+     */
+    private void compact() {
+        ArrayList<SlotRange> allRanges = new ArrayList<>(slotRanges.values());
+        allRanges.addAll(meshRanges);
+        if (staticRange != null) {
+            allRanges.add(staticRange);
+        }
+        SlotRange[] ranges = allRanges.toArray(new SlotRange[0]);
+        Arrays.sort(ranges, (a, b) -> Integer.compare(a.start, b.start));
+
+        int[] newSlot = new int[triangles.length]; //The draw order may still hold released slots beyond slotEnd
+        Arrays.fill(newSlot, -1);
+        int next = 0;
+        for (SlotRange range : ranges) {
+            //Ranges are moved in ascending order, so a range never overwrites one that has not moved yet
+            System.arraycopy(triangles, range.start, triangles, next, range.length);
+            System.arraycopy(colours, range.start, colours, next, range.length);
+            System.arraycopy(objectNames, range.start, objectNames, next, range.length);
+            System.arraycopy(slotMaterials, range.start, slotMaterials, next, range.length);
+            System.arraycopy(slotUVs, range.start * 6, slotUVs, next * 6, range.length * 6);
+            System.arraycopy(slotCulled, range.start, slotCulled, next, range.length);
+            for (int i = 0; i < range.length; i++) {
+                newSlot[range.start + i] = next + i;
             }
+            range.start = next;
+            next += range.length;
+        }
+        Arrays.fill(triangles, next, slotEnd, null);
+        Arrays.fill(colours, next, slotEnd, null);
+        Arrays.fill(objectNames, next, slotEnd, null);
+        Arrays.fill(slotMaterials, next, slotEnd, null);
+        Arrays.fill(slotCulled, next, slotEnd, false);
+
+        //Renumber the draw order, dropping released slots
+        Arrays.fill(inOrder, false);
+        int n = 0;
+        for (int index = 0; index < orderCount; index++) {
+            int slot = newSlot[order[index]];
+            if (slot >= 0) {
+                order[n++] = slot;
+                inOrder[slot] = true;
+            }
+        }
+        orderCount = n;
+
+        slotEnd = next;
+        freeRangeCount = 0;
+        freeSlotCount = 0;
+    }
+
+    /**
+     * Grows the storage so it holds at least the given number of slots, doubling its size.
+     */
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = triangles == null ? 0 : triangles.length;
+        if (capacity <= oldCapacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, oldCapacity * 2);
+
+        if (triangles == null) {
+            triangles = new Triangle[newCapacity];
+            colours = new ColourShader[newCapacity];
+            objectNames = new String[newCapacity];
+            slotMaterials = new Material[newCapacity];
+            slotUVs = new float[newCapacity * 6];
+            order = new int[newCapacity];
+            inOrder = new boolean[newCapacity];
+            slotCulled = new boolean[newCapacity];
+            triangles2DRendered = new Triangle2D[newCapacity];
+            finalRGB = new int[newCapacity];
+            finalColours = new Color[newCapacity];
+            renderedNames = new String[newCapacity];
+            renderedTextures = new Texture[newCapacity];
+            renderedUVs = new float[newCapacity * 9];
+            sortValues = new float[newCapacity];
+            projectedTriangles = new Triangle2D[newCapacity];
+            slotKeys = new float[newCapacity];
+        } else {
+            triangles = Arrays.copyOf(triangles, newCapacity);
+            colours = Arrays.copyOf(colours, newCapacity);
+            objectNames = Arrays.copyOf(objectNames, newCapacity);
+            slotMaterials = Arrays.copyOf(slotMaterials, newCapacity);
+            slotUVs = Arrays.copyOf(slotUVs, newCapacity * 6);
+            order = Arrays.copyOf(order, newCapacity);
+            inOrder = Arrays.copyOf(inOrder, newCapacity);
+            slotCulled = Arrays.copyOf(slotCulled, newCapacity);
+            triangles2DRendered = Arrays.copyOf(triangles2DRendered, newCapacity);
+            finalRGB = Arrays.copyOf(finalRGB, newCapacity);
+            finalColours = Arrays.copyOf(finalColours, newCapacity);
+            renderedNames = Arrays.copyOf(renderedNames, newCapacity);
+            renderedTextures = Arrays.copyOf(renderedTextures, newCapacity);
+            renderedUVs = Arrays.copyOf(renderedUVs, newCapacity * 9);
+            sortValues = Arrays.copyOf(sortValues, newCapacity);
+            projectedTriangles = Arrays.copyOf(projectedTriangles, newCapacity);
+            slotKeys = new float[newCapacity];
+        }
+        coloursStale = true;
+        frameOrder = order;
+        frameOrderCount = Math.min(frameOrderCount, orderCount);
+
+        //The packed vertices are gathered again every frame and the merge buffers hold nothing between frames,
+        //so they are only resized
+        sortTempValues = new float[newCapacity];
+        sortTempOrder = new int[newCapacity];
+        entryGaps = new int[newCapacity];
+        mergedOrder = new int[newCapacity];
+        vertexX = new float[newCapacity * 3];
+        vertexY = new float[newCapacity * 3];
+        vertexZ = new float[newCapacity * 3];
+        screenX = new float[newCapacity * 3];
+        screenY = new float[newCapacity * 3];
+
+        //Preallocate the 2D triangles that the projection writes into every frame
+        for (int index = oldCapacity; index < newCapacity; index++) {
+            projectedTriangles[index] = new Triangle2D(new Vertex2D(0, 0), new Vertex2D(0, 0), new Vertex2D(0, 0));
         }
     }
 
-    //Methods to add camera events and set camera position and rotation
+    /**
+     * Loads an object's (re-transformed) triangles, colour, name and materials into its slot range.
+     * A mesh object's slots get the placeholder triangle, as their corners are gathered from the mesh,
+     * and a static tree's slots get its fragments with the colours and names of their objects.
+     * Neither has materials, as their triangles carry no texture coordinates.
+     */
+    private void fillSlots(SlotRange range) {
+        int end = range.start + range.length;
+        if (range.tree != null) {
+            for (int fragment = 0; fragment < range.length; fragment++) {
+                int slot = range.start + fragment;
+                triangles[slot] = range.tree.getFragment(fragment);
+                colours[slot] = range.tree.getFragmentColour(fragment);
+                objectNames[slot] = range.tree.getFragmentName(fragment);
+            }
+            Arrays.fill(slotMaterials, range.start, end, null);
+            return;
+        }
+        if (range.mesh != null) {
+            Arrays.fill(triangles, range.start, end, MESH_TRIANGLE);
+            Arrays.fill(colours, range.start, end, range.mesh.getColour());
+            Arrays.fill(objectNames, range.start, end, range.mesh.getName());
+            Arrays.fill(slotMaterials, range.start, end, null);
+            return;
+        }
+        RenderObject object = range.object;
+        Triangle[] objectTriangles = object.loadTriangles();
+        int slot = range.start;
+        for (Triangle triangle : objectTriangles) {
+            triangles[slot] = triangle;
+            colours[slot] = object.getColour();
+            objectNames[slot] = object.getName();
+            slot++;
+        }
+
+        Material[] materials = object.getMaterials();
+        float[] textureCoordinates = object.getTextureCoordinates();
+        if (materials == null) {
+            Arrays.fill(slotMaterials, range.start, end, null);
+        } else {
+            System.arraycopy(materials, 0, slotMaterials, range.start, range.length);
+        }
+        if (textureCoordinates == null) {
+            Arrays.fill(slotUVs, range.start * 6, end * 6, 0);
+        } else {
+            System.arraycopy(textureCoordinates, 0, slotUVs, range.start * 6, range.length * 6);
+        }
+    }
+
+    /**
+     * Reloads the triangles, colours, object names and materials of all objects in the scene,
+     * e.g. after an object's colour shader or materials were changed.
+     */
+    public void reloadObjectsTriangles() {
+        for (SlotRange range : slotRanges.values()) {
+            fillSlots(range);
+        }
+        for (SlotRange range : meshRanges) {
+            fillSlots(range);
+        }
+        if (staticRange != null) {
+            fillSlots(staticRange);
+        }
+    }
+
+    /**
+     * Queues a camera event to start as soon as the previously queued camera event ends,
+     * or now if no camera event is queued.
+     * 
+     * @param cameraEvent The camera event to add.
+     */
     public void addCameraEvent(CameraEvent cameraEvent) {
-        cameraEvents.add(cameraEvent);
+        long start = Math.max(cameraEvents.getClock().nanoTime(), cameraEventsEnd);
+        cameraEvents.schedule(cameraEvent, start);
+        cameraEventsEnd = start + cameraEvent.getDurationNanos();
     }
 
+    /**
+     * Sets the kernels that transform, project and compute the depth keys of the vertices,
+     * e.g. VertexKernels.scalar() to compare against the vector kernels.
+     * 
+     * @param kernels The kernels to use.
+     */
+    public void setKernels(VertexKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    /**
+     * Sets the occlusion culler that hides objects behind its occluders, or null to draw every object.
+     * 
+     * @param occlusionCuller The culler.
+     */
+    public void setOcclusionCuller(OcclusionCuller occlusionCuller) {
+        this.occlusionCuller = occlusionCuller;
+    }
+
+    /**
+     * Sets the potentially visible set of the scene's static objects, or null to draw every object.
+     * Objects the set does not cover, e.g. moving ones, are always drawn, as is everything while the
+     * camera is outside the set's grid.
+     * 
+     * @param visibilitySet The potentially visible set, built from or read with objects of this scene.
+     */
+    public void setPotentiallyVisibleSet(PotentiallyVisibleSet visibilitySet) {
+        this.visibilitySet = visibilitySet;
+        for (SlotRange range : slotRanges.values()) {
+            range.visibilityIndex = visibilitySet != null ? visibilitySet.indexOf(range.object) : -1;
+        }
+    }
+
+    /**
+     * Sets the BSP tree of the scene's static geometry, or null to remove it. The tree's fragments are drawn
+     * in the tree's back to front order instead of being sorted, and every other triangle is drawn between
+     * them where the traversal reaches the region containing it. The objects the tree was built from should
+     * not be in the scene as well.
+     *
+     * @param tree The tree.
+     */
+    public void setStaticTree(BspTree tree) {
+        if (staticRange != null) {
+            SlotRange range = staticRange;
+            staticRange = null; //So a compaction while releasing does not move it
+            releaseRange(range);
+        }
+        staticTree = tree;
+        if (tree == null) {
+            return;
+        }
+        int length = tree.getFragmentCount();
+        staticRange = new SlotRange(null, null, tree, allocateSlots(length), length, -1);
+        fillSlots(staticRange);
+        triangleCount += length;
+        treeOrder = new int[length + tree.getGapCount()];
+        gapStarts = new int[tree.getGapCount()];
+    }
+
+    /**
+     * Sets the lights that are assigned to the clusters of the view every frame, or null for none.
+     * Shaders such as ClusteredLightShader that are given the same lights then evaluate only the lights
+     * of each triangle's cluster.
+     * 
+     * @param lights The lights.
+     */
+    public void setLights(LightClusters lights) {
+        this.lights = lights;
+    }
+
+    /**
+     * Sets the clock that drives the scene's camera events and object animations, e.g. a ManualClock for deterministic playback.
+     * Should be set before camera events are queued, as their start times are taken from the clock.
+     * 
+     * @param clock The clock.
+     */
+    public void setClock(Clock clock) {
+        cameraEvents.setClock(clock);
+        animator.setClock(clock);
+    }
+
+    /**
+     * Starts an object animation now. All running animations are advanced together at the start of
+     * every render, and each animated object is re-transformed once per frame.
+     * 
+     * @param objectEvent The animation to start.
+     */
+    public void addObjectEvent(ObjectEvent objectEvent) {
+        animator.add(objectEvent);
+    }
+
+    public TransformAnimator getAnimator() {
+        return animator;
+    }
+
+    /**
+     * Returns the scene graph, creating it on first use. Objects attached to the graph's nodes are
+     * added to the scene and drawn at their nodes' world transforms, updated at the start of every render.
+     * 
+     * @return The scene graph.
+     */
+    public SceneGraph getGraph() {
+        if (graph == null) {
+            graph = new SceneGraph(this);
+        }
+        return graph;
+    }
+
+    public ArrayList<RenderObject> getObjects() {
+        return objects;
+    }
+
+    public Clock getClock() {
+        return cameraEvents.getClock();
+    }
+
+    public LightClusters getLights() {
+        return lights;
+    }
+
+    public BspTree getStaticTree() {
+        return staticTree;
+    }
+
+    public PotentiallyVisibleSet getPotentiallyVisibleSet() {
+        return visibilitySet;
+    }
+
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
+    public VertexKernels getKernels() {
+        return kernels;
+    }
+
+    //Methods to set camera position and rotation
+
     public void setCamPos(Vertex newPos) {
         camPos = newPos;
     }
@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * The SceneCommand interface is a change to a Scene that is submitted from any thread and applied
+ * by the render thread at the start of the next frame (see Scene.submit()).
+ * Because commands only run between frames, they may freely add and remove objects, move the camera
+ * or start events without locking, and a frame never sees a change half applied.
+ */
+@FunctionalInterface
+public interface SceneCommand {
+
+    /**
+     * Applies the change. Called on the render thread, before anything of the frame is rendered.
+     *
+     * @param scene The scene the command was submitted to.
+     */
+    void apply(Scene scene);
+}
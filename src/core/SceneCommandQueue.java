@@ -0,0 +1,94 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The SceneCommandQueue class is a lock-free queue of SceneCommands with many producers and one consumer.
+ *
+ * It is a linked list of nodes in the style of Dmitry Vyukov's intrusive MPSC queue. A producer appends
+ * a node by atomically swapping it into the tail and then linking the previous tail to it, so submitting
+ * never blocks, retries or waits for other producers. Only the consumer (the render thread) walks the list
+ * from the head, so draining needs no atomic operations at all and allocates nothing.
+ *
+ * Between the swap and the link a node is not yet reachable from the head. If the consumer gets there
+ * while a producer is in that window, it stops and picks the remaining commands up in the next drain,
+ * so commands from one producer are always applied in the order they were submitted.
+ */
+public class SceneCommandQueue {
+
+    /**
+     * A node of the list, holding one command.
+     */
+    private static final class Node {
+        SceneCommand command;
+        volatile Node next;
+
+        Node(SceneCommand command) {
+            this.command = command;
+        }
+    }
+
+    private Node head; //Last node taken by the consumer (initially a stub), only accessed by the consumer
+    private final AtomicReference<Node> tail; //Last node submitted, swapped by the producers
+
+    /**
+     * Constructor to create an empty queue.
+     */
+    public SceneCommandQueue() {
+        Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Appends a command. May be called from any thread.
+     *
+     * @param command The command to append.
+     */
+    public void submit(SceneCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Command must not be null");
+        }
+        Node node = new Node(command);
+        Node previous = tail.getAndSet(node); //The node's place in the queue is decided here
+        previous.next = node; //Publishes the node (and its command) to the consumer
+    }
+
+    /**
+     * Applies the commands submitted before this call, in order. Must only be called by one thread at a time,
+     * normally the render thread at the start of a frame. Commands submitted while draining, including by the
+     * commands themselves, are left for the next drain, so a busy producer cannot stall the frame.
+     * If a command throws, the exception is passed on and the following commands stay queued.
+     *
+     * @param scene The scene to apply the commands to.
+     * @return The number of commands applied.
+     */
+    public int drain(Scene scene) {
+        Node last = tail.get(); //Stop after the last command that was already submitted
+        int applied = 0;
+        Node node = head;
+        while (node != last) {
+            Node next = node.next;
+            if (next == null) {
+                break; //A producer has swapped the tail but not linked its node yet
+            }
+            SceneCommand command = next.command;
+            next.command = null; //next becomes the new stub, which must not keep the command alive
+            head = next;
+            node = next;
+            command.apply(scene);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Returns whether there are no commands waiting. Only meaningful on the consumer thread,
+     * as producers may submit at any time.
+     *
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+}
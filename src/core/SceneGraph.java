@@ -0,0 +1,237 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The SceneGraph class arranges RenderObjects in a hierarchy of SceneNodes with transforms relative to
+ * their parents, and keeps the objects of the scene at their world transforms.
+ *
+ * The nodes are flattened into parallel arrays in depth-first (pre-order) traversal order, so every
+ * parent comes before its children. update() walks these arrays once from front to back: a node whose
+ * local transform changed, or whose parent's world transform was recomputed in the same pass, gets its
+ * world matrix recomputed from its parent's cached one, and its object is re-transformed. Everything
+ * else keeps its cached world matrix, so moving one node only costs its own subtree.
+ * The traversal order is rebuilt only when nodes are attached, detached or moved to another parent.
+ *
+ * Matrices are row-major 3x4 affine transforms (rotation and scale in the first three columns,
+ * translation in the fourth), stored 12 floats per node.
+ */
+public class SceneGraph {
+
+    private static final int MATRIX_SIZE = 12;
+
+    private final Scene scene; //The scene the nodes' objects are drawn in
+    private final SceneNode root = new SceneNode("root");
+
+    //Flattened nodes in traversal order, as parallel arrays indexed by SceneNode.index
+    private int nodeCount;
+    private SceneNode[] nodes = new SceneNode[16];
+    private int[] parents = new int[16]; //Index of each node's parent (-1 for the root)
+    private float[] localMatrices = new float[16 * MATRIX_SIZE];
+    private float[] worldMatrices = new float[16 * MATRIX_SIZE];
+    private boolean[] dirty = new boolean[16]; //Whether the local transform changed since the last update
+    private boolean[] recomputed = new boolean[16]; //Whether the world matrix was recomputed in the current update
+
+    private boolean structureDirty = true; //Whether the traversal order must be rebuilt
+
+    /**
+     * Constructor to create an empty graph whose objects are drawn in the given scene.
+     *
+     * @param scene The scene.
+     */
+    public SceneGraph(Scene scene) {
+        this.scene = scene;
+        root.graph = this;
+    }
+
+    /**
+     * Recomputes the world transforms of the dirty nodes and their descendants, in traversal order,
+     * and re-transforms their objects.
+     *
+     * @return The number of nodes whose world transform was recomputed.
+     */
+    public int update() {
+        if (structureDirty) {
+            rebuildTraversalOrder();
+        }
+
+        int updated = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int parent = parents[i];
+            boolean changed = dirty[i] || (parent >= 0 && recomputed[parent]);
+            recomputed[i] = changed;
+            if (!changed) {
+                continue;
+            }
+
+            SceneNode node = nodes[i];
+            if (dirty[i]) {
+                RenderObject.composeMatrix(node.getLocalPosition(), node.getLocalRotation(), node.getLocalScale(),
+                        localMatrices, i * MATRIX_SIZE);
+                dirty[i] = false;
+            }
+
+            if (parent >= 0) {
+                multiply(worldMatrices, parent * MATRIX_SIZE, localMatrices, i * MATRIX_SIZE, worldMatrices, i * MATRIX_SIZE);
+            } else {
+                System.arraycopy(localMatrices, i * MATRIX_SIZE, worldMatrices, i * MATRIX_SIZE, MATRIX_SIZE);
+            }
+
+            RenderObject object = node.getRenderObject();
+            if (object != null) {
+                object.setTransformMatrix(worldMatrices, i * MATRIX_SIZE);
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    /**
+     * Flattens the nodes into depth-first pre-order, marking all of them dirty.
+     */
+    private void rebuildTraversalOrder() {
+        nodeCount = 0;
+        ArrayDeque<SceneNode> stack = new ArrayDeque<>();
+        ArrayDeque<Integer> parentStack = new ArrayDeque<>();
+        stack.push(root);
+        parentStack.push(-1);
+
+        while (!stack.isEmpty()) {
+            SceneNode node = stack.pop();
+            int parent = parentStack.pop();
+            int index = nodeCount++;
+            ensureCapacity(nodeCount);
+            nodes[index] = node;
+            parents[index] = parent;
+            dirty[index] = true;
+            node.index = index;
+
+            //Push the children in reverse, so they are visited in the order they were added
+            ArrayList<SceneNode> children = node.childList();
+            for (int c = children.size() - 1; c >= 0; c--) {
+                stack.push(children.get(c));
+                parentStack.push(index);
+            }
+        }
+        Arrays.fill(nodes, nodeCount, nodes.length, null);
+        structureDirty = false;
+    }
+
+    /**
+     * Multiplies two affine 3x4 matrices (a * b), as if both had a fourth row of (0, 0, 0, 1).
+     */
+    private static void multiply(float[] a, int ao, float[] b, int bo, float[] out, int oo) {
+        for (int row = 0; row < 3; row++) {
+            float r0 = a[ao + row * 4];
+            float r1 = a[ao + row * 4 + 1];
+            float r2 = a[ao + row * 4 + 2];
+            float r3 = a[ao + row * 4 + 3];
+            for (int column = 0; column < 4; column++) {
+                float value = r0 * b[bo + column] + r1 * b[bo + 4 + column] + r2 * b[bo + 8 + column];
+                out[oo + row * 4 + column] = column == 3 ? value + r3 : value;
+            }
+        }
+    }
+
+    //Grows the flattened arrays to hold at least the given number of nodes
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodes.length * 2);
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        parents = Arrays.copyOf(parents, newCapacity);
+        localMatrices = Arrays.copyOf(localMatrices, newCapacity * MATRIX_SIZE);
+        worldMatrices = Arrays.copyOf(worldMatrices, newCapacity * MATRIX_SIZE);
+        dirty = Arrays.copyOf(dirty, newCapacity);
+        recomputed = Arrays.copyOf(recomputed, newCapacity);
+    }
+
+    /**
+     * Marks a node's local transform as changed.
+     */
+    void markDirty(SceneNode node) {
+        if (!structureDirty) {
+            dirty[node.index] = true; //A rebuild marks every node dirty anyway
+        }
+    }
+
+    /**
+     * Records that the hierarchy changed, so the traversal order is rebuilt on the next update.
+     */
+    void structureChanged() {
+        structureDirty = true;
+    }
+
+    /**
+     * Adds a subtree that was attached below one of the graph's nodes, adding its objects to the scene.
+     */
+    void attachSubtree(SceneNode subtreeRoot) {
+        ArrayDeque<SceneNode> stack = new ArrayDeque<>();
+        stack.push(subtreeRoot);
+        while (!stack.isEmpty()) {
+            SceneNode node = stack.pop();
+            node.graph = this;
+            if (node.getRenderObject() != null) {
+                scene.addObject(node.getRenderObject());
+            }
+            for (SceneNode child : node.childList()) {
+                stack.push(child);
+            }
+        }
+        structureChanged();
+    }
+
+    /**
+     * Removes a subtree that was detached from the graph, removing its objects from the scene.
+     */
+    void detachSubtree(SceneNode subtreeRoot) {
+        ArrayDeque<SceneNode> stack = new ArrayDeque<>();
+        stack.push(subtreeRoot);
+        while (!stack.isEmpty()) {
+            SceneNode node = stack.pop();
+            node.graph = null;
+            node.index = -1;
+            if (node.getRenderObject() != null) {
+                scene.removeObject(node.getRenderObject());
+            }
+            for (SceneNode child : node.childList()) {
+                stack.push(child);
+            }
+        }
+        structureChanged();
+    }
+
+    /**
+     * Copies a node's cached world matrix.
+     */
+    void copyWorldMatrix(SceneNode node, float[] out) {
+        if (structureDirty) {
+            update();
+        }
+        System.arraycopy(worldMatrices, node.index * MATRIX_SIZE, out, 0, MATRIX_SIZE);
+    }
+
+    /**
+     * Returns the root node, which everything in the graph is attached below.
+     *
+     * @return The root node.
+     */
+    public SceneNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of nodes in the graph, including the root.
+     *
+     * @return The number of nodes.
+     */
+    public int getNodeCount() {
+        if (structureDirty) {
+            rebuildTraversalOrder();
+        }
+        return nodeCount;
+    }
+}
@@ -0,0 +1,187 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import objects.Vertex;
+
+/**
+ * The SceneNode class is a node of a SceneGraph. Each node has a transform (position, rotation and scale)
+ * relative to its parent, and optionally a RenderObject that is drawn with the node's world transform,
+ * the combination of its own transform with those of all its ancestors.
+ * Moving a node therefore moves everything attached to it, e.g. a turret mounted on a vehicle.
+ *
+ * Nodes are attached with addChild(). Changing a node's transform only marks it dirty; the world
+ * transforms are recomputed by SceneGraph.update() for the dirty nodes and their descendants only.
+ */
+public class SceneNode {
+
+    private final String name; //Name of the node
+    private final RenderObject renderObject; //Object drawn at the node (may be null)
+
+    //Transform relative to the parent node
+    private Vertex localPosition = new Vertex(0, 0, 0);
+    private Vertex localRotation = new Vertex(0, 0, 0);
+    private Vertex localScale = new Vertex(1, 1, 1);
+
+    //Structure of the graph
+    private SceneNode parent;
+    private ArrayList<SceneNode> children = new ArrayList<>();
+    SceneGraph graph; //The graph the node is attached to (null while detached)
+    int index = -1; //Position of the node in the graph's traversal order
+
+    /**
+     * Constructor to create a node without an object, e.g. a pivot for grouping other nodes.
+     *
+     * @param name The name of the node.
+     */
+    public SceneNode(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Constructor to create a node that draws an object.
+     * The object's own position, rotation and scale are replaced by the node's world transform.
+     *
+     * @param name The name of the node.
+     * @param renderObject The object drawn at the node.
+     */
+    public SceneNode(String name, RenderObject renderObject) {
+        this.name = name;
+        this.renderObject = renderObject;
+    }
+
+    /**
+     * Attaches a node as a child of this node, detaching it from its previous parent first.
+     * If this node is part of a graph, the child's subtree joins the graph and its objects are added to the scene.
+     *
+     * @param child The node to attach.
+     * @throws IllegalArgumentException if the child is this node or one of its ancestors.
+     */
+    public void addChild(SceneNode child) {
+        for (SceneNode ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == child) {
+                throw new IllegalArgumentException("A node cannot be attached below itself");
+            }
+        }
+
+        SceneGraph previousGraph = child.graph;
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+        child.parent = this;
+        children.add(child);
+
+        if (previousGraph != graph) {
+            if (previousGraph != null) {
+                previousGraph.detachSubtree(child);
+            }
+            if (graph != null) {
+                graph.attachSubtree(child);
+            }
+        } else if (graph != null) {
+            graph.structureChanged(); //Moved within the same graph
+        }
+    }
+
+    /**
+     * Detaches the node and its subtree from its parent.
+     * The objects of the subtree are removed from the scene.
+     */
+    public void remove() {
+        if (parent == null) {
+            return;
+        }
+        parent.children.remove(this);
+        parent = null;
+        if (graph != null) {
+            graph.detachSubtree(this);
+        }
+    }
+
+    //Setters for the local transform, which mark the node dirty
+    public void setLocalPosition(Vertex position) {
+        localPosition = position;
+        markDirty();
+    }
+
+    public void setLocalRotation(Vertex rotation) {
+        localRotation = rotation;
+        markDirty();
+    }
+
+    public void setLocalScale(Vertex scale) {
+        localScale = scale;
+        markDirty();
+    }
+
+    /**
+     * Sets the whole local transform at once.
+     *
+     * @param position The position relative to the parent.
+     * @param rotation The rotation relative to the parent.
+     * @param scale The scale relative to the parent.
+     */
+    public void setLocalTransform(Vertex position, Vertex rotation, Vertex scale) {
+        localPosition = position;
+        localRotation = rotation;
+        localScale = scale;
+        markDirty();
+    }
+
+    /**
+     * Marks the node's local transform as changed, e.g. after modifying one of its vertices in place.
+     */
+    public void markDirty() {
+        if (graph != null) {
+            graph.markDirty(this);
+        }
+    }
+
+    /**
+     * Copies the node's world transform as computed by the last SceneGraph.update().
+     *
+     * @param out An array to write the row-major 3x4 matrix into (at least 12 long).
+     * @throws IllegalStateException if the node is not part of a graph.
+     */
+    public void getWorldMatrix(float[] out) {
+        if (graph == null) {
+            throw new IllegalStateException("Node " + name + " is not attached to a scene graph");
+        }
+        graph.copyWorldMatrix(this, out);
+    }
+
+    //Getters for the node properties
+    public String getName() {
+        return name;
+    }
+
+    public RenderObject getRenderObject() {
+        return renderObject;
+    }
+
+    public Vertex getLocalPosition() {
+        return localPosition;
+    }
+
+    public Vertex getLocalRotation() {
+        return localRotation;
+    }
+
+    public Vertex getLocalScale() {
+        return localScale;
+    }
+
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    public List<SceneNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    //Children list for the graph's traversal, without the read-only wrapper
+    ArrayList<SceneNode> childList() {
+        return children;
+    }
+}
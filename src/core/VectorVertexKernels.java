@@ -0,0 +1,91 @@
+package core;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import objects.Vertex;
+
+/**
+ * The VectorVertexKernels class implements the VertexKernels with the Vector API, processing as many vertices
+ * per instruction as the CPU's preferred vector size holds (e.g. 8 with AVX2). The few vertices at the end that
+ * do not fill a whole vector are handed to the scalar kernels, which avoids masked loads (slow on some CPUs).
+ *
+ * This class is only loaded by VertexKernels.get() when the jdk.incubator.vector module is present
+ * (compile and run with --add-modules jdk.incubator.vector).
+ */
+final class VectorVertexKernels extends VertexKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final VertexKernels tail = new ScalarVertexKernels(); //Processes the vertices after the last full vector
+
+    @Override
+    public void rotate(float[] x, float[] y, float[] z, int from, int to, Vertex s, Vertex c) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector vz = FloatVector.fromArray(SPECIES, z, i);
+
+            FloatVector a = vy.mul(s.z).add(vx.mul(c.z)); //s.z * y + c.z * x
+            FloatVector b = vz.mul(c.y).add(a.mul(s.y)); //c.y * z + s.y * a
+            FloatVector d = vy.mul(c.z).sub(vx.mul(s.z)); //c.z * y - s.z * x
+            a.mul(c.y).sub(vz.mul(s.y)).intoArray(x, i);
+            b.mul(s.x).add(d.mul(c.x)).intoArray(y, i);
+            b.mul(c.x).sub(d.mul(s.x)).intoArray(z, i);
+        }
+        tail.rotate(x, y, z, bound, to, s, c);
+    }
+
+    @Override
+    public void project(float[] x, float[] y, float[] z, int from, int to,
+            Vertex camPos, Vertex s, Vertex c, Vertex screen, float[] outX, float[] outY) {
+        FloatVector nan = FloatVector.broadcast(SPECIES, Float.NaN);
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            //Move relative to the camera and rotate into camera space
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i).sub(camPos.x);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i).sub(camPos.y);
+            FloatVector vz = FloatVector.fromArray(SPECIES, z, i).sub(camPos.z);
+            FloatVector a = vy.mul(s.z).add(vx.mul(c.z));
+            FloatVector b = vz.mul(c.y).add(a.mul(s.y));
+            FloatVector d = vy.mul(c.z).sub(vx.mul(s.z));
+            FloatVector dX = a.mul(c.y).sub(vz.mul(s.y));
+            FloatVector dY = b.mul(s.x).add(d.mul(c.x));
+            FloatVector dZ = b.mul(c.x).sub(d.mul(s.x));
+
+            //Perspective projection, marking vertices behind the camera
+            FloatVector factor = FloatVector.broadcast(SPECIES, screen.z).div(dZ);
+            VectorMask<Float> behind = dZ.compare(VectorOperators.LE, 0f);
+            factor.mul(dX).add(screen.x).blend(nan, behind).intoArray(outX, i);
+            factor.mul(dY).add(screen.y).intoArray(outY, i);
+        }
+        tail.project(x, y, z, bound, to, camPos, s, c, screen, outX, outY);
+    }
+
+    @Override
+    public void depthKeys(float[] x, float[] y, float[] z, int from, int to, int stride, Vertex camPos, float[] out) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector sum = distanceSqrd(x, y, z, i, camPos)
+                    .add(distanceSqrd(x, y, z, i + stride, camPos))
+                    .add(distanceSqrd(x, y, z, i + 2 * stride, camPos));
+            sum.div(3.0f).intoArray(out, i);
+        }
+        tail.depthKeys(x, y, z, bound, to, stride, camPos, out);
+    }
+
+    //Squared distances of a vector of vertices from a point
+    private static FloatVector distanceSqrd(float[] x, float[] y, float[] z, int i, Vertex point) {
+        FloatVector dX = FloatVector.fromArray(SPECIES, x, i).sub(point.x);
+        FloatVector dY = FloatVector.fromArray(SPECIES, y, i).sub(point.y);
+        FloatVector dZ = FloatVector.fromArray(SPECIES, z, i).sub(point.z);
+        return dX.mul(dX).add(dY.mul(dY)).add(dZ.mul(dZ));
+    }
+
+    @Override
+    public String getName() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+}
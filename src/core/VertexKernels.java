@@ -0,0 +1,123 @@
+package core;
+
+import objects.Vertex;
+
+/**
+ * The VertexKernels class holds the per-vertex maths of the render pipeline as loops over packed coordinate
+ * arrays (one array each for x, y and z) instead of one Vertex object at a time: rotating into camera space,
+ * perspective projection and the depth keys used to sort triangles.
+ *
+ * Two implementations exist. The vector one uses the incubating Vector API (jdk.incubator.vector) to process
+ * several vertices per instruction (SIMD); the scalar one is plain Java and produces the same results.
+ * get() picks the vector kernels when the module is available at run time (java --add-modules jdk.incubator.vector)
+ * and falls back to the scalar kernels otherwise. The system property turquoise.simd=false forces the scalar kernels.
+ *
+ * All kernels compute with the same operations in the same order as Vertex.rotateWithSinCos() and
+ * Vertex.distanceSqrd(), so both implementations give identical results.
+ */
+public abstract class VertexKernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_CLASS = "core.VectorVertexKernels";
+
+    private static final VertexKernels SCALAR = new ScalarVertexKernels();
+    private static final VertexKernels VECTOR = loadVector();
+    private static final VertexKernels DEFAULT =
+            VECTOR != null && !"false".equals(System.getProperty("turquoise.simd")) ? VECTOR : SCALAR;
+
+    /**
+     * Loads the vector kernels if the Vector API module is present, without linking against it otherwise.
+     */
+    private static VertexKernels loadVector() {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return null;
+        }
+        try {
+            return (VertexKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; //Compiled without the module, or it cannot be used on this platform
+        }
+    }
+
+    /**
+     * Returns the kernels used by default: the vector kernels when available, otherwise the scalar kernels.
+     *
+     * @return The default kernels.
+     */
+    public static VertexKernels get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the scalar kernels, which are always available.
+     *
+     * @return The scalar kernels.
+     */
+    public static VertexKernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Returns the vector kernels.
+     *
+     * @return The vector kernels, or null if the Vector API is not available.
+     */
+    public static VertexKernels vector() {
+        return VECTOR;
+    }
+
+    /**
+     * Rotates vertices in place with precomputed sines and cosines, like Vertex.rotateWithSinCos().
+     *
+     * @param x The x coordinates.
+     * @param y The y coordinates.
+     * @param z The z coordinates.
+     * @param from The first vertex to rotate.
+     * @param to The index after the last vertex to rotate.
+     * @param s The sines of the rotation around each axis.
+     * @param c The cosines of the rotation around each axis.
+     */
+    public abstract void rotate(float[] x, float[] y, float[] z, int from, int to, Vertex s, Vertex c);
+
+    /**
+     * Projects vertices onto the screen: moves them relative to the camera, rotates them into camera space and
+     * applies the perspective division, like Scene.renderVertex(). The input arrays are not modified.
+     * Vertices behind the camera (camera-space z <= 0) get NaN as their x coordinate.
+     *
+     * @param x The x coordinates.
+     * @param y The y coordinates.
+     * @param z The z coordinates.
+     * @param from The first vertex to project.
+     * @param to The index after the last vertex to project.
+     * @param camPos The camera position.
+     * @param s The sines of the camera rotation.
+     * @param c The cosines of the camera rotation.
+     * @param screen The position of the screen relative to the camera.
+     * @param outX Receives the projected x coordinates, at the same indices.
+     * @param outY Receives the projected y coordinates, at the same indices.
+     */
+    public abstract void project(float[] x, float[] y, float[] z, int from, int to,
+            Vertex camPos, Vertex s, Vertex c, Vertex screen, float[] outX, float[] outY);
+
+    /**
+     * Computes the depth key of triangles, by which the scene sorts them: the average squared distance
+     * of their corners from the camera. The corners of triangle i are at i, i + stride and i + 2 * stride.
+     *
+     * @param x The x coordinates.
+     * @param y The y coordinates.
+     * @param z The z coordinates.
+     * @param from The first triangle.
+     * @param to The index after the last triangle.
+     * @param stride The distance between a triangle's corners in the arrays.
+     * @param camPos The camera position.
+     * @param out Receives the key of each triangle, at the index of its first corner.
+     */
+    public abstract void depthKeys(float[] x, float[] y, float[] z, int from, int to, int stride, Vertex camPos, float[] out);
+
+    /**
+     * Returns a short name of the implementation, e.g. for benchmark reports.
+     *
+     * @return The name.
+     */
+    public abstract String getName();
+}
@@ -0,0 +1,32 @@
+package events;
+
+/**
+ * The AnimationCurve enum lists the progress curves available to object animations.
+ * A curve maps the fraction of time that has passed (0 to 1) to the fraction of the
+ * movement that has been made (0 to 1).
+ */
+public enum AnimationCurve {
+    LINEAR, //Constant speed
+    EASE_IN, //Starts slowly and speeds up
+    EASE_OUT, //Starts quickly and slows down
+    EASE_IN_OUT; //Starts and ends slowly
+
+    /**
+     * Applies the curve to a time progress value.
+     * 
+     * @param t The fraction of the duration that has passed, between 0 and 1.
+     * @return The progress along the curve, between 0 and 1.
+     */
+    public float apply(float t) {
+        switch (this) {
+            case EASE_IN:
+                return t * t;
+            case EASE_OUT:
+                return 1 - (1 - t) * (1 - t);
+            case EASE_IN_OUT:
+                return t * t * (3 - 2 * t);
+            default:
+                return t;
+        }
+    }
+}
@@ -85,8 +85,20 @@ public abstract class CameraEvent extends Event {
      * @param rotation The current rotation of the camera when the event starts.
      */
     public void startTimer(Vertex position, Vertex rotation) {
-        started = true; //Mark the event as started
+        setMissingState(position, rotation);
 
+        //Start at the current time of the event's clock
+        startAt(clock.nanoTime());
+    }
+
+    /**
+     * Initializes the start and end positions/rotations that were not provided to the given camera state.
+     * Called when the event starts, as the camera state is only known then.
+     * 
+     * @param position The current position of the camera.
+     * @param rotation The current rotation of the camera.
+     */
+    public void setMissingState(Vertex position, Vertex rotation) {
         //Initialize the start position if not already set
         if (startPosition == null) {
             startPosition = position;
@@ -103,11 +115,6 @@ public abstract class CameraEvent extends Event {
         if (endRotation == null) {
             endRotation = rotation;
         }
-
-        //Set the start time to the current system time
-        startTime = System.currentTimeMillis();
-        //Calculate the end time based on the duration of the event
-        endTime = startTime + (duration * 1000); //Convert duration from seconds to milliseconds
     }
 
     /**
@@ -0,0 +1,36 @@
+package events;
+
+/**
+ * The Clock class is a source of monotonic time in nanoseconds for events and the code that schedules them.
+ * Events read the time through a Clock rather than from the system directly, so a deterministic clock
+ * (see ManualClock) can be injected to drive animations step by step, e.g. for tests or replays.
+ *
+ * The values only have meaning relative to each other, like System.nanoTime().
+ */
+public abstract class Clock {
+
+    //Shared clock backed by System.nanoTime()
+    private static final Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Returns the current time of the clock.
+     * Successive calls never return a smaller value.
+     *
+     * @return The current time in nanoseconds.
+     */
+    public abstract long nanoTime();
+
+    /**
+     * Returns the clock backed by System.nanoTime().
+     *
+     * @return The system clock.
+     */
+    public static Clock system() {
+        return SYSTEM;
+    }
+}
@@ -11,14 +11,19 @@ import objects.Vertex;
 public abstract class Event {
 
     //Fields for event timing and position
-    protected float startTime; //The time when the event started
-    protected float endTime; //The time when the event is expected to end
+    protected long startTime; //The time when the event started, in nanoseconds of the event's clock
+    protected long endTime; //The time when the event is expected to end, in nanoseconds of the event's clock
+    protected Clock clock = Clock.system(); //The clock the event's progress is measured with
     protected Vertex startPosition; //The starting position of the object
     protected Vertex endPosition; //The ending position of the object
     protected boolean done = false; //Indicates if the event is finished
     protected boolean started = false; //Indicates if the event has started
     protected float duration; //The duration of the event in seconds
 
+    //Bookkeeping of the EventScheduler running the event
+    Object schedulerEntry; //The event's current entry in one of the scheduler's queues (null when not scheduled)
+    int activeIndex = -1; //Position in the scheduler's list of active events (-1 when not active)
+
     /**
      * Constructor to initialize an event with starting and ending positions and a duration.
      * 
@@ -34,22 +39,31 @@ public abstract class Event {
 
     /**
      * Starts the timer for the event. If the start position is not provided, 
-     * it will be initialized to the given position. The current system time 
-     * is recorded as the start time.
+     * it will be initialized to the given position. The current time of the
+     * event's clock is recorded as the start time.
      * 
      * @param position The position from which the event starts (if startPosition is null).
      */
     public void startTimer(Vertex position) {
-        started = true; //Mark the event as started
-
         //If no start position is provided, use the given position as the starting point
         if (startPosition == null) {
             startPosition = position;
         }
 
-        //Record the current system time as the start time and calculate the end time
-        startTime = System.currentTimeMillis();
-        endTime = startTime + (duration * 1000); //Convert duration from seconds to milliseconds
+        startAt(clock.nanoTime());
+    }
+
+    /**
+     * Marks the event as started at the given time and calculates its end time.
+     * Used by the EventScheduler to start events at their scheduled time rather than
+     * whenever the scheduler happens to be updated, which keeps animations deterministic.
+     * 
+     * @param startNanos The start time in nanoseconds of the event's clock.
+     */
+    public void startAt(long startNanos) {
+        started = true; //Mark the event as started
+        startTime = startNanos;
+        endTime = startNanos + getDurationNanos();
     }
 
     /**
@@ -89,11 +103,19 @@ public abstract class Event {
      * @return A float value between 0 and 1 indicating the time-based progress of the event.
      */
     protected float timeProgress() {
+        long now = clock.nanoTime();
+
+        //Events without a duration are complete as soon as they start
+        if (endTime <= startTime) {
+            done = now >= startTime;
+            return done ? 1 : 0;
+        }
+
         //Calculate the time progress by dividing elapsed time by total event duration
-        float progress = (System.currentTimeMillis() - startTime) / (endTime - startTime);
+        float progress = (float) ((double) (now - startTime) / (endTime - startTime));
 
         //If progress exceeds 1, mark the event as done and cap the progress at 1
-        if (progress > 1) {
+        if (progress >= 1) {
             done = true;
             return 1;
         } else if (progress < 0) {
@@ -103,6 +125,37 @@ public abstract class Event {
         }
     }
 
+    /**
+     * Sets the clock the event's progress is measured with.
+     * 
+     * @param clock The clock, e.g. a ManualClock for deterministic playback.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the duration of the event in nanoseconds.
+     * 
+     * @return The duration.
+     */
+    public long getDurationNanos() {
+        return Math.round(duration * 1e9);
+    }
+
+    //Getters for the start and end time, in nanoseconds of the event's clock (only valid once started)
+    public long getStartNanos() {
+        return startTime;
+    }
+
+    public long getEndNanos() {
+        return endTime;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
     /**
      * Checks if the event has finished.
      * 
@@ -0,0 +1,289 @@
+package events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The EventScheduler class runs events at scheduled times on a Clock.
+ * Events waiting to start are kept in a priority queue ordered by start time, and running events in a
+ * second priority queue ordered by end time, so starting or finishing an event costs O(log n) no matter
+ * how many events are queued or running at once. Running events can be read through getActive().
+ *
+ * On every update() the scheduler processes all start and end times that have passed, in time order
+ * (an event ending at the same moment another starts is finished first). Events are started at their
+ * scheduled time rather than at the time of the update, so with a deterministic clock such as
+ * ManualClock the same schedule always plays back identically.
+ *
+ * Subclasses can react to events starting and finishing by overriding onStart() and onFinish().
+ *
+ * @param <E> The type of event scheduled.
+ */
+public class EventScheduler<E extends Event> {
+
+    /**
+     * Entry of an event in one of the queues. Cancelled entries stay in their queue
+     * and are skipped once they reach the head, since removing them from the middle is O(n).
+     */
+    private static final class Entry<E extends Event> {
+        final E event;
+        final long time; //Start time in the pending queue, end time in the ending queue
+        final long order; //Scheduling order, so events at the same time run first in, first out
+
+        Entry(E event, long time, long order) {
+            this.event = event;
+            this.time = time;
+            this.order = order;
+        }
+    }
+
+    //Orders entries by time, then by scheduling order
+    private final Comparator<Entry<E>> byTime = (a, b) -> {
+        int compare = Long.compare(a.time, b.time);
+        return compare != 0 ? compare : Long.compare(a.order, b.order);
+    };
+
+    private final PriorityQueue<Entry<E>> pending = new PriorityQueue<>(byTime); //Events waiting to start
+    private final PriorityQueue<Entry<E>> ending = new PriorityQueue<>(byTime); //Running events by end time
+    private final ArrayList<E> active = new ArrayList<>(); //Running events
+    private final List<E> activeView = Collections.unmodifiableList(active);
+
+    private Clock clock;
+    private long nextOrder; //Scheduling order given to the next event
+    private int pendingCount; //Number of events waiting to start (not counting cancelled entries)
+
+    /**
+     * Constructor to create a scheduler driven by the system clock.
+     */
+    public EventScheduler() {
+        this(Clock.system());
+    }
+
+    /**
+     * Constructor to create a scheduler driven by the given clock.
+     *
+     * @param clock The clock that decides when events start and finish.
+     */
+    public EventScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Schedules an event to start now.
+     *
+     * @param event The event to schedule.
+     */
+    public void schedule(E event) {
+        schedule(event, clock.nanoTime());
+    }
+
+    /**
+     * Schedules an event to start at the given time. O(log n).
+     *
+     * @param event The event to schedule.
+     * @param startNanos The start time in nanoseconds of the scheduler's clock.
+     * @throws IllegalStateException if the event is already scheduled or running.
+     */
+    public void schedule(E event, long startNanos) {
+        if (event.schedulerEntry != null) {
+            throw new IllegalStateException("Event is already scheduled");
+        }
+        Entry<E> entry = new Entry<>(event, startNanos, nextOrder++);
+        event.schedulerEntry = entry;
+        pending.add(entry);
+        pendingCount++;
+    }
+
+    /**
+     * Removes an event from the scheduler, whether it is waiting to start or running.
+     * onFinish() is not called for cancelled events.
+     *
+     * @param event The event to cancel.
+     * @return true if the event was scheduled or running.
+     */
+    public boolean cancel(E event) {
+        if (event.schedulerEntry == null) {
+            return false;
+        }
+        if (event.activeIndex >= 0) {
+            removeActive(event);
+        } else {
+            pendingCount--;
+        }
+        event.schedulerEntry = null; //Its queue entry is now stale and will be skipped
+        return true;
+    }
+
+    /**
+     * Starts and finishes all events whose start or end time has passed, in time order.
+     *
+     * @return The current time of the clock that the events were advanced to.
+     */
+    public long update() {
+        long now = clock.nanoTime();
+        while (true) {
+            Entry<E> nextStart = peekCurrent(pending);
+            Entry<E> nextEnd = peekCurrent(ending);
+            boolean canStart = nextStart != null && nextStart.time <= now;
+            boolean canEnd = nextEnd != null && nextEnd.time <= now;
+
+            if (canEnd && (!canStart || nextEnd.time <= nextStart.time)) {
+                ending.poll();
+                finish(nextEnd.event);
+            } else if (canStart) {
+                pending.poll();
+                pendingCount--;
+                start(nextStart);
+            } else {
+                return now;
+            }
+        }
+    }
+
+    /**
+     * Returns the head of a queue, discarding the stale entries of cancelled events on the way.
+     */
+    private Entry<E> peekCurrent(PriorityQueue<Entry<E>> queue) {
+        Entry<E> head = queue.peek();
+        while (head != null && head.event.schedulerEntry != head) {
+            queue.poll();
+            head = queue.peek();
+        }
+        return head;
+    }
+
+    /**
+     * Starts an event at its scheduled time and moves it to the running events.
+     */
+    private void start(Entry<E> entry) {
+        E event = entry.event;
+        event.setClock(clock);
+        event.done = false;
+        event.startAt(entry.time);
+
+        event.activeIndex = active.size();
+        active.add(event);
+        Entry<E> endEntry = new Entry<>(event, event.getEndNanos(), entry.order);
+        event.schedulerEntry = endEntry;
+        ending.add(endEntry);
+
+        onStart(event);
+    }
+
+    /**
+     * Finishes a running event.
+     */
+    private void finish(E event) {
+        removeActive(event);
+        event.schedulerEntry = null;
+        event.done = true;
+        onFinish(event);
+    }
+
+    /**
+     * Removes an event from the list of running events in O(1), by moving the last event into its place.
+     */
+    private void removeActive(E event) {
+        int index = event.activeIndex;
+        E last = active.remove(active.size() - 1);
+        if (last != event) {
+            active.set(index, last);
+            last.activeIndex = index;
+        }
+        event.activeIndex = -1;
+    }
+
+    /**
+     * Called when an event starts, after its start time has been set.
+     * Does nothing by default.
+     *
+     * @param event The event that started.
+     */
+    protected void onStart(E event) {
+    }
+
+    /**
+     * Called when an event reaches its end time and is removed from the running events.
+     * Does nothing by default.
+     *
+     * @param event The event that finished.
+     */
+    protected void onFinish(E event) {
+    }
+
+    /**
+     * Returns the running events. The list is a read-only view that changes as events start and finish,
+     * and its order is not meaningful.
+     *
+     * @return The running events.
+     */
+    public List<E> getActive() {
+        return activeView;
+    }
+
+    /**
+     * Returns the earliest time at which an event starts or finishes.
+     *
+     * @return The time in nanoseconds, or Long.MAX_VALUE if no event is scheduled or running.
+     */
+    public long getNextTransitionNanos() {
+        Entry<E> nextStart = peekCurrent(pending);
+        Entry<E> nextEnd = peekCurrent(ending);
+        long next = Long.MAX_VALUE;
+        if (nextStart != null) {
+            next = nextStart.time;
+        }
+        if (nextEnd != null) {
+            next = Math.min(next, nextEnd.time);
+        }
+        return next;
+    }
+
+    /**
+     * Cancels all events, waiting and running.
+     */
+    public void clear() {
+        for (Entry<E> entry : pending) {
+            entry.event.schedulerEntry = null;
+        }
+        for (E event : active) {
+            event.schedulerEntry = null;
+            event.activeIndex = -1;
+        }
+        pending.clear();
+        ending.clear();
+        active.clear();
+        pendingCount = 0;
+    }
+
+    /**
+     * Sets the clock that drives the scheduler and the events it starts.
+     *
+     * @param clock The new clock.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+        for (E event : active) {
+            event.setClock(clock);
+        }
+    }
+
+    //Getters for the scheduler state
+    public Clock getClock() {
+        return clock;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public boolean isEmpty() {
+        return pendingCount == 0 && active.isEmpty();
+    }
+}
@@ -0,0 +1,162 @@
+package events;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The InputRecording class holds the player's input and camera position for every simulation step of a run,
+ * so the run can be replayed exactly, e.g. to compare the frame times of two builds along the same path.
+ *
+ * Each step stores the movement keys held as a bit mask, the yaw and pitch the step moved with and the camera
+ * position the step ended at. write() stores the steps in a compact binary file of 21 bytes per step, and
+ * read() loads such a file again. Recording and writing may happen on different threads.
+ */
+public class InputRecording {
+
+    private static final int FILE_MAGIC = 0x52504E49; //"INPR" in little-endian byte order
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int STEP_BYTES = 21;
+
+    //Bits of the movement key mask
+    public static final int KEY_W = 1;
+    public static final int KEY_A = 2;
+    public static final int KEY_S = 4;
+    public static final int KEY_D = 8;
+
+    private final long stepNanos; //Length of a simulation step
+
+    //Steps recorded so far
+    private int count;
+    private byte[] keys = new byte[1024];
+    private float[] rotations = new float[1024 * 2]; //Pitch and yaw of every step
+    private float[] positions = new float[1024 * 3]; //Camera position at the end of every step
+
+    /**
+     * Constructor to create an empty recording.
+     *
+     * @param stepNanos The length of the recorded simulation steps in nanoseconds.
+     */
+    public InputRecording(long stepNanos) {
+        if (stepNanos <= 0) {
+            throw new IllegalArgumentException("Step length must be positive: " + stepNanos);
+        }
+        this.stepNanos = stepNanos;
+    }
+
+    /**
+     * Appends a simulation step.
+     *
+     * @param keyMask The movement keys held during the step (KEY_W, KEY_A, KEY_S and KEY_D).
+     * @param pitch The rotation about the x axis the step moved with.
+     * @param yaw The rotation about the y axis the step moved with.
+     * @param x The x coordinate of the camera at the end of the step.
+     * @param y The y coordinate of the camera at the end of the step.
+     * @param z The z coordinate of the camera at the end of the step.
+     */
+    public synchronized void append(int keyMask, float pitch, float yaw, float x, float y, float z) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            rotations = Arrays.copyOf(rotations, count * 2 * 2);
+            positions = Arrays.copyOf(positions, count * 2 * 3);
+        }
+        keys[count] = (byte) keyMask;
+        rotations[count * 2] = pitch;
+        rotations[count * 2 + 1] = yaw;
+        positions[count * 3] = x;
+        positions[count * 3 + 1] = y;
+        positions[count * 3 + 2] = z;
+        count++;
+    }
+
+    /**
+     * Writes the steps recorded so far to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * STEP_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(stepNanos).putInt(count);
+        for (int step = 0; step < count; step++) {
+            buffer.put(keys[step]);
+            buffer.putFloat(rotations[step * 2]).putFloat(rotations[step * 2 + 1]);
+            buffer.putFloat(positions[step * 3]).putFloat(positions[step * 3 + 1]).putFloat(positions[step * 3 + 2]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a file written by write().
+     *
+     * @param path The file to read.
+     * @return The recording.
+     * @throws IOException if the file cannot be read or is not an input recording.
+     */
+    public static InputRecording read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != FILE_MAGIC) {
+            throw new IOException(path + " is not an input recording");
+        }
+        int version = buffer.getInt();
+        if (version != FILE_VERSION) {
+            throw new IOException("Unsupported input recording version " + version + " in " + path);
+        }
+        long stepNanos = buffer.getLong();
+        int count = buffer.getInt();
+        if (stepNanos <= 0 || count < 0 || buffer.remaining() != (long) count * STEP_BYTES) {
+            throw new IOException("Corrupt input recording " + path);
+        }
+
+        InputRecording recording = new InputRecording(stepNanos);
+        for (int step = 0; step < count; step++) {
+            recording.append(buffer.get(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        }
+        return recording;
+    }
+
+    //Getters for the recorded steps
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public synchronized int getStepCount() {
+        return count;
+    }
+
+    public synchronized int getKeys(int step) {
+        return keys[step];
+    }
+
+    public synchronized float getPitch(int step) {
+        return rotations[step * 2];
+    }
+
+    public synchronized float getYaw(int step) {
+        return rotations[step * 2 + 1];
+    }
+
+    public synchronized float getX(int step) {
+        return positions[step * 3];
+    }
+
+    public synchronized float getY(int step) {
+        return positions[step * 3 + 1];
+    }
+
+    public synchronized float getZ(int step) {
+        return positions[step * 3 + 2];
+    }
+}
@@ -0,0 +1,62 @@
+package events;
+
+/**
+ * The ManualClock class is a deterministic Clock whose time only changes when it is advanced explicitly.
+ * Driving events with a ManualClock makes every animation reproducible frame by frame,
+ * independent of how fast the machine runs.
+ */
+public class ManualClock extends Clock {
+
+    private long nanos; //The current time of the clock
+
+    /**
+     * Constructor to create a clock starting at time 0.
+     */
+    public ManualClock() {
+        this(0);
+    }
+
+    /**
+     * Constructor to create a clock starting at the given time.
+     *
+     * @param startNanos The initial time in nanoseconds.
+     */
+    public ManualClock(long startNanos) {
+        this.nanos = startNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param deltaNanos The time to advance by in nanoseconds, not negative.
+     */
+    public void advance(long deltaNanos) {
+        if (deltaNanos < 0) {
+            throw new IllegalArgumentException("A clock cannot go backwards: " + deltaNanos);
+        }
+        nanos += deltaNanos;
+    }
+
+    /**
+     * Moves the clock forward by a number of seconds.
+     *
+     * @param seconds The time to advance by in seconds, not negative.
+     */
+    public void advanceSeconds(double seconds) {
+        advance(Math.round(seconds * 1e9));
+    }
+
+    /**
+     * Sets the clock to a given time, which must not be before the current time.
+     *
+     * @param nanos The new time in nanoseconds.
+     */
+    public void setNanos(long nanos) {
+        advance(nanos - this.nanos);
+    }
+}
@@ -0,0 +1,138 @@
+package events;
+
+import core.RenderObject;
+import objects.Vertex;
+
+/**
+ * The ObjectEvent class represents an animation of one transform track (position, rotation or scale)
+ * of a RenderObject from a starting to an ending value over a specified duration, following an AnimationCurve.
+ * 
+ * Object events are normally handed to a TransformAnimator, which evaluates all running animations
+ * in one batched pass per frame. An event can also be driven on its own with startTimer() and apply().
+ */
+public class ObjectEvent extends Event {
+
+    /**
+     * The transform track of the object that an event animates.
+     */
+    public enum Track {
+        POSITION,
+        ROTATION,
+        SCALE
+    }
+
+    private final RenderObject target; //The object being animated
+    private final Track track; //The part of the object's transform being animated
+    private final AnimationCurve curve; //The progress curve of the animation
+
+    /**
+     * Constructor to create an animation from the track's value at the time the event starts.
+     * 
+     * @param target The object to animate.
+     * @param track The transform track to animate.
+     * @param end The value the track ends at.
+     * @param duration The duration of the event in seconds.
+     * @param curve The progress curve.
+     */
+    public ObjectEvent(RenderObject target, Track track, Vertex end, float duration, AnimationCurve curve) {
+        this(target, track, null, end, duration, curve);
+    }
+
+    /**
+     * Constructor to create an animation between two values.
+     * 
+     * @param target The object to animate.
+     * @param track The transform track to animate.
+     * @param start The value the track starts at (null for its value when the event starts).
+     * @param end The value the track ends at.
+     * @param duration The duration of the event in seconds.
+     * @param curve The progress curve.
+     */
+    public ObjectEvent(RenderObject target, Track track, Vertex start, Vertex end, float duration, AnimationCurve curve) {
+        super(start, end, duration);
+        if (end == null) {
+            throw new IllegalArgumentException("An object event needs an end value");
+        }
+        this.target = target;
+        this.track = track;
+        this.curve = curve;
+    }
+
+    @Override
+    protected float onCurve() {
+        return curve.apply(timeProgress());
+    }
+
+    /**
+     * Starts the timer for the event, starting from the track's current value if no start value was given.
+     */
+    public void startTimer() {
+        startTimer(currentValue());
+    }
+
+    /**
+     * Calculates the track's value at the current progress of the event.
+     * 
+     * @return The interpolated value.
+     */
+    public Vertex calcValue() {
+        return calcCamPosition();
+    }
+
+    /**
+     * Sets the track of the target object to its value at the current progress of the event.
+     * Animating several objects this way re-transforms each object once per event, so a
+     * TransformAnimator should be preferred for anything but single animations.
+     */
+    public void apply() {
+        Vertex value = calcValue();
+        switch (track) {
+            case POSITION:
+                target.setPosition(value);
+                break;
+            case ROTATION:
+                target.setRotation(value);
+                break;
+            default:
+                target.setScale(value);
+                break;
+        }
+    }
+
+    /**
+     * Returns the target object's current value of the animated track.
+     * 
+     * @return The current position, rotation or scale.
+     */
+    public Vertex currentValue() {
+        switch (track) {
+            case POSITION:
+                return target.getPosition();
+            case ROTATION:
+                return target.getRotation();
+            default:
+                return target.getScale();
+        }
+    }
+
+    //Getters for the animation properties
+    public RenderObject getTarget() {
+        return target;
+    }
+
+    public Track getTrack() {
+        return track;
+    }
+
+    public AnimationCurve getCurve() {
+        return curve;
+    }
+
+    public Vertex getStartValue() {
+        return startPosition;
+    }
+
+    public Vertex getEndValue() {
+        return endPosition;
+    }
+}
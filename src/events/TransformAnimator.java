@@ -0,0 +1,394 @@
+package events;
+
+import core.RenderObject;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import objects.Vertex;
+
+/**
+ * The TransformAnimator class runs many ObjectEvents at once in a single batched pass per frame.
+ *
+ * The state of every animation (target, track, curve, start and end time, start and end value) is
+ * unpacked into parallel primitive arrays when the event is added, and update() walks these arrays
+ * in one loop, writing the interpolated values into a per-object transform table. Only afterwards is
+ * every object that changed re-transformed, once, through RenderObject.setTransform(), no matter how
+ * many of its tracks are animated. Tracks that no animation wrote in the update are passed on from the
+ * object as they are, so moving, rotating or scaling an object directly is kept for the tracks not being
+ * animated. Finished animations are removed by moving the last one into their slot, so adding and removing
+ * animations is O(1) and the arrays stay densely packed. Objects leave the table the same way once their
+ * last animation ends or is cancelled, so the animator holds no objects that are not being animated.
+ *
+ * Animations of the same track of the same object that overlap in time are applied in slot order,
+ * so the value of the one in the later slot wins.
+ */
+public class TransformAnimator {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int TRACKS = ObjectEvent.Track.values().length;
+    private static final int STATE_SIZE = TRACKS * 3; //Floats of transform state per object
+
+    private Clock clock;
+
+    //Animation slots, as parallel arrays indexed by slot (vectors take 3 consecutive floats)
+    private int slotCount;
+    private int[] slotObject = new int[INITIAL_CAPACITY]; //Index of the target in the object table
+    private int[] slotTrack = new int[INITIAL_CAPACITY]; //ObjectEvent.Track ordinal
+    private AnimationCurve[] slotCurve = new AnimationCurve[INITIAL_CAPACITY];
+    private long[] slotStart = new long[INITIAL_CAPACITY]; //Start time in nanoseconds of the clock
+    private long[] slotEnd = new long[INITIAL_CAPACITY]; //End time in nanoseconds of the clock
+    private float[] slotFrom = new float[INITIAL_CAPACITY * 3]; //Start value
+    private float[] slotTo = new float[INITIAL_CAPACITY * 3]; //End value
+    private boolean[] slotFromCurrent = new boolean[INITIAL_CAPACITY]; //Whether the start value is read when the slot starts
+    private boolean[] slotStarted = new boolean[INITIAL_CAPACITY]; //Whether the slot has been evaluated yet
+    private ObjectEvent[] slotEvent = new ObjectEvent[INITIAL_CAPACITY]; //The event, to report its progress
+
+    //Object table: every object with animations, with the values of its animated tracks
+    private int objectCount;
+    private RenderObject[] objects = new RenderObject[INITIAL_CAPACITY];
+    private float[] objectState = new float[INITIAL_CAPACITY * STATE_SIZE]; //Position, rotation, scale per object
+    private int[] objectSlots = new int[INITIAL_CAPACITY]; //Number of animation slots targeting each object
+    private Vertex[][] objectVertices = new Vertex[INITIAL_CAPACITY][]; //Position, rotation and scale handed to the object, kept for reuse past objectCount
+    private IdentityHashMap<RenderObject, Integer> objectIndices = new IdentityHashMap<>(); //Only used when adding and removing objects
+
+    //Objects changed in the current update, each listed once, with a bit per track written
+    private int[] objectTracks = new int[INITIAL_CAPACITY];
+    private int[] dirtyObjects = new int[INITIAL_CAPACITY];
+
+    /**
+     * Constructor to create an animator driven by the system clock.
+     */
+    public TransformAnimator() {
+        this(Clock.system());
+    }
+
+    /**
+     * Constructor to create an animator driven by the given clock.
+     *
+     * @param clock The clock the animations are timed with.
+     */
+    public TransformAnimator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Adds an animation that starts now.
+     *
+     * @param event The animation to run.
+     */
+    public void add(ObjectEvent event) {
+        add(event, clock.nanoTime());
+    }
+
+    /**
+     * Adds an animation that starts at the given time.
+     *
+     * @param event The animation to run.
+     * @param startNanos The start time in nanoseconds of the animator's clock.
+     */
+    public void add(ObjectEvent event, long startNanos) {
+        int object = objectIndex(event.getTarget());
+        ensureSlotCapacity(slotCount + 1);
+
+        int slot = slotCount++;
+        slotObject[slot] = object;
+        slotTrack[slot] = event.getTrack().ordinal();
+        slotCurve[slot] = event.getCurve();
+        slotStart[slot] = startNanos;
+        slotEnd[slot] = startNanos + event.getDurationNanos();
+        slotEvent[slot] = event;
+
+        Vertex from = event.getStartValue();
+        slotStarted[slot] = false;
+        slotFromCurrent[slot] = from == null;
+        if (from != null) {
+            setVector(slotFrom, slot * 3, from);
+        }
+        setVector(slotTo, slot * 3, event.getEndValue());
+        objectSlots[object]++;
+
+        event.setClock(clock);
+        event.done = false;
+    }
+
+    /**
+     * Returns the index of an object in the object table, adding it if needed.
+     */
+    private int objectIndex(RenderObject target) {
+        Integer existing = objectIndices.get(target);
+        if (existing != null) {
+            return existing;
+        }
+        int index = objectCount++;
+        ensureObjectCapacity(objectCount);
+        objects[index] = target;
+        objectSlots[index] = 0;
+        objectTracks[index] = 0;
+        if (objectVertices[index] == null) { //Left by an object that was removed otherwise
+            objectVertices[index] = new Vertex[] { new Vertex(0, 0, 0), new Vertex(0, 0, 0), new Vertex(0, 0, 0) };
+        }
+        objectIndices.put(target, index);
+        return index;
+    }
+
+    /**
+     * Removes an object without animations from the table by moving the last object into its place.
+     * Its vertices move to the end of the table, to be reused by the next object added, except those the
+     * object still holds as its position, rotation or scale, which it keeps.
+     */
+    private void removeObject(int index) {
+        RenderObject target = objects[index];
+        Vertex[] released = objectVertices[index];
+        for (int track = 0; track < TRACKS; track++) {
+            if (trackValue(target, track) == released[track]) {
+                released[track] = new Vertex(0, 0, 0);
+            }
+        }
+        objectIndices.remove(target);
+        int last = --objectCount;
+        if (index != last) {
+            objects[index] = objects[last];
+            objectIndices.put(objects[index], index);
+            System.arraycopy(objectState, last * STATE_SIZE, objectState, index * STATE_SIZE, STATE_SIZE);
+            objectSlots[index] = objectSlots[last];
+            objectTracks[index] = objectTracks[last];
+            Vertex[] vertices = objectVertices[index];
+            objectVertices[index] = objectVertices[last];
+            objectVertices[last] = vertices;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotObject[slot] == last) {
+                    slotObject[slot] = index;
+                }
+            }
+        }
+        objects[last] = null;
+    }
+
+    /**
+     * Advances all animations to the current time of the clock and re-transforms every object
+     * whose transform changed, once each.
+     *
+     * @return The number of objects that were re-transformed.
+     */
+    public int update() {
+        long now = clock.nanoTime();
+        int dirtyCount = 0;
+
+        //Evaluate all running animations into the object table
+        int slot = 0;
+        while (slot < slotCount) {
+            long start = slotStart[slot];
+            if (now < start) {
+                slot++; //Not started yet
+                continue;
+            }
+
+            int object = slotObject[slot];
+            int state = object * STATE_SIZE + slotTrack[slot] * 3;
+            int vector = slot * 3;
+
+            //Animations without a start value start from the track's value at their start, which is the
+            //object's own unless another animation of the track was already evaluated in this update
+            if (!slotStarted[slot]) {
+                if (slotFromCurrent[slot]) {
+                    if ((objectTracks[object] & (1 << slotTrack[slot])) == 0) {
+                        setVector(objectState, state, trackValue(objects[object], slotTrack[slot]));
+                    }
+                    slotFrom[vector] = objectState[state];
+                    slotFrom[vector + 1] = objectState[state + 1];
+                    slotFrom[vector + 2] = objectState[state + 2];
+                }
+                slotStarted[slot] = true;
+                slotEvent[slot].startAt(start);
+            }
+
+            long end = slotEnd[slot];
+            float t = end > start ? Math.min(1f, (float) ((double) (now - start) / (end - start))) : 1f;
+            float progress = slotCurve[slot].apply(t);
+            objectState[state] = slotFrom[vector] + (slotTo[vector] - slotFrom[vector]) * progress;
+            objectState[state + 1] = slotFrom[vector + 1] + (slotTo[vector + 1] - slotFrom[vector + 1]) * progress;
+            objectState[state + 2] = slotFrom[vector + 2] + (slotTo[vector + 2] - slotFrom[vector + 2]) * progress;
+
+            if (objectTracks[object] == 0) {
+                dirtyObjects[dirtyCount++] = object;
+            }
+            objectTracks[object] |= 1 << slotTrack[slot];
+
+            if (t >= 1) {
+                slotEvent[slot].done = true;
+                objectSlots[object]--;
+                removeSlot(slot); //The last slot moves here and is evaluated next
+            } else {
+                slot++;
+            }
+        }
+
+        //Re-transform each changed object once, with the object's own values for the tracks not written
+        int finishedCount = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int object = dirtyObjects[i];
+            int tracks = objectTracks[object];
+            objectTracks[object] = 0;
+
+            RenderObject target = objects[object];
+            Vertex[] vertices = objectVertices[object];
+            int base = object * STATE_SIZE;
+            for (int track = 0; track < TRACKS; track++) {
+                if ((tracks & (1 << track)) != 0) {
+                    Vertex vertex = vertices[track];
+                    vertex.x = objectState[base + track * 3];
+                    vertex.y = objectState[base + track * 3 + 1];
+                    vertex.z = objectState[base + track * 3 + 2];
+                }
+            }
+            target.setTransform(trackVertex(target, vertices, tracks, ObjectEvent.Track.POSITION.ordinal()),
+                    trackVertex(target, vertices, tracks, ObjectEvent.Track.ROTATION.ordinal()),
+                    trackVertex(target, vertices, tracks, ObjectEvent.Track.SCALE.ordinal()));
+
+            if (objectSlots[object] == 0) {
+                dirtyObjects[finishedCount++] = object; //The dirty entries before i have been read already
+            }
+        }
+
+        //Drop the objects whose last animation ended, highest index first so no other of them is moved
+        Arrays.sort(dirtyObjects, 0, finishedCount);
+        for (int i = finishedCount - 1; i >= 0; i--) {
+            removeObject(dirtyObjects[i]);
+        }
+        return dirtyCount;
+    }
+
+    //The vertex to hand to an object for a track: the animator's if the track was written, else the object's own
+    private static Vertex trackVertex(RenderObject target, Vertex[] vertices, int tracks, int track) {
+        return (tracks & (1 << track)) != 0 ? vertices[track] : trackValue(target, track);
+    }
+
+    //The object's current value of a track
+    private static Vertex trackValue(RenderObject target, int track) {
+        if (track == ObjectEvent.Track.POSITION.ordinal()) {
+            return target.getPosition();
+        } else if (track == ObjectEvent.Track.ROTATION.ordinal()) {
+            return target.getRotation();
+        }
+        return target.getScale();
+    }
+
+    /**
+     * Removes a slot by moving the last slot into its place.
+     */
+    private void removeSlot(int slot) {
+        int last = --slotCount;
+        if (slot != last) {
+            slotObject[slot] = slotObject[last];
+            slotTrack[slot] = slotTrack[last];
+            slotCurve[slot] = slotCurve[last];
+            slotStart[slot] = slotStart[last];
+            slotEnd[slot] = slotEnd[last];
+            slotFromCurrent[slot] = slotFromCurrent[last];
+            slotStarted[slot] = slotStarted[last];
+            slotEvent[slot] = slotEvent[last];
+            System.arraycopy(slotFrom, last * 3, slotFrom, slot * 3, 3);
+            System.arraycopy(slotTo, last * 3, slotTo, slot * 3, 3);
+        }
+        slotCurve[last] = null;
+        slotEvent[last] = null;
+    }
+
+    /**
+     * Stops all animations of an object, leaving it where it currently is.
+     *
+     * @param target The object.
+     * @return The number of animations removed.
+     */
+    public int cancel(RenderObject target) {
+        Integer index = objectIndices.get(target);
+        if (index == null) {
+            return 0;
+        }
+        int removed = 0;
+        int slot = 0;
+        while (slot < slotCount) {
+            if (slotObject[slot] == index) {
+                removeSlot(slot);
+                removed++;
+            } else {
+                slot++;
+            }
+        }
+        removeObject(index);
+        return removed;
+    }
+
+    /**
+     * Stops all animations.
+     */
+    public void clear() {
+        Arrays.fill(slotCurve, 0, slotCount, null);
+        Arrays.fill(slotEvent, 0, slotCount, null);
+        Arrays.fill(objects, 0, objectCount, null);
+        objectIndices.clear();
+        objectCount = 0;
+        slotCount = 0;
+    }
+
+    //Grows the slot arrays to hold at least the given number of slots
+    private void ensureSlotCapacity(int capacity) {
+        if (capacity <= slotObject.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, slotObject.length * 2);
+        slotObject = Arrays.copyOf(slotObject, newCapacity);
+        slotTrack = Arrays.copyOf(slotTrack, newCapacity);
+        slotCurve = Arrays.copyOf(slotCurve, newCapacity);
+        slotStart = Arrays.copyOf(slotStart, newCapacity);
+        slotEnd = Arrays.copyOf(slotEnd, newCapacity);
+        slotFrom = Arrays.copyOf(slotFrom, newCapacity * 3);
+        slotTo = Arrays.copyOf(slotTo, newCapacity * 3);
+        slotFromCurrent = Arrays.copyOf(slotFromCurrent, newCapacity);
+        slotStarted = Arrays.copyOf(slotStarted, newCapacity);
+        slotEvent = Arrays.copyOf(slotEvent, newCapacity);
+    }
+
+    //Grows the object table to hold at least the given number of objects
+    private void ensureObjectCapacity(int capacity) {
+        if (capacity <= objects.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, objects.length * 2);
+        objects = Arrays.copyOf(objects, newCapacity);
+        objectState = Arrays.copyOf(objectState, newCapacity * STATE_SIZE);
+        objectSlots = Arrays.copyOf(objectSlots, newCapacity);
+        objectVertices = Arrays.copyOf(objectVertices, newCapacity);
+        objectTracks = Arrays.copyOf(objectTracks, newCapacity);
+        dirtyObjects = Arrays.copyOf(dirtyObjects, newCapacity);
+    }
+
+    //Copies a vertex into three consecutive floats of an array
+    private static void setVector(float[] array, int offset, Vertex vertex) {
+        array[offset] = vertex.x;
+        array[offset + 1] = vertex.y;
+        array[offset + 2] = vertex.z;
+    }
+
+    /**
+     * Sets the clock the animations are timed with.
+     *
+     * @param clock The new clock.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    //Getters for the animator state
+    public Clock getClock() {
+        return clock;
+    }
+
+    public int getAnimationCount() {
+        return slotCount;
+    }
+
+    public boolean isAnimating(RenderObject target) {
+        Integer index = objectIndices.get(target);
+        return index != null && objectSlots[index] > 0;
+    }
+}
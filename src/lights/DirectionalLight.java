@@ -0,0 +1,44 @@
+package lights;
+
+import java.awt.Color;
+import objects.Vertex;
+
+/**
+ * The DirectionalLight class is a light infinitely far away, e.g. the sun, that shines in one direction
+ * with the same brightness everywhere. It affects every cluster, so it is not assigned to them.
+ */
+public class DirectionalLight extends Light {
+
+    private Vertex direction; //Unit vector the light travels along
+
+    /**
+     * Constructor to create a directional light.
+     *
+     * @param direction The direction the light shines in (normalized).
+     * @param colour The colour of the light.
+     * @param intensity The intensity of the light.
+     * @throws IllegalArgumentException if the intensity is negative or the direction has no length.
+     */
+    public DirectionalLight(Vertex direction, Color colour, float intensity) {
+        super(colour, intensity);
+        setDirection(direction);
+    }
+
+    /**
+     * Sets the direction the light shines in, which takes effect with the next frame.
+     *
+     * @param direction The direction (normalized).
+     * @throws IllegalArgumentException if the direction has no length.
+     */
+    public void setDirection(Vertex direction) {
+        float length = (float) Math.sqrt(direction.x * direction.x + direction.y * direction.y + direction.z * direction.z);
+        if (!(length > 0)) {
+            throw new IllegalArgumentException("Light direction must not be zero");
+        }
+        this.direction = new Vertex(direction.x / length, direction.y / length, direction.z / length);
+    }
+
+    public Vertex getDirection() {
+        return direction;
+    }
+}
@@ -0,0 +1,46 @@
+package lights;
+
+import java.awt.Color;
+
+/**
+ * The Light class is the base class of the lights that a LightClusters grid assigns to the clusters of the view
+ * and a ClusteredLightShader evaluates. Every light has a colour and an intensity that scales it.
+ */
+public abstract class Light {
+
+    private Color colour; //The colour of the light
+    private float intensity; //Multiplier of the colour
+
+    /**
+     * Constructor to initialize a light with a colour and an intensity.
+     *
+     * @param colour The colour of the light.
+     * @param intensity The intensity of the light (at least 0).
+     * @throws IllegalArgumentException if the intensity is negative.
+     */
+    protected Light(Color colour, float intensity) {
+        setColour(colour);
+        setIntensity(intensity);
+    }
+
+    //Setters for the light properties, which take effect with the next frame
+    public void setColour(Color colour) {
+        this.colour = colour;
+    }
+
+    public void setIntensity(float intensity) {
+        if (!(intensity >= 0)) {
+            throw new IllegalArgumentException("Light intensity must not be negative: " + intensity);
+        }
+        this.intensity = intensity;
+    }
+
+    //Getters for the light properties
+    public Color getColour() {
+        return colour;
+    }
+
+    public float getIntensity() {
+        return intensity;
+    }
+}
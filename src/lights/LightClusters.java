@@ -0,0 +1,418 @@
+package lights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import objects.Vertex;
+
+/**
+ * The LightClusters class assigns point lights to clusters of the view once per frame, so that shading a
+ * triangle only evaluates the few lights that can reach it instead of every light in the scene.
+ *
+ * The view is divided into tiles across a window of projected coordinates and into slices along the view
+ * direction, spaced exponentially between a near and a far distance so that the clusters stay roughly cubic.
+ * assign() transforms every point light into camera space, projects the box around its range onto the tiles
+ * and slices it overlaps, and stores the lights of all clusters in one flat list with the first entry of each
+ * cluster (counting the entries first, then filling them in). illuminate() finds the cluster of a point and
+ * sums the lights of that cluster only.
+ *
+ * Points and light boxes outside the window or the depth range are clamped into the outermost clusters, which
+ * keeps the assignment conservative. Points behind the camera are lit by every point light. Directional lights
+ * reach everything and are summed separately. Like the scene, the clusters belong to the thread that renders.
+ */
+public class LightClusters {
+
+    private static final float BEHIND = 1e-3f; //Depth at or below which a point counts as behind the camera
+
+    //Cluster grid
+    private final int tilesX;
+    private final int tilesY;
+    private final int slices;
+    private final float near; //Distance of the end of the first slice
+    private final float sliceScale; //Slices per unit of log(depth / near)
+    private final float minX; //Window of projected coordinates the tiles cover
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    private final ArrayList<Light> lights = new ArrayList<>();
+
+    //Point lights of the current frame, packed (colours scaled by the intensity, 1 being full brightness)
+    private int pointCount;
+    private float[] pointX = new float[16];
+    private float[] pointY = new float[16];
+    private float[] pointZ = new float[16];
+    private float[] pointRange = new float[16];
+    private float[] pointRed = new float[16];
+    private float[] pointGreen = new float[16];
+    private float[] pointBlue = new float[16];
+    private int[] pointClusters = new int[16 * 6]; //Tile and slice ranges of each light, as x0, x1, y0, y1, z0, z1
+
+    //Directional lights of the current frame, packed
+    private int directionalCount;
+    private float[] directionalX = new float[4];
+    private float[] directionalY = new float[4];
+    private float[] directionalZ = new float[4];
+    private float[] directionalRed = new float[4];
+    private float[] directionalGreen = new float[4];
+    private float[] directionalBlue = new float[4];
+
+    //Lights of each cluster: the entries from clusterStarts[k] to clusterStarts[k + 1] of clusterLights
+    private final int[] clusterStarts;
+    private final int[] clusterCursors; //Next entry to fill in each cluster
+    private int[] clusterLights = new int[64];
+
+    //Camera of the current frame
+    private boolean assigned;
+    private Vertex camPos;
+    private Vertex s;
+    private Vertex c;
+    private float focal;
+    private float screenX;
+    private float screenY;
+    private final Vertex rotated = new Vertex(0, 0, 0);
+
+    /**
+     * Constructor to create the cluster grid.
+     *
+     * @param tilesX The number of tiles across the window.
+     * @param tilesY The number of tiles down the window.
+     * @param slices The number of depth slices.
+     * @param near The distance of the end of the first slice.
+     * @param far The distance of the start of the last slice.
+     * @param minX The projected x coordinate of the window's left edge.
+     * @param minY The projected y coordinate of the window's bottom edge.
+     * @param maxX The projected x coordinate of the window's right edge.
+     * @param maxY The projected y coordinate of the window's top edge.
+     */
+    public LightClusters(int tilesX, int tilesY, int slices, float near, float far,
+                         float minX, float minY, float maxX, float maxY) {
+        if (tilesX <= 0 || tilesY <= 0 || slices <= 0) {
+            throw new IllegalArgumentException("Cluster grid size must be positive: " + tilesX + "x" + tilesY + "x" + slices);
+        }
+        if (!(near > 0) || !(far > near)) {
+            throw new IllegalArgumentException("Cluster depth range must satisfy 0 < near < far: " + near + ", " + far);
+        }
+        if (!(maxX > minX) || !(maxY > minY)) {
+            throw new IllegalArgumentException("Cluster window must not be empty");
+        }
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.slices = slices;
+        this.near = near;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        //Slice 0 ends at near and slice (slices - 1) starts at far
+        sliceScale = slices > 1 ? (float) ((slices - 1) / Math.log(far / near)) : 0;
+        clusterStarts = new int[tilesX * tilesY * slices + 1];
+        clusterCursors = new int[tilesX * tilesY * slices];
+    }
+
+    /**
+     * Adds a light.
+     *
+     * @param light The point or directional light.
+     */
+    public void addLight(Light light) {
+        if (!lights.contains(light)) {
+            lights.add(light);
+        }
+    }
+
+    /**
+     * Removes a light.
+     *
+     * @param light The light.
+     * @return true if the light was added before.
+     */
+    public boolean removeLight(Light light) {
+        return lights.remove(light);
+    }
+
+    /**
+     * Packs the lights and assigns the point lights to the clusters they reach, as seen from the camera.
+     * Called by the scene once per frame, before any triangle is shaded.
+     *
+     * @param camPos The camera position.
+     * @param s The sine of the camera's rotation.
+     * @param c The cosine of the camera's rotation.
+     * @param screenPosRel The position of the screen relative to the camera.
+     */
+    public void assign(Vertex camPos, Vertex s, Vertex c, Vertex screenPosRel) {
+        this.camPos = camPos;
+        this.s = s;
+        this.c = c;
+        focal = screenPosRel.z;
+        screenX = screenPosRel.x;
+        screenY = screenPosRel.y;
+        packLights();
+
+        //Count the lights of each cluster (shifted by one, so the prefix sum gives the first entries)
+        Arrays.fill(clusterStarts, 0);
+        for (int light = 0; light < pointCount; light++) {
+            findClusters(light);
+            forEachCluster(light, true);
+        }
+        for (int cluster = 0; cluster < clusterCursors.length; cluster++) {
+            clusterStarts[cluster + 1] += clusterStarts[cluster];
+        }
+
+        //Fill in the lights of each cluster
+        int entries = clusterStarts[clusterCursors.length];
+        if (entries > clusterLights.length) {
+            clusterLights = new int[Math.max(entries, clusterLights.length * 2)];
+        }
+        System.arraycopy(clusterStarts, 0, clusterCursors, 0, clusterCursors.length);
+        for (int light = 0; light < pointCount; light++) {
+            forEachCluster(light, false);
+        }
+        assigned = true;
+    }
+
+    /**
+     * Copies the lights' current properties into the packed arrays.
+     */
+    private void packLights() {
+        pointCount = 0;
+        directionalCount = 0;
+        for (int index = 0; index < lights.size(); index++) {
+            Light light = lights.get(index);
+            float scale = light.getIntensity() / 255f;
+            if (light instanceof PointLight) {
+                PointLight point = (PointLight) light;
+                if (pointCount == pointX.length) {
+                    growPointLights();
+                }
+                pointX[pointCount] = point.getPosition().x;
+                pointY[pointCount] = point.getPosition().y;
+                pointZ[pointCount] = point.getPosition().z;
+                pointRange[pointCount] = point.getRange();
+                pointRed[pointCount] = point.getColour().getRed() * scale;
+                pointGreen[pointCount] = point.getColour().getGreen() * scale;
+                pointBlue[pointCount] = point.getColour().getBlue() * scale;
+                pointCount++;
+            } else if (light instanceof DirectionalLight) {
+                DirectionalLight directional = (DirectionalLight) light;
+                if (directionalCount == directionalX.length) {
+                    growDirectionalLights();
+                }
+                directionalX[directionalCount] = directional.getDirection().x;
+                directionalY[directionalCount] = directional.getDirection().y;
+                directionalZ[directionalCount] = directional.getDirection().z;
+                directionalRed[directionalCount] = directional.getColour().getRed() * scale;
+                directionalGreen[directionalCount] = directional.getColour().getGreen() * scale;
+                directionalBlue[directionalCount] = directional.getColour().getBlue() * scale;
+                directionalCount++;
+            }
+        }
+    }
+
+    /**
+     * Finds the tile and slice ranges covered by the box around a point light's range, in camera space.
+     */
+    private void findClusters(int light) {
+        int base = light * 6;
+        float range = pointRange[light];
+        toCamera(pointX[light], pointY[light], pointZ[light]);
+        float centreX = rotated.x;
+        float centreY = rotated.y;
+        float nearZ = rotated.z - range;
+        float farZ = rotated.z + range;
+        if (farZ <= BEHIND) {
+            //Entirely behind the camera, where no cluster is
+            pointClusters[base] = 0;
+            pointClusters[base + 1] = -1;
+            return;
+        }
+        pointClusters[base + 4] = sliceOf(nearZ);
+        pointClusters[base + 5] = sliceOf(farZ);
+
+        if (nearZ <= BEHIND) {
+            //Reaches behind the camera, so its projection is unbounded
+            pointClusters[base] = 0;
+            pointClusters[base + 1] = tilesX - 1;
+            pointClusters[base + 2] = 0;
+            pointClusters[base + 3] = tilesY - 1;
+            return;
+        }
+        //x / z is monotonic in x and z, so the corners of the box give the extremes of its projection
+        float left = Math.min((centreX - range) / nearZ, (centreX - range) / farZ) * focal + screenX;
+        float right = Math.max((centreX + range) / nearZ, (centreX + range) / farZ) * focal + screenX;
+        float bottom = Math.min((centreY - range) / nearZ, (centreY - range) / farZ) * focal + screenY;
+        float top = Math.max((centreY + range) / nearZ, (centreY + range) / farZ) * focal + screenY;
+        pointClusters[base] = tileX(left);
+        pointClusters[base + 1] = tileX(right);
+        pointClusters[base + 2] = tileY(top);
+        pointClusters[base + 3] = tileY(bottom);
+    }
+
+    /**
+     * Counts a light in, or adds it to, every cluster of its ranges.
+     */
+    private void forEachCluster(int light, boolean count) {
+        int base = light * 6;
+        for (int slice = pointClusters[base + 4]; slice <= pointClusters[base + 5]; slice++) {
+            for (int y = pointClusters[base + 2]; y <= pointClusters[base + 3]; y++) {
+                int row = (slice * tilesY + y) * tilesX;
+                for (int x = pointClusters[base]; x <= pointClusters[base + 1]; x++) {
+                    if (count) {
+                        clusterStarts[row + x + 1]++;
+                    } else {
+                        clusterLights[clusterCursors[row + x]++] = light;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the light reaching a surface point to an accumulated colour, evaluating only the point lights of
+     * the point's cluster. Both sides of the surface are lit, as the scene draws triangles of either winding.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param z The z coordinate of the point.
+     * @param normalX The x component of the surface normal (need not be normalized).
+     * @param normalY The y component of the surface normal.
+     * @param normalZ The z component of the surface normal.
+     * @param light The red, green and blue light to add to, 1 being full brightness.
+     */
+    public void illuminate(float x, float y, float z, float normalX, float normalY, float normalZ, float[] light) {
+        float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+        boolean hasNormal = length > 0;
+        if (hasNormal) {
+            normalX /= length;
+            normalY /= length;
+            normalZ /= length;
+        }
+
+        for (int index = 0; index < directionalCount; index++) {
+            float facing = hasNormal ? Math.abs(normalX * directionalX[index] + normalY * directionalY[index] + normalZ * directionalZ[index]) : 1;
+            light[0] += directionalRed[index] * facing;
+            light[1] += directionalGreen[index] * facing;
+            light[2] += directionalBlue[index] * facing;
+        }
+
+        int cluster = clusterOf(x, y, z);
+        int start = cluster >= 0 ? clusterStarts[cluster] : 0;
+        int end = cluster >= 0 ? clusterStarts[cluster + 1] : pointCount;
+        for (int entry = start; entry < end; entry++) {
+            int index = cluster >= 0 ? clusterLights[entry] : entry; //Every light where the point has no cluster
+            float dx = pointX[index] - x;
+            float dy = pointY[index] - y;
+            float dz = pointZ[index] - z;
+            float distanceSqrd = dx * dx + dy * dy + dz * dz;
+            float rangeSqrd = pointRange[index] * pointRange[index];
+            if (distanceSqrd >= rangeSqrd) {
+                continue;
+            }
+            float distance = (float) Math.sqrt(distanceSqrd);
+            float facing = hasNormal && distance > 0 ? Math.abs(normalX * dx + normalY * dy + normalZ * dz) / distance : 1;
+
+            //Inverse square falloff, faded out smoothly towards the range
+            float ratio = distanceSqrd / rangeSqrd;
+            float window = (1 - ratio * ratio) * (1 - ratio * ratio);
+            float falloff = window / (distanceSqrd + 1) * facing;
+            light[0] += pointRed[index] * falloff;
+            light[1] += pointGreen[index] * falloff;
+            light[2] += pointBlue[index] * falloff;
+        }
+    }
+
+    /**
+     * Finds the cluster containing a world-space point.
+     *
+     * @return The index of the cluster, or -1 if the point is behind the camera or no frame was assigned yet.
+     */
+    private int clusterOf(float x, float y, float z) {
+        if (!assigned) {
+            return -1;
+        }
+        toCamera(x, y, z);
+        float depth = rotated.z;
+        if (depth <= BEHIND) {
+            return -1;
+        }
+        int tileX = tileX((focal / depth) * rotated.x + screenX);
+        int tileY = tileY((focal / depth) * rotated.y + screenY);
+        return (sliceOf(depth) * tilesY + tileY) * tilesX + tileX;
+    }
+
+    //Moves a world-space point into camera space, into the rotated vertex
+    private void toCamera(float x, float y, float z) {
+        rotated.x = x - camPos.x;
+        rotated.y = y - camPos.y;
+        rotated.z = z - camPos.z;
+        Vertex.rotateWithSinCos(rotated, s, c, rotated);
+    }
+
+    //Tile column of a projected x coordinate, clamped to the grid
+    private int tileX(float projectedX) {
+        int tile = (int) Math.floor((projectedX - minX) / (maxX - minX) * tilesX);
+        return Math.max(0, Math.min(tilesX - 1, tile));
+    }
+
+    //Tile row of a projected y coordinate, clamped to the grid (row 0 at the top)
+    private int tileY(float projectedY) {
+        int tile = (int) Math.floor((maxY - projectedY) / (maxY - minY) * tilesY);
+        return Math.max(0, Math.min(tilesY - 1, tile));
+    }
+
+    //Slice of a camera-space depth, clamped to the grid
+    private int sliceOf(float depth) {
+        if (depth <= near) {
+            return 0;
+        }
+        int slice = 1 + (int) Math.floor(Math.log(depth / near) * sliceScale);
+        return Math.min(slices - 1, slice);
+    }
+
+    //Grows the packed point light arrays
+    private void growPointLights() {
+        int capacity = pointX.length * 2;
+        pointX = Arrays.copyOf(pointX, capacity);
+        pointY = Arrays.copyOf(pointY, capacity);
+        pointZ = Arrays.copyOf(pointZ, capacity);
+        pointRange = Arrays.copyOf(pointRange, capacity);
+        pointRed = Arrays.copyOf(pointRed, capacity);
+        pointGreen = Arrays.copyOf(pointGreen, capacity);
+        pointBlue = Arrays.copyOf(pointBlue, capacity);
+        pointClusters = Arrays.copyOf(pointClusters, capacity * 6);
+    }
+
+    //Grows the packed directional light arrays
+    private void growDirectionalLights() {
+        int capacity = directionalX.length * 2;
+        directionalX = Arrays.copyOf(directionalX, capacity);
+        directionalY = Arrays.copyOf(directionalY, capacity);
+        directionalZ = Arrays.copyOf(directionalZ, capacity);
+        directionalRed = Arrays.copyOf(directionalRed, capacity);
+        directionalGreen = Arrays.copyOf(directionalGreen, capacity);
+        directionalBlue = Arrays.copyOf(directionalBlue, capacity);
+    }
+
+    //Getters for the lights and the clusters of the current frame
+    public List<Light> getLights() {
+        return Collections.unmodifiableList(lights);
+    }
+
+    public int getClusterCount() {
+        return clusterCursors.length;
+    }
+
+    public int getAssignedCount() {
+        return clusterStarts[clusterCursors.length];
+    }
+
+    public int getMaxLightsPerCluster() {
+        int max = 0;
+        for (int cluster = 0; cluster < clusterCursors.length; cluster++) {
+            max = Math.max(max, clusterStarts[cluster + 1] - clusterStarts[cluster]);
+        }
+        return max;
+    }
+}
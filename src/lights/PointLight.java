@@ -0,0 +1,51 @@
+package lights;
+
+import java.awt.Color;
+import objects.Vertex;
+
+/**
+ * The PointLight class is a light shining in all directions from a position. Its brightness falls off with
+ * the inverse square of the distance and is smoothly faded out to nothing at its range, so that it only
+ * affects the clusters of the view its range reaches into.
+ */
+public class PointLight extends Light {
+
+    private Vertex position; //Position of the light
+    private float range; //Distance at which the light no longer has any effect
+
+    /**
+     * Constructor to create a point light.
+     *
+     * @param position The position of the light.
+     * @param colour The colour of the light.
+     * @param intensity The intensity of the light.
+     * @param range The distance beyond which the light has no effect.
+     * @throws IllegalArgumentException if the intensity is negative or the range is not positive.
+     */
+    public PointLight(Vertex position, Color colour, float intensity, float range) {
+        super(colour, intensity);
+        this.position = position;
+        setRange(range);
+    }
+
+    //Setters for the light properties, which take effect with the next frame
+    public void setPosition(Vertex position) {
+        this.position = position;
+    }
+
+    public void setRange(float range) {
+        if (!(range > 0)) {
+            throw new IllegalArgumentException("Light range must be positive: " + range);
+        }
+        this.range = range;
+    }
+
+    //Getters for the light properties
+    public Vertex getPosition() {
+        return position;
+    }
+
+    public float getRange() {
+        return range;
+    }
+}
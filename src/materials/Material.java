@@ -0,0 +1,67 @@
+package materials;
+
+import java.awt.Color;
+
+/**
+ * The Material class describes the surface of the triangles it is assigned to, as read from an MTL file:
+ * a diffuse colour that tints the shaded colour and, optionally, a diffuse texture drawn across the triangles.
+ */
+public class Material {
+
+    private final String name; //Name the OBJ file refers to the material by (usemtl)
+    private final int diffuseRGB; //Diffuse colour (packed RGB)
+    private final Texture texture; //Diffuse texture, or null for a plain colour
+
+    /**
+     * Constructor to create a material.
+     *
+     * @param name The name of the material.
+     * @param diffuse The diffuse colour, multiplied with the shaded colour (white leaves it unchanged).
+     * @param texture The diffuse texture, or null.
+     */
+    public Material(String name, Color diffuse, Texture texture) {
+        this.name = name;
+        this.diffuseRGB = diffuse.getRGB() & 0xFFFFFF;
+        this.texture = texture;
+    }
+
+    /**
+     * Tints a shaded colour with the material's diffuse colour.
+     *
+     * @param rgb The shaded colour (packed RGB).
+     * @return The tinted colour (packed opaque ARGB).
+     */
+    public int tint(int rgb) {
+        if (diffuseRGB == 0xFFFFFF) {
+            return rgb | 0xFF000000;
+        }
+        return multiplyRGB(rgb, diffuseRGB);
+    }
+
+    /**
+     * Multiplies two colours channel by channel, as when a texel is lit by a shaded colour.
+     *
+     * @param a The first colour (packed RGB).
+     * @param b The second colour (packed RGB).
+     * @return The product (packed opaque ARGB), white times a colour giving the colour.
+     */
+    public static int multiplyRGB(int a, int b) {
+        int red = (((a >> 16) & 0xFF) * (((b >> 16) & 0xFF) + 1)) >> 8;
+        int green = (((a >> 8) & 0xFF) * (((b >> 8) & 0xFF) + 1)) >> 8;
+        int blue = ((a & 0xFF) * ((b & 0xFF) + 1)) >> 8;
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    //Getters for the material properties
+    public String getName() {
+        return name;
+    }
+
+    public Color getDiffuse() {
+        return new Color(diffuseRGB);
+    }
+
+    public Texture getTexture() {
+        return texture;
+    }
+}
@@ -0,0 +1,82 @@
+package materials;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The MaterialLibrary class reads the materials of an MTL file, the library an OBJ file names with mtllib.
+ * Each material's diffuse colour (Kd) and diffuse texture (map_Kd) are read; other properties are ignored,
+ * as the renderer has no use for them. Textures are loaded through Texture.load(), so a texture shared by
+ * several materials or models is decoded only once.
+ */
+public class MaterialLibrary {
+
+    /**
+     * Reads the materials of an MTL file. A missing library is skipped silently, as exported models often
+     * name one that was not shipped with them, and the model keeps its shader colours. A texture that cannot
+     * be read is reported and skipped.
+     *
+     * @param mtlPath The path of the MTL file. Texture paths in it are relative to its directory.
+     * @return The materials by name, empty if the file cannot be read.
+     */
+    public static Map<String, Material> load(String mtlPath) {
+        Map<String, Material> materials = new HashMap<>();
+        if (!new File(mtlPath).isFile()) {
+            return materials;
+        }
+        File directory = new File(mtlPath).getAbsoluteFile().getParentFile();
+
+        //Properties of the material being read
+        String name = null;
+        Color diffuse = Color.WHITE;
+        Texture texture = null;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(mtlPath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] lineS = line.trim().split("\\s+");
+                if (lineS[0].equals("newmtl")) { //Start of the next material
+                    if (name != null) {
+                        materials.put(name, new Material(name, diffuse, texture));
+                    }
+                    name = line.trim().substring(6).trim();
+                    diffuse = Color.WHITE;
+                    texture = null;
+                } else if (lineS[0].equals("Kd") && lineS.length >= 4) { //Diffuse colour, 0 to 1 per channel
+                    diffuse = new Color(clamp(Float.parseFloat(lineS[1])), clamp(Float.parseFloat(lineS[2])), clamp(Float.parseFloat(lineS[3])));
+                } else if (lineS[0].equals("map_Kd") && lineS.length >= 2) { //Diffuse texture, the file name follows any options
+                    texture = loadTexture(new File(directory, lineS[lineS.length - 1]).getPath());
+                }
+            }
+            if (name != null) {
+                materials.put(name, new Material(name, diffuse, texture));
+            }
+        } catch (IOException e) {
+            System.out.println("IO Exception: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return materials;
+    }
+
+    /**
+     * Loads a texture, reporting and skipping it if it cannot be read.
+     */
+    private static Texture loadTexture(String path) {
+        try {
+            return Texture.load(path);
+        } catch (IOException e) {
+            System.out.println("Texture not loaded: " + path + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    //Clamps a colour channel to 0 to 1
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
@@ -0,0 +1,229 @@
+package materials;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+
+/**
+ * The Texture class holds an image decoded into packed RGB texels, together with its chain of mip levels.
+ *
+ * Every level halves the size of the one before (rounding up) until a single texel is left, each texel
+ * being the average of the 2x2 texels below it. Levels are stored in tiles of 8x8 texels, tile after tile,
+ * so the texels a triangle reads close together on screen lie close together in memory whichever direction
+ * the triangle is drawn in. The rasterizer reads the level whose texels are about as large as a pixel,
+ * so a far away surface walks a small level instead of skipping across a large one.
+ *
+ * Textures loaded from files are decoded once and shared: load() returns the same Texture for the same file.
+ * A texture is immutable once built, so it may be read by any number of threads.
+ */
+public class Texture {
+
+    private static final int TILE_SHIFT = 3; //Tiles are 8x8 texels
+    private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+
+    //Textures already loaded, by canonical path
+    private static final ConcurrentHashMap<String, Texture> LOADED = new ConcurrentHashMap<>();
+
+    //Mip levels, level 0 being the full size
+    private final int[][] levels;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+    private final int[] levelTilesAcross; //Tiles per row of each level
+    private final boolean powerOfTwo; //Whether the sizes are powers of two, which every level then shares
+
+    /**
+     * Constructor to create a texture with a full mip chain from row-major pixels.
+     *
+     * @param width The width in texels.
+     * @param height The height in texels.
+     * @param pixels The row-major pixels (packed RGB, the alpha byte is ignored), at least width * height long.
+     */
+    public Texture(int width, int height, int[] pixels) {
+        this(width, height, pixels, true);
+    }
+
+    /**
+     * Constructor to create a texture from row-major pixels.
+     *
+     * @param width The width in texels.
+     * @param height The height in texels.
+     * @param pixels The row-major pixels (packed RGB, the alpha byte is ignored), at least width * height long.
+     * @param mipmaps Whether to build the mip chain, otherwise only the full size level is kept.
+     */
+    public Texture(int width, int height, int[] pixels, boolean mipmaps) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Texture size must be positive: " + width + "x" + height);
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+        }
+
+        //Halve the size (rounding up) until a single texel is left
+        int count = 1;
+        if (mipmaps) {
+            for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+                count++;
+            }
+        }
+        powerOfTwo = Integer.bitCount(width) == 1 && Integer.bitCount(height) == 1;
+        levels = new int[count][];
+        levelWidths = new int[count];
+        levelHeights = new int[count];
+        levelTilesAcross = new int[count];
+
+        int w = width;
+        int h = height;
+        int[] rows = pixels; //Row-major pixels of the current level
+        for (int level = 0; level < count; level++) {
+            levelWidths[level] = w;
+            levelHeights[level] = h;
+            levelTilesAcross[level] = (w + TILE_MASK) >> TILE_SHIFT;
+            int tilesDown = (h + TILE_MASK) >> TILE_SHIFT;
+            levels[level] = new int[(levelTilesAcross[level] * tilesDown) << (2 * TILE_SHIFT)];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    levels[level][tiledIndex(level, x, y)] = rows[y * w + x] & 0xFFFFFF;
+                }
+            }
+            if (level + 1 < count) {
+                rows = downsample(rows, w, h);
+                w = (w + 1) / 2;
+                h = (h + 1) / 2;
+            }
+        }
+    }
+
+    /**
+     * Averages every 2x2 block of row-major pixels into one, repeating the last row or column of odd sizes.
+     */
+    private static int[] downsample(int[] pixels, int width, int height) {
+        int newWidth = (width + 1) / 2;
+        int newHeight = (height + 1) / 2;
+        int[] out = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            int y0 = y * 2 * width;
+            int y1 = Math.min(y * 2 + 1, height - 1) * width;
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = x * 2;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int a = pixels[y0 + x0];
+                int b = pixels[y0 + x1];
+                int c = pixels[y1 + x0];
+                int d = pixels[y1 + x1];
+                int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+                out[y * newWidth + x] = (red << 16) | (green << 8) | blue;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Loads a texture from an image file, or returns the texture already loaded from it.
+     *
+     * @param path The path of the image (any format ImageIO reads, e.g. PNG or JPEG).
+     * @return The texture, shared by everything that loads the same file.
+     * @throws IOException if the image cannot be read.
+     */
+    public static Texture load(String path) throws IOException {
+        String key = new File(path).getCanonicalPath();
+        Texture texture = LOADED.get(key);
+        if (texture != null) {
+            return texture;
+        }
+        BufferedImage image = ImageIO.read(new File(key));
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + path);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        //Another thread may have decoded the same file meanwhile, in which case its texture is kept
+        texture = new Texture(width, height, pixels);
+        Texture existing = LOADED.putIfAbsent(key, texture);
+        return existing != null ? existing : texture;
+    }
+
+    /**
+     * Chooses the mip level for a footprint, the squared length of the texture coordinates' change per pixel
+     * measured in texels of the full size level.
+     *
+     * @param footprintSqrd The squared texels per pixel.
+     * @return The level whose texels are closest to one per pixel without being smaller.
+     */
+    public int selectLevel(float footprintSqrd) {
+        if (!(footprintSqrd >= 4)) {
+            return 0; //Magnified or less than two texels per pixel (or NaN)
+        }
+        //The exponent of the squared footprint is twice log2 of the footprint, rounded down
+        int level = Math.getExponent(Math.min(footprintSqrd, Float.MAX_VALUE)) >> 1;
+        return Math.min(level, levels.length - 1);
+    }
+
+    /**
+     * Reads the texel at texture coordinates, repeating the texture outside 0 to 1.
+     * v runs from the bottom of the image to the top, as in OBJ files.
+     *
+     * @param level The mip level.
+     * @param u The horizontal texture coordinate.
+     * @param v The vertical texture coordinate.
+     * @return The texel (packed RGB).
+     */
+    public int sample(int level, float u, float v) {
+        int width = levelWidths[level];
+        int height = levelHeights[level];
+        int x = (int) Math.floor(u * width);
+        int y = (int) Math.floor((1 - v) * height);
+        if (powerOfTwo) {
+            x &= width - 1; //Wraps negative coordinates too, without a division
+            y &= height - 1;
+        } else {
+            x = Math.floorMod(x, width);
+            y = Math.floorMod(y, height);
+        }
+        return levels[level][tiledIndex(level, x, y)];
+    }
+
+    /**
+     * Reads the texel at texel coordinates within a level.
+     *
+     * @param level The mip level.
+     * @param x The column, from 0 to the level's width - 1.
+     * @param y The row, from 0 (the top) to the level's height - 1.
+     * @return The texel (packed RGB).
+     */
+    public int getTexel(int level, int x, int y) {
+        return levels[level][tiledIndex(level, x, y)];
+    }
+
+    //Index of a texel in its level: the tile, then the texel within the tile
+    private int tiledIndex(int level, int x, int y) {
+        int tile = (y >> TILE_SHIFT) * levelTilesAcross[level] + (x >> TILE_SHIFT);
+        return (tile << (2 * TILE_SHIFT)) | ((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+    }
+
+    //Getters for the texture's size and mip levels
+    public int getWidth() {
+        return levelWidths[0];
+    }
+
+    public int getHeight() {
+        return levelHeights[0];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return levelWidths[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return levelHeights[level];
+    }
+}
@@ -46,6 +46,20 @@ public class Vertex {
         return new Vertex(v1.x + v2.x, v1.y + v2.y, v1.z + v2.z);
     }
 
+    /**
+     * Static method to calculate the squared distance between two vertices without creating a new vertex.
+     * 
+     * @param v1 The first vertex.
+     * @param v2 The second vertex.
+     * @return The squared distance between v1 and v2.
+     */
+    public static float distanceSqrd(Vertex v1, Vertex v2) {
+        float dX = v1.x - v2.x;
+        float dY = v1.y - v2.y;
+        float dZ = v1.z - v2.z;
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+
     /**
      * Method to calculate the magnitude (length) of the vertex vector.
      * 
@@ -120,6 +134,20 @@ public class Vertex {
      * @return A new Vertex representing the rotated coordinates of v1.
      */
     public static Vertex rotateWithSinCos(Vertex v1, Vertex s, Vertex c) {
+        return rotateWithSinCos(v1, s, c, new Vertex(0, 0, 0));
+    }
+
+    /**
+     * Static method to rotate a vertex using precomputed sine and cosine values, writing the result into
+     * an existing vertex instead of allocating a new one. The output may be the same vertex as the input.
+     * 
+     * @param v1 The vertex to rotate.
+     * @param s The precomputed sine values for each axis.
+     * @param c The precomputed cosine values for each axis.
+     * @param out The vertex that receives the rotated coordinates.
+     * @return The output vertex.
+     */
+    public static Vertex rotateWithSinCos(Vertex v1, Vertex s, Vertex c, Vertex out) {
         float x = v1.x;
         float y = v1.y;
         float z = v1.z;
@@ -129,7 +157,10 @@ public class Vertex {
         float dY = s.x * (c.y * z + s.y * (s.z * y + c.z * x)) + c.x * (c.z * y - s.z * x);
         float dZ = c.x * (c.y * z + s.y * (s.z * y + c.z * x)) - s.x * (c.z * y - s.z * x);
         
-        //Return the new rotated vertex
-        return new Vertex(dX, dY, dZ);
+        //Store the rotated coordinates in the output vertex
+        out.x = dX;
+        out.y = dY;
+        out.z = dZ;
+        return out;
     }
 }
@@ -0,0 +1,72 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The FrameEvent class is a custom JDK Flight Recorder event committed once per profiled frame.
+ * It records how long the frame took, how that time was split across the individual stages
+ * and how many triangles went through the pipeline.
+ */
+@Name("turquoise.Frame")
+@Label("Frame")
+@Category({"Turquoise Graphics", "Rendering"})
+@Description("Per-stage timings and triangle counts of a rendered frame")
+public class FrameEvent extends Event {
+
+    @Label("Frame Number")
+    public long frame;
+
+    @Label("Frame Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long frameTime;
+
+    @Label("Commands")
+    @Timespan(Timespan.NANOSECONDS)
+    public long commands;
+
+    @Label("Animation")
+    @Timespan(Timespan.NANOSECONDS)
+    public long animation;
+
+    @Label("Camera Events")
+    @Timespan(Timespan.NANOSECONDS)
+    public long cameraEvents;
+
+    @Label("Camera Rotation")
+    @Timespan(Timespan.NANOSECONDS)
+    public long cameraRotation;
+
+    @Label("Occlusion")
+    @Timespan(Timespan.NANOSECONDS)
+    public long occlusion;
+
+    @Label("Lights")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lights;
+
+    @Label("Sort")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sort;
+
+    @Label("Render Triangles")
+    @Timespan(Timespan.NANOSECONDS)
+    public long renderTriangles;
+
+    @Label("Draw")
+    @Timespan(Timespan.NANOSECONDS)
+    public long draw;
+
+    @Label("Triangles Submitted")
+    public int submitted;
+
+    @Label("Triangles Culled")
+    public int culled;
+
+    @Label("Triangles Drawn")
+    public int drawn;
+}
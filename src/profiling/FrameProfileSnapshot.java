@@ -0,0 +1,157 @@
+package profiling;
+
+/**
+ * The FrameProfileSnapshot class is an immutable copy of the statistics collected by a FrameProfiler.
+ * Stage statistics are given in nanoseconds and can be looked up by FrameStage.
+ */
+public class FrameProfileSnapshot {
+
+    private static final FrameStage[] STAGES = FrameStage.values();
+
+    private final long frameCount; //Number of frames recorded
+
+    //Statistics per stage, indexed by FrameStage.ordinal()
+    private final long[] counts = new long[STAGES.length];
+    private final double[] means = new double[STAGES.length];
+    private final long[] p50 = new long[STAGES.length];
+    private final long[] p95 = new long[STAGES.length];
+    private final long[] p99 = new long[STAGES.length];
+    private final long[] max = new long[STAGES.length];
+    private final long[] allocated = new long[STAGES.length]; //Bytes allocated in each stage (when tracked)
+
+    //Triangle counts of the last frame
+    private final int submitted;
+    private final int culled;
+    private final int drawn;
+
+    //Average triangle counts per frame
+    private final double meanSubmitted;
+    private final double meanCulled;
+    private final double meanDrawn;
+
+    /**
+     * Constructor that copies the statistics out of the profiler's histograms.
+     */
+    FrameProfileSnapshot(LatencyHistogram[] histograms, long[] allocatedBytes, long frameCount, int submitted, int culled, int drawn,
+                         double meanSubmitted, double meanCulled, double meanDrawn) {
+        this.frameCount = frameCount;
+        for (int i = 0; i < STAGES.length; i++) {
+            counts[i] = histograms[i].getCount();
+            means[i] = histograms[i].getMean();
+            p50[i] = histograms[i].valueAtPercentile(50);
+            p95[i] = histograms[i].valueAtPercentile(95);
+            p99[i] = histograms[i].valueAtPercentile(99);
+            max[i] = histograms[i].getMax();
+            allocated[i] = allocatedBytes[i];
+        }
+        this.submitted = submitted;
+        this.culled = culled;
+        this.drawn = drawn;
+        this.meanSubmitted = meanSubmitted;
+        this.meanCulled = meanCulled;
+        this.meanDrawn = meanDrawn;
+    }
+
+    /**
+     * Returns the average frame rate implied by the mean frame time.
+     *
+     * @return Frames per second, or 0 if no frame has been recorded.
+     */
+    public double getFramesPerSecond() {
+        double meanFrame = getMean(FrameStage.FRAME);
+        return meanFrame > 0 ? 1000000000.0 / meanFrame : 0;
+    }
+
+    /**
+     * Formats the snapshot as a multi-line report, one line per stage.
+     *
+     * @return The report.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("frames %d, %.1f fps, triangles %d submitted / %d culled / %d drawn%n",
+                frameCount, getFramesPerSecond(), submitted, culled, drawn));
+        for (FrameStage stage : STAGES) {
+            report.append(String.format("%-17s mean %8.3f ms  p50 %8.3f  p95 %8.3f  p99 %8.3f  max %8.3f%n",
+                    stage.getLabel(), getMean(stage) / 1e6, getP50(stage) / 1e6, getP95(stage) / 1e6,
+                    getP99(stage) / 1e6, getMax(stage) / 1e6));
+        }
+        return report.toString();
+    }
+
+    //Getters for the per-stage statistics
+    public long getCount(FrameStage stage) {
+        return counts[stage.ordinal()];
+    }
+
+    public double getMean(FrameStage stage) {
+        return means[stage.ordinal()];
+    }
+
+    public long getP50(FrameStage stage) {
+        return p50[stage.ordinal()];
+    }
+
+    public long getP95(FrameStage stage) {
+        return p95[stage.ordinal()];
+    }
+
+    public long getP99(FrameStage stage) {
+        return p99[stage.ordinal()];
+    }
+
+    public long getMax(FrameStage stage) {
+        return max[stage.ordinal()];
+    }
+
+    /**
+     * Returns the bytes allocated in a stage since the last reset.
+     * This is only non-zero when the profiler's allocation tracking is enabled.
+     *
+     * @param stage The stage.
+     * @return The allocated bytes.
+     */
+    public long getAllocatedBytes(FrameStage stage) {
+        return allocated[stage.ordinal()];
+    }
+
+    /**
+     * Returns the average bytes allocated in a stage per frame.
+     *
+     * @param stage The stage.
+     * @return The allocated bytes per frame, or 0 if no frame has been recorded.
+     */
+    public double getAllocatedBytesPerFrame(FrameStage stage) {
+        return frameCount == 0 ? 0 : (double) allocated[stage.ordinal()] / frameCount;
+    }
+
+    //Getters for the frame and triangle counts
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getSubmitted() {
+        return submitted;
+    }
+
+    public int getCulled() {
+        return culled;
+    }
+
+    public int getDrawn() {
+        return drawn;
+    }
+
+    public double getMeanSubmitted() {
+        return meanSubmitted;
+    }
+
+    public double getMeanCulled() {
+        return meanCulled;
+    }
+
+    public double getMeanDrawn() {
+        return meanDrawn;
+    }
+}
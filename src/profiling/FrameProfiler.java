@@ -0,0 +1,214 @@
+package profiling;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import jdk.jfr.EventType;
+
+/**
+ * The FrameProfiler class collects per-stage timings and triangle counts for rendered frames.
+ * Every stage duration is recorded into a LatencyHistogram, and once per frame a FrameEvent is
+ * committed to JDK Flight Recorder if a recording with that event enabled is running.
+ * The collected statistics can be read at any time through snapshot().
+ *
+ * A frame is delimited by beginFrame() and endFrame(). In between, the stages are timed with
+ * start() and record(), which takes the start time of the stage and returns the end time, so
+ * consecutive stages can be chained with a single System.nanoTime() call each.
+ *
+ * When allocation tracking is enabled, the profiler also attributes the bytes allocated by the
+ * profiled thread to the stage that allocated them, using com.sun.management.ThreadMXBean.
+ */
+public class FrameProfiler {
+
+    //Looked up once, so checking whether the JFR event is enabled does not allocate
+    private static final EventType FRAME_EVENT_TYPE = EventType.getEventType(FrameEvent.class);
+
+    private static final FrameStage[] STAGES = FrameStage.values();
+
+    //One histogram per stage
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    //Histograms of the triangle counts per frame
+    private final LatencyHistogram submittedHistogram = new LatencyHistogram();
+    private final LatencyHistogram culledHistogram = new LatencyHistogram();
+    private final LatencyHistogram drawnHistogram = new LatencyHistogram();
+
+    //Stage durations of the frame currently being recorded
+    private final long[] frameStages = new long[STAGES.length];
+    private long frameStart; //System.nanoTime() at the start of the current frame
+    private boolean inFrame = false; //Whether beginFrame() has been called without a matching endFrame()
+
+    private long frameCount; //Number of frames completed since the last reset
+
+    //Allocation tracking (off by default, as reading the thread's allocation counter is not free)
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private boolean trackAllocations = false;
+    private final long[] allocatedBytes = new long[STAGES.length]; //Bytes allocated per stage since the last reset
+    private long allocationMark; //Thread allocation counter at the start of the current stage
+    private long frameAllocationMark; //Thread allocation counter at the start of the current frame
+
+    //Triangle counts of the last frame
+    private int submitted;
+    private int culled;
+    private int drawn;
+
+    /**
+     * Constructor to initialize the profiler with empty histograms.
+     */
+    public FrameProfiler() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Marks the start of a frame.
+     */
+    public synchronized void beginFrame() {
+        Arrays.fill(frameStages, 0);
+        if (trackAllocations) {
+            frameAllocationMark = threadAllocatedBytes();
+            allocationMark = frameAllocationMark;
+        }
+        frameStart = System.nanoTime();
+        inFrame = true;
+    }
+
+    /**
+     * Marks the start of a stage.
+     * Only needed before the first stage of a chain, as record() marks the start of the next stage itself.
+     *
+     * @return The System.nanoTime() value to pass to record() at the end of the stage.
+     */
+    public synchronized long start() {
+        if (trackAllocations) {
+            allocationMark = threadAllocatedBytes();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a stage that started at the given time and ended now.
+     *
+     * @param stage The stage being recorded.
+     * @param startNanos The System.nanoTime() value at the start of the stage.
+     * @return The System.nanoTime() value at the end of the stage, to be used as the start of the next stage.
+     */
+    public synchronized long record(FrameStage stage, long startNanos) {
+        long now = System.nanoTime();
+        long duration = now - startNanos;
+        histograms[stage.ordinal()].record(duration);
+        frameStages[stage.ordinal()] += duration;
+
+        if (trackAllocations) {
+            long allocated = threadAllocatedBytes();
+            allocatedBytes[stage.ordinal()] += allocated - allocationMark;
+            allocationMark = allocated;
+            return System.nanoTime(); //Leave the time spent reading the counter out of the next stage
+        }
+        return now;
+    }
+
+    /**
+     * Records how many triangles went through the pipeline in the current frame.
+     *
+     * @param submitted The number of triangles submitted for rendering.
+     * @param culled The number of triangles that were not drawn (e.g. behind the camera).
+     * @param drawn The number of triangles that were drawn.
+     */
+    public synchronized void recordTriangles(int submitted, int culled, int drawn) {
+        this.submitted = submitted;
+        this.culled = culled;
+        this.drawn = drawn;
+        submittedHistogram.record(submitted);
+        culledHistogram.record(culled);
+        drawnHistogram.record(drawn);
+    }
+
+    /**
+     * Marks the end of a frame, records its total duration and commits a FrameEvent if JFR is recording it.
+     */
+    public synchronized void endFrame() {
+        long frameTime = 0;
+        if (inFrame) {
+            frameTime = System.nanoTime() - frameStart;
+            histograms[FrameStage.FRAME.ordinal()].record(frameTime);
+            inFrame = false;
+
+            if (trackAllocations) {
+                allocatedBytes[FrameStage.FRAME.ordinal()] += threadAllocatedBytes() - frameAllocationMark;
+            }
+        }
+        frameCount++;
+
+        if (FRAME_EVENT_TYPE.isEnabled()) {
+            FrameEvent event = new FrameEvent();
+            event.frame = frameCount;
+            event.frameTime = frameTime;
+            event.commands = frameStages[FrameStage.COMMANDS.ordinal()];
+            event.animation = frameStages[FrameStage.ANIMATION.ordinal()];
+            event.cameraEvents = frameStages[FrameStage.CAMERA_EVENTS.ordinal()];
+            event.cameraRotation = frameStages[FrameStage.CAMERA_ROTATION.ordinal()];
+            event.occlusion = frameStages[FrameStage.OCCLUSION.ordinal()];
+            event.lights = frameStages[FrameStage.LIGHTS.ordinal()];
+            event.sort = frameStages[FrameStage.SORT.ordinal()];
+            event.renderTriangles = frameStages[FrameStage.RENDER_TRIANGLES.ordinal()];
+            event.draw = frameStages[FrameStage.DRAW.ordinal()];
+            event.submitted = submitted;
+            event.culled = culled;
+            event.drawn = drawn;
+            event.commit();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the statistics collected since the last reset.
+     * This may be called from any thread.
+     *
+     * @return An immutable snapshot of the current statistics.
+     */
+    public synchronized FrameProfileSnapshot snapshot() {
+        return new FrameProfileSnapshot(histograms, allocatedBytes, frameCount, submitted, culled, drawn,
+                submittedHistogram.getMean(), culledHistogram.getMean(), drawnHistogram.getMean());
+    }
+
+    /**
+     * Discards all statistics collected so far.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        submittedHistogram.reset();
+        culledHistogram.reset();
+        drawnHistogram.reset();
+        Arrays.fill(allocatedBytes, 0);
+        frameCount = 0;
+    }
+
+    /**
+     * Enables or disables attributing allocated bytes to the stages.
+     * Allocations are only counted on the thread that records the stages.
+     *
+     * @param trackAllocations Whether to track allocations.
+     * @throws UnsupportedOperationException if the JVM cannot measure thread allocations.
+     */
+    public synchronized void setAllocationTracking(boolean trackAllocations) {
+        if (trackAllocations && !THREAD_BEAN.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocation measurement is not supported by this JVM");
+        }
+        if (trackAllocations) {
+            THREAD_BEAN.setThreadAllocatedMemoryEnabled(true);
+        }
+        this.trackAllocations = trackAllocations;
+    }
+
+    public synchronized boolean isAllocationTracking() {
+        return trackAllocations;
+    }
+
+    //Total bytes allocated by the current thread so far
+    private static long threadAllocatedBytes() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,29 @@
+package profiling;
+
+/**
+ * The FrameStage enum lists the stages of a frame that the FrameProfiler measures.
+ * The first eight are the steps of Scene.renderScene(), DRAW is the front end's draw loop
+ * and FRAME covers a whole frame from FrameProfiler.beginFrame() to FrameProfiler.endFrame().
+ */
+public enum FrameStage {
+    COMMANDS("commands"), //Scene.applyCommands() (changes submitted by other threads)
+    ANIMATION("animation"), //Scene.animateObjects() (object animations and scene graph)
+    CAMERA_EVENTS("camera events"), //Scene.followCameraEvents()
+    CAMERA_ROTATION("camera rotation"), //Scene.generateCameraRot()
+    OCCLUSION("occlusion"), //Scene.cullHiddenObjects() (potentially visible set and occlusion culling, when enabled)
+    LIGHTS("lights"), //Scene.assignLights() (assigning lights to the clusters of the view, when there are lights)
+    SORT("sort"), //Scene.sortTrianglesForRendering()
+    RENDER_TRIANGLES("render triangles"), //Scene.renderTriangles()
+    DRAW("draw"), //Drawing the rendered triangles in the front end (e.g. GPanel)
+    FRAME("frame"); //The whole frame
+
+    private final String label; //Human readable name used in overlays and reports
+
+    FrameStage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,154 @@
+package profiling;
+
+import java.util.Arrays;
+
+/**
+ * The LatencyHistogram class records nanosecond durations into log-linear buckets.
+ * Every power of two is split into 16 equally sized sub-buckets, so any recorded value
+ * is reported with a relative error of at most 1/16 (6.25%). Recording is a handful of
+ * integer operations and never allocates, which keeps it cheap enough to run every frame.
+ */
+public class LatencyHistogram {
+
+    //Number of bits used for the sub-buckets within each power of two
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    //Enough buckets to cover every non-negative long value
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT]; //Number of values recorded in each bucket
+
+    private long count; //Total number of values recorded
+    private long total; //Sum of all recorded values
+    private long min = Long.MAX_VALUE; //Smallest recorded value
+    private long max; //Largest recorded value
+
+    /**
+     * Records a single value.
+     *
+     * @param value The value to record, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        count++;
+        total += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     * The result is the upper bound of the bucket the percentile falls in, capped at the recorded maximum.
+     *
+     * @param percentile The percentile between 0 and 100.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        //The rank of the value we are looking for (1 based)
+        long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(index), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds all values recorded in another histogram to this one.
+     *
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts[index] += other.counts[index];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Calculates the bucket a value belongs to.
+     * Values below 16 get a bucket each, above that the bucket is chosen by the position of the
+     * highest set bit and the next SUB_BITS bits below it.
+     *
+     * @param value The non-negative value.
+     * @return The index of the bucket.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Calculates the largest value that falls into a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return The largest value recorded into that bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    //Getters for the summary values
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+}
@@ -0,0 +1,186 @@
+package remote;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import javax.imageio.ImageIO;
+
+/**
+ * The FrameClient class is a minimal viewer of a FrameServer. It keeps the current frame as packed RGB pixels,
+ * applies the tiles of every frame it receives and acknowledges the frame, which lets the server send the next.
+ *
+ * Usage: java -cp src remote.FrameClient host port [frames] [snapshot.png]
+ * receives the given number of frames (300 by default), prints the frame rate and bytes per frame, and
+ * optionally saves the last frame as a PNG image.
+ */
+public class FrameClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesAcross;
+    private final int[] pixels; //The current frame
+    private final byte[] tileBytes; //Samples of the tile being read, reused for every tile
+
+    private int frameNumber = -1; //Number of the current frame, -1 before the first
+    private int lastTileCount; //Tiles in the last frame received
+    private long bytesReceived;
+
+    /**
+     * Constructor to connect to a server and read its stream header.
+     *
+     * @param host The server's host name or address.
+     * @param port The server's port.
+     * @throws IOException if the connection fails or the server does not speak the frame protocol.
+     */
+    public FrameClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 16));
+
+        if (in.readInt() != FrameServer.MAGIC) {
+            socket.close();
+            throw new IOException(host + ":" + port + " is not a frame server");
+        }
+        int version = in.readInt();
+        if (version != FrameServer.VERSION) {
+            socket.close();
+            throw new IOException("Unsupported frame protocol version " + version);
+        }
+        width = in.readInt();
+        height = in.readInt();
+        tileSize = in.readInt();
+        tilesAcross = (width + tileSize - 1) / tileSize;
+        pixels = new int[width * height];
+        tileBytes = new byte[tileSize * tileSize * 3];
+        bytesReceived = FrameServer.HEADER_BYTES;
+    }
+
+    /**
+     * Waits for the next frame, applies its tiles to the current frame and acknowledges it.
+     *
+     * @return The number of the frame, which may skip numbers when the client is slower than the server.
+     * @throws IOException if the connection fails or the frame is not a delta against the current one.
+     */
+    public int receiveFrame() throws IOException {
+        int number = in.readInt();
+        int base = in.readInt();
+        int tileCount = in.readInt();
+        if (base != -1 && base != frameNumber) {
+            throw new IOException("Frame " + number + " is a delta against frame " + base + ", not against the current frame " + frameNumber);
+        }
+        bytesReceived += FrameServer.FRAME_HEADER_BYTES;
+
+        for (int i = 0; i < tileCount; i++) {
+            int index = in.readInt();
+            int x0 = index % tilesAcross * tileSize;
+            int y0 = index / tilesAcross * tileSize;
+            int tileWidth = Math.min(tileSize, width - x0);
+            int tileHeight = Math.min(tileSize, height - y0);
+            if (tileWidth <= 0 || tileHeight <= 0 || index < 0) {
+                throw new IOException("Tile " + index + " lies outside the frame");
+            }
+            in.readFully(tileBytes, 0, tileWidth * tileHeight * 3);
+            bytesReceived += 4 + tileWidth * tileHeight * 3;
+
+            int position = 0;
+            for (int y = y0; y < y0 + tileHeight; y++) {
+                for (int x = x0; x < x0 + tileWidth; x++) {
+                    pixels[y * width + x] = ((tileBytes[position] & 0xFF) << 16) | ((tileBytes[position + 1] & 0xFF) << 8)
+                            | (tileBytes[position + 2] & 0xFF);
+                    position += 3;
+                }
+            }
+        }
+
+        frameNumber = number;
+        lastTileCount = tileCount;
+        out.writeInt(number);
+        out.flush();
+        return number;
+    }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Connects to a server, receives frames and reports the frame rate and bandwidth.
+     *
+     * @param args The host, the port, optionally the number of frames and optionally a PNG file for the last frame.
+     * @throws IOException if the connection fails or the image cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java remote.FrameClient host port [frames] [snapshot.png]");
+            return;
+        }
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        try (FrameClient client = new FrameClient(args[0], Integer.parseInt(args[1]))) {
+            System.out.println("Connected, " + client.getWidth() + "x" + client.getHeight() + " in tiles of " + client.tileSize);
+            long start = System.nanoTime();
+            long tiles = 0;
+            int first = -1;
+            for (int i = 0; i < frames; i++) {
+                int number = client.receiveFrame();
+                if (first < 0) {
+                    first = number;
+                }
+                tiles += client.getLastTileCount();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int tilesPerFrame = client.tilesAcross * ((client.height + client.tileSize - 1) / client.tileSize);
+            System.out.printf("%d frames in %.2f s (%.1f fps), %d skipped, %.1f KiB and %.1f of %d tiles per frame%n",
+                    frames, seconds, frames / seconds, client.getFrameNumber() - first + 1 - frames,
+                    client.getBytesReceived() / 1024.0 / frames, (double) tiles / frames, tilesPerFrame);
+
+            if (args.length > 3) {
+                BufferedImage image = new BufferedImage(client.getWidth(), client.getHeight(), BufferedImage.TYPE_INT_RGB);
+                image.setRGB(0, 0, client.getWidth(), client.getHeight(), client.getPixels(), 0, client.getWidth());
+                ImageIO.write(image, "png", new File(args[3]));
+            }
+        }
+    }
+
+    //Getters for the current frame and statistics
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+    public int getLastTileCount() {
+        return lastTileCount;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+}
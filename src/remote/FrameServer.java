@@ -0,0 +1,435 @@
+package remote;
+
+import core.FrameBuffer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The FrameServer class streams rendered frames over TCP to any number of viewers, e.g. FrameClient.
+ *
+ * A single background thread serves every connection with a non-blocking selector. The render thread hands
+ * each finished frame over with publish(), which copies it and returns without touching the network or
+ * taking a lock: frames pass between the two threads through three buffers, one being written by the render
+ * thread, one being served, and one holding the newest finished frame, which the threads exchange atomically.
+ * The frame is divided into square tiles, and a viewer is only sent the tiles that differ from the last
+ * frame it acknowledged. A viewer has at most one frame in flight: the next frame is sent once the previous
+ * one has been written out and acknowledged, and is always the newest one published, so a slow viewer
+ * skips the frames published meanwhile instead of having them buffered for it.
+ *
+ * The protocol, all integers big-endian:
+ * - On connecting, the server sends a header: magic, version, width, height and tile size.
+ * - Each frame is sent as its number (counting from 1), the number of the frame the delta is against (-1 for
+ *   a complete frame), the number of tiles that follow, and every tile as its index (row by row) followed by
+ *   its pixels as 8 bit red, green and blue samples, row by row. Tiles at the right and bottom edges are cut
+ *   to the frame.
+ * - The viewer acknowledges each frame by sending back its number once the frame has been applied.
+ */
+public class FrameServer implements AutoCloseable {
+
+    static final int MAGIC = 0x54524D46; //"TRMF" in big-endian byte order
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    static final int FRAME_HEADER_BYTES = 12;
+
+    //Edge length of the tiles that are compared and sent when no tile size is given
+    private static final int DEFAULT_TILE_SIZE = 32;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesAcross;
+    private final int tilesDown;
+    private final int maxFrameBytes; //Size of a complete frame message
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread serverThread;
+    private volatile boolean closed = false;
+
+    //Three frame buffers and the number of the frame each holds (0 before the first frame is published)
+    private static final int FRESH = 4; //Set in exchange when its buffer holds a frame the server has not taken yet
+    private final int[][] buffers = new int[3][];
+    private final int[] bufferNumbers = new int[3];
+    private final AtomicInteger exchange = new AtomicInteger(1); //The buffer holding the newest finished frame, plus FRESH
+    private int publishBuffer = 0; //The buffer the render thread copies into, only accessed by the render thread
+    private int publishedNumber; //Number of the last published frame, only accessed by the render thread
+
+    //The frame being served, only accessed by the server thread
+    private int currentBuffer = 2;
+    private int[] currentPixels;
+    private int currentNumber;
+
+    private final List<Viewer> viewers = new ArrayList<>(); //Connected viewers, only accessed by the server thread
+
+    //Statistics, written by the server thread
+    private volatile int viewerCount;
+    private volatile long framesSent;
+    private volatile long framesSkipped; //Frames a viewer never received because it was still busy with an older one
+    private volatile long bytesSent;
+
+    /**
+     * A connected viewer and what it currently shows.
+     */
+    private static final class Viewer {
+        final SocketChannel channel;
+        final int[] image; //The viewer's frame once the frame in flight has been applied
+        final ByteBuffer out; //The message being written
+        final ByteBuffer in = ByteBuffer.allocate(64); //Acknowledgements not yet read completely
+        int ackedNumber = -1; //Last acknowledged frame, -1 before the first
+        int sentNumber = 0; //Last frame sent
+        boolean awaitingAck = false;
+
+        Viewer(SocketChannel channel, int pixels, int maxFrameBytes) {
+            this.channel = channel;
+            this.image = new int[pixels];
+            this.out = ByteBuffer.allocate(maxFrameBytes);
+        }
+    }
+
+    /**
+     * Constructor to start serving frames of the given size with tiles of 32x32 pixels.
+     *
+     * @param port The TCP port to listen on, on all interfaces (0 for any free port, see getPort()).
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @throws IOException if the port cannot be opened.
+     */
+    public FrameServer(int port, int width, int height) throws IOException {
+        this(port, width, height, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructor to start serving frames of the given size.
+     *
+     * @param port The TCP port to listen on, on all interfaces (0 for any free port, see getPort()).
+     * @param width The width of the frames in pixels.
+     * @param height The height of the frames in pixels.
+     * @param tileSize The edge length of the tiles in pixels. Smaller tiles send less of a frame that
+     *                 changed in a few places, at the cost of comparing and indexing more tiles.
+     * @throws IOException if the port cannot be opened.
+     */
+    public FrameServer(int port, int width, int height, int tileSize) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive: " + width + "x" + height);
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesAcross = (width + tileSize - 1) / tileSize;
+        this.tilesDown = (height + tileSize - 1) / tileSize;
+        this.maxFrameBytes = Math.max(HEADER_BYTES, FRAME_HEADER_BYTES + tilesAcross * tilesDown * 4 + width * height * 3);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new int[width * height];
+        }
+        this.currentPixels = buffers[currentBuffer];
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        serverThread = new Thread(this::serve, "frame-server");
+        serverThread.setDaemon(true); //Serving must not keep the application alive
+        serverThread.setPriority(Thread.NORM_PRIORITY - 1); //Prefer the render thread
+        serverThread.start();
+    }
+
+    /**
+     * Hands a finished frame to the server thread, which sends it to the viewers that are ready for one.
+     * Called on the render thread; copies the frame and returns without waiting for the network.
+     *
+     * @param frameBuffer The frame, which must have the size the server was created with.
+     */
+    public void publish(FrameBuffer frameBuffer) {
+        if (frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            throw new IllegalArgumentException("Frame of " + frameBuffer.getWidth() + "x" + frameBuffer.getHeight()
+                    + " does not match the served size of " + width + "x" + height);
+        }
+        System.arraycopy(frameBuffer.getPixels(), 0, buffers[publishBuffer], 0, width * height);
+        bufferNumbers[publishBuffer] = ++publishedNumber;
+
+        //Offer the frame to the server thread and take the buffer it replaces (an older, unserved frame or a served one)
+        publishBuffer = exchange.getAndSet(publishBuffer | FRESH) & ~FRESH;
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the server thread: accepts viewers, reads their acknowledgements and sends them frames until closed.
+     */
+    private void serve() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                break;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Viewer viewer = (Viewer) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        readAcknowledgements(viewer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(viewer);
+                    }
+                } catch (IOException e) {
+                    disconnect(viewer);
+                }
+            }
+
+            //Take the newest frame and send it to every viewer that is done with its previous one
+            takePublishedFrame();
+            if (currentNumber == 0) {
+                continue;
+            }
+            for (int i = viewers.size() - 1; i >= 0; i--) {
+                Viewer viewer = viewers.get(i);
+                if (!viewer.awaitingAck && !viewer.out.hasRemaining() && viewer.sentNumber != currentNumber) {
+                    try {
+                        sendFrame(viewer);
+                        flush(viewer);
+                    } catch (IOException e) {
+                        disconnect(viewer);
+                    }
+                }
+            }
+        }
+
+        for (int i = viewers.size() - 1; i >= 0; i--) {
+            disconnect(viewers.get(i));
+        }
+    }
+
+    /**
+     * Swaps the newest published frame in as the frame being served, if one has been published since the last swap.
+     */
+    private void takePublishedFrame() {
+        if ((exchange.get() & FRESH) != 0) {
+            currentBuffer = exchange.getAndSet(currentBuffer) & ~FRESH;
+            currentPixels = buffers[currentBuffer];
+            currentNumber = bufferNumbers[currentBuffer];
+        }
+    }
+
+    /**
+     * Accepts a waiting connection and queues the stream header for it.
+     */
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true); //Acknowledgements and frames are latency bound
+            Viewer viewer = new Viewer(channel, width * height, maxFrameBytes);
+            channel.register(selector, SelectionKey.OP_READ, viewer);
+            viewers.add(viewer);
+            viewerCount = viewers.size();
+
+            viewer.out.clear();
+            viewer.out.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(tileSize);
+            viewer.out.flip();
+            flush(viewer);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    //Closing a connection that failed to set up
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a viewer's acknowledgements. Acknowledging the frame in flight makes the viewer ready for the next.
+     */
+    private void readAcknowledgements(Viewer viewer) throws IOException {
+        if (viewer.channel.read(viewer.in) < 0) {
+            throw new IOException("Viewer disconnected");
+        }
+        viewer.in.flip();
+        while (viewer.in.remaining() >= 4) {
+            int number = viewer.in.getInt();
+            if (!viewer.awaitingAck || number != viewer.sentNumber) {
+                throw new IOException("Unexpected acknowledgement of frame " + number);
+            }
+            viewer.awaitingAck = false;
+            viewer.ackedNumber = number;
+        }
+        viewer.in.compact();
+    }
+
+    /**
+     * Writes the current frame's tiles that differ from what the viewer shows into its message, and updates
+     * the viewer's image to match. Every tile is sent to a viewer that has not acknowledged a frame yet.
+     */
+    private void sendFrame(Viewer viewer) {
+        ByteBuffer out = viewer.out;
+        byte[] bytes = out.array();
+        int position = FRAME_HEADER_BYTES;
+        int tileCount = 0;
+        boolean complete = viewer.ackedNumber < 0;
+        for (int tileY = 0; tileY < tilesDown; tileY++) {
+            int y0 = tileY * tileSize;
+            int y1 = Math.min(y0 + tileSize, height);
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                int x0 = tileX * tileSize;
+                int x1 = Math.min(x0 + tileSize, width);
+                if (!complete && !tileChanged(viewer.image, x0, y0, x1, y1)) {
+                    continue;
+                }
+
+                int index = tileY * tilesAcross + tileX;
+                bytes[position] = (byte) (index >> 24);
+                bytes[position + 1] = (byte) (index >> 16);
+                bytes[position + 2] = (byte) (index >> 8);
+                bytes[position + 3] = (byte) index;
+                position += 4;
+                for (int y = y0; y < y1; y++) {
+                    int row = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        int rgb = currentPixels[row + x];
+                        bytes[position] = (byte) (rgb >> 16);
+                        bytes[position + 1] = (byte) (rgb >> 8);
+                        bytes[position + 2] = (byte) rgb;
+                        position += 3;
+                    }
+                    System.arraycopy(currentPixels, row + x0, viewer.image, row + x0, x1 - x0);
+                }
+                tileCount++;
+            }
+        }
+
+        out.clear();
+        out.putInt(currentNumber).putInt(complete ? -1 : viewer.ackedNumber).putInt(tileCount);
+        out.position(0).limit(position);
+
+        if (viewer.sentNumber > 0) {
+            framesSkipped += currentNumber - viewer.sentNumber - 1;
+        }
+        viewer.sentNumber = currentNumber;
+        viewer.awaitingAck = true;
+        framesSent++;
+    }
+
+    /**
+     * Checks whether a tile of the current frame differs from the viewer's image, comparing whole rows at once.
+     */
+    private boolean tileChanged(int[] image, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int from = y * width + x0;
+            int to = y * width + x1;
+            if (!Arrays.equals(currentPixels, from, to, image, from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes as much of the viewer's message as the connection takes without blocking, and asks the selector
+     * to report when the connection can take the rest.
+     */
+    private void flush(Viewer viewer) throws IOException {
+        if (viewer.out.hasRemaining()) {
+            bytesSent += viewer.channel.write(viewer.out);
+        }
+        SelectionKey key = viewer.channel.keyFor(selector);
+        key.interestOps(viewer.out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Closes a viewer's connection and forgets it.
+     */
+    private void disconnect(Viewer viewer) {
+        viewers.remove(viewer);
+        viewerCount = viewers.size();
+        try {
+            viewer.channel.close();
+        } catch (IOException ignored) {
+            //The viewer is gone either way
+        }
+    }
+
+    /**
+     * Stops serving, disconnecting every viewer.
+     *
+     * @throws IOException if the port cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        selector.wakeup();
+        try {
+            serverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    //Getters for the server's port, frame size and statistics
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getViewerCount() {
+        return viewerCount;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+}
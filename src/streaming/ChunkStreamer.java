@@ -0,0 +1,415 @@
+package streaming;
+
+import colours.ColourShader;
+import core.MeshObject;
+import core.OffHeapMesh;
+import core.Scene;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import objects.Vertex;
+
+/**
+ * The ChunkStreamer class streams a chunked world (see WorldBuilder) into a scene around the camera,
+ * so the world can be far larger than memory.
+ *
+ * Every frame update() looks at Scene.getCamPos() and requests the chunks within the load radius,
+ * nearest first. Chunk files are read straight into off-heap meshes and transformed on background loader
+ * threads; the finished chunk is handed to the scene as a SceneCommand, so it is added at the start of a
+ * frame and the render thread never waits for the disk. The camera's velocity is tracked as well, and the
+ * chunks around where the camera will be after the prefetch time are requested too, once the required
+ * chunks are under way.
+ *
+ * Loaded chunks stay resident as a cache until the off-heap memory they occupy would exceed the memory cap;
+ * then the least recently used chunks that are not needed in the current frame are removed and freed.
+ *
+ * update() and close() must be called on the render thread, e.g. just before Scene.renderScene().
+ */
+public class ChunkStreamer implements AutoCloseable {
+
+    //States of a chunk
+    private static final int NOT_LOADED = 0;
+    private static final int LOADING = 1;
+    private static final int RESIDENT = 2;
+    private static final int FAILED = 3; //The chunk file could not be read, it is not requested again
+
+    //Weight of the newest frame in the moving average of the camera velocity
+    private static final double VELOCITY_SMOOTHING = 0.2;
+
+    /**
+     * A chunk of the world and its loading state. Only accessed on the render thread.
+     */
+    private static final class Chunk {
+        final long key;
+        final long bytes; //Off-heap memory used while resident
+        int state = NOT_LOADED;
+        long lastUsedFrame = -1; //Last frame the chunk was within the load or prefetch radius
+        OffHeapMesh mesh;
+        MeshObject object;
+
+        Chunk(long key, long bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Scene scene;
+    private final Path directory;
+    private final WorldIndex index;
+    private final ColourShader shader;
+    private final Chunk[] chunks; //Parallel to the index entries
+    private final ExecutorService loader;
+
+    //Streaming settings
+    private int loadRadius = 2; //Chunks around the camera chunk that must be loaded
+    private double prefetchSeconds = 1.5; //How far ahead along the direction of travel to prefetch
+    private long memoryCapBytes = 256L * 1024 * 1024; //Off-heap memory the resident chunks may occupy
+    private int maxLoadsInFlight = 4;
+
+    //Streaming state
+    private final ArrayList<Chunk> residentChunks = new ArrayList<>();
+    private long residentBytes; //Memory of resident and loading chunks
+    private int loadsInFlight;
+    private long frame;
+    private boolean closed;
+
+    //Camera motion, for prefetching
+    private float lastX, lastZ;
+    private long lastNanos = -1;
+    private double velocityX, velocityZ; //World units per second
+
+    //Statistics
+    private long chunksLoaded;
+    private long chunksEvicted;
+
+    /**
+     * Constructor to stream a world directory into a scene with two loader threads.
+     *
+     * @param scene The scene to stream the chunks into.
+     * @param directory The world directory written by WorldBuilder.
+     * @param shader The shader used to colour all chunks.
+     * @throws IOException if the world index cannot be read.
+     */
+    public ChunkStreamer(Scene scene, Path directory, ColourShader shader) throws IOException {
+        this(scene, directory, shader, 2);
+    }
+
+    /**
+     * Constructor to stream a world directory into a scene.
+     *
+     * @param scene The scene to stream the chunks into.
+     * @param directory The world directory written by WorldBuilder.
+     * @param shader The shader used to colour all chunks.
+     * @param loaderThreads The number of background threads reading chunks.
+     * @throws IOException if the world index cannot be read.
+     */
+    public ChunkStreamer(Scene scene, Path directory, ColourShader shader, int loaderThreads) throws IOException {
+        this.scene = scene;
+        this.directory = directory;
+        this.index = WorldIndex.read(directory);
+        this.shader = shader;
+
+        chunks = new Chunk[index.getChunkCount()];
+        for (int i = 0; i < chunks.length; i++) {
+            //Mesh positions and indices plus the mesh object's world positions
+            long bytes = (index.getVertexCount(i) * 6L + index.getTriangleCount(i) * 3L) * 4;
+            chunks[i] = new Chunk(index.getKey(i), bytes);
+        }
+
+        loader = Executors.newFixedThreadPool(Math.max(1, loaderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "chunk-loader");
+            thread.setDaemon(true); //Loading must not keep the application alive
+            thread.setPriority(Thread.NORM_PRIORITY - 1); //Prefer the render thread
+            return thread;
+        });
+    }
+
+    /**
+     * Requests the chunks around the camera and ahead of it, and evicts chunks to stay within the memory cap.
+     * Called on the render thread once per frame. Does no disk access itself.
+     */
+    public void update() {
+        if (closed) {
+            return;
+        }
+        frame++;
+        Vertex camPos = scene.getCamPos();
+        trackVelocity(camPos, scene.getClock().nanoTime());
+
+        //Chunks around the camera are required, the ones around the predicted position are prefetched
+        int cameraX = index.chunkCoordinate(camPos.x);
+        int cameraZ = index.chunkCoordinate(camPos.z);
+        int aheadX = index.chunkCoordinate((float) (camPos.x + velocityX * prefetchSeconds));
+        int aheadZ = index.chunkCoordinate((float) (camPos.z + velocityZ * prefetchSeconds));
+        markUsed(cameraX, cameraZ);
+        markUsed(aheadX, aheadZ);
+
+        requestNearest(cameraX, cameraZ);
+        if (aheadX != cameraX || aheadZ != cameraZ) {
+            requestNearest(aheadX, aheadZ);
+        }
+
+        evictOverCap();
+    }
+
+    /**
+     * Updates the smoothed camera velocity on the x/z plane.
+     */
+    private void trackVelocity(Vertex camPos, long nanos) {
+        if (lastNanos >= 0 && nanos > lastNanos) {
+            double seconds = (nanos - lastNanos) / 1e9;
+            if (seconds < 1) { //Ignore pauses, they say nothing about the current velocity
+                double vx = (camPos.x - lastX) / seconds;
+                double vz = (camPos.z - lastZ) / seconds;
+                velocityX += (vx - velocityX) * VELOCITY_SMOOTHING;
+                velocityZ += (vz - velocityZ) * VELOCITY_SMOOTHING;
+            }
+        }
+        lastX = camPos.x;
+        lastZ = camPos.z;
+        lastNanos = nanos;
+    }
+
+    /**
+     * Marks the chunks within the load radius of a chunk as used in this frame, so they are not evicted.
+     */
+    private void markUsed(int centreX, int centreZ) {
+        for (int x = centreX - loadRadius; x <= centreX + loadRadius; x++) {
+            for (int z = centreZ - loadRadius; z <= centreZ + loadRadius; z++) {
+                int i = index.find(WorldIndex.key(x, z));
+                if (i >= 0) {
+                    chunks[i].lastUsedFrame = frame;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts loading the chunks within the load radius of a chunk that are not loaded yet,
+     * ring by ring from the centre outwards, as long as loader capacity and memory allow.
+     */
+    private void requestNearest(int centreX, int centreZ) {
+        for (int ring = 0; ring <= loadRadius; ring++) {
+            for (int x = centreX - ring; x <= centreX + ring; x++) {
+                for (int z = centreZ - ring; z <= centreZ + ring; z++) {
+                    if (Math.max(Math.abs(x - centreX), Math.abs(z - centreZ)) != ring) {
+                        continue; //Inside the ring, requested already
+                    }
+                    if (loadsInFlight >= maxLoadsInFlight) {
+                        return;
+                    }
+                    int i = index.find(WorldIndex.key(x, z));
+                    if (i >= 0 && chunks[i].state == NOT_LOADED && !startLoad(chunks[i])) {
+                        return; //Out of memory even after evicting, nearer chunks keep their place
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts loading a chunk on a loader thread, evicting unused chunks first if its memory would exceed the cap.
+     *
+     * @return false if there is not enough memory for the chunk.
+     */
+    private boolean startLoad(Chunk chunk) {
+        while (residentBytes + chunk.bytes > memoryCapBytes) {
+            if (!evictLeastRecentlyUsed()) {
+                return false;
+            }
+        }
+        chunk.state = LOADING;
+        residentBytes += chunk.bytes;
+        loadsInFlight++;
+
+        Path file = directory.resolve(WorldIndex.chunkFileName(chunk.key));
+        String name = "chunk " + WorldIndex.chunkX(chunk.key) + "," + WorldIndex.chunkZ(chunk.key);
+        loader.execute(() -> {
+            //Read and transform the chunk off the render thread, then hand it over at the next frame start
+            OffHeapMesh mesh = null;
+            try {
+                mesh = OffHeapMesh.read(file);
+                MeshObject object = new MeshObject(name, mesh, shader, new Vertex(0, 0, 0));
+                OffHeapMesh loadedMesh = mesh;
+                scene.submit(s -> finishLoad(chunk, loadedMesh, object));
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                if (mesh != null) {
+                    mesh.close();
+                }
+                System.out.println("Could not load " + name + ": " + e.getMessage());
+                scene.submit(s -> failLoad(chunk));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Adds a loaded chunk to the scene. Runs on the render thread as a SceneCommand.
+     */
+    private void finishLoad(Chunk chunk, OffHeapMesh mesh, MeshObject object) {
+        loadsInFlight--;
+        if (closed) {
+            object.close();
+            mesh.close();
+            return;
+        }
+        chunk.mesh = mesh;
+        chunk.object = object;
+        chunk.state = RESIDENT;
+        scene.addMesh(object);
+        residentChunks.add(chunk);
+        chunksLoaded++;
+    }
+
+    /**
+     * Gives up on a chunk whose file could not be read. Runs on the render thread as a SceneCommand.
+     */
+    private void failLoad(Chunk chunk) {
+        loadsInFlight--;
+        chunk.state = FAILED;
+        residentBytes -= chunk.bytes;
+    }
+
+    /**
+     * Evicts least recently used chunks while the resident memory exceeds the cap,
+     * e.g. after the cap was lowered.
+     */
+    private void evictOverCap() {
+        while (residentBytes > memoryCapBytes && evictLeastRecentlyUsed()) {
+            //Keep evicting
+        }
+    }
+
+    /**
+     * Removes the resident chunk that was used least recently, if it is not used in the current frame.
+     *
+     * @return false if every resident chunk is in use.
+     */
+    private boolean evictLeastRecentlyUsed() {
+        int oldest = -1;
+        for (int i = 0; i < residentChunks.size(); i++) {
+            Chunk chunk = residentChunks.get(i);
+            if (chunk.lastUsedFrame < frame
+                    && (oldest < 0 || chunk.lastUsedFrame < residentChunks.get(oldest).lastUsedFrame)) {
+                oldest = i;
+            }
+        }
+        if (oldest < 0) {
+            return false;
+        }
+
+        //Remove it by moving the last resident chunk into its place
+        Chunk chunk = residentChunks.get(oldest);
+        Chunk last = residentChunks.remove(residentChunks.size() - 1);
+        if (last != chunk) {
+            residentChunks.set(oldest, last);
+        }
+        unload(chunk);
+        chunksEvicted++;
+        return true;
+    }
+
+    /**
+     * Removes a resident chunk from the scene and frees its memory.
+     */
+    private void unload(Chunk chunk) {
+        scene.removeMesh(chunk.object);
+        chunk.object.close();
+        chunk.mesh.close();
+        chunk.object = null;
+        chunk.mesh = null;
+        chunk.state = NOT_LOADED;
+        residentBytes -= chunk.bytes;
+    }
+
+    /**
+     * Stops streaming: removes all chunks from the scene and frees them. Chunks that are still loading
+     * are freed when they finish. Called on the render thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loader.shutdown();
+        for (Chunk chunk : residentChunks) {
+            unload(chunk);
+        }
+        residentChunks.clear();
+    }
+
+    /**
+     * Sets how many chunks around the camera's chunk are loaded in each direction.
+     *
+     * @param loadRadius The radius in chunks (0 loads only the camera's chunk).
+     */
+    public void setLoadRadius(int loadRadius) {
+        if (loadRadius < 0) {
+            throw new IllegalArgumentException("Load radius must not be negative: " + loadRadius);
+        }
+        this.loadRadius = loadRadius;
+    }
+
+    /**
+     * Sets how far ahead of the camera chunks are prefetched, as the time the camera takes to get there
+     * at its current velocity.
+     *
+     * @param prefetchSeconds The prefetch time in seconds (0 disables prefetching).
+     */
+    public void setPrefetchSeconds(double prefetchSeconds) {
+        if (prefetchSeconds < 0) {
+            throw new IllegalArgumentException("Prefetch time must not be negative: " + prefetchSeconds);
+        }
+        this.prefetchSeconds = prefetchSeconds;
+    }
+
+    /**
+     * Sets the off-heap memory the resident chunks may occupy. Chunks within the load radius are
+     * never evicted, so the cap should hold at least those.
+     *
+     * @param memoryCapBytes The cap in bytes.
+     */
+    public void setMemoryCap(long memoryCapBytes) {
+        if (memoryCapBytes <= 0) {
+            throw new IllegalArgumentException("Memory cap must be positive: " + memoryCapBytes);
+        }
+        this.memoryCapBytes = memoryCapBytes;
+    }
+
+    /**
+     * Sets how many chunks may be loading at the same time.
+     *
+     * @param maxLoadsInFlight The maximum number of chunks being loaded.
+     */
+    public void setMaxLoadsInFlight(int maxLoadsInFlight) {
+        this.maxLoadsInFlight = Math.max(1, maxLoadsInFlight);
+    }
+
+    //Getters for the streaming state
+    public WorldIndex getIndex() {
+        return index;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public int getResidentChunkCount() {
+        return residentChunks.size();
+    }
+
+    public int getLoadsInFlight() {
+        return loadsInFlight;
+    }
+
+    public long getChunksLoaded() {
+        return chunksLoaded;
+    }
+
+    public long getChunksEvicted() {
+        return chunksEvicted;
+    }
+}
@@ -0,0 +1,181 @@
+package streaming;
+
+import core.OffHeapMesh;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The WorldBuilder class splits a mesh into square chunks on the x/z plane and writes them as a chunked
+ * world directory that a ChunkStreamer can stream from. Each triangle goes to the chunk containing its
+ * centroid, so triangles are never split or duplicated.
+ *
+ * To build worlds larger than memory from a single model, the model can be repeated in a grid of tiles.
+ * Tiles are spaced a whole number of chunks apart, so they never share a chunk, and only one chunk is
+ * held in memory at a time while writing.
+ *
+ * Usage: java -cp src streaming.WorldBuilder model.obj worldDirectory chunkSize [tiles]
+ */
+public class WorldBuilder {
+
+    /**
+     * Builds a world directory from an .obj file.
+     *
+     * @param args The model path, the world directory, the chunk size and optionally the number of tiles per side.
+     * @throws IOException if the model cannot be read or the world cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java -cp src streaming.WorldBuilder model.obj worldDirectory chunkSize [tiles]");
+            System.exit(1);
+        }
+        int tiles = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        try (OffHeapMesh mesh = OffHeapMesh.loadObj(args[0])) {
+            WorldIndex index = build(mesh, Float.parseFloat(args[2]), tiles, Paths.get(args[1]));
+            System.out.println("Wrote " + index.getChunkCount() + " chunks to " + args[1]);
+        }
+    }
+
+    /**
+     * Splits a mesh into chunks and writes them, together with the world index, into a directory.
+     *
+     * @param mesh The mesh to split.
+     * @param chunkSize The edge length of a chunk in world units.
+     * @param tiles The number of copies of the mesh along each of the x and z axes (1 for a single copy).
+     * @param directory The world directory, created if needed.
+     * @return The index of the written world.
+     * @throws IOException if the world cannot be written.
+     */
+    public static WorldIndex build(OffHeapMesh mesh, float chunkSize, int tiles, Path directory) throws IOException {
+        if (!(chunkSize > 0) || tiles < 1) {
+            throw new IllegalArgumentException("Chunk size and tiles must be positive");
+        }
+        Files.createDirectories(directory);
+        FloatBuffer positions = mesh.getPositions();
+        IntBuffer indices = mesh.getIndices();
+        int triangleCount = mesh.getTriangleCount();
+
+        //Find the chunk containing each triangle's centroid
+        int[] chunkX = new int[triangleCount];
+        int[] chunkZ = new int[triangleCount];
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int t = 0; t < triangleCount; t++) {
+            float x = 0;
+            float z = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices.get(t * 3 + corner) * 3;
+                x += positions.get(vertex);
+                z += positions.get(vertex + 2);
+            }
+            chunkX[t] = (int) Math.floor(x / 3 / chunkSize);
+            chunkZ[t] = (int) Math.floor(z / 3 / chunkSize);
+            minX = Math.min(minX, chunkX[t]);
+            maxX = Math.max(maxX, chunkX[t]);
+            minZ = Math.min(minZ, chunkZ[t]);
+            maxZ = Math.max(maxZ, chunkZ[t]);
+        }
+        if (triangleCount == 0) {
+            WorldIndex empty = new WorldIndex(chunkSize, new long[0], new int[0], new int[0]);
+            empty.write(directory);
+            return empty;
+        }
+
+        //Group the triangles by chunk with a counting sort over the chunks the mesh covers
+        int spanX = maxX - minX + 1;
+        int spanZ = maxZ - minZ + 1;
+        int[] groupStart = new int[spanX * spanZ + 1];
+        for (int t = 0; t < triangleCount; t++) {
+            groupStart[(chunkX[t] - minX) * spanZ + (chunkZ[t] - minZ) + 1]++;
+        }
+        for (int g = 0; g < spanX * spanZ; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] grouped = new int[triangleCount];
+        int[] fill = Arrays.copyOf(groupStart, groupStart.length);
+        for (int t = 0; t < triangleCount; t++) {
+            grouped[fill[(chunkX[t] - minX) * spanZ + (chunkZ[t] - minZ)]++] = t;
+        }
+
+        //Write every non-empty chunk of every tile. Tiles are one chunk further apart than the mesh is wide
+        int stepX = spanX + 1;
+        int stepZ = spanZ + 1;
+        int chunksPerTile = 0;
+        for (int g = 0; g < spanX * spanZ; g++) {
+            if (groupStart[g + 1] > groupStart[g]) {
+                chunksPerTile++;
+            }
+        }
+        long[] keys = new long[chunksPerTile * tiles * tiles];
+        int[] vertexCounts = new int[keys.length];
+        int[] triangleCounts = new int[keys.length];
+        int[] remap = new int[mesh.getVertexCount()];
+        Arrays.fill(remap, -1);
+
+        int written = 0;
+        for (int tileX = 0; tileX < tiles; tileX++) {
+            for (int tileZ = 0; tileZ < tiles; tileZ++) {
+                for (int g = 0; g < spanX * spanZ; g++) {
+                    int from = groupStart[g];
+                    int to = groupStart[g + 1];
+                    if (from == to) {
+                        continue;
+                    }
+                    int cx = minX + g / spanZ + tileX * stepX;
+                    int cz = minZ + g % spanZ + tileZ * stepZ;
+                    float offsetX = tileX * stepX * chunkSize;
+                    float offsetZ = tileZ * stepZ * chunkSize;
+                    long key = WorldIndex.key(cx, cz);
+
+                    try (OffHeapMesh chunk = extractChunk(positions, indices, grouped, from, to, remap, offsetX, offsetZ)) {
+                        chunk.write(directory.resolve(WorldIndex.chunkFileName(key)));
+                        keys[written] = key;
+                        vertexCounts[written] = chunk.getVertexCount();
+                        triangleCounts[written] = chunk.getTriangleCount();
+                        written++;
+                    }
+                }
+            }
+        }
+
+        WorldIndex index = new WorldIndex(chunkSize, keys, vertexCounts, triangleCounts);
+        index.write(directory);
+        return index;
+    }
+
+    /**
+     * Copies a group of triangles into a mesh of their own, keeping only the vertices they use.
+     */
+    private static OffHeapMesh extractChunk(FloatBuffer positions, IntBuffer indices, int[] grouped, int from, int to,
+            int[] remap, float offsetX, float offsetZ) {
+        int[] chunkIndices = new int[(to - from) * 3];
+        float[] chunkPositions = new float[(to - from) * 9];
+        int vertexCount = 0;
+        for (int i = from; i < to; i++) {
+            int t = grouped[i];
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices.get(t * 3 + corner);
+                if (remap[vertex] < 0) {
+                    remap[vertex] = vertexCount;
+                    chunkPositions[vertexCount * 3] = positions.get(vertex * 3) + offsetX;
+                    chunkPositions[vertexCount * 3 + 1] = positions.get(vertex * 3 + 1);
+                    chunkPositions[vertexCount * 3 + 2] = positions.get(vertex * 3 + 2) + offsetZ;
+                    vertexCount++;
+                }
+                chunkIndices[(i - from) * 3 + corner] = remap[vertex];
+            }
+        }
+
+        //Reset the remapping for the next chunk
+        for (int i = from; i < to; i++) {
+            int t = grouped[i];
+            for (int corner = 0; corner < 3; corner++) {
+                remap[indices.get(t * 3 + corner)] = -1;
+            }
+        }
+        return new OffHeapMesh(Arrays.copyOf(chunkPositions, vertexCount * 3), chunkIndices);
+    }
+}
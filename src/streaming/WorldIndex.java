@@ -0,0 +1,195 @@
+package streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The WorldIndex class describes a chunked world on disk: the size of the square chunks on the x/z plane
+ * and, for every chunk that contains geometry, its grid coordinates and size. It is stored as
+ * world.properties in the world directory, next to one mesh file per chunk (see chunkFileName()).
+ *
+ * The chunks are kept sorted by key, so a chunk is found by binary search without allocating.
+ */
+public class WorldIndex {
+
+    static final String INDEX_FILE = "world.properties";
+    private static final String CHUNK_PREFIX = "chunk.";
+
+    private final float chunkSize;
+    private final long[] keys; //Sorted chunk keys, see key()
+    private final int[] vertexCounts; //Number of vertices of each chunk, parallel to keys
+    private final int[] triangleCounts; //Number of triangles of each chunk, parallel to keys
+
+    /**
+     * Constructor to create an index from its chunk entries.
+     *
+     * @param chunkSize The edge length of a chunk in world units.
+     * @param keys The chunk keys.
+     * @param vertexCounts The vertex count of each chunk.
+     * @param triangleCounts The triangle count of each chunk.
+     */
+    public WorldIndex(float chunkSize, long[] keys, int[] vertexCounts, int[] triangleCounts) {
+        if (!(chunkSize > 0)) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        if (keys.length != vertexCounts.length || keys.length != triangleCounts.length) {
+            throw new IllegalArgumentException("Chunk entries must have the same length");
+        }
+        this.chunkSize = chunkSize;
+
+        //Sort the entries by key
+        Integer[] sorted = new Integer[keys.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(keys[a], keys[b]));
+        this.keys = new long[keys.length];
+        this.vertexCounts = new int[keys.length];
+        this.triangleCounts = new int[keys.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.keys[i] = keys[sorted[i]];
+            this.vertexCounts[i] = vertexCounts[sorted[i]];
+            this.triangleCounts[i] = triangleCounts[sorted[i]];
+            if (i > 0 && this.keys[i] == this.keys[i - 1]) {
+                throw new IllegalArgumentException("Duplicate chunk " + chunkX(this.keys[i]) + "," + chunkZ(this.keys[i]));
+            }
+        }
+    }
+
+    /**
+     * Reads the index of a world directory.
+     *
+     * @param directory The world directory.
+     * @return The index.
+     * @throws IOException if the index cannot be read or is malformed.
+     */
+    public static WorldIndex read(Path directory) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(directory.resolve(INDEX_FILE))) {
+            properties.load(in);
+        }
+        try {
+            float chunkSize = Float.parseFloat(properties.getProperty("chunkSize"));
+            int count = 0;
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(CHUNK_PREFIX)) {
+                    count++;
+                }
+            }
+            long[] keys = new long[count];
+            int[] vertexCounts = new int[count];
+            int[] triangleCounts = new int[count];
+            int i = 0;
+            for (String name : properties.stringPropertyNames()) {
+                if (!name.startsWith(CHUNK_PREFIX)) {
+                    continue;
+                }
+                //chunk.<x>.<z>=<vertices>,<triangles>
+                String[] coordinates = name.substring(CHUNK_PREFIX.length()).split("\\.");
+                String[] sizes = properties.getProperty(name).split(",");
+                keys[i] = key(Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1]));
+                vertexCounts[i] = Integer.parseInt(sizes[0].trim());
+                triangleCounts[i] = Integer.parseInt(sizes[1].trim());
+                i++;
+            }
+            return new WorldIndex(chunkSize, keys, vertexCounts, triangleCounts);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed world index in " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the index into a world directory.
+     *
+     * @param directory The world directory.
+     * @throws IOException if the index cannot be written.
+     */
+    public void write(Path directory) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("chunkSize", Float.toString(chunkSize));
+        for (int i = 0; i < keys.length; i++) {
+            properties.setProperty(CHUNK_PREFIX + chunkX(keys[i]) + "." + chunkZ(keys[i]),
+                    vertexCounts[i] + "," + triangleCounts[i]);
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve(INDEX_FILE))) {
+            properties.store(out, "Turquoise Graphics chunked world");
+        }
+    }
+
+    /**
+     * Packs the grid coordinates of a chunk into one key.
+     *
+     * @param chunkX The chunk's x coordinate on the grid.
+     * @param chunkZ The chunk's z coordinate on the grid.
+     * @return The key.
+     */
+    public static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    //Unpack the grid coordinates of a key
+    public static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int chunkZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Returns the name of a chunk's mesh file in the world directory.
+     *
+     * @param key The chunk key.
+     * @return The file name.
+     */
+    public static String chunkFileName(long key) {
+        return "chunk_" + chunkX(key) + "_" + chunkZ(key) + ".mesh";
+    }
+
+    /**
+     * Returns the grid coordinate of the chunk containing a world coordinate.
+     *
+     * @param coordinate The x or z coordinate.
+     * @return The chunk's grid coordinate.
+     */
+    public int chunkCoordinate(float coordinate) {
+        return (int) Math.floor(coordinate / chunkSize);
+    }
+
+    /**
+     * Finds a chunk in the index.
+     *
+     * @param key The chunk key.
+     * @return The chunk's position in the index, or -1 if the chunk has no geometry.
+     */
+    public int find(long key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? index : -1;
+    }
+
+    //Getters for the index entries
+    public float getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return keys.length;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getVertexCount(int index) {
+        return vertexCounts[index];
+    }
+
+    public int getTriangleCount(int index) {
+        return triangleCounts[index];
+    }
+}